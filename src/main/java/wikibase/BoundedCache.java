@@ -0,0 +1,383 @@
+// Paquete que contiene la caché acotada con política de admisión por frecuencia usada por los diccionarios y cachés del cargador.
+package wikibase;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+// Clase que implementa un mapa con un número máximo de entradas y política W-TinyLFU: las entradas nuevas entran a
+// una ventana LRU pequeña (1 % de la capacidad) y, al salir de ella, compiten por un lugar en la zona principal con la
+// entrada que ésta desalojaría; gana la que se ha usado más veces según un contador de frecuencias aproximado
+// (count-min sketch de 4 bits que se reduce a la mitad periódicamente para olvidar la historia antigua). La zona
+// principal es un LRU segmentado: las entradas usadas una segunda vez pasan a la zona protegida (80 %). Así, una
+// secuencia larga de claves que aparecen una sola vez (por ejemplo, un MRUN por fila) no desplaza a las claves que se
+// repiten en muchas filas (regiones, comunas). Todas las operaciones son sincronizadas sobre el mapa; para recorrerlo
+// desde varios hilos hay que sincronizar sobre él, como con Collections.synchronizedMap. containsKey no cuenta como
+// uso, para que el patrón containsKey + get del cargador no cuente dos veces la misma consulta.
+public final class BoundedCache<K, V> extends AbstractMap<K, V> {
+
+    private static final int VENTANA = 0;
+    private static final int PRUEBA = 1;
+    private static final int PROTEGIDA = 2;
+
+    private final String nombre;                       // Nombre en los eventos de JFR (null: sin eventos).
+    private final int maximo;                          // Número máximo de entradas.
+    private final int maxVentana;                      // Entradas de la ventana de admisión.
+    private final int maxProtegida;                    // Entradas de la zona protegida.
+    private final Map<K, Nodo<K, V>> nodos = new HashMap<>();
+    private final Lista<K, V> ventana = new Lista<>();
+    private final Lista<K, V> prueba = new Lista<>();
+    private final Lista<K, V> protegida = new Lista<>();
+    private final Frecuencias frecuencias;
+    private long aciertos;
+    private long fallos;
+    private long desalojos;
+    private long rechazos;                             // Entradas nuevas que perdieron contra la víctima.
+
+    // Constructor: crea una caché vacía con el número máximo de entradas indicado.
+    public BoundedCache(int maximo) {
+        this(null, maximo);
+    }
+
+    // Constructor: crea una caché vacía con nombre; cada get emite un evento de JFR (FlightEvents.Cache) con el
+    // nombre, la clave y si fue un acierto.
+    public BoundedCache(String nombre, int maximo) {
+        if (maximo < 1) {
+            throw new IllegalArgumentException("El tamaño de la caché debe ser positivo: " + maximo);
+        }
+        this.nombre = nombre;
+        this.maximo = maximo;
+        this.maxVentana = Math.max(1, maximo / 100);
+        this.maxProtegida = (int) ((maximo - maxVentana) * 8L / 10);
+        this.frecuencias = new Frecuencias(maximo);
+    }
+
+    // Método que devuelve el valor de una clave (null si no está) y registra el uso.
+    @Override
+    public synchronized V get(Object clave) {
+        frecuencias.incrementar(clave);
+        Nodo<K, V> nodo = nodos.get(clave);
+        if (nombre != null) {
+            FlightEvents.cache(nombre, clave, nodo != null);
+        }
+        if (nodo == null) {
+            fallos++;
+            return null;
+        }
+        aciertos++;
+        acceder(nodo);
+        return nodo.valor;
+    }
+
+    // Método que indica si la clave está en la caché, sin registrar el uso.
+    @Override
+    public synchronized boolean containsKey(Object clave) {
+        return nodos.containsKey(clave);
+    }
+
+    // Método que guarda el valor de una clave. Si la caché se llena, desaloja según la política W-TinyLFU.
+    @Override
+    public synchronized V put(K clave, V valor) {
+        Objects.requireNonNull(clave);
+        Objects.requireNonNull(valor);
+        frecuencias.incrementar(clave);
+        Nodo<K, V> nodo = nodos.get(clave);
+        if (nodo != null) {
+            V anterior = nodo.valor;
+            nodo.valor = valor;
+            acceder(nodo);
+            return anterior;
+        }
+        nodo = new Nodo<>(clave, valor);
+        nodos.put(clave, nodo);
+        ventana.agregar(nodo);
+        desalojar();
+        return null;
+    }
+
+    // Método que quita una clave de la caché y devuelve su valor (null si no estaba).
+    @Override
+    public synchronized V remove(Object clave) {
+        Nodo<K, V> nodo = nodos.remove(clave);
+        if (nodo == null) {
+            return null;
+        }
+        lista(nodo).quitar(nodo);
+        return nodo.valor;
+    }
+
+    // Método que quita una clave sólo si tiene el valor indicado (sin registrar el uso).
+    @Override
+    public synchronized boolean remove(Object clave, Object valor) {
+        Nodo<K, V> nodo = nodos.get(clave);
+        if (nodo == null || !Objects.equals(nodo.valor, valor)) {
+            return false;
+        }
+        remove(clave);
+        return true;
+    }
+
+    // Método para obtener el número de entradas.
+    @Override
+    public synchronized int size() {
+        return nodos.size();
+    }
+
+    // Método que vacía la caché (las frecuencias y estadísticas se conservan).
+    @Override
+    public synchronized void clear() {
+        nodos.clear();
+        ventana.vaciar();
+        prueba.vaciar();
+        protegida.vaciar();
+    }
+
+    // Método que devuelve las entradas de la caché. Recorrerlas no cuenta como uso ni cambia el orden.
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                Iterator<Nodo<K, V>> iterador = nodos.values().iterator();
+                return new Iterator<Map.Entry<K, V>>() {
+                    private Nodo<K, V> actual;
+
+                    @Override
+                    public boolean hasNext() {
+                        return iterador.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<K, V> next() {
+                        actual = iterador.next();
+                        return actual;
+                    }
+
+                    @Override
+                    public void remove() {
+                        iterador.remove();
+                        lista(actual).quitar(actual);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return BoundedCache.this.size();
+            }
+        };
+    }
+
+    // Método auxiliar que registra un acierto sobre una entrada: en la ventana y en la zona protegida pasa al final
+    // de su lista; en la zona de prueba se promueve a la protegida, que devuelve a prueba su entrada menos reciente
+    // si se llena.
+    private void acceder(Nodo<K, V> nodo) {
+        if (nodo.segmento != PRUEBA) {
+            Lista<K, V> lista = lista(nodo);
+            lista.quitar(nodo);
+            lista.agregar(nodo);
+            return;
+        }
+        prueba.quitar(nodo);
+        nodo.segmento = PROTEGIDA;
+        protegida.agregar(nodo);
+        while (protegida.tamano > maxProtegida) {
+            Nodo<K, V> degradado = protegida.cabeza;
+            protegida.quitar(degradado);
+            degradado.segmento = PRUEBA;
+            prueba.agregar(degradado);
+        }
+    }
+
+    // Método auxiliar que pasa a la zona de prueba las entradas que desbordan la ventana y, mientras la caché supere
+    // su máximo, enfrenta a la entrada más reciente de prueba (la candidata) con la menos reciente (la víctima):
+    // sale la de menor frecuencia, y ante un empate la candidata.
+    private void desalojar() {
+        while (ventana.tamano > maxVentana) {
+            Nodo<K, V> candidata = ventana.cabeza;
+            ventana.quitar(candidata);
+            candidata.segmento = PRUEBA;
+            prueba.agregar(candidata);
+        }
+        while (nodos.size() > maximo) {
+            Nodo<K, V> victima = prueba.cabeza != null ? prueba.cabeza : protegida.cabeza != null ? protegida.cabeza : ventana.cabeza;
+            Nodo<K, V> candidata = prueba.cola;
+            Nodo<K, V> sale = victima;
+            if (candidata != null && candidata != victima
+                    && frecuencias.frecuencia(candidata.clave) <= frecuencias.frecuencia(victima.clave)) {
+                sale = candidata;
+                rechazos++;
+            }
+            nodos.remove(sale.clave);
+            lista(sale).quitar(sale);
+            desalojos++;
+        }
+    }
+
+    // Método auxiliar que devuelve la lista del segmento de una entrada.
+    private Lista<K, V> lista(Nodo<K, V> nodo) {
+        return nodo.segmento == VENTANA ? ventana : nodo.segmento == PRUEBA ? prueba : protegida;
+    }
+
+    // Método que devuelve la proporción de consultas (get) respondidas por la caché.
+    public synchronized double tasaAciertos() {
+        long total = aciertos + fallos;
+        return total == 0 ? 0 : (double) aciertos / total;
+    }
+
+    // Método que devuelve un resumen del uso de la caché.
+    public synchronized String resumen() {
+        return nodos.size() + "/" + maximo + " entradas, " + aciertos + " aciertos, " + fallos + " fallos ("
+                + String.format(Locale.ROOT, "%.1f", 100 * tasaAciertos()) + " % de aciertos), " + desalojos
+                + " desalojos (" + rechazos + " entradas nuevas rechazadas)";
+    }
+
+    // Clase que representa una entrada de la caché dentro de la lista de su segmento.
+    private static final class Nodo<K, V> implements Map.Entry<K, V> {
+        final K clave;
+        V valor;
+        int segmento = VENTANA;
+        Nodo<K, V> anterior;
+        Nodo<K, V> siguiente;
+
+        Nodo(K clave, V valor) {
+            this.clave = clave;
+            this.valor = valor;
+        }
+
+        @Override
+        public K getKey() {
+            return clave;
+        }
+
+        @Override
+        public V getValue() {
+            return valor;
+        }
+
+        @Override
+        public V setValue(V valor) {
+            V anterior = this.valor;
+            this.valor = Objects.requireNonNull(valor);
+            return anterior;
+        }
+    }
+
+    // Clase que representa la lista doblemente enlazada de un segmento, de la entrada menos reciente (cabeza) a la más
+    // reciente (cola).
+    private static final class Lista<K, V> {
+        Nodo<K, V> cabeza;
+        Nodo<K, V> cola;
+        int tamano;
+
+        void agregar(Nodo<K, V> nodo) {
+            nodo.anterior = cola;
+            nodo.siguiente = null;
+            if (cola == null) {
+                cabeza = nodo;
+            } else {
+                cola.siguiente = nodo;
+            }
+            cola = nodo;
+            tamano++;
+        }
+
+        void quitar(Nodo<K, V> nodo) {
+            if (nodo.anterior == null) {
+                cabeza = nodo.siguiente;
+            } else {
+                nodo.anterior.siguiente = nodo.siguiente;
+            }
+            if (nodo.siguiente == null) {
+                cola = nodo.anterior;
+            } else {
+                nodo.siguiente.anterior = nodo.anterior;
+            }
+            nodo.anterior = null;
+            nodo.siguiente = null;
+            tamano--;
+        }
+
+        void vaciar() {
+            cabeza = null;
+            cola = null;
+            tamano = 0;
+        }
+    }
+
+    // Clase que estima la frecuencia de uso de las claves con un count-min sketch de contadores de 4 bits (16 por
+    // long) y cuatro funciones hash. Tras 10 usos por entrada de la caché, todos los contadores se reducen a la mitad.
+    static final class Frecuencias {
+        private static final long[] SEMILLAS = {0x97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L};
+
+        private final long[] tabla;
+        private final int mascara;          // Número de contadores - 1 (potencia de dos).
+        private final int periodo;          // Incrementos entre dos reducciones.
+        private int incrementos;
+
+        Frecuencias(int maximo) {
+            int longs = Integer.highestOneBit(Math.max(16, Math.min(maximo, 1 << 26)) - 1) << 1;
+            this.tabla = new long[longs];
+            this.mascara = longs * 16 - 1;
+            this.periodo = (int) Math.min(Integer.MAX_VALUE, 10L * maximo);
+        }
+
+        // Método que suma un uso a la clave (los contadores se saturan en 15).
+        void incrementar(Object clave) {
+            long hash = dispersar(clave);
+            boolean incremento = false;
+            for (int i = 0; i < SEMILLAS.length; i++) {
+                int posicion = posicion(hash, i);
+                int desplazamiento = (posicion & 15) << 2;
+                long valor = tabla[posicion >>> 4];
+                if (((valor >>> desplazamiento) & 15) < 15) {
+                    tabla[posicion >>> 4] = valor + (1L << desplazamiento);
+                    incremento = true;
+                }
+            }
+            if (incremento && ++incrementos >= periodo) {
+                reducir();
+            }
+        }
+
+        // Método que estima cuántas veces se usó la clave (el mínimo de sus cuatro contadores).
+        int frecuencia(Object clave) {
+            long hash = dispersar(clave);
+            int minimo = 15;
+            for (int i = 0; i < SEMILLAS.length; i++) {
+                int posicion = posicion(hash, i);
+                minimo = Math.min(minimo, (int) ((tabla[posicion >>> 4] >>> ((posicion & 15) << 2)) & 15));
+            }
+            return minimo;
+        }
+
+        // Método auxiliar que reduce todos los contadores a la mitad.
+        private void reducir() {
+            for (int i = 0; i < tabla.length; i++) {
+                tabla[i] = (tabla[i] >>> 1) & 0x7777777777777777L;
+            }
+            incrementos /= 2;
+        }
+
+        private int posicion(long hash, int i) {
+            long h = (hash + SEMILLAS[i]) * SEMILLAS[i];
+            return (int) (h ^ (h >>> 32)) & mascara;
+        }
+
+        private static long dispersar(Object clave) {
+            long h = (clave == null ? 0 : clave.hashCode()) * 0x9E3779B97F4A7C15L;
+            return h ^ (h >>> 29);
+        }
+    }
+
+    // Método que convierte la caché en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        return "BoundedCache{" + resumen() + "}";
+    }
+}
@@ -0,0 +1,280 @@
+// Paquete que contiene la caché de declaraciones por entidad usada por las consultas de WikibaseManager.
+package wikibase;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+// Clase que guarda las declaraciones de las entidades consultadas junto con la revisión a la que corresponden.
+// Las escrituras propias actualizan la entrada con la declaración y la revisión que devuelve la API, por lo que
+// las consultas sobre una entidad recién escrita no vuelven al servidor. Cuando una entrada supera su vigencia se
+// revalida con una consulta que sólo pide la revisión (props=info) y sólo se descargan de nuevo las declaraciones
+// si la revisión cambió. Si otra escritura modificó la entidad y la API combinó los cambios con la nuestra sin
+// conflicto, la entrada no los refleja hasta que se descarta; por eso las verificaciones posteriores a un conflicto
+// siempre consultan al servidor.
+public final class ClaimCache {
+
+    // Número máximo de entidades en la caché compartida (puede cambiarse con -Dwikibase.cacheEntidades=<n>).
+    private static final int ENTIDADES_POR_DEFECTO = 20000;
+
+    // Vigencia de una entrada, en milisegundos, antes de revalidarla (puede cambiarse con -Dwikibase.cacheVigencia=<ms>).
+    private static final long VIGENCIA_POR_DEFECTO = 30000;
+
+    // Acciones que no modifican las declaraciones de la entidad (sólo su revisión).
+    private static final Set<String> ACCIONES_SIN_DECLARACIONES = Set.of("wbsetaliases", "wbsetlabel", "wbsetdescription");
+
+    // Caché compartida por todos los gestores del proceso.
+    private static final ClaimCache COMPARTIDA = new ClaimCache(
+            Integer.getInteger("wikibase.cacheEntidades", ENTIDADES_POR_DEFECTO),
+            Long.getLong("wikibase.cacheVigencia", VIGENCIA_POR_DEFECTO));
+
+    private final BoundedCache<String, Entrada> entradas;          // ID de entidad -> declaraciones (W-TinyLFU).
+    private final long vigencia;                                   // Milisegundos antes de revalidar una entrada.
+    private final LongAdder aciertos = new LongAdder();            // Consultas respondidas sin ir al servidor.
+    private final LongAdder revalidaciones = new LongAdder();      // Revalidaciones en las que la revisión no cambió.
+    private final LongAdder descargas = new LongAdder();           // Descargas completas de declaraciones.
+
+    // Constructor: crea una caché con el número máximo de entidades y la vigencia indicados.
+    public ClaimCache(int maxEntidades, long vigencia) {
+        this.vigencia = vigencia;
+        this.entradas = new BoundedCache<>("declaraciones", maxEntidades);
+    }
+
+    // Método para obtener la caché compartida por todos los gestores.
+    public static ClaimCache compartida() {
+        return COMPARTIDA;
+    }
+
+    // Método que devuelve la entrada de una entidad si está vigente, o null si no está o debe revalidarse.
+    Entrada vigente(String entityId) {
+        Entrada entrada = entradas.get(entityId);
+        if (entrada == null || !entrada.vigente(vigencia)) {
+            return null;
+        }
+        aciertos.increment();
+        return entrada;
+    }
+
+    // Método que revalida la entrada de una entidad con su revisión actual en el servidor. Si coincide, la entrada
+    // vuelve a estar vigente y se devuelve; si no, se descarta y se devuelve null.
+    Entrada revalidar(String entityId, long revision) {
+        Entrada entrada = entradas.get(entityId);
+        if (entrada == null) {
+            return null;
+        }
+        synchronized (entrada) {
+            if (entrada.revision == revision) {
+                entrada.verificada = System.currentTimeMillis();
+                revalidaciones.increment();
+                return entrada;
+            }
+        }
+        entradas.remove(entityId, entrada);
+        return null;
+    }
+
+    // Método que guarda las declaraciones de una entidad leídas desde una respuesta de wbgetclaims. La revisión debe
+    // haberse consultado antes que las declaraciones: si la entidad cambió entretanto, la siguiente revalidación lo nota.
+    Entrada cargar(String entityId, long revision, InputStream in) throws IOException {
+        Entrada entrada = new Entrada(revision);
+        try (JsonReader reader = JsonStreamDecoder.abrir(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("claims") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    leerDeclaraciones(reader, entrada);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return guardar(entityId, revision, entrada);
+    }
+
+    // Método que lee las declaraciones de un lector posicionado en el objeto "claims" de una entidad (por ejemplo,
+    // dentro de una respuesta de wbgetentities) en una entrada que todavía no se guarda en la caché.
+    static Entrada leer(JsonReader reader) throws IOException {
+        Entrada entrada = new Entrada(0);
+        leerDeclaraciones(reader, entrada);
+        return entrada;
+    }
+
+    // Método que guarda en la caché una entrada leída con leer, con la revisión de la entidad a la que corresponde.
+    Entrada guardar(String entityId, long revision, Entrada entrada) {
+        synchronized (entrada) {
+            entrada.revision = revision;
+            entrada.verificada = System.currentTimeMillis();
+        }
+        descargas.increment();
+        entradas.put(entityId, entrada);
+        return entrada;
+    }
+
+    // Método auxiliar que agrega a la entrada las declaraciones del objeto "claims" en el que está el lector.
+    private static void leerDeclaraciones(JsonReader reader, Entrada entrada) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            reader.nextName();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                entrada.reemplazar(JsonParser.parseReader(reader).getAsJsonObject());
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    // Método que registra una entidad recién creada, que aún no tiene declaraciones.
+    void registrarNueva(String entityId, long revision) {
+        if (revision > 0) {
+            entradas.put(entityId, new Entrada(revision));
+        }
+    }
+
+    // Método que actualiza la entrada de una entidad con la respuesta de una escritura propia enviada sobre la
+    // revisión base indicada. Si la entrada no corresponde a esa revisión, la escritura cambió declaraciones que la
+    // respuesta no incluye o hubo un conflicto de edición, la entrada se descarta.
+    void aplicar(String entityId, long base, String action, RevisionTracker.Resultado resultado) {
+        if (resultado.esConflicto()) {
+            entradas.remove(entityId);
+            return;
+        }
+        if (resultado.codigoError != null || resultado.revision == 0) {
+            return;
+        }
+        Entrada entrada = entradas.get(entityId);
+        if (entrada == null) {
+            return;
+        }
+        synchronized (entrada) {
+            if (entrada.revision == base && (!resultado.declaraciones.isEmpty() || ACCIONES_SIN_DECLARACIONES.contains(action))) {
+                for (JsonObject declaracion : resultado.declaraciones) {
+                    entrada.reemplazar(declaracion);
+                }
+                entrada.revision = resultado.revision;
+                entrada.verificada = System.currentTimeMillis();
+                return;
+            }
+        }
+        entradas.remove(entityId, entrada);
+    }
+
+    // Método que descarta la entrada de una entidad.
+    public void olvidar(String entityId) {
+        entradas.remove(entityId);
+    }
+
+    // Método que da por confirmadas en el momento indicado todas las entradas de la caché. Lo usa el espejo local
+    // después de descartar las entidades que cambiaron según recentchanges hasta ese momento; así las entradas no se
+    // revalidan una por una mientras el espejo siga sondeando los cambios.
+    void confirmar(long momento) {
+        synchronized (entradas) {
+            for (Entrada entrada : entradas.values()) {
+                synchronized (entrada) {
+                    entrada.verificada = Math.max(entrada.verificada, momento);
+                }
+            }
+        }
+    }
+
+    // Método que devuelve una copia de las entradas de la caché (sin registrar el uso).
+    Map<String, Entrada> copia() {
+        synchronized (entradas) {
+            return new LinkedHashMap<>(entradas);
+        }
+    }
+
+    // Método que devuelve un resumen del uso de la caché.
+    public String resumen() {
+        return "Caché de declaraciones: " + entradas.size() + " entidades, " + aciertos.sum() + " aciertos, "
+                + revalidaciones.sum() + " revalidaciones sin cambios, " + descargas.sum() + " descargas; " + entradas.resumen();
+    }
+
+    // Clase que representa las declaraciones de una entidad en una revisión: propiedad -> (ID de declaración -> JSON).
+    static final class Entrada {
+        private final Map<String, Map<String, String>> porPropiedad = new LinkedHashMap<>();
+        private long revision;      // Revisión de la entidad a la que corresponden las declaraciones.
+        private long verificada;    // Momento (ms) en que se confirmó la revisión por última vez.
+
+        private Entrada(long revision) {
+            this.revision = revision;
+            this.verificada = System.currentTimeMillis();
+        }
+
+        // Método para obtener la revisión a la que corresponden las declaraciones.
+        synchronized long revision() {
+            return revision;
+        }
+
+        // Método que indica si la entrada se confirmó hace menos de la vigencia indicada.
+        private synchronized boolean vigente(long vigencia) {
+            return System.currentTimeMillis() - verificada < vigencia;
+        }
+
+        // Método que agrega una declaración o reemplaza la que tiene el mismo ID.
+        private synchronized void reemplazar(JsonObject declaracion) {
+            JsonElement id = declaracion.get("id");
+            JsonObject mainsnak = declaracion.getAsJsonObject("mainsnak");
+            if (id == null || mainsnak == null || !mainsnak.has("property")) {
+                return;
+            }
+            porPropiedad.computeIfAbsent(mainsnak.get("property").getAsString(), p -> new LinkedHashMap<>())
+                    .put(id.getAsString(), declaracion.toString());
+        }
+
+        // Método que devuelve las declaraciones de una propiedad con el formato de una respuesta de wbgetclaims,
+        // para recorrerlas con los mismos lectores en streaming que las respuestas del servidor.
+        synchronized byte[] json(String propertyId) {
+            Map<String, String> declaraciones = porPropiedad.get(propertyId);
+            StringBuilder sb = new StringBuilder(32 + (declaraciones == null ? 0 : declaraciones.size() * 256)).append("{\"claims\":{");
+            if (declaraciones != null && !declaraciones.isEmpty()) {
+                agregarPropiedad(sb, propertyId, declaraciones);
+            }
+            return sb.append("}}").toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        // Método que devuelve todas las declaraciones de la entidad con el formato de una respuesta de wbgetclaims.
+        synchronized byte[] json() {
+            StringBuilder sb = new StringBuilder(4096).append("{\"claims\":{");
+            boolean primera = true;
+            for (Map.Entry<String, Map<String, String>> propiedad : porPropiedad.entrySet()) {
+                if (!primera) {
+                    sb.append(',');
+                }
+                primera = false;
+                agregarPropiedad(sb, propiedad.getKey(), propiedad.getValue());
+            }
+            return sb.append("}}").toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        // Método auxiliar que escribe el arreglo de declaraciones de una propiedad ("P6":[...]).
+        private static void agregarPropiedad(StringBuilder sb, String propertyId, Map<String, String> declaraciones) {
+            sb.append('"').append(propertyId).append("\":[");
+            boolean primera = true;
+            for (String declaracion : declaraciones.values()) {
+                if (!primera) {
+                    sb.append(',');
+                }
+                primera = false;
+                sb.append(declaracion);
+            }
+            sb.append(']');
+        }
+    }
+
+    // Método que convierte la caché en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        return "ClaimCache{entidades=" + entradas.size() + ", vigencia=" + vigencia + "ms}";
+    }
+}
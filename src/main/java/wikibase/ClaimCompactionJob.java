@@ -0,0 +1,237 @@
+// Paquete que contiene el trabajo de mantenimiento que elimina declaraciones duplicadas de los ítems.
+package wikibase;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Clase que recorre un conjunto de ítems y elimina las declaraciones sobrantes que dejaron errores anteriores:
+// las duplicadas (misma propiedad, valor, rango y calificadores) y las reemplazadas (mismo valor y rango, con un
+// subconjunto de los calificadores de otra declaración). Los ítems se leen en lotes de wbgetentities en paralelo y las
+// declaraciones sobrantes de cada ítem se eliminan con wbremoveclaims, varias por llamada. Las declaraciones con
+// referencias nunca se eliminan. Con menos declaraciones, cada lectura posterior del ítem es más barata.
+public class ClaimCompactionJob {
+
+    // Número máximo de IDs por solicitud de wbgetentities.
+    private static final int TAMANO_LOTE = 50;
+
+    // Número de lotes que se procesan a la vez.
+    private static final int PARALELISMO = 8;
+
+    private final WikibaseAsyncManager asyncManager;
+    private final boolean simular;                                  // Si es true, sólo informa lo que eliminaría.
+    private final AtomicLong itemsRevisados = new AtomicLong();
+    private final AtomicLong declaracionesRevisadas = new AtomicLong();
+    private final AtomicLong declaracionesEliminadas = new AtomicLong();
+    private final AtomicLong itemsCompactados = new AtomicLong();
+    private final AtomicLong llamadasEliminacion = new AtomicLong();
+
+    public ClaimCompactionJob(WikibaseAsyncManager asyncManager, boolean simular) {
+        this.asyncManager = asyncManager;
+        this.simular = simular;
+    }
+
+    // Método que compacta los ítems indicados: lee PARALELISMO lotes a la vez y elimina en paralelo las declaraciones
+    // sobrantes de los ítems de esos lotes antes de pasar a los siguientes.
+    public void compactar(List<String> itemIds) throws IOException {
+        int porVentana = TAMANO_LOTE * PARALELISMO;
+        for (int i = 0; i < itemIds.size(); i += porVentana) {
+            List<String> ventana = itemIds.subList(i, Math.min(i + porVentana, itemIds.size()));
+            List<CompletableFuture<Map<String, List<String>>>> lecturas = new ArrayList<>();
+            for (int j = 0; j < ventana.size(); j += TAMANO_LOTE) {
+                lecturas.add(asyncManager.consultar(urlDeclaraciones(ventana.subList(j, Math.min(j + TAMANO_LOTE, ventana.size()))), this::sobrantes));
+            }
+            WikibaseAsyncManager.esperar(CompletableFuture.allOf(lecturas.toArray(new CompletableFuture<?>[0])));
+
+            List<CompletableFuture<Void>> eliminaciones = new ArrayList<>();
+            for (CompletableFuture<Map<String, List<String>>> lectura : lecturas) {
+                for (Map.Entry<String, List<String>> item : lectura.join().entrySet()) {
+                    itemsCompactados.incrementAndGet();
+                    List<String> ids = item.getValue();
+                    declaracionesEliminadas.addAndGet(ids.size());
+                    if (simular) {
+                        System.out.println(item.getKey() + ": se eliminarían " + ids.size() + " declaraciones " + ids);
+                        continue;
+                    }
+                    for (int j = 0; j < ids.size(); j += WikibaseManager.MAX_DECLARACIONES_POR_ELIMINACION) {
+                        llamadasEliminacion.incrementAndGet();
+                        eliminaciones.add(asyncManager.removeClaims(item.getKey(),
+                                ids.subList(j, Math.min(j + WikibaseManager.MAX_DECLARACIONES_POR_ELIMINACION, ids.size()))));
+                    }
+                }
+            }
+            WikibaseAsyncManager.esperar(CompletableFuture.allOf(eliminaciones.toArray(new CompletableFuture<?>[0])));
+            System.out.println(resumen());
+        }
+    }
+
+    // Método que lista los IDs de todos los ítems de la wiki (allpages en el espacio de nombres de ítems).
+    public List<String> todosLosItems() throws IOException {
+        return asyncManager.listarPaginas(WikibaseManager.NAMESPACE_ITEMS);
+    }
+
+    // Método que devuelve un resumen del trabajo realizado.
+    public String resumen() {
+        return "Ítems revisados: " + itemsRevisados.get() + ", declaraciones revisadas: " + declaracionesRevisadas.get()
+                + ", ítems con sobrantes: " + itemsCompactados.get() + ", declaraciones " + (simular ? "por eliminar: " : "eliminadas: ")
+                + declaracionesEliminadas.get() + ", llamadas a wbremoveclaims: " + llamadasEliminacion.get();
+    }
+
+    // Método auxiliar que lee en streaming una respuesta de wbgetentities (props=claims) y devuelve, por ítem, los IDs
+    // de las declaraciones sobrantes. Los ítems sin sobrantes no se incluyen.
+    private Map<String, List<String>> sobrantes(InputStream in) throws IOException {
+        Map<String, List<String>> resultado = new LinkedHashMap<>();
+        ClaimRecord registro = new ClaimRecord();
+        try (JsonReader reader = JsonStreamDecoder.abrir(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("entities") || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String itemId = reader.nextName();
+                    Agrupador agrupador = new Agrupador();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("claims") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                            JsonStreamDecoder.recorrerDeclaraciones(reader, null, registro, claim -> {
+                                agrupador.agregar(claim);
+                                return false;
+                            });
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    itemsRevisados.incrementAndGet();
+                    declaracionesRevisadas.addAndGet(agrupador.total);
+                    List<String> ids = agrupador.sobrantes();
+                    if (!ids.isEmpty()) {
+                        resultado.put(itemId, ids);
+                    }
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+        }
+        return resultado;
+    }
+
+    // Clase que agrupa las declaraciones de un ítem por propiedad, valor y rango, con la forma canónica de sus calificadores.
+    static final class Agrupador {
+        private final Map<String, List<Candidata>> grupos = new LinkedHashMap<>();
+        private int total;
+
+        // Método que agrega la declaración leída (el registro se reutiliza, por lo que se copian sus datos).
+        void agregar(ClaimRecord claim) {
+            total++;
+            Set<String> calificadores = new TreeSet<>();
+            for (int i = 0; i < claim.qualifierCount(); i++) {
+                calificadores.add(claim.qualifier(i).canonico());
+            }
+            String clave = claim.mainsnak.canonico() + "#" + claim.rank;
+            grupos.computeIfAbsent(clave, c -> new ArrayList<>()).add(new Candidata(claim.id, calificadores, claim.referencias));
+        }
+
+        // Método que devuelve los IDs de las declaraciones sobrantes: una declaración sobra si otra del mismo grupo
+        // tiene todos sus calificadores (y, si tienen los mismos, la otra aparece antes). Nunca sobran las que tienen
+        // referencias.
+        List<String> sobrantes() {
+            List<String> ids = new ArrayList<>();
+            for (List<Candidata> grupo : grupos.values()) {
+                for (int i = 0; i < grupo.size(); i++) {
+                    Candidata candidata = grupo.get(i);
+                    if (candidata.referencias || candidata.id == null) {
+                        continue;
+                    }
+                    for (int j = 0; j < grupo.size(); j++) {
+                        Candidata otra = grupo.get(j);
+                        if (j == i || !otra.calificadores.containsAll(candidata.calificadores)) {
+                            continue;
+                        }
+                        // Con los mismos calificadores se conserva la primera; si no, la que tiene más calificadores.
+                        if (otra.calificadores.size() > candidata.calificadores.size() || j < i) {
+                            ids.add(candidata.id);
+                            break;
+                        }
+                    }
+                }
+            }
+            return ids;
+        }
+    }
+
+    // Clase que representa una declaración candidata dentro de un grupo.
+    private static final class Candidata {
+        final String id;
+        final Set<String> calificadores;   // Forma canónica de cada calificador.
+        final boolean referencias;
+
+        Candidata(String id, Set<String> calificadores, boolean referencias) {
+            this.id = id;
+            this.calificadores = calificadores;
+            this.referencias = referencias;
+        }
+    }
+
+    // Método auxiliar que construye la URL de wbgetentities para leer las declaraciones de un lote de ítems.
+    private static String urlDeclaraciones(List<String> ids) {
+        return WikibaseManager.API_ENDPOINT + "?action=wbgetentities&format=json&props=claims&ids="
+                + URLEncoder.encode(String.join("|", ids), StandardCharsets.UTF_8);
+    }
+
+    // Método principal: compacta los ítems de la wiki.
+    // Argumentos: <usuario> <contraseña> [--simular] [archivo con un ID de ítem por línea]
+    // Sin archivo se revisan todos los ítems de la wiki.
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Uso: ClaimCompactionJob <usuario> <contraseña> [--simular] [archivo de IDs]");
+            System.exit(1);
+        }
+        boolean simular = false;
+        String archivo = null;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--simular")) {
+                simular = true;
+            } else {
+                archivo = args[i];
+            }
+        }
+        // El índice de huellas pertenece al proceso de carga: este proceso usa uno temporal para no escribir en él.
+        FingerprintIndex.usarTemporal();
+        SessionPool sesiones = SessionPool.abrir(args[0], args[1]);
+        ClaimCompactionJob trabajo = new ClaimCompactionJob(new WikibaseAsyncManager(sesiones), simular);
+
+        long inicio = System.currentTimeMillis();
+        List<String> itemIds = new ArrayList<>();
+        if (archivo != null) {
+            for (String linea : Files.readAllLines(Paths.get(archivo), StandardCharsets.UTF_8)) {
+                if (!linea.isBlank()) {
+                    itemIds.add(linea.trim());
+                }
+            }
+        } else {
+            itemIds = trabajo.todosLosItems();
+        }
+        trabajo.compactar(itemIds);
+        System.out.println(trabajo.resumen());
+        System.out.println("Compactación terminada en " + (System.currentTimeMillis() - inicio) + " ms");
+        sesiones.guardar();
+    }
+}
@@ -0,0 +1,46 @@
+// Paquete que contiene la representación ligera de una declaración leída desde la API de Wikibase.
+package wikibase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Clase mutable y reutilizable que guarda una declaración (claim) leída en streaming: su ID, rango,
+// valor principal y calificadores. Los calificadores se guardan en un arreglo de snaks que crece y se reutiliza.
+final class ClaimRecord {
+
+    String id;                                           // GUID de la declaración.
+    String rank;                                         // Rango de la declaración (normal, preferred, deprecated).
+    boolean referencias;                                 // Indica si la declaración tiene referencias (no se leen).
+    final SnakValue mainsnak = new SnakValue();          // Valor principal de la declaración.
+    private final List<SnakValue> qualifiers = new ArrayList<>(); // Calificadores reutilizables.
+    private int qualifierCount;                          // Número de calificadores válidos en la declaración actual.
+
+    // Método que limpia la declaración para reutilizar la instancia.
+    void reset() {
+        id = null;
+        rank = null;
+        referencias = false;
+        mainsnak.reset();
+        qualifierCount = 0;
+    }
+
+    // Método que entrega un snak libre para el siguiente calificador, reutilizando los ya creados.
+    SnakValue nextQualifier() {
+        if (qualifierCount == qualifiers.size()) {
+            qualifiers.add(new SnakValue());
+        }
+        SnakValue snak = qualifiers.get(qualifierCount++);
+        snak.reset();
+        return snak;
+    }
+
+    // Método para obtener el número de calificadores de la declaración actual.
+    int qualifierCount() {
+        return qualifierCount;
+    }
+
+    // Método para obtener el calificador en la posición indicada.
+    SnakValue qualifier(int index) {
+        return qualifiers.get(index);
+    }
+}
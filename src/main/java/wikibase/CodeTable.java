@@ -0,0 +1,102 @@
+// Paquete que contiene las tablas de códigos usadas para traducir valores del CSV a ítems de Wikibase.
+package wikibase;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Clase que traduce los códigos numéricos de MINEDUC (COD_DEPE, COD_ENSE, RURAL_RBD, ...) al ID del ítem
+// correspondiente. Los IDs se guardan en un arreglo indexado por el código, por lo que la búsqueda es un acceso
+// directo sin hashing ni creación de objetos.
+public final class CodeTable {
+
+    // Código más alto admitido (COD_ENSE llega a 963).
+    private static final int MAX_CODIGO = 9999;
+
+    private final String nombre;     // Nombre de la tabla (por ejemplo, "COD_DEPE").
+    private final String[] ids;      // ID del ítem por código; null si el código no está definido.
+
+    private CodeTable(String nombre, String[] ids) {
+        this.nombre = nombre;
+        this.ids = ids;
+    }
+
+    // Método que construye la tabla desde un mapa código -> ID de ítem.
+    public static CodeTable desde(String nombre, Map<String, String> codigos) {
+        int maximo = -1;
+        for (String codigo : codigos.keySet()) {
+            maximo = Math.max(maximo, codigoValido(nombre, codigo));
+        }
+        String[] ids = new String[maximo + 1];
+        for (Map.Entry<String, String> entrada : codigos.entrySet()) {
+            ids[codigoValido(nombre, entrada.getKey())] = entrada.getValue();
+        }
+        return new CodeTable(nombre, ids);
+    }
+
+    // Método que devuelve el ID del ítem del código leído del CSV, o null si el código no existe en la tabla.
+    // El código se interpreta sin crear objetos; se ignoran los espacios alrededor.
+    public String get(String codigo) {
+        if (codigo == null) {
+            return null;
+        }
+        int inicio = 0;
+        int fin = codigo.length();
+        while (inicio < fin && codigo.charAt(inicio) == ' ') {
+            inicio++;
+        }
+        while (fin > inicio && codigo.charAt(fin - 1) == ' ') {
+            fin--;
+        }
+        if (inicio == fin) {
+            return null;
+        }
+        int valor = 0;
+        for (int i = inicio; i < fin; i++) {
+            char c = codigo.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+            valor = valor * 10 + (c - '0');
+            if (valor >= ids.length) {
+                return null;
+            }
+        }
+        return ids[valor];
+    }
+
+    // Método para obtener el nombre de la tabla.
+    public String getNombre() {
+        return nombre;
+    }
+
+    // Método que devuelve el contenido de la tabla como mapa ordenado código -> ID (para guardarla en el manifiesto).
+    public Map<String, String> comoMapa() {
+        Map<String, String> mapa = new TreeMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != null) {
+                mapa.put(String.valueOf(i), ids[i]);
+            }
+        }
+        return Collections.unmodifiableMap(mapa);
+    }
+
+    // Método auxiliar que valida un código de la definición de la tabla y lo devuelve como entero.
+    private static int codigoValido(String nombre, String codigo) {
+        try {
+            int valor = Integer.parseInt(codigo.trim());
+            if (valor < 0 || valor > MAX_CODIGO) {
+                throw new IllegalArgumentException("Código fuera de rango en la tabla " + nombre + ": " + codigo);
+            }
+            return valor;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Código no numérico en la tabla " + nombre + ": " + codigo, e);
+        }
+    }
+
+    // Método que convierte la tabla en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        return "CodeTable{" + nombre + "=" + comoMapa() + "}";
+    }
+}
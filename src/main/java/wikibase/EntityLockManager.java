@@ -0,0 +1,201 @@
+// Paquete que contiene los bloqueos por entidad usados por los hilos que escriben en Wikibase.
+package wikibase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Clase que serializa, dentro del proceso, las escrituras sobre una misma entidad (por ejemplo, "consultar si existe la
+// declaración y crearla") mientras las escrituras sobre entidades distintas avanzan en paralelo. Los bloqueos se
+// reparten en un número fijo de franjas según el hash del ID, por lo que la memoria no crece con el número de
+// entidades. También mide la contención: cuántas veces un hilo tuvo que esperar y cuánto, en total y por franja. La
+// espera se atribuye a la franja y a la entidad que la tenía tomada (que puede ser otra con el mismo hash que la
+// pedida), para identificar los ítems "centrales" (regiones, comunas) que limitan el rendimiento.
+public final class EntityLockManager {
+
+    // Número de franjas por defecto (potencia de dos).
+    private static final int FRANJAS_POR_DEFECTO = 256;
+
+    private final ReentrantLock[] franjas;                       // Bloqueo de cada franja.
+    private final int mascara;                                   // Máscara para obtener la franja desde el hash.
+    private final LongAdder adquisiciones = new LongAdder();     // Número total de adquisiciones.
+    private final LongAdder esperas = new LongAdder();           // Número total de adquisiciones con espera.
+    private final LongAdder nanosEspera = new LongAdder();       // Tiempo total de espera.
+    private final LongAdder[] esperaPorFranja;                   // Nanosegundos de espera en cada franja.
+    private final AtomicReferenceArray<String> titulares;        // Entidad que tiene tomada cada franja (null si está libre).
+    private final AtomicReferenceArray<String> bloqueadores;     // Última entidad que hizo esperar a otro hilo en cada franja.
+
+    // Constructor: crea el gestor con el número de franjas por defecto.
+    public EntityLockManager() {
+        this(FRANJAS_POR_DEFECTO);
+    }
+
+    // Constructor: crea el gestor con al menos el número de franjas indicado (se redondea a potencia de dos).
+    public EntityLockManager(int franjas) {
+        if (franjas < 1) {
+            throw new IllegalArgumentException("El número de franjas debe ser positivo: " + franjas);
+        }
+        int tamano = franjas == 1 ? 1 : Integer.highestOneBit(franjas - 1) << 1;
+        this.franjas = new ReentrantLock[tamano];
+        this.esperaPorFranja = new LongAdder[tamano];
+        for (int i = 0; i < tamano; i++) {
+            this.franjas[i] = new ReentrantLock();
+            this.esperaPorFranja[i] = new LongAdder();
+        }
+        this.titulares = new AtomicReferenceArray<>(tamano);
+        this.bloqueadores = new AtomicReferenceArray<>(tamano);
+        this.mascara = tamano - 1;
+    }
+
+    // Clase que representa un bloqueo adquirido; se libera al cerrarlo (pensado para try-with-resources).
+    public static final class Bloqueo implements AutoCloseable {
+        private final EntityLockManager gestor;
+        private final int[] adquiridas;             // Franjas adquiridas, en orden de adquisición.
+        private boolean liberado;
+
+        private Bloqueo(EntityLockManager gestor, int[] adquiridas) {
+            this.gestor = gestor;
+            this.adquiridas = adquiridas;
+        }
+
+        // Método que libera los bloqueos en orden inverso al de adquisición.
+        @Override
+        public void close() {
+            if (liberado) {
+                return;
+            }
+            liberado = true;
+            for (int i = adquiridas.length - 1; i >= 0; i--) {
+                gestor.liberar(adquiridas[i]);
+            }
+        }
+    }
+
+    // Método que bloquea una entidad hasta que se cierre el bloqueo devuelto. Es reentrante para el mismo hilo.
+    public Bloqueo bloquear(String entityId) {
+        int indice = indice(entityId);
+        adquirir(indice, entityId);
+        return new Bloqueo(this, new int[] {indice});
+    }
+
+    // Método que bloquea varias entidades a la vez (por ejemplo, un establecimiento, su región y su comuna).
+    // Las franjas se adquieren siempre en orden ascendente, por lo que dos hilos no pueden bloquearse mutuamente.
+    public Bloqueo bloquear(Collection<String> entityIds) {
+        int[] indices = new int[entityIds.size()];
+        String[] ids = new String[entityIds.size()];
+        int n = 0;
+        for (String entityId : entityIds) {
+            ids[n] = entityId;
+            indices[n++] = indice(entityId);
+        }
+        // Ordenar por franja y descartar las franjas repetidas.
+        Integer[] orden = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            orden[i] = i;
+        }
+        Arrays.sort(orden, (a, b) -> Integer.compare(indices[a], indices[b]));
+        int[] adquiridas = new int[n];
+        int m = 0;
+        for (int i : orden) {
+            if (m > 0 && indices[i] == adquiridas[m - 1]) {
+                continue;
+            }
+            adquirir(indices[i], ids[i]);
+            adquiridas[m++] = indices[i];
+        }
+        return new Bloqueo(this, Arrays.copyOf(adquiridas, m));
+    }
+
+    // Método auxiliar que adquiere una franja. Si está ocupada, mide la espera y la atribuye a la franja y a la
+    // entidad que la tenía tomada.
+    private void adquirir(int indice, String entityId) {
+        ReentrantLock franja = franjas[indice];
+        adquisiciones.increment();
+        if (!franja.tryLock()) {
+            String titular = titulares.get(indice);
+            long inicio = System.nanoTime();
+            franja.lock();
+            long espera = System.nanoTime() - inicio;
+            esperas.increment();
+            nanosEspera.add(espera);
+            esperaPorFranja[indice].add(espera);
+            if (titular != null) {
+                bloqueadores.set(indice, titular);
+            }
+        }
+        if (franja.getHoldCount() == 1) {
+            titulares.set(indice, entityId);
+        }
+    }
+
+    // Método auxiliar que libera una franja; al soltar la última retención del hilo la franja queda sin titular.
+    private void liberar(int indice) {
+        ReentrantLock franja = franjas[indice];
+        if (franja.getHoldCount() == 1) {
+            titulares.set(indice, null);
+        }
+        franja.unlock();
+    }
+
+    // Método auxiliar que obtiene la franja de una entidad a partir del hash de su ID.
+    private int indice(String entityId) {
+        int h = entityId.hashCode();
+        return (h ^ (h >>> 16)) & mascara;
+    }
+
+    // Método para obtener el número total de adquisiciones.
+    public long getAdquisiciones() {
+        return adquisiciones.sum();
+    }
+
+    // Método para obtener el número de adquisiciones que tuvieron que esperar a otro hilo.
+    public long getEsperas() {
+        return esperas.sum();
+    }
+
+    // Método para obtener el tiempo total de espera, en milisegundos.
+    public long getMillisEspera() {
+        return TimeUnit.NANOSECONDS.toMillis(nanosEspera.sum());
+    }
+
+    // Método que devuelve las franjas con más tiempo de espera acumulado, de mayor a menor, como "franja n (ID)" ->
+    // milisegundos, donde ID es la última entidad que hizo esperar a otro hilo en esa franja.
+    public Map<String, Long> franjasMasDisputadas(int cantidad) {
+        List<Map.Entry<String, Long>> entradas = new ArrayList<>();
+        for (int i = 0; i < franjas.length; i++) {
+            long espera = esperaPorFranja[i].sum();
+            if (espera > 0) {
+                String bloqueador = bloqueadores.get(i);
+                entradas.add(Map.entry("franja " + i + (bloqueador != null ? " (" + bloqueador + ")" : ""), TimeUnit.NANOSECONDS.toMillis(espera)));
+            }
+        }
+        entradas.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        Map<String, Long> resultado = new LinkedHashMap<>();
+        for (int i = 0; i < Math.min(cantidad, entradas.size()); i++) {
+            resultado.put(entradas.get(i).getKey(), entradas.get(i).getValue());
+        }
+        return resultado;
+    }
+
+    // Método que devuelve un resumen de la contención, con las entidades más disputadas.
+    public String resumen(int cantidad) {
+        long total = getAdquisiciones();
+        long conEspera = getEsperas();
+        return "Bloqueos por entidad: " + total + " adquisiciones, " + conEspera + " con espera ("
+                + (total == 0 ? 0 : conEspera * 100 / total) + "%), " + getMillisEspera() + " ms de espera; franjas más disputadas (ms): "
+                + franjasMasDisputadas(cantidad);
+    }
+
+    // Método que convierte el gestor en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        return "EntityLockManager{franjas=" + franjas.length + ", esperas=" + getEsperas() + "}";
+    }
+}
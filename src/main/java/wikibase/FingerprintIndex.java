@@ -0,0 +1,600 @@
+// Paquete que contiene el índice persistente de huellas de declaraciones.
+package wikibase;
+
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// Clase que guarda, en un archivo mapeado en memoria, las huellas de las declaraciones conocidas: un hash de 128 bits
+// (MurmurHash3) de "ítem@generación, propiedad = valor normalizado [, calificador = valor normalizado]". Cada
+// declaración aporta una huella sin calificadores y una por cada calificador, de modo que "¿el ítem X tiene P = V?" y
+// "¿tiene P = V con el calificador Q = W?" se responden con una búsqueda en la tabla, sin consultar la wiki.
+// El índice se llena con las declaraciones que devuelven nuestras escrituras y con las lecturas completas de entidades
+// (caché de declaraciones, espejo local, precarga). Cada ítem tiene además una ranura de estado con su generación y la
+// revisión de la que el índice tiene todas sus declaraciones ("al día"). Una huella ausente significa que la
+// declaración no existe sólo si esa revisión es la última que conoce RevisionTracker; si no, se consulta la wiki.
+// Una escritura que quita declaraciones o agrega otras que la respuesta no incluye deja el ítem "sucio" y sus
+// consultas vuelven a la wiki hasta la siguiente lectura completa, que abre una generación nueva (las huellas de las
+// anteriores dejan de consultarse) y lo deja al día en la revisión leída. Borrar el archivo reconstruye el índice.
+// Un bloqueo exclusivo sobre "<ruta>.lock" garantiza un solo proceso escritor.
+// Formato: cabecera de 32 bytes (marca, capacidad, número de ranuras ocupadas) y una tabla de direccionamiento
+// abierto de ranuras de 16 bytes; la ranura (0, 0) está libre. La ranura de estado de un ítem se busca sólo por su
+// primera mitad y guarda en la segunda la generación (32 bits altos) y la revisión al día (32 bits bajos).
+public final class FingerprintIndex implements Closeable {
+
+    // Ruta por defecto del índice (puede cambiarse con -Dwikibase.huellas=<archivo>).
+    private static final String RUTA_POR_DEFECTO = "huellas.idx";
+
+    private static final long MARCA = 0x5742465052494E32L;     // "WBFPRIN2"
+    private static final long MARCA_ANTERIOR = 0x5742465052494E54L;   // "WBFPRINT": formato sin estados por revisión.
+    private static final int CABECERA = 32;
+    private static final int RANURA = 16;
+    private static final int CAPACIDAD_INICIAL = 1 << 16;
+    private static final int CAPACIDAD_MAXIMA = 1 << 26;       // 1 GiB de tabla (límite de un MappedByteBuffer).
+    private static final long SUCIO = 0xFFFFFFFFL;              // Revisión al día de un ítem sucio.
+
+    // Acciones que no modifican las declaraciones de la entidad.
+    private static final Set<String> ACCIONES_SIN_DECLARACIONES = Set.of("wbsetaliases", "wbsetlabel", "wbsetdescription");
+
+    // Índice compartido por todos los gestores del proceso (se abre al primer uso).
+    private static FingerprintIndex compartido;
+    private static boolean soloTemporal;   // Si es true, el índice compartido se abre en un archivo temporal.
+
+    private final Path ruta;
+    private FileChannel bloqueo;   // Archivo "<ruta>.lock" con el bloqueo exclusivo del único proceso escritor.
+    private FileChannel canal;
+    private MappedByteBuffer mapa;
+    private int capacidad;     // Número de ranuras (potencia de dos).
+    private int tamano;        // Número de huellas guardadas.
+    private long consultas;    // Consultas de declaraciones.
+    private long respondidas;  // Consultas respondidas sin ir a la wiki.
+
+    private FingerprintIndex(Path ruta, FileChannel bloqueo) throws IOException {
+        this.ruta = ruta;
+        this.bloqueo = bloqueo;
+        try {
+            abrirArchivo(CAPACIDAD_INICIAL);
+        } catch (IOException e) {
+            bloqueo.close();
+            throw e;
+        }
+    }
+
+    // Método que abre (o crea) un índice en la ruta indicada. Sólo un proceso puede tenerlo abierto a la vez.
+    public static FingerprintIndex abrir(Path ruta) throws IOException {
+        FingerprintIndex indice = abrirSiLibre(ruta);
+        if (indice == null) {
+            throw new IOException("El índice de huellas " + ruta + " está abierto en otro proceso");
+        }
+        return indice;
+    }
+
+    // Método auxiliar que abre el índice tomando su bloqueo exclusivo; devuelve null si otro proceso lo tiene.
+    private static FingerprintIndex abrirSiLibre(Path ruta) throws IOException {
+        FileChannel bloqueo = FileChannel.open(ruta.resolveSibling(ruta.getFileName() + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (bloqueo.tryLock() == null) {
+                bloqueo.close();
+                return null;
+            }
+        } catch (OverlappingFileLockException e) {
+            // Este mismo proceso ya lo tiene abierto.
+            bloqueo.close();
+            return null;
+        }
+        return new FingerprintIndex(ruta, bloqueo);
+    }
+
+    // Método que hace que el índice compartido de este proceso se abra en un archivo temporal que se borra al
+    // terminar, sin tocar el índice persistente (para los procesos auxiliares que no lo escriben).
+    public static synchronized void usarTemporal() {
+        if (compartido != null) {
+            throw new IllegalStateException("El índice de huellas compartido ya está abierto");
+        }
+        soloTemporal = true;
+    }
+
+    // Método para obtener el índice compartido, abriéndolo en la ruta configurada la primera vez. Si otro proceso lo
+    // tiene abierto se usa uno temporal. Al terminar el proceso se vuelca a disco.
+    public static synchronized FingerprintIndex compartido() throws IOException {
+        if (compartido == null) {
+            Path ruta = Paths.get(System.getProperty("wikibase.huellas", RUTA_POR_DEFECTO));
+            FingerprintIndex abierto = soloTemporal ? null : abrirSiLibre(ruta);
+            if (abierto == null) {
+                if (!soloTemporal) {
+                    System.err.println("El índice de huellas " + ruta + " está abierto en otro proceso; se usa un índice temporal");
+                }
+                Path archivo = Files.createTempFile("huellas", ".idx");
+                Files.delete(archivo);
+                archivo.toFile().deleteOnExit();
+                archivo.resolveSibling(archivo.getFileName() + ".lock").toFile().deleteOnExit();
+                abierto = abrir(archivo);
+            }
+            FingerprintIndex indice = abierto;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    indice.close();
+                } catch (IOException e) {
+                    System.err.println("No se pudo guardar el índice de huellas: " + e.getMessage());
+                }
+            }));
+            compartido = indice;
+        }
+        return compartido;
+    }
+
+    // Método que consulta si el ítem tiene una declaración de la propiedad con el valor indicado (con la misma
+    // equivalencia que WikibaseValue.matches). Devuelve TRUE o FALSE si el índice lo sabe, o null si hay que
+    // consultar la wiki.
+    public synchronized Boolean consultar(String itemId, String propertyId, WikibaseValue value) {
+        return responder(itemId, forma(snak(propertyId, value)), null);
+    }
+
+    // Método que consulta si el ítem tiene una declaración de la propiedad con el valor indicado y, en ella, el
+    // calificador indicado. Devuelve TRUE o FALSE si el índice lo sabe, o null si hay que consultar la wiki.
+    public synchronized Boolean consultar(String itemId, String propertyId, WikibaseValue value, String qualifierPropertyId, WikibaseValue qualifier) {
+        return responder(itemId, forma(snak(propertyId, value)), forma(snak(qualifierPropertyId, qualifier)));
+    }
+
+    // Método auxiliar que busca la huella y decide con el estado del ítem. Las coordenadas se comparan con una
+    // tolerancia que el redondeo de la forma normalizada no reproduce, por lo que su ausencia no decide.
+    private Boolean responder(String itemId, String valor, String calificador) {
+        consultas++;
+        long estado = estado(itemId);
+        long aldia = estado & SUCIO;
+        if (aldia == SUCIO) {
+            return null;
+        }
+        Boolean respuesta = null;
+        if (contiene(huella(texto(itemId, estado >>> 32, valor, calificador)))) {
+            respuesta = Boolean.TRUE;
+        } else if (aldia != 0 && !valor.contains("@") && (calificador == null || !calificador.contains("@"))) {
+            Long conocida = RevisionTracker.compartido().get(itemId);
+            if (conocida != null && conocida == aldia) {
+                respuesta = Boolean.FALSE;
+            }
+        }
+        if (respuesta != null) {
+            respondidas++;
+        }
+        return respuesta;
+    }
+
+    // Método auxiliar que agrega las huellas de una declaración leída en streaming a la generación indicada.
+    private void agregar(String itemId, long generacion, ClaimRecord claim) throws IOException {
+        List<String> valores = formas(claim.mainsnak);
+        List<List<String>> calificadores = new ArrayList<>(claim.qualifierCount());
+        for (int i = 0; i < claim.qualifierCount(); i++) {
+            calificadores.add(formas(claim.qualifier(i)));
+        }
+        for (String valor : valores) {
+            insertar(huella(texto(itemId, generacion, valor, null)));
+            for (List<String> calificador : calificadores) {
+                for (String forma : calificador) {
+                    insertar(huella(texto(itemId, generacion, valor, forma)));
+                }
+            }
+        }
+    }
+
+    // Método auxiliar que agrega a la generación indicada las huellas de todas las declaraciones de una respuesta con
+    // formato de wbgetclaims.
+    private void agregarTodas(String itemId, long generacion, InputStream in) throws IOException {
+        try {
+            JsonStreamDecoder.buscarDeclaracion(in, null, claim -> {
+                try {
+                    agregar(itemId, generacion, claim);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return false;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Método que guarda una lectura completa de las declaraciones de una entidad (respuesta de wbgetclaims) en la
+    // revisión indicada y la deja al día en ella. Si el índice ya estaba al día en esa revisión no hay nada que
+    // agregar; si no, las huellas van a una generación nueva y reemplazan a las anteriores.
+    public synchronized void agregarEntidad(String itemId, long revision, InputStream in) throws IOException {
+        long estado = estado(itemId);
+        long aldia = revisionValida(revision);
+        if (aldia != 0 && (estado & SUCIO) == aldia) {
+            return;
+        }
+        long generacion = (estado >>> 32) + 1;
+        agregarTodas(itemId, generacion, in);
+        guardarEstado(itemId, generacion, aldia);
+    }
+
+    // Método que marca un ítem recién creado (sin declaraciones) como al día en la revisión indicada.
+    public void marcarCompleto(String itemId, long revision) throws IOException {
+        agregarEntidad(itemId, revision, new ByteArrayInputStream("{\"claims\":{}}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Método que actualiza el índice con la respuesta de una escritura propia sobre la entidad hecha con la revisión
+    // base indicada: agrega las declaraciones que dejó y, si el índice estaba al día en la revisión base, lo deja al día
+    // en la nueva. Si la acción cambió declaraciones que la respuesta no incluye, marca la entidad como sucia.
+    public synchronized void aplicar(String entityId, long base, String action, RevisionTracker.Resultado resultado) throws IOException {
+        if (resultado.esConflicto() || resultado.codigoError != null) {
+            return;
+        }
+        if (resultado.declaraciones.isEmpty() && !ACCIONES_SIN_DECLARACIONES.contains(action)) {
+            invalidar(entityId);
+            return;
+        }
+        long estado = estado(entityId);
+        long aldia = estado & SUCIO;
+        if (aldia == SUCIO) {
+            return;
+        }
+        long generacion = estado >>> 32;
+        for (JsonObject declaracion : resultado.declaraciones) {
+            JsonObject mainsnak = declaracion.getAsJsonObject("mainsnak");
+            if (mainsnak == null || !mainsnak.has("property")) {
+                invalidar(entityId);
+                return;
+            }
+            String json = "{\"claims\":{\"" + mainsnak.get("property").getAsString() + "\":[" + declaracion + "]}}";
+            agregarTodas(entityId, generacion, new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        }
+        if (aldia != 0 && aldia == base) {
+            guardarEstado(entityId, generacion, revisionValida(resultado.revision));
+        }
+    }
+
+    // Método que vacía el índice, cuando no se puede saber qué entidades cambiaron desde que se llenó.
+    public synchronized void reiniciar() throws IOException {
+        cerrarArchivo();
+        Files.delete(ruta);
+        abrirArchivo(CAPACIDAD_INICIAL);
+    }
+
+    // Método que marca un ítem como sucio: el índice deja de responder por él hasta la siguiente lectura completa.
+    public synchronized void invalidar(String itemId) throws IOException {
+        guardarEstado(itemId, estado(itemId) >>> 32, SUCIO);
+    }
+
+    // Método para obtener el número de huellas guardadas.
+    public synchronized int size() {
+        return tamano;
+    }
+
+    // Método que devuelve un resumen del uso del índice.
+    public synchronized String resumen() {
+        return "Índice de huellas: " + tamano + " huellas en " + capacidad + " ranuras, " + consultas + " consultas, "
+                + respondidas + " respondidas sin ir a la wiki";
+    }
+
+    // Método que vuelca el índice a disco, lo cierra y libera su bloqueo.
+    @Override
+    public synchronized void close() throws IOException {
+        cerrarArchivo();
+        bloqueo.close();
+    }
+
+    // Método auxiliar que vuelca la tabla a disco y cierra su archivo (el bloqueo se conserva).
+    private void cerrarArchivo() throws IOException {
+        if (canal != null) {
+            mapa.force();
+            canal.close();
+            canal = null;
+        }
+    }
+
+    // Método auxiliar que construye el texto de una huella.
+    private static String texto(String itemId, long generacion, String valor, String calificador) {
+        String prefijo = generacion == 0 ? itemId + "\n" : itemId + "@" + generacion + "\n";
+        return calificador == null ? prefijo + valor : prefijo + valor + "\n" + calificador;
+    }
+
+    // Método auxiliar que devuelve la revisión como revisión al día, o 0 si no cabe en 32 bits.
+    private static long revisionValida(long revision) {
+        return revision > 0 && revision < SUCIO ? revision : 0;
+    }
+
+    // Método auxiliar que devuelve el estado de un ítem (generación y revisión al día), o 0 si no tiene.
+    private long estado(String itemId) {
+        long clave = claveEstado(itemId);
+        int posicion = buscarEstado(clave);
+        return mapa.getLong(posicion) == clave ? mapa.getLong(posicion + 8) : 0;
+    }
+
+    // Método auxiliar que guarda el estado de un ítem, reemplazando el anterior.
+    private void guardarEstado(String itemId, long generacion, long aldia) throws IOException {
+        long clave = claveEstado(itemId);
+        int posicion = buscarEstado(clave);
+        if (mapa.getLong(posicion) != clave) {
+            if ((tamano + 1) * 2 > capacidad) {
+                crecer();
+                posicion = buscarEstado(clave);
+            }
+            tamano++;
+            mapa.putLong(16, tamano);
+            mapa.putLong(posicion, clave);
+        }
+        mapa.putLong(posicion + 8, (generacion << 32) | aldia);
+    }
+
+    // Método auxiliar que devuelve la clave de la ranura de estado de un ítem (nunca 0, para no confundirla con una
+    // ranura libre).
+    private static long claveEstado(String itemId) {
+        long clave = huella(itemId + "\n#estado")[0];
+        return clave != 0 ? clave : 1;
+    }
+
+    // Método auxiliar que devuelve la posición de la ranura de estado con la clave indicada, o la de la primera
+    // ranura libre de su recorrido.
+    private int buscarEstado(long clave) {
+        int mascara = capacidad - 1;
+        for (int i = (int) clave & mascara; ; i = (i + 1) & mascara) {
+            int posicion = CABECERA + i * RANURA;
+            long a = mapa.getLong(posicion);
+            if (a == clave || (a == 0 && mapa.getLong(posicion + 8) == 0)) {
+                return posicion;
+            }
+        }
+    }
+
+    // Método auxiliar que devuelve la forma normalizada de un snak según la misma equivalencia de WikibaseValue.matches:
+    // los ítems por su ID, las cantidades sin signo "+" ni ceros finales (sin unidad), las fechas truncadas a su
+    // precisión y las coordenadas redondeadas (marcadas con "@").
+    static String forma(SnakValue snak) {
+        StringBuilder sb = new StringBuilder(48).append(snak.property).append('=');
+        if (!snak.hasValue) {
+            return sb.append("(sin valor)").toString();
+        }
+        if (snak.entityId != null || snak.numericId > 0) {
+            sb.append(snak.numericId > 0 ? "Q" + snak.numericId : snak.entityId);
+        } else if (snak.amount != null) {
+            sb.append(SnakValue.cantidadCanonica(snak.amount));
+        } else if (snak.time != null) {
+            sb.append(SnakValue.fechaCanonica(snak.time, snak.precision));
+        } else if (snak.text != null) {
+            sb.append('"').append(snak.text).append('"');
+        } else {
+            sb.append(String.format(Locale.ROOT, "@%.4f,%.4f", snak.latitude, snak.longitude));
+        }
+        return sb.toString();
+    }
+
+    // Método auxiliar que devuelve las formas con que se guarda un snak leído. Una fecha coincide con las consultas de
+    // año, de mes y de día que comparten sus componentes, por lo que se guarda con las tres precisiones.
+    static List<String> formas(SnakValue snak) {
+        if (!snak.hasValue || snak.time == null) {
+            return List.of(forma(snak));
+        }
+        String prefijo = snak.property + "=";
+        return List.of(prefijo + SnakValue.fechaCanonica(snak.time, WikibaseValue.Time.PRECISION_YEAR),
+                prefijo + SnakValue.fechaCanonica(snak.time, WikibaseValue.Time.PRECISION_MONTH),
+                prefijo + SnakValue.fechaCanonica(snak.time, WikibaseValue.Time.PRECISION_DAY));
+    }
+
+    // Método auxiliar que convierte un valor tipado en un snak, leyendo el mismo JSON que se envía a la API.
+    static SnakValue snak(String propertyId, WikibaseValue value) {
+        StringBuilder sb = new StringBuilder(160).append("{\"property\":");
+        WikibaseValue.writeJsonString(sb, propertyId);
+        sb.append(",\"datavalue\":{\"value\":");
+        value.writeJson(sb);
+        sb.append(",\"type\":\"").append(value.valueType()).append("\"}}");
+        SnakValue snak = new SnakValue();
+        try (JsonReader reader = JsonStreamDecoder.abrir(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8)))) {
+            JsonStreamDecoder.leerSnak(reader, snak);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Valor no válido: " + value, e);
+        }
+        return snak;
+    }
+
+    // Método auxiliar que busca una huella en la tabla.
+    private boolean contiene(long[] huella) {
+        int mascara = capacidad - 1;
+        for (int i = (int) huella[0] & mascara; ; i = (i + 1) & mascara) {
+            int posicion = CABECERA + i * RANURA;
+            long a = mapa.getLong(posicion);
+            long b = mapa.getLong(posicion + 8);
+            if (a == huella[0] && b == huella[1]) {
+                return true;
+            }
+            if (a == 0 && b == 0) {
+                return false;
+            }
+        }
+    }
+
+    // Método auxiliar que inserta una huella si no está; duplica la tabla cuando supera la mitad de su capacidad.
+    private void insertar(long[] huella) throws IOException {
+        if ((tamano + 1) * 2 > capacidad) {
+            crecer();
+        }
+        if (colocar(mapa, capacidad, huella[0], huella[1])) {
+            tamano++;
+            mapa.putLong(16, tamano);
+        }
+    }
+
+    // Método auxiliar que coloca una huella en la tabla indicada; devuelve false si ya estaba.
+    private static boolean colocar(MappedByteBuffer tabla, int capacidad, long a, long b) {
+        int mascara = capacidad - 1;
+        for (int i = (int) a & mascara; ; i = (i + 1) & mascara) {
+            int posicion = CABECERA + i * RANURA;
+            long x = tabla.getLong(posicion);
+            long y = tabla.getLong(posicion + 8);
+            if (x == a && y == b) {
+                return false;
+            }
+            if (x == 0 && y == 0) {
+                tabla.putLong(posicion, a);
+                tabla.putLong(posicion + 8, b);
+                return true;
+            }
+        }
+    }
+
+    // Método auxiliar que abre el archivo del índice o lo crea con la capacidad indicada.
+    private void abrirArchivo(int capacidadNueva) throws IOException {
+        boolean existe = Files.exists(ruta) && Files.size(ruta) >= CABECERA;
+        canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (existe) {
+            long marca = canal.map(FileChannel.MapMode.READ_ONLY, 0, CABECERA).getLong(0);
+            if (marca == MARCA_ANTERIOR) {
+                System.out.println("El índice de huellas " + ruta + " tiene el formato anterior; se reconstruye");
+                canal.truncate(0);
+                existe = false;
+            } else if (marca != MARCA) {
+                canal.close();
+                throw new IOException("El archivo " + ruta + " no es un índice de huellas");
+            }
+        }
+        if (existe) {
+            MappedByteBuffer cabecera = canal.map(FileChannel.MapMode.READ_ONLY, 0, CABECERA);
+            capacidad = (int) cabecera.getLong(8);
+            tamano = (int) cabecera.getLong(16);
+            mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, CABECERA + (long) capacidad * RANURA);
+        } else {
+            capacidad = capacidadNueva;
+            tamano = 0;
+            mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, CABECERA + (long) capacidad * RANURA);
+            mapa.putLong(0, MARCA);
+            mapa.putLong(8, capacidad);
+            mapa.putLong(16, 0);
+        }
+    }
+
+    // Método auxiliar que duplica la tabla: escribe una tabla nueva en un archivo temporal, la reemplaza de forma
+    // atómica y la vuelve a abrir.
+    private void crecer() throws IOException {
+        if (capacidad >= CAPACIDAD_MAXIMA) {
+            throw new IOException("El índice de huellas alcanzó su capacidad máxima (" + CAPACIDAD_MAXIMA + " ranuras)");
+        }
+        int nueva = capacidad * 2;
+        Path temporal = ruta.resolveSibling(ruta.getFileName() + ".tmp");
+        Files.deleteIfExists(temporal);
+        try (FileChannel destino = FileChannel.open(temporal, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer tabla = destino.map(FileChannel.MapMode.READ_WRITE, 0, CABECERA + (long) nueva * RANURA);
+            tabla.putLong(0, MARCA);
+            tabla.putLong(8, nueva);
+            tabla.putLong(16, tamano);
+            for (int i = 0; i < capacidad; i++) {
+                int posicion = CABECERA + i * RANURA;
+                long a = mapa.getLong(posicion);
+                long b = mapa.getLong(posicion + 8);
+                if (a != 0 || b != 0) {
+                    colocar(tabla, nueva, a, b);
+                }
+            }
+            tabla.force();
+        }
+        cerrarArchivo();
+        Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        abrirArchivo(nueva);
+    }
+
+    // Método auxiliar que calcula la huella de 128 bits (MurmurHash3 x64) del texto en UTF-8. La huella (0, 0) se
+    // reserva para las ranuras libres.
+    static long[] huella(String texto) {
+        byte[] datos = texto.getBytes(StandardCharsets.UTF_8);
+        long c1 = 0x87c37b91114253d5L;
+        long c2 = 0x4cf5ad432745937fL;
+        long h1 = 0;
+        long h2 = 0;
+        int bloques = datos.length / 16;
+        for (int i = 0; i < bloques; i++) {
+            long k1 = leerLong(datos, i * 16);
+            long k2 = leerLong(datos, i * 16 + 8);
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        long k1 = 0;
+        long k2 = 0;
+        int resto = bloques * 16;
+        for (int i = datos.length - 1; i >= resto; i--) {
+            long b = datos[i] & 0xffL;
+            if (i - resto >= 8) {
+                k2 ^= b << ((i - resto - 8) * 8);
+            } else {
+                k1 ^= b << ((i - resto) * 8);
+            }
+        }
+        if (k2 != 0) {
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+        }
+        if (k1 != 0) {
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+        }
+        h1 ^= datos.length;
+        h2 ^= datos.length;
+        h1 += h2;
+        h2 += h1;
+        h1 = mezclar(h1);
+        h2 = mezclar(h2);
+        h1 += h2;
+        h2 += h1;
+        if (h1 == 0 && h2 == 0) {
+            h2 = 1;
+        }
+        return new long[] {h1, h2};
+    }
+
+    // Método auxiliar que lee 8 bytes en orden little-endian.
+    private static long leerLong(byte[] datos, int desde) {
+        long valor = 0;
+        for (int i = 7; i >= 0; i--) {
+            valor = (valor << 8) | (datos[desde + i] & 0xffL);
+        }
+        return valor;
+    }
+
+    // Método auxiliar que aplica la mezcla final de MurmurHash3.
+    private static long mezclar(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    // Método que convierte el índice en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        return "FingerprintIndex{" + ruta + ", huellas=" + tamano + "}";
+    }
+}
@@ -0,0 +1,198 @@
+// Paquete que contiene los eventos de JDK Flight Recorder emitidos por el cargador.
+package wikibase;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+
+// Clase que agrupa los eventos de JDK Flight Recorder del cargador: uno por fila procesada (con la duración de la
+// lectura, la resolución de identificadores y las escrituras), uno por llamada a la API (acción, entidad, estado HTTP
+// y bytes) y uno por consulta a una caché con nombre (acierto o fallo). Se graban con la configuración de JFR, por
+// ejemplo -XX:StartFlightRecording=filename=carga.jfr,settings=profile, y se ven en JDK Mission Control o con
+// "jfr print --categories Wikibase carga.jfr". Sin una grabación activa los eventos están deshabilitados: los campos
+// sólo se calculan después de comprobar isEnabled o shouldCommit, y la JVM elimina la creación del evento.
+final class FlightEvents {
+
+    // Parámetros de la API que identifican la entidad afectada, en orden de preferencia.
+    private static final String[] PARAMETROS_ENTIDAD = {"entity=", "id=", "ids=", "statement=", "claim="};
+
+    private FlightEvents() {
+    }
+
+    // Clase que representa el procesamiento de una fila del archivo de entrada.
+    @Name("wikibase.Fila")
+    @Label("Fila")
+    @Category("Wikibase")
+    @Description("Procesamiento de una fila de la fuente, con la duración de cada fase")
+    @StackTrace(false)
+    static final class Fila extends Event {
+        @Label("Línea")
+        long linea;
+
+        @Label("Saltada")
+        @Description("La fila se omitió por su nivel de enseñanza")
+        boolean saltada;
+
+        @Label("Lectura")
+        @Description("Lectura de la fila desde la fuente y separación de sus columnas")
+        @Timespan(Timespan.NANOSECONDS)
+        long lectura;
+
+        @Label("Resolución")
+        @Description("Búsqueda de los identificadores de establecimiento, región, comuna y docente")
+        @Timespan(Timespan.NANOSECONDS)
+        long resolucion;
+
+        @Label("Escritura")
+        @Description("Creación de ítems y escritura de declaraciones y enlaces")
+        @Timespan(Timespan.NANOSECONDS)
+        long escritura;
+    }
+
+    // Clase que representa una llamada a la API de Wikibase, síncrona o asíncrona.
+    @Name("wikibase.LlamadaApi")
+    @Label("Llamada a la API")
+    @Category("Wikibase")
+    @Description("Solicitud HTTP a la API de Wikibase")
+    static final class LlamadaApi extends Event {
+        @Label("Acción")
+        String accion;
+
+        @Label("Entidad")
+        String entidad;
+
+        @Label("Estado HTTP")
+        int estado;
+
+        @Label("Bytes enviados")
+        @DataAmount
+        long bytesEnviados;
+
+        @Label("Bytes recibidos")
+        @Description("Bytes del cuerpo de la respuesta leídos por el decodificador")
+        @DataAmount
+        long bytesRecibidos;
+
+        @Label("Asíncrona")
+        boolean asincrona;
+
+        // Método que completa la acción y la entidad a partir de la URL y del cuerpo del formulario (null en los GET)
+        // y registra el evento si supera el umbral de la grabación.
+        void registrar(String url, String formulario) {
+            if (shouldCommit()) {
+                int consulta = url.indexOf('?');
+                String parametros = consulta < 0 ? "" : url.substring(consulta + 1);
+                accion = parametro(parametros, "action=");
+                entidad = entidad(formulario != null ? formulario + "&" + parametros : parametros);
+                commit();
+            }
+        }
+    }
+
+    // Clase que representa una consulta a una caché con nombre.
+    @Name("wikibase.Cache")
+    @Label("Consulta a caché")
+    @Category("Wikibase")
+    @Description("Acierto o fallo de una consulta a una caché del cargador")
+    @StackTrace(false)
+    static final class Cache extends Event {
+        @Label("Caché")
+        String cache;
+
+        @Label("Clave")
+        String clave;
+
+        @Label("Acierto")
+        boolean acierto;
+    }
+
+    // Método que registra el resultado de una consulta a la caché indicada.
+    static void cache(String nombre, Object clave, boolean acierto) {
+        Cache evento = new Cache();
+        if (evento.isEnabled()) {
+            evento.cache = nombre;
+            evento.clave = String.valueOf(clave);
+            evento.acierto = acierto;
+            evento.commit();
+        }
+    }
+
+    // Método auxiliar que devuelve el ID de la entidad afectada por una llamada ("" si no se indica). Los IDs de
+    // declaración (Q1$...) se reducen a su entidad y se ignoran las declaraciones enviadas como JSON.
+    static String entidad(String parametros) {
+        for (String nombre : PARAMETROS_ENTIDAD) {
+            String valor = parametro(parametros, nombre);
+            if (!valor.isEmpty() && !valor.startsWith("{")) {
+                int guid = valor.indexOf('$');
+                return guid < 0 ? valor : valor.substring(0, guid);
+            }
+        }
+        return "";
+    }
+
+    // Método auxiliar que devuelve el valor decodificado de un parámetro "nombre=" de una cadena de consulta o de un
+    // formulario ("" si no está).
+    static String parametro(String parametros, String nombre) {
+        int inicio = 0;
+        while (inicio < parametros.length()) {
+            int fin = parametros.indexOf('&', inicio);
+            if (fin < 0) {
+                fin = parametros.length();
+            }
+            if (parametros.startsWith(nombre, inicio)) {
+                return URLDecoder.decode(parametros.substring(inicio + nombre.length(), fin), StandardCharsets.UTF_8);
+            }
+            inicio = fin + 1;
+        }
+        return "";
+    }
+
+    // Clase que cuenta los bytes leídos de un flujo, para los bytes recibidos de las llamadas síncronas.
+    static final class Contador extends FilterInputStream {
+        private long leidos;
+
+        Contador(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                leidos++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int desde, int largo) throws IOException {
+            int n = super.read(b, desde, largo);
+            if (n > 0) {
+                leidos += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long saltados = super.skip(n);
+            leidos += saltados;
+            return saltados;
+        }
+
+        long leidos() {
+            return leidos;
+        }
+    }
+}
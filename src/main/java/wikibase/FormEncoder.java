@@ -0,0 +1,62 @@
+// Paquete que contiene la codificación de formularios para las solicitudes POST a la API de Wikibase.
+package wikibase;
+
+import java.nio.charset.StandardCharsets;
+
+// Clase que construye cuerpos application/x-www-form-urlencoded en un StringBuilder reutilizable por hilo,
+// codificando los valores directamente en el buffer sin crear cadenas intermedias por parámetro.
+final class FormEncoder {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    // Buffer reutilizable por hilo donde se escribe el formulario.
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    private FormEncoder() {
+    }
+
+    // Método que entrega el buffer del hilo vacío para comenzar un formulario nuevo.
+    static StringBuilder nuevo() {
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        return out;
+    }
+
+    // Método que añade un parámetro "nombre=valor" al formulario, codificando el valor.
+    static StringBuilder agregar(StringBuilder out, String nombre, CharSequence valor) {
+        if (out.length() > 0) {
+            out.append('&');
+        }
+        out.append(nombre).append('=');
+        codificar(out, valor);
+        return out;
+    }
+
+    // Método que codifica un texto como application/x-www-form-urlencoded (UTF-8) directamente en el buffer.
+    static void codificar(StringBuilder out, CharSequence valor) {
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '*') {
+                out.append(c);
+            } else if (c == ' ') {
+                out.append('+');
+            } else if (c < 0x80) {
+                porcentaje(out, c);
+            } else {
+                // Caracteres no ASCII: se codifican sus bytes UTF-8 (incluye pares sustitutos).
+                int fin = Character.isHighSurrogate(c) && i + 1 < valor.length() ? i + 2 : i + 1;
+                byte[] bytes = valor.subSequence(i, fin).toString().getBytes(StandardCharsets.UTF_8);
+                for (byte b : bytes) {
+                    porcentaje(out, b & 0xFF);
+                }
+                i = fin - 1;
+            }
+        }
+    }
+
+    // Método auxiliar que escribe un byte como "%XX".
+    private static void porcentaje(StringBuilder out, int b) {
+        out.append('%').append(HEX[b >> 4]).append(HEX[b & 0xF]);
+    }
+}
@@ -0,0 +1,290 @@
+// Paquete que contiene el gestor de los enlaces inversos de los ítems "centrales" (regiones y comunas).
+package wikibase;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Clase que mantiene los enlaces salientes de los ítems centrales (una región tiene miles de declaraciones
+// "establecimientos en la zona"). En lugar de descargar la lista completa de declaraciones del ítem en cada fila para
+// saber si el enlace ya existe, el conjunto de destinos de cada (ítem, propiedad) se carga una sola vez en un
+// conjunto compacto de IDs numéricos; la pertenencia se responde en memoria y los enlaces nuevos se acumulan y se
+// escriben por lotes con una sola edición wbeditentity. Así cada fila cuesta O(1) en vez de O(tamaño del ítem).
+// Las declaraciones del lote llevan un GUID generado en el cliente, por lo que al escribirlas se agregan tal cual a la
+// caché de declaraciones y al índice de huellas, sin descartar la entrada del ítem.
+public final class HubEdgeManager {
+
+    // Número de enlaces pendientes de un ítem a partir del cual se escriben (por defecto).
+    private static final int LOTE_POR_DEFECTO = 50;
+
+    private final SessionPool sesiones;                                    // Sesiones usadas para leer y escribir.
+    private final int tamanoLote;                                          // Enlaces pendientes que disparan una escritura.
+    private final ConcurrentHashMap<String, Nodo> nodos = new ConcurrentHashMap<>(); // ID del ítem -> enlaces.
+    private final LongAdder consultas = new LongAdder();                   // Consultas respondidas en memoria.
+    private final LongAdder cargas = new LongAdder();                      // Listas de declaraciones descargadas.
+    private final LongAdder escritos = new LongAdder();                    // Enlaces nuevos escritos.
+    private final LongAdder lotes = new LongAdder();                       // Ediciones enviadas.
+
+    // Constructor: crea el gestor con el tamaño de lote por defecto.
+    public HubEdgeManager(SessionPool sesiones) {
+        this(sesiones, LOTE_POR_DEFECTO);
+    }
+
+    // Constructor: crea el gestor con el tamaño de lote indicado.
+    public HubEdgeManager(SessionPool sesiones, int tamanoLote) {
+        if (tamanoLote < 1) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser positivo: " + tamanoLote);
+        }
+        this.sesiones = sesiones;
+        this.tamanoLote = tamanoLote;
+    }
+
+    // Método que asegura el enlace hubId --propertyId--> targetId. Si ya existe (en la wiki o pendiente) no hace nada
+    // y devuelve false; si no, lo agrega al lote del ítem y lo escribe cuando el lote se llena. Devuelve true si el
+    // enlace es nuevo.
+    public boolean agregar(String hubId, String propertyId, String targetId) throws IOException {
+        long destino = numero(targetId);
+        Nodo nodo = nodos.computeIfAbsent(hubId, Nodo::new);
+        synchronized (nodo) {
+            consultas.increment();
+            if (!nodo.destinos(propertyId).agregar(destino)) {
+                return false;
+            }
+            nodo.pendientes.put(propertyId + "|" + destino, propertyId);
+            if (nodo.pendientes.size() >= tamanoLote) {
+                escribir(nodo);
+            }
+            return true;
+        }
+    }
+
+    // Método que indica si el enlace existe (en la wiki o pendiente de escribir).
+    public boolean contiene(String hubId, String propertyId, String targetId) throws IOException {
+        Nodo nodo = nodos.computeIfAbsent(hubId, Nodo::new);
+        synchronized (nodo) {
+            consultas.increment();
+            return nodo.destinos(propertyId).contiene(numero(targetId));
+        }
+    }
+
+    // Método que escribe todos los enlaces pendientes (debe llamarse al terminar la carga).
+    public void vaciar() throws IOException {
+        for (Nodo nodo : nodos.values()) {
+            synchronized (nodo) {
+                escribir(nodo);
+            }
+        }
+    }
+
+    // Método auxiliar que escribe los enlaces pendientes de un ítem en una sola edición. Si otra escritura modificó el
+    // ítem entretanto, vuelve a cargar sus declaraciones, descarta los enlaces que ya existen y reintenta.
+    private void escribir(Nodo nodo) throws IOException {
+        for (int intento = 1; !nodo.pendientes.isEmpty(); intento++) {
+            WikibaseManager manager = sesiones.siguiente();
+            List<String> declaraciones = declaracionesLote(nodo.id, nodo.pendientes);
+            String postData = "id=" + nodo.id + "&token=" + URLEncoder.encode(manager.getCsrfToken(), StandardCharsets.UTF_8)
+                    + "&data=" + URLEncoder.encode(datosLote(declaraciones), StandardCharsets.UTF_8);
+            List<JsonObject> escritas = new ArrayList<>(declaraciones.size());
+            for (String declaracion : declaraciones) {
+                escritas.add(JsonParser.parseString(declaracion).getAsJsonObject());
+            }
+            RevisionTracker.Resultado resultado = manager.intentar("wbeditentity", nodo.id, postData, "success", escritas);
+            if (!resultado.esConflicto()) {
+                resultado.exigirId();
+                escritos.add(nodo.pendientes.size());
+                lotes.increment();
+                nodo.pendientes.clear();
+                return;
+            }
+            if (intento >= RevisionTracker.MAX_INTENTOS) {
+                throw new IOException("No se pudieron escribir los enlaces de " + nodo.id + ": " + resultado.error());
+            }
+            System.out.println("Conflicto de edición en " + nodo.id + "; recargando sus enlaces (reintento " + intento + ")");
+            nodo.recargarPendientes();
+        }
+    }
+
+    // Método auxiliar que construye el JSON de una declaración de ítem, con un GUID nuevo, por cada enlace pendiente.
+    static List<String> declaracionesLote(String hubId, Map<String, String> pendientes) {
+        List<String> declaraciones = new ArrayList<>(pendientes.size());
+        for (Map.Entry<String, String> pendiente : pendientes.entrySet()) {
+            String clave = pendiente.getKey();
+            String destino = clave.substring(clave.indexOf('|') + 1);
+            StringBuilder sb = new StringBuilder(240).append("{\"id\":");
+            WikibaseValue.writeJsonString(sb, WikibaseManager.nuevoGuid(hubId));
+            sb.append(",\"mainsnak\":{\"snaktype\":\"value\",\"property\":\"").append(pendiente.getValue())
+                    .append("\",\"datatype\":\"wikibase-item\",\"datavalue\":{\"value\":{\"entity-type\":\"item\",\"numeric-id\":").append(destino)
+                    .append(",\"id\":\"Q").append(destino)
+                    .append("\"},\"type\":\"wikibase-entityid\"}},\"type\":\"statement\",\"rank\":\"normal\"}");
+            declaraciones.add(sb.toString());
+        }
+        return declaraciones;
+    }
+
+    // Método auxiliar que construye el JSON de wbeditentity con las declaraciones indicadas.
+    static String datosLote(List<String> declaraciones) {
+        return "{\"claims\":[" + String.join(",", declaraciones) + "]}";
+    }
+
+    // Método auxiliar que obtiene el ID numérico de un ítem ("Q123" -> 123).
+    static long numero(String itemId) {
+        if (itemId.length() < 2 || (itemId.charAt(0) != 'Q' && itemId.charAt(0) != 'q')) {
+            throw new IllegalArgumentException("ID de ítem no válido: " + itemId);
+        }
+        return Long.parseLong(itemId.substring(1));
+    }
+
+    // Clase que representa un ítem central: sus destinos por propiedad y los enlaces aún no escritos.
+    private final class Nodo {
+        final String id;
+        final Map<String, LongSet> porPropiedad = new LinkedHashMap<>();   // Propiedad -> destinos conocidos.
+        final Map<String, String> pendientes = new LinkedHashMap<>();      // "propiedad|destino" -> propiedad.
+
+        Nodo(String id) {
+            this.id = id;
+        }
+
+        // Método que devuelve los destinos de una propiedad, cargándolos desde la wiki la primera vez.
+        LongSet destinos(String propertyId) throws IOException {
+            LongSet destinos = porPropiedad.get(propertyId);
+            if (destinos == null) {
+                destinos = cargar(propertyId);
+                porPropiedad.put(propertyId, destinos);
+            }
+            return destinos;
+        }
+
+        // Método que descarga las declaraciones de una propiedad del ítem y guarda sus destinos.
+        LongSet cargar(String propertyId) throws IOException {
+            LongSet destinos = new LongSet();
+            sesiones.siguiente().consultar(WikibaseManager.urlDeclaraciones(id, propertyId),
+                    in -> JsonStreamDecoder.buscarDeclaracion(in, propertyId, claim -> {
+                        if (claim.mainsnak.numericId > 0) {
+                            destinos.agregar(claim.mainsnak.numericId);
+                        } else if (claim.mainsnak.entityId != null) {
+                            destinos.agregar(numero(claim.mainsnak.entityId));
+                        }
+                        return false;
+                    }));
+            cargas.increment();
+            return destinos;
+        }
+
+        // Método que vuelve a cargar las propiedades con enlaces pendientes y descarta los que ya están en la wiki.
+        void recargarPendientes() throws IOException {
+            Map<String, LongSet> recargados = new LinkedHashMap<>();
+            for (String propertyId : pendientes.values()) {
+                if (!recargados.containsKey(propertyId)) {
+                    recargados.put(propertyId, cargar(propertyId));
+                }
+            }
+            pendientes.entrySet().removeIf(pendiente -> {
+                String clave = pendiente.getKey();
+                return recargados.get(pendiente.getValue()).contiene(Long.parseLong(clave.substring(clave.indexOf('|') + 1)));
+            });
+            for (Map.Entry<String, String> pendiente : pendientes.entrySet()) {
+                String clave = pendiente.getKey();
+                recargados.get(pendiente.getValue()).agregar(Long.parseLong(clave.substring(clave.indexOf('|') + 1)));
+            }
+            porPropiedad.putAll(recargados);
+        }
+    }
+
+    // Clase que representa un conjunto de IDs numéricos positivos con direccionamiento abierto (0 marca un hueco).
+    // Ocupa 8 bytes por ranura en lugar de un objeto por elemento.
+    static final class LongSet {
+        private long[] ranuras = new long[16];
+        private int tamano;
+
+        // Método que agrega un ID; devuelve false si ya estaba.
+        boolean agregar(long valor) {
+            if (valor <= 0) {
+                throw new IllegalArgumentException("ID numérico no válido: " + valor);
+            }
+            if ((tamano + 1) * 2 > ranuras.length) {
+                crecer();
+            }
+            int mascara = ranuras.length - 1;
+            for (int i = mezclar(valor) & mascara; ; i = (i + 1) & mascara) {
+                if (ranuras[i] == valor) {
+                    return false;
+                }
+                if (ranuras[i] == 0) {
+                    ranuras[i] = valor;
+                    tamano++;
+                    return true;
+                }
+            }
+        }
+
+        // Método que indica si el ID está en el conjunto.
+        boolean contiene(long valor) {
+            int mascara = ranuras.length - 1;
+            for (int i = mezclar(valor) & mascara; ; i = (i + 1) & mascara) {
+                if (ranuras[i] == valor) {
+                    return true;
+                }
+                if (ranuras[i] == 0) {
+                    return false;
+                }
+            }
+        }
+
+        // Método para obtener el número de IDs del conjunto.
+        int size() {
+            return tamano;
+        }
+
+        // Método auxiliar que duplica la tabla y vuelve a insertar los IDs.
+        private void crecer() {
+            long[] anteriores = ranuras;
+            ranuras = new long[anteriores.length * 2];
+            tamano = 0;
+            for (long valor : anteriores) {
+                if (valor != 0) {
+                    agregar(valor);
+                }
+            }
+        }
+
+        // Método auxiliar que dispersa los bits del ID (los IDs son consecutivos).
+        private static int mezclar(long valor) {
+            long h = valor * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        // Método que convierte el conjunto en una representación en forma de cadena.
+        @Override
+        public String toString() {
+            return "LongSet{tamano=" + tamano + ", ranuras=" + ranuras.length + "}";
+        }
+    }
+
+    // Método que devuelve un resumen de la actividad del gestor.
+    public String resumen() {
+        int pendientes = 0;
+        for (Nodo nodo : nodos.values()) {
+            synchronized (nodo) {
+                pendientes += nodo.pendientes.size();
+            }
+        }
+        return "Enlaces de ítems centrales: " + nodos.size() + " ítems, " + consultas.sum() + " consultas en memoria, "
+                + cargas.sum() + " listas descargadas, " + escritos.sum() + " enlaces escritos en " + lotes.sum()
+                + " ediciones, " + pendientes + " pendientes";
+    }
+
+    // Método que convierte el gestor en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        return "HubEdgeManager{nodos=" + nodos.size() + ", lote=" + tamanoLote + "}";
+    }
+}
@@ -0,0 +1,170 @@
+// Paquete que contiene el manifiesto de IDs de entidades generado por la sincronización del esquema.
+package wikibase;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+// Clase que guarda los IDs que el esquema tiene en una wiki concreta: propiedades e ítems por etiqueta, y las
+// tablas de códigos (código del CSV -> ítem). La escribe la sincronización del esquema y la lee el cargador al
+// iniciar, de modo que el cargador no depende de los IDs de una instancia particular.
+// Formato (archivo .properties en UTF-8):
+//   propiedad.<etiqueta> = P15
+//   item.<etiqueta> = Q3
+//   codigo.<TABLA>.<código> = Q18723
+public final class IdManifest {
+
+    // Ruta por defecto del manifiesto (puede cambiarse con -Dwikibase.manifiesto=<archivo>).
+    private static final String RUTA_POR_DEFECTO = "ids.properties";
+
+    private final Map<String, String> propiedades;  // Etiqueta -> ID de propiedad.
+    private final Map<String, String> items;        // Etiqueta -> ID de ítem.
+    private final Map<String, CodeTable> tablas;    // Nombre de la tabla -> tabla de códigos.
+
+    IdManifest(Map<String, String> propiedades, Map<String, String> items, Map<String, CodeTable> tablas) {
+        this.propiedades = Collections.unmodifiableMap(new TreeMap<>(propiedades));
+        this.items = Collections.unmodifiableMap(new TreeMap<>(items));
+        this.tablas = Collections.unmodifiableMap(new TreeMap<>(tablas));
+    }
+
+    // Método que devuelve la ruta del manifiesto configurada.
+    public static String rutaPorDefecto() {
+        return System.getProperty("wikibase.manifiesto", RUTA_POR_DEFECTO);
+    }
+
+    // Método que construye el manifiesto desde los IDs sincronizados y las tablas del esquema (código -> etiqueta de ítem).
+    static IdManifest desdeEsquema(Map<String, String> propiedades, Map<String, String> items, Map<String, Map<String, String>> tablasPorEtiqueta) {
+        Map<String, CodeTable> tablas = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, String>> tabla : tablasPorEtiqueta.entrySet()) {
+            Map<String, String> codigos = new LinkedHashMap<>();
+            for (Map.Entry<String, String> codigo : tabla.getValue().entrySet()) {
+                String id = items.get(codigo.getValue());
+                if (id == null) {
+                    throw new IllegalArgumentException("La tabla " + tabla.getKey() + " referencia un ítem no declarado: " + codigo.getValue());
+                }
+                codigos.put(codigo.getKey(), id);
+            }
+            tablas.put(tabla.getKey(), CodeTable.desde(tabla.getKey(), codigos));
+        }
+        return new IdManifest(propiedades, items, tablas);
+    }
+
+    // Método que lee el manifiesto desde un archivo.
+    public static IdManifest cargar(String ruta) throws IOException {
+        if (!Files.exists(Paths.get(ruta))) {
+            throw new IOException("No existe el manifiesto de IDs " + ruta + "; ejecute wikibase_inicializador para generarlo");
+        }
+        Properties archivo = new Properties();
+        try (InputStream in = new FileInputStream(ruta)) {
+            archivo.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+        Map<String, String> propiedades = new LinkedHashMap<>();
+        Map<String, String> items = new LinkedHashMap<>();
+        Map<String, Map<String, String>> codigos = new LinkedHashMap<>();
+        for (String clave : archivo.stringPropertyNames()) {
+            String valor = archivo.getProperty(clave).trim();
+            if (clave.startsWith("propiedad.")) {
+                propiedades.put(clave.substring("propiedad.".length()), valor);
+            } else if (clave.startsWith("item.")) {
+                items.put(clave.substring("item.".length()), valor);
+            } else if (clave.startsWith("codigo.")) {
+                int punto = clave.lastIndexOf('.');
+                String tabla = clave.substring("codigo.".length(), punto);
+                codigos.computeIfAbsent(tabla, t -> new LinkedHashMap<>()).put(clave.substring(punto + 1), valor);
+            }
+        }
+        Map<String, CodeTable> tablas = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, String>> tabla : codigos.entrySet()) {
+            tablas.put(tabla.getKey(), CodeTable.desde(tabla.getKey(), tabla.getValue()));
+        }
+        return new IdManifest(propiedades, items, tablas);
+    }
+
+    // Método que escribe el manifiesto en un archivo, ordenado por clave.
+    public void guardar(String ruta) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(ruta), StandardCharsets.UTF_8)) {
+            out.write("# Manifiesto de IDs generado por la sincronización del esquema. No editar a mano.\n");
+            for (Map.Entry<String, String> entrada : propiedades.entrySet()) {
+                escribir(out, "propiedad." + entrada.getKey(), entrada.getValue());
+            }
+            for (Map.Entry<String, String> entrada : items.entrySet()) {
+                escribir(out, "item." + entrada.getKey(), entrada.getValue());
+            }
+            for (CodeTable tabla : tablas.values()) {
+                for (Map.Entry<String, String> entrada : tabla.comoMapa().entrySet()) {
+                    escribir(out, "codigo." + tabla.getNombre() + "." + entrada.getKey(), entrada.getValue());
+                }
+            }
+        }
+    }
+
+    // Método para obtener el ID de una propiedad por su etiqueta; lanza IllegalArgumentException si no está.
+    public String propiedad(String etiqueta) {
+        return exigir(propiedades, etiqueta, "la propiedad");
+    }
+
+    // Método para obtener el ID de un ítem por su etiqueta; lanza IllegalArgumentException si no está.
+    public String item(String etiqueta) {
+        return exigir(items, etiqueta, "el ítem");
+    }
+
+    // Método para obtener una tabla de códigos por su nombre; lanza IllegalArgumentException si no está.
+    public CodeTable tabla(String nombre) {
+        CodeTable tabla = tablas.get(nombre);
+        if (tabla == null) {
+            throw new IllegalArgumentException("El manifiesto no contiene la tabla de códigos " + nombre);
+        }
+        return tabla;
+    }
+
+    // Método para obtener todas las propiedades del manifiesto (etiqueta -> ID).
+    public Map<String, String> getPropiedades() {
+        return propiedades;
+    }
+
+    // Método para obtener todos los ítems del manifiesto (etiqueta -> ID).
+    public Map<String, String> getItems() {
+        return items;
+    }
+
+    // Método auxiliar que busca un ID en el mapa o lanza una excepción que indica qué falta.
+    private static String exigir(Map<String, String> ids, String etiqueta, String tipo) {
+        String id = ids.get(etiqueta);
+        if (id == null) {
+            throw new IllegalArgumentException("El manifiesto no contiene " + tipo + " '" + etiqueta + "'; vuelva a ejecutar wikibase_inicializador");
+        }
+        return id;
+    }
+
+    // Método auxiliar que escribe una línea clave=valor escapando la clave como en los archivos .properties.
+    private static void escribir(Writer out, String clave, String valor) throws IOException {
+        StringBuilder linea = new StringBuilder(clave.length() + valor.length() + 2);
+        for (int i = 0; i < clave.length(); i++) {
+            char c = clave.charAt(i);
+            if (c == ' ' || c == '=' || c == ':' || c == '#' || c == '!' || c == '\\') {
+                linea.append('\\');
+            }
+            linea.append(c);
+        }
+        linea.append('=').append(valor).append('\n');
+        out.write(linea.toString());
+    }
+
+    // Método que convierte el manifiesto en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        return "IdManifest{propiedades=" + propiedades.size() + ", items=" + items.size() + ", tablas=" + tablas.keySet() + "}";
+    }
+}
@@ -0,0 +1,261 @@
+// Paquete que contiene el clasificador de tipos de establecimiento.
+package wikibase;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+// Clase que asigna a un establecimiento sus tipos (valores de "instancia de", P15) según las palabras clave
+// que aparecen en su nombre. Todas las reglas se compilan en un único autómata de Aho-Corasick, de modo que
+// el nombre se recorre una sola vez sin importar cuántas palabras clave haya. La comparación no distingue
+// mayúsculas de minúsculas (ambos lados se pasan a mayúsculas carácter a carácter).
+public final class InstitutionClassifier {
+
+    // Recurso con las reglas por defecto, incluido en el jar.
+    static final String RECURSO_REGLAS = "/wikibase/tipos_establecimiento.properties";
+
+    // Número máximo de tipos: las coincidencias de cada estado se guardan en una máscara de 64 bits.
+    private static final int MAX_TIPOS = 64;
+
+    private final String[] tipos;           // Ítem de Wikibase de cada tipo, por índice.
+    private final String tipoPorDefecto;    // Ítem asignado cuando no coincide ninguna palabra clave.
+    private final int[] claseAscii;         // Clase de cada carácter ASCII en el alfabeto del autómata (-1 si no aparece).
+    private final Map<Character, Integer> claseOtros; // Clase de los caracteres no ASCII presentes en las palabras clave.
+    private final int[][] transiciones;     // Función de transición completa: estado x clase -> estado.
+    private final long[] salidas;           // Tipos reconocidos al llegar a cada estado (incluye los de los sufijos).
+
+    private InstitutionClassifier(String[] tipos, String tipoPorDefecto, int[] claseAscii, Map<Character, Integer> claseOtros,
+                                  int[][] transiciones, long[] salidas) {
+        this.tipos = tipos;
+        this.tipoPorDefecto = tipoPorDefecto;
+        this.claseAscii = claseAscii;
+        this.claseOtros = claseOtros;
+        this.transiciones = transiciones;
+        this.salidas = salidas;
+    }
+
+    // Método que carga las reglas desde un archivo .properties, o desde el recurso incluido si la ruta es null.
+    // Los ítems de las reglas deben ser IDs (Q...).
+    public static InstitutionClassifier cargar(String ruta) throws IOException {
+        return cargar(ruta, etiqueta -> {
+            throw new IllegalArgumentException("El ítem '" + etiqueta + "' de la clasificación de establecimientos no es un ID");
+        });
+    }
+
+    // Método que carga las reglas resolviendo los ítems dados por etiqueta (por ejemplo, con IdManifest::item).
+    public static InstitutionClassifier cargar(String ruta, Function<String, String> resolverItem) throws IOException {
+        Properties reglas = new Properties();
+        try (InputStream in = ruta != null ? new FileInputStream(ruta) : InstitutionClassifier.class.getResourceAsStream(RECURSO_REGLAS)) {
+            if (in == null) {
+                throw new IOException("No se encontró el recurso " + RECURSO_REGLAS);
+            }
+            reglas.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+        return desdePropiedades(reglas, resolverItem);
+    }
+
+    // Método que construye el clasificador desde reglas con el formato:
+    //   <TIPO>.item = ítem de Wikibase del tipo, como ID (Q17305) o como etiqueta (COLEGIO)
+    //   <TIPO>.palabras = palabras clave separadas por coma
+    //   defecto = ítem asignado cuando no coincide ninguna palabra clave
+    // Las etiquetas se traducen a IDs con resolverItem; los IDs se usan tal cual.
+    public static InstitutionClassifier desdePropiedades(Properties reglas, Function<String, String> resolverItem) {
+        String tipoPorDefecto = reglas.getProperty("defecto");
+        if (tipoPorDefecto == null || tipoPorDefecto.isBlank()) {
+            throw new IllegalArgumentException("Falta la regla 'defecto' en la clasificación de establecimientos");
+        }
+
+        // Nombres de los tipos en orden alfabético, para que el resultado sea estable.
+        TreeSet<String> nombres = new TreeSet<>();
+        for (String clave : reglas.stringPropertyNames()) {
+            if (clave.endsWith(".item")) {
+                nombres.add(clave.substring(0, clave.length() - ".item".length()));
+            }
+        }
+        if (nombres.size() > MAX_TIPOS) {
+            throw new IllegalArgumentException("Se admiten como máximo " + MAX_TIPOS + " tipos de establecimiento");
+        }
+
+        Map<String, Integer> palabras = new HashMap<>();
+        List<String> tipos = new ArrayList<>();
+        List<Long> mascaras = new ArrayList<>();
+        for (String nombre : nombres) {
+            int indice = tipos.size();
+            tipos.add(resolver(reglas.getProperty(nombre + ".item"), resolverItem));
+            for (String palabra : reglas.getProperty(nombre + ".palabras", "").split(",")) {
+                String normalizada = mayusculas(palabra.trim());
+                if (normalizada.isEmpty()) {
+                    continue;
+                }
+                Integer existente = palabras.get(normalizada);
+                if (existente == null) {
+                    palabras.put(normalizada, mascaras.size());
+                    mascaras.add(1L << indice);
+                } else {
+                    mascaras.set(existente, mascaras.get(existente) | (1L << indice));
+                }
+            }
+        }
+        long[] mascaraPorPalabra = new long[mascaras.size()];
+        String[] palabraPorIndice = new String[mascaras.size()];
+        for (Map.Entry<String, Integer> entrada : palabras.entrySet()) {
+            palabraPorIndice[entrada.getValue()] = entrada.getKey();
+            mascaraPorPalabra[entrada.getValue()] = mascaras.get(entrada.getValue());
+        }
+        return compilar(tipos.toArray(new String[0]), resolver(tipoPorDefecto, resolverItem), palabraPorIndice, mascaraPorPalabra);
+    }
+
+    // Método auxiliar que devuelve el ID de un ítem de las reglas: los IDs (Q...) se usan tal cual y las etiquetas se resuelven.
+    private static String resolver(String item, Function<String, String> resolverItem) {
+        String valor = item.trim();
+        return valor.matches("Q\\d+") ? valor : resolverItem.apply(valor);
+    }
+
+    // Método que compila las palabras clave en el autómata (trie + enlaces de falla, convertidos en transiciones completas).
+    private static InstitutionClassifier compilar(String[] tipos, String tipoPorDefecto, String[] palabras, long[] mascaras) {
+        // Alfabeto: sólo los caracteres que aparecen en las palabras clave; el resto vuelve al estado inicial.
+        int[] claseAscii = new int[128];
+        Arrays.fill(claseAscii, -1);
+        Map<Character, Integer> claseOtros = new HashMap<>();
+        int clases = 0;
+        for (String palabra : palabras) {
+            for (int i = 0; i < palabra.length(); i++) {
+                char c = palabra.charAt(i);
+                if (c < 128) {
+                    if (claseAscii[c] < 0) {
+                        claseAscii[c] = clases++;
+                    }
+                } else if (!claseOtros.containsKey(c)) {
+                    claseOtros.put(c, clases++);
+                }
+            }
+        }
+
+        // Trie de las palabras clave.
+        List<int[]> hijos = new ArrayList<>();
+        List<Long> salidas = new ArrayList<>();
+        hijos.add(nuevoNodo(clases));
+        salidas.add(0L);
+        for (int p = 0; p < palabras.length; p++) {
+            int estado = 0;
+            for (int i = 0; i < palabras[p].length(); i++) {
+                char c = palabras[p].charAt(i);
+                int clase = c < 128 ? claseAscii[c] : claseOtros.get(c);
+                if (hijos.get(estado)[clase] < 0) {
+                    hijos.get(estado)[clase] = hijos.size();
+                    hijos.add(nuevoNodo(clases));
+                    salidas.add(0L);
+                }
+                estado = hijos.get(estado)[clase];
+            }
+            salidas.set(estado, salidas.get(estado) | mascaras[p]);
+        }
+
+        // Recorrido en anchura: enlaces de falla y transiciones completas (las salidas heredan las del enlace de falla).
+        int[][] transiciones = hijos.toArray(new int[0][]);
+        long[] salida = new long[transiciones.length];
+        for (int i = 0; i < salida.length; i++) {
+            salida[i] = salidas.get(i);
+        }
+        int[] falla = new int[transiciones.length];
+        Deque<Integer> cola = new ArrayDeque<>();
+        for (int clase = 0; clase < clases; clase++) {
+            int hijo = transiciones[0][clase];
+            if (hijo < 0) {
+                transiciones[0][clase] = 0;
+            } else {
+                falla[hijo] = 0;
+                cola.add(hijo);
+            }
+        }
+        while (!cola.isEmpty()) {
+            int estado = cola.poll();
+            salida[estado] |= salida[falla[estado]];
+            for (int clase = 0; clase < clases; clase++) {
+                int hijo = transiciones[estado][clase];
+                if (hijo < 0) {
+                    transiciones[estado][clase] = transiciones[falla[estado]][clase];
+                } else {
+                    falla[hijo] = transiciones[falla[estado]][clase];
+                    cola.add(hijo);
+                }
+            }
+        }
+        return new InstitutionClassifier(tipos, tipoPorDefecto, claseAscii, claseOtros, transiciones, salida);
+    }
+
+    // Método que devuelve la máscara de los tipos cuyas palabras clave aparecen en el nombre (una sola pasada).
+    public long coincidencias(CharSequence nombre) {
+        long encontrados = 0;
+        int estado = 0;
+        for (int i = 0; i < nombre.length(); i++) {
+            char c = Character.toUpperCase(nombre.charAt(i));
+            int clase;
+            if (c < 128) {
+                clase = claseAscii[c];
+            } else {
+                Integer otra = claseOtros.get(c);
+                clase = otra == null ? -1 : otra;
+            }
+            estado = clase < 0 ? 0 : transiciones[estado][clase];
+            encontrados |= salidas[estado];
+        }
+        return encontrados;
+    }
+
+    // Método que devuelve los ítems de tipo (P15) del establecimiento; si no coincide ninguno, el tipo por defecto.
+    public List<String> clasificar(CharSequence nombre) {
+        long encontrados = coincidencias(nombre);
+        if (encontrados == 0) {
+            return Collections.singletonList(tipoPorDefecto);
+        }
+        List<String> resultado = new ArrayList<>(Long.bitCount(encontrados));
+        for (long resto = encontrados; resto != 0; resto &= resto - 1) {
+            resultado.add(tipos[Long.numberOfTrailingZeros(resto)]);
+        }
+        return resultado;
+    }
+
+    // Método que devuelve todos los ítems de tipo que puede asignar el clasificador, incluido el tipo por defecto.
+    public Set<String> getTipos() {
+        Set<String> todos = new LinkedHashSet<>(Arrays.asList(tipos));
+        todos.add(tipoPorDefecto);
+        return todos;
+    }
+
+    // Método para obtener el ítem asignado cuando no coincide ninguna palabra clave.
+    public String getTipoPorDefecto() {
+        return tipoPorDefecto;
+    }
+
+    // Método auxiliar que crea un nodo del trie sin transiciones.
+    private static int[] nuevoNodo(int clases) {
+        int[] nodo = new int[clases];
+        Arrays.fill(nodo, -1);
+        return nodo;
+    }
+
+    // Método auxiliar que pasa un texto a mayúsculas carácter a carácter, igual que se hace con los nombres.
+    private static String mayusculas(String texto) {
+        StringBuilder sb = new StringBuilder(texto.length());
+        for (int i = 0; i < texto.length(); i++) {
+            sb.append(Character.toUpperCase(texto.charAt(i)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,294 @@
+// Paquete que contiene la fuente de filas JDBC (Hive u otra base de datos) usada por el cargador.
+package wikibase;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Clase que entrega como filas el resultado de una consulta SQL, para cargar directamente desde el almacén de datos
+// (Hive con hive-jdbc, o cualquier base con controlador JDBC) sin exportar un CSV. El resultado se lee como flujo en
+// lotes del tamaño de recuperación indicado. Si se indica una columna numérica de partición (RBD o MRUN), el rango
+// entre su mínimo y su máximo se divide en tramos que se consultan en paralelo, cada uno con su propia conexión; las
+// filas de los distintos tramos se entregan intercaladas, a medida que llegan. Como el CSV de MINEDUC, cada fila se
+// entrega con las columnas unidas por ';' (un ';' dentro de un valor se cambia por ',') y la primera fila tiene los
+// nombres de las columnas en mayúsculas, sin el prefijo de tabla que agrega Hive.
+public final class JdbcRowSource implements RowSource {
+
+    private static final int LOTE_POR_DEFECTO = 1000;
+    private static final Lote FIN = new Lote(null, null);   // Marca de que un tramo terminó.
+
+    private final String url;
+    private final String usuario;
+    private final String clave;
+    private final int tamanoLote;                            // Filas por recuperación y por lote entregado.
+    private final BlockingQueue<Lote> lotes;
+    private final ExecutorService hilos;
+    private final Set<Statement> consultas = ConcurrentHashMap.newKeySet();   // Consultas en curso, para cancelarlas.
+    private String[] encabezado;                             // Nombres de las columnas, pendientes de entregar.
+    private List<String[]> filas = new ArrayList<>();        // Lote que se está entregando.
+    private int posicion;
+    private int activos;                                     // Tramos que aún no terminan.
+    private int tramos;
+    private long filasEntregadas;
+
+    // Clase que representa un lote de filas de un tramo o el error con que terminó.
+    private static final class Lote {
+        private final List<String[]> filas;
+        private final Throwable error;
+
+        private Lote(List<String[]> filas, Throwable error) {
+            this.filas = filas;
+            this.error = error;
+        }
+    }
+
+    private JdbcRowSource(String url, String usuario, String clave, int tamanoLote, int paralelismo) {
+        this.url = url;
+        this.usuario = usuario;
+        this.clave = clave;
+        this.tamanoLote = tamanoLote;
+        this.lotes = new ArrayBlockingQueue<>(2 * paralelismo);
+        this.hilos = Executors.newFixedThreadPool(paralelismo, r -> {
+            Thread hilo = new Thread(r, "jdbc-tramo");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    // Método que abre la consulta indicada con -Dwikibase.jdbcConsulta en la URL JDBC indicada (por ejemplo
+    // jdbc:hive2://servidor:10000/mineduc), con -Dwikibase.jdbcUsuario, -Dwikibase.jdbcClave, -Dwikibase.jdbcLote
+    // (filas por recuperación, 1000 por defecto), -Dwikibase.jdbcParticion (columna numérica; sin ella la consulta se
+    // lee en un solo flujo) y -Dwikibase.jdbcParticiones (tramos, por defecto uno por procesador).
+    public static JdbcRowSource abrir(String url) throws IOException {
+        String consulta = System.getProperty("wikibase.jdbcConsulta");
+        if (consulta == null || consulta.trim().isEmpty()) {
+            throw new IllegalArgumentException("Falta la consulta a leer de " + url + ": -Dwikibase.jdbcConsulta=<SELECT ...>");
+        }
+        return abrir(url, System.getProperty("wikibase.jdbcUsuario"), System.getProperty("wikibase.jdbcClave"), consulta,
+                Integer.getInteger("wikibase.jdbcLote", LOTE_POR_DEFECTO), System.getProperty("wikibase.jdbcParticion"),
+                Integer.getInteger("wikibase.jdbcParticiones", Runtime.getRuntime().availableProcessors()));
+    }
+
+    // Método que abre una consulta. Si columnaParticion es null se lee en un solo flujo; si no, se divide en el número
+    // de tramos indicado según el rango de esa columna.
+    public static JdbcRowSource abrir(String url, String usuario, String clave, String consulta, int tamanoLote,
+                                      String columnaParticion, int particiones) throws IOException {
+        if (tamanoLote < 1 || particiones < 1) {
+            throw new IllegalArgumentException("El tamaño de lote y el número de tramos deben ser positivos: " + tamanoLote + ", " + particiones);
+        }
+        int paralelismo = columnaParticion == null ? 1 : particiones;
+        JdbcRowSource fuente = new JdbcRowSource(url, usuario, clave, tamanoLote, paralelismo);
+        try {
+            fuente.iniciar(consulta.trim(), columnaParticion, particiones);
+        } catch (SQLException e) {
+            fuente.close();
+            throw new IOException("No se pudo abrir la consulta en " + fuente.origen() + ": " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            fuente.close();
+            throw e;
+        }
+        return fuente;
+    }
+
+    // Método auxiliar que lee los nombres de las columnas y el rango de la columna de partición, y lanza un hilo por
+    // tramo. Los tramos son semiabiertos salvo el último, que incluye el máximo.
+    private void iniciar(String consulta, String columnaParticion, int particiones) throws SQLException {
+        String derivada = "SELECT * FROM (" + consulta + ") fuente";
+        try (Connection conexion = conectar();
+             Statement sentencia = conexion.createStatement()) {
+            try (ResultSet vacio = sentencia.executeQuery(derivada + " WHERE 1 = 0")) {
+                encabezado = fila(nombres(vacio.getMetaData()));
+            }
+            if (columnaParticion == null) {
+                lanzar(consulta, 0, 0, false);
+                return;
+            }
+            try (ResultSet rango = sentencia.executeQuery(
+                    "SELECT MIN(" + columnaParticion + "), MAX(" + columnaParticion + ") FROM (" + consulta + ") fuente")) {
+                rango.next();
+                long minimo = rango.getLong(1);
+                if (rango.wasNull()) {
+                    return;     // Consulta sin filas.
+                }
+                long maximo = rango.getLong(2);
+                long ancho = (maximo - minimo) / particiones + 1;
+                String columna = "fuente." + columnaParticion;
+                for (long desde = minimo; desde <= maximo && desde >= minimo; desde += ancho) {
+                    long hasta = desde + ancho;
+                    boolean ultimo = hasta > maximo || hasta < desde;
+                    lanzar(derivada + " WHERE " + columna + " >= ? AND " + columna + (ultimo ? " <= ?" : " < ?"),
+                            desde, ultimo ? maximo : hasta, true);
+                }
+            }
+        }
+    }
+
+    // Método auxiliar que lanza la lectura de un tramo (o de la consulta completa si no hay parámetros).
+    private void lanzar(String sql, long desde, long hasta, boolean conRango) {
+        tramos++;
+        activos++;
+        hilos.execute(() -> leerTramo(sql, desde, hasta, conRango));
+    }
+
+    // Método auxiliar que ejecuta un tramo y pone sus filas en la cola en lotes. Siempre termina con la marca FIN,
+    // precedida del error si la consulta o la lectura de las filas falló (también con una excepción no comprobada del
+    // controlador), para que readNext no espere para siempre un tramo que ya no entregará nada.
+    private void leerTramo(String sql, long desde, long hasta, boolean conRango) {
+        try (Connection conexion = conectar();
+             PreparedStatement sentencia = conexion.prepareStatement(sql)) {
+            consultas.add(sentencia);
+            sentencia.setFetchSize(tamanoLote);
+            if (conRango) {
+                sentencia.setLong(1, desde);
+                sentencia.setLong(2, hasta);
+            }
+            try (ResultSet resultado = sentencia.executeQuery()) {
+                int columnas = resultado.getMetaData().getColumnCount();
+                List<String[]> lote = new ArrayList<>(tamanoLote);
+                while (resultado.next()) {
+                    String[] valores = new String[columnas];
+                    for (int i = 0; i < columnas; i++) {
+                        valores[i] = resultado.getString(i + 1);
+                    }
+                    lote.add(fila(valores));
+                    if (lote.size() == tamanoLote) {
+                        lotes.put(new Lote(lote, null));
+                        lote = new ArrayList<>(tamanoLote);
+                    }
+                }
+                if (!lote.isEmpty()) {
+                    lotes.put(new Lote(lote, null));
+                }
+            } finally {
+                consultas.remove(sentencia);
+            }
+        } catch (InterruptedException e) {
+            // La fuente se cerró; con la interrupción marcada, entregar no espera lugar en la cola.
+            Thread.currentThread().interrupt();
+        } catch (SQLException | RuntimeException | Error e) {
+            entregar(new Lote(null, e));
+        } finally {
+            entregar(FIN);
+        }
+    }
+
+    // Método auxiliar que pone un lote en la cola, salvo que el hilo se haya interrumpido al cerrar la fuente.
+    private void entregar(Lote lote) {
+        try {
+            lotes.put(lote);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Método que devuelve los nombres de las columnas y luego las filas, o null cuando terminaron todos los tramos.
+    @Override
+    public String[] readNext() throws IOException {
+        if (encabezado != null) {
+            String[] nombres = encabezado;
+            encabezado = null;
+            return nombres;
+        }
+        while (posicion == filas.size()) {
+            if (activos == 0) {
+                return null;
+            }
+            Lote lote;
+            try {
+                lote = lotes.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Lectura de " + origen() + " interrumpida");
+            }
+            if (lote == FIN) {
+                activos--;
+            } else if (lote.error != null) {
+                String mensaje = lote.error instanceof SQLException ? lote.error.getMessage() : lote.error.toString();
+                throw new IOException("Error al leer la consulta en " + origen() + ": " + mensaje, lote.error);
+            } else {
+                filas = lote.filas;
+                posicion = 0;
+            }
+        }
+        filasEntregadas++;
+        return filas.set(posicion++, null);
+    }
+
+    // Método auxiliar que abre una conexión; cada tramo usa la suya porque las conexiones JDBC no se comparten entre
+    // hilos.
+    private Connection conectar() throws SQLException {
+        return DriverManager.getConnection(url, usuario, clave);
+    }
+
+    // Método auxiliar que devuelve los nombres de las columnas en mayúsculas y sin el prefijo de tabla ("fuente.rbd"
+    // en Hive), como los encabezados del CSV.
+    private static String[] nombres(ResultSetMetaData metadatos) throws SQLException {
+        String[] nombres = new String[metadatos.getColumnCount()];
+        for (int i = 0; i < nombres.length; i++) {
+            String nombre = metadatos.getColumnLabel(i + 1);
+            nombres[i] = nombre.substring(nombre.lastIndexOf('.') + 1).toUpperCase(Locale.ROOT);
+        }
+        return nombres;
+    }
+
+    // Método auxiliar que une los valores con ';' en una fila de un solo campo, como llegan del CSV. Los nulos quedan
+    // vacíos.
+    private static String[] fila(String[] valores) {
+        StringBuilder texto = new StringBuilder();
+        for (int i = 0; i < valores.length; i++) {
+            if (i > 0) {
+                texto.append(';');
+            }
+            if (valores[i] != null) {
+                texto.append(valores[i].replace(';', ','));
+            }
+        }
+        return new String[] {texto.toString()};
+    }
+
+    // Método auxiliar que devuelve la URL sin los parámetros de sesión (que en Hive pueden incluir la clave).
+    private String origen() {
+        int fin = url.indexOf(';');
+        return fin < 0 ? url : url.substring(0, fin);
+    }
+
+    // Método que devuelve un resumen de la lectura.
+    @Override
+    public String resumen() {
+        return "JDBC " + origen() + ": " + filasEntregadas + " filas entregadas de " + tramos + " tramos, lotes de " + tamanoLote;
+    }
+
+    // Método que cancela las consultas en curso y detiene los hilos de los tramos.
+    @Override
+    public void close() {
+        for (Statement sentencia : consultas) {
+            try {
+                sentencia.cancel();
+            } catch (SQLException e) {
+                // La consulta ya terminó o el controlador no permite cancelarla; se interrumpe el hilo.
+            }
+        }
+        hilos.shutdownNow();
+    }
+
+    // Método que convierte la fuente en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        return "JdbcRowSource{origen=" + origen() + ", tramos=" + tramos + ", lote=" + tamanoLote + "}";
+    }
+}
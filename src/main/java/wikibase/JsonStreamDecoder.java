@@ -0,0 +1,332 @@
+// Paquete que contiene el decodificador en streaming de las respuestas JSON de la API de Wikibase.
+package wikibase;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+// Clase que lee las respuestas de la API con el JsonReader de Gson, extrayendo sólo los campos necesarios
+// y saltando el resto sin construir el árbol JSON completo.
+public final class JsonStreamDecoder {
+
+    // Interfaz funcional para las funciones que leen una respuesta directamente desde su flujo de bytes.
+    public interface Decodificador<T> {
+        T decodificar(InputStream in) throws IOException;
+    }
+
+    private JsonStreamDecoder() {
+    }
+
+    // Método que abre un JsonReader sobre el flujo de la respuesta (UTF-8).
+    static JsonReader abrir(InputStream in) {
+        return new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    // Método que extrae en una sola pasada los valores de varias rutas (por ejemplo, "entity.id" o "search.0.id").
+    // Los segmentos numéricos se interpretan como índices de arreglo. Devuelve null en las rutas que no existen.
+    public static String[] leerCampos(InputStream in, String... rutas) throws IOException {
+        if (rutas.length > 64) {
+            throw new IllegalArgumentException("Se admiten como máximo 64 rutas por lectura");
+        }
+        String[][] segmentos = new String[rutas.length][];
+        for (int i = 0; i < rutas.length; i++) {
+            segmentos[i] = rutas[i].split("\\.");
+        }
+        String[] valores = new String[rutas.length];
+        long todas = rutas.length == 64 ? -1L : (1L << rutas.length) - 1;
+        try (JsonReader reader = abrir(in)) {
+            leerValor(reader, segmentos, todas, 0, valores);
+        }
+        return valores;
+    }
+
+    // Método recursivo que recorre un valor JSON siguiendo sólo las rutas activas (máscara de bits).
+    private static void leerValor(JsonReader reader, String[][] rutas, long activas, int nivel, String[] valores) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String nombre = reader.nextName();
+                leerHijo(reader, rutas, activas, nivel, nombre, -1, valores);
+            }
+            reader.endObject();
+        } else if (token == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            int indice = 0;
+            while (reader.hasNext()) {
+                leerHijo(reader, rutas, activas, nivel, null, indice++, valores);
+            }
+            reader.endArray();
+        } else {
+            reader.skipValue();
+        }
+    }
+
+    // Método que decide si el hijo (por nombre o índice) pertenece a alguna ruta; si no, lo salta.
+    private static void leerHijo(JsonReader reader, String[][] rutas, long activas, int nivel, String nombre, int indice, String[] valores) throws IOException {
+        long siguientes = 0;
+        long hojas = 0;
+        for (int i = 0; i < rutas.length; i++) {
+            if ((activas & (1L << i)) == 0 || rutas[i].length <= nivel) {
+                continue;
+            }
+            String segmento = rutas[i][nivel];
+            boolean coincide = nombre != null ? segmento.equals(nombre) : esIndice(segmento, indice);
+            if (coincide) {
+                if (rutas[i].length == nivel + 1) {
+                    hojas |= 1L << i;
+                } else {
+                    siguientes |= 1L << i;
+                }
+            }
+        }
+
+        if (hojas != 0) {
+            String valor = leerEscalar(reader);
+            for (int i = 0; i < rutas.length; i++) {
+                if ((hojas & (1L << i)) != 0) {
+                    valores[i] = valor;
+                }
+            }
+        } else if (siguientes != 0) {
+            leerValor(reader, rutas, siguientes, nivel + 1, valores);
+        } else {
+            reader.skipValue();
+        }
+    }
+
+    // Método que compara un segmento de ruta con un índice de arreglo sin crear cadenas.
+    private static boolean esIndice(String segmento, int indice) {
+        int valor = 0;
+        for (int i = 0; i < segmento.length(); i++) {
+            char c = segmento.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            valor = valor * 10 + (c - '0');
+        }
+        return segmento.length() > 0 && valor == indice;
+    }
+
+    // Método que lee un valor escalar como cadena; los objetos y arreglos se saltan y devuelven null.
+    static String leerEscalar(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    // Método que lee los campos escalares indicados del objeto posicionado en el lector y salta los demás.
+    // Devuelve null en los campos que no existen (o todos null si el valor no es un objeto).
+    static String[] leerObjeto(JsonReader reader, String... nombres) throws IOException {
+        String[] valores = new String[nombres.length];
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return valores;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int indice = Arrays.asList(nombres).indexOf(reader.nextName());
+            if (indice >= 0) {
+                valores[indice] = leerEscalar(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return valores;
+    }
+
+    // Método que recorre las declaraciones de una respuesta de wbgetclaims (o de una entidad) y devuelve el ID
+    // de la primera que cumple el filtro. Si propertyId no es null, sólo se leen las declaraciones de esa propiedad
+    // y las demás se saltan. La instancia de ClaimRecord se reutiliza para todas las declaraciones.
+    static String buscarDeclaracion(InputStream in, String propertyId, Predicate<ClaimRecord> filtro) throws IOException {
+        ClaimRecord registro = new ClaimRecord();
+        String encontrada = null;
+        try (JsonReader reader = abrir(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("claims") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    encontrada = recorrerDeclaraciones(reader, propertyId, registro, filtro);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return encontrada;
+    }
+
+    // Método que recorre el objeto "claims" (propiedad -> arreglo de declaraciones) posicionado en el lector.
+    // Tras encontrar una coincidencia sigue saltando el resto para consumir completamente la respuesta.
+    static String recorrerDeclaraciones(JsonReader reader, String propertyId, ClaimRecord registro, Predicate<ClaimRecord> filtro) throws IOException {
+        String encontrada = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String propiedad = reader.nextName();
+            if (encontrada != null || (propertyId != null && !propertyId.equals(propiedad)) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (encontrada != null) {
+                    reader.skipValue();
+                    continue;
+                }
+                leerDeclaracion(reader, registro);
+                if (filtro.test(registro)) {
+                    encontrada = registro.id;
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return encontrada;
+    }
+
+    // Método que lee una declaración completa en el registro reutilizable.
+    static void leerDeclaracion(JsonReader reader, ClaimRecord registro) throws IOException {
+        registro.reset();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    registro.id = reader.nextString();
+                    break;
+                case "rank":
+                    registro.rank = reader.nextString();
+                    break;
+                case "mainsnak":
+                    leerSnak(reader, registro.mainsnak);
+                    break;
+                case "qualifiers":
+                    leerCalificadores(reader, registro);
+                    break;
+                case "references":
+                    registro.referencias = true;
+                    reader.skipValue();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    // Método que lee el objeto "qualifiers" (propiedad -> arreglo de snaks) en el registro.
+    private static void leerCalificadores(JsonReader reader, ClaimRecord registro) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            reader.nextName();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                leerSnak(reader, registro.nextQualifier());
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    // Método que lee un snak (property, datatype y datavalue) en la instancia reutilizable.
+    static void leerSnak(JsonReader reader, SnakValue snak) throws IOException {
+        snak.reset();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "property":
+                    snak.property = reader.nextString();
+                    break;
+                case "datatype":
+                    snak.datatype = reader.nextString();
+                    break;
+                case "datavalue":
+                    leerDatavalue(reader, snak);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    // Método que lee el objeto "datavalue" de un snak.
+    private static void leerDatavalue(JsonReader reader, SnakValue snak) throws IOException {
+        snak.hasValue = true;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "type":
+                    snak.valueType = reader.nextString();
+                    break;
+                case "value":
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        leerValorCompuesto(reader, snak);
+                    } else {
+                        snak.text = leerEscalar(reader);
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    // Método que lee los campos de un valor compuesto (entidad, cantidad, fecha o coordenada).
+    private static void leerValorCompuesto(JsonReader reader, SnakValue snak) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String nombre = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (nombre) {
+                case "id":
+                    snak.entityId = reader.nextString();
+                    break;
+                case "numeric-id":
+                    snak.numericId = reader.nextLong();
+                    break;
+                case "amount":
+                    snak.amount = reader.nextString();
+                    break;
+                case "unit":
+                    snak.unit = reader.nextString();
+                    break;
+                case "time":
+                    snak.time = reader.nextString();
+                    break;
+                case "precision":
+                    // La precisión es entera en las fechas y decimal en las coordenadas.
+                    snak.precision = (int) reader.nextDouble();
+                    break;
+                case "latitude":
+                    snak.latitude = reader.nextDouble();
+                    break;
+                case "longitude":
+                    snak.longitude = reader.nextDouble();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+}
@@ -0,0 +1,441 @@
+// Paquete que contiene el filtro de Bloom de las etiquetas de los ítems, usado para evitar búsquedas sin resultado.
+package wikibase;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+// Clase que responde "esta etiqueta seguro no existe" sin llamar a wbsearchentities. Durante una primera carga casi
+// todas las etiquetas buscadas son nuevas y cada búsqueda fallida cuesta un viaje al servidor. El filtro se construye
+// una vez con las etiquetas y alias (en todos los idiomas) de todos los ítems de la wiki, leídos con allpages y
+// wbgetentities, y se guarda en un archivo mapeado en memoria; los ítems y alias que crea el cargador se agregan al
+// momento, por lo que el archivo sigue siendo válido aunque el proceso termine de forma abrupta.
+// wbsearchentities busca por prefijo en todos los ítems (no distingue establecimientos, comunas o docentes), así que
+// el filtro es uno solo y guarda cada prefijo de cada etiqueta, normalizado sin mayúsculas, tildes ni espacios
+// repetidos: si un texto no está en el filtro, ninguna etiqueta empieza por él y la búsqueda no encontraría nada.
+// Un filtro de Bloom no da falsos negativos; sus falsos positivos sólo cuestan la búsqueda de siempre. Para no dar
+// por ausente una etiqueta que creó otro proceso (otra cuenta u otro nodo), el filtro guarda el momento hasta el que
+// está al día: al abrirlo agrega las etiquetas de los ítems creados o editados desde entonces según recentchanges, y
+// durante la carga LocalMirror le pasa los cambios externos de cada sondeo. Sólo queda sin ver lo creado por otros en
+// el intervalo entre sondeos. Las etiquetas que se quitan no se borran del filtro (sólo agregan falsos positivos),
+// por lo que el archivo se reconstruye tras su vigencia.
+public final class LabelBloomFilter implements AutoCloseable {
+
+    // Ruta por defecto del filtro (puede cambiarse con -Dwikibase.etiquetas=<archivo>).
+    private static final String RUTA_POR_DEFECTO = "etiquetas.bloom";
+
+    // Vigencia del archivo, en horas, antes de reconstruirlo (puede cambiarse con -Dwikibase.etiquetasVigencia=<horas>).
+    private static final long VIGENCIA_POR_DEFECTO = 24;
+
+    // Tasa de falsos positivos con que se dimensiona el filtro.
+    private static final double FALSOS_POSITIVOS = 0.01;
+
+    // Margen de elementos para los ítems que se creen después de construirlo.
+    private static final double MARGEN = 1.5;
+
+    // Número máximo de IDs por solicitud de wbgetentities.
+    private static final int TAMANO_LOTE = 50;
+
+    // Número de lotes que se leen a la vez.
+    private static final int PARALELISMO = 8;
+
+    // Margen con que se vuelve a leer recentchanges antes del momento guardado, por cambios registrados con retraso.
+    private static final long MARGEN_SEGUNDOS = 60;
+
+    private static final long MARCA = 0x5742424C4F4F4D31L;     // "WBBLOOM1"
+    private static final int CABECERA = 40;                     // Marca, bits, funciones, creado y sincronizado.
+    private static final long MAX_BITS = 8L * Integer.MAX_VALUE - 8L * 64;
+
+    // Filtro compartido por el proceso; null mientras no se haya abierto (sin filtro no se descarta ninguna etiqueta).
+    private static volatile LabelBloomFilter compartido;
+
+    private final Path ruta;
+    private final FileChannel canal;
+    private final MappedByteBuffer mapa;
+    private final long bits;          // Número de bits del filtro.
+    private final int funciones;      // Número de funciones hash.
+    private final long creado;        // Momento (ms) en que se construyó desde la wiki.
+    private long descartadas;         // Etiquetas que no hizo falta buscar.
+    private long consultas;           // Etiquetas consultadas.
+
+    private LabelBloomFilter(Path ruta, FileChannel canal, MappedByteBuffer mapa) {
+        this.ruta = ruta;
+        this.canal = canal;
+        this.mapa = mapa;
+        this.bits = mapa.getLong(8);
+        this.funciones = (int) mapa.getLong(16);
+        this.creado = mapa.getLong(24);
+    }
+
+    // Método para obtener el filtro compartido, o null si no se abrió.
+    public static LabelBloomFilter compartido() {
+        return compartido;
+    }
+
+    // Método que abre el filtro compartido: usa el archivo configurado si existe y está vigente, y si no lo
+    // reconstruye desde la wiki. Se cierra al terminar el proceso.
+    public static synchronized LabelBloomFilter abrir(WikibaseAsyncManager asyncManager) throws IOException {
+        if (compartido != null) {
+            return compartido;
+        }
+        Path ruta = Paths.get(System.getProperty("wikibase.etiquetas", RUTA_POR_DEFECTO));
+        long vigencia = Long.getLong("wikibase.etiquetasVigencia", VIGENCIA_POR_DEFECTO) * 3600_000L;
+        LabelBloomFilter filtro = cargar(ruta);
+        if (filtro != null && System.currentTimeMillis() - filtro.creado > vigencia) {
+            System.out.println("El filtro de etiquetas " + ruta + " está vencido; se reconstruye");
+            filtro.close();
+            filtro = null;
+        }
+        if (filtro == null) {
+            filtro = construir(asyncManager, ruta);
+        }
+        filtro.ponerAlDia(asyncManager);
+        LabelBloomFilter abierto = filtro;
+        Runtime.getRuntime().addShutdownHook(new Thread(abierto::close));
+        compartido = abierto;
+        return abierto;
+    }
+
+    // Método que carga un filtro guardado; devuelve null si el archivo no existe o no es un filtro válido.
+    static LabelBloomFilter cargar(Path ruta) throws IOException {
+        if (!Files.exists(ruta) || Files.size(ruta) < CABECERA) {
+            return null;
+        }
+        FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, canal.size());
+        if (mapa.getLong(0) != MARCA || canal.size() != CABECERA + palabras(mapa.getLong(8)) * 8L) {
+            canal.close();
+            System.err.println("Advertencia: " + ruta + " no es un filtro de etiquetas válido; se reconstruye");
+            return null;
+        }
+        return new LabelBloomFilter(ruta, canal, mapa);
+    }
+
+    // Método que construye el filtro con las etiquetas y alias de todos los ítems de la wiki y lo guarda en la ruta.
+    // Las etiquetas se agregan a medida que se leen, sin guardarlas en memoria; el tamaño del filtro se estima con la
+    // primera ventana de ítems (una estimación baja sólo aumenta los falsos positivos). Queda al día hasta el momento
+    // en que se empezó a listar los ítems.
+    static LabelBloomFilter construir(WikibaseAsyncManager asyncManager, Path ruta) throws IOException {
+        long inicio = System.currentTimeMillis();
+        List<String> ids = asyncManager.listarPaginas(WikibaseManager.NAMESPACE_ITEMS);
+        // El filtro se llena en un archivo temporal que reemplaza al anterior de forma atómica, para que nunca quede
+        // en disco un filtro a medio llenar (daría falsos negativos).
+        Path temporal = ruta.resolveSibling(ruta.getFileName() + ".tmp");
+        LabelBloomFilter nuevo = null;
+        long etiquetas = 0;
+        try {
+            int porVentana = TAMANO_LOTE * PARALELISMO;
+            for (int i = 0; i < ids.size(); i += porVentana) {
+                List<String> ventana = ids.subList(i, Math.min(i + porVentana, ids.size()));
+                List<String> leidas = leerVentana(asyncManager, ventana);
+                if (nuevo == null) {
+                    long caracteres = 0;
+                    for (String etiqueta : leidas) {
+                        caracteres += etiqueta.length();
+                    }
+                    nuevo = crear(temporal, (long) (Math.max(caracteres * ids.size() / ventana.size(), 1024) * MARGEN));
+                }
+                for (String etiqueta : leidas) {
+                    nuevo.agregarNormalizada(etiqueta);
+                }
+                etiquetas += leidas.size();
+            }
+            if (nuevo == null) {
+                nuevo = crear(temporal, (long) (1024 * MARGEN));
+            }
+            nuevo.marcarSincronizado(inicio);
+        } finally {
+            if (nuevo != null) {
+                nuevo.close();
+            }
+        }
+        Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LabelBloomFilter filtro = cargar(ruta);
+        System.out.println("Filtro de etiquetas construido con " + etiquetas + " etiquetas de " + ids.size() + " ítems en "
+                + (System.currentTimeMillis() - inicio) + " ms");
+        return filtro;
+    }
+
+    // Método auxiliar que lee las etiquetas y alias normalizados de una ventana de ítems, en lotes paralelos de
+    // wbgetentities.
+    private static List<String> leerVentana(WikibaseAsyncManager asyncManager, List<String> ventana) throws IOException {
+        List<CompletableFuture<List<String>>> lecturas = new ArrayList<>();
+        for (int j = 0; j < ventana.size(); j += TAMANO_LOTE) {
+            lecturas.add(asyncManager.consultar(urlEtiquetas(ventana.subList(j, Math.min(j + TAMANO_LOTE, ventana.size()))),
+                    LabelBloomFilter::leerEtiquetas));
+        }
+        WikibaseAsyncManager.esperar(CompletableFuture.allOf(lecturas.toArray(new CompletableFuture<?>[0])));
+        List<String> etiquetas = new ArrayList<>();
+        for (CompletableFuture<List<String>> lectura : lecturas) {
+            etiquetas.addAll(lectura.join());
+        }
+        return etiquetas;
+    }
+
+    // Método que agrega las etiquetas y alias actuales de las entidades indicadas (las creadas o editadas por otros
+    // procesos según recentchanges) y registra que el filtro está al día hasta el momento indicado.
+    public void agregarEntidades(WikibaseAsyncManager asyncManager, Collection<String> entityIds, Instant hasta) throws IOException {
+        List<String> ids = new ArrayList<>(entityIds);
+        int porVentana = TAMANO_LOTE * PARALELISMO;
+        for (int i = 0; i < ids.size(); i += porVentana) {
+            for (String etiqueta : leerVentana(asyncManager, ids.subList(i, Math.min(i + porVentana, ids.size())))) {
+                agregarNormalizada(etiqueta);
+            }
+        }
+        marcarSincronizado(hasta.toEpochMilli());
+    }
+
+    // Método auxiliar que, al abrir el filtro, agrega las etiquetas de los ítems creados o editados desde el momento
+    // hasta el que estaba al día, leyendo recentchanges (siguiendo la continuación).
+    private void ponerAlDia(WikibaseAsyncManager asyncManager) throws IOException {
+        Instant desde = Instant.ofEpochMilli(sincronizado()).minusSeconds(MARGEN_SEGUNDOS).truncatedTo(ChronoUnit.SECONDS);
+        Set<String> ids = new LinkedHashSet<>();
+        String[] ahora = new String[1];
+        String continuar = null;
+        do {
+            String url = WikibaseManager.API_ENDPOINT + "?action=query&format=json&curtimestamp=1&list=recentchanges"
+                    + "&rcnamespace=" + WikibaseManager.NAMESPACE_ITEMS + "&rcprop=title&rctype=edit%7Cnew&rclimit=max&rcdir=newer&rcstart=" + desde
+                    + (continuar == null ? "" : "&rccontinue=" + URLEncoder.encode(continuar, StandardCharsets.UTF_8));
+            continuar = WikibaseAsyncManager.esperar(asyncManager.consultar(url, in -> leerCambios(in, ids, ahora)));
+        } while (continuar != null);
+        agregarEntidades(asyncManager, ids, ahora[0] != null ? Instant.parse(ahora[0]) : desde);
+        System.out.println("Filtro de etiquetas al día desde " + desde + ": " + ids.size() + " ítems creados o editados");
+    }
+
+    // Método auxiliar que lee una página de recentchanges, agrega los IDs de los ítems y devuelve la continuación.
+    static String leerCambios(InputStream in, Set<String> ids, String[] ahora) throws IOException {
+        String continuar = null;
+        try (JsonReader reader = JsonStreamDecoder.abrir(in)) {
+            JsonObject respuesta = JsonParser.parseReader(reader).getAsJsonObject();
+            if (respuesta.has("error")) {
+                throw new IOException("Error de la API de Wikibase: " + respuesta.getAsJsonObject("error").get("info").getAsString());
+            }
+            if (respuesta.has("curtimestamp")) {
+                ahora[0] = respuesta.get("curtimestamp").getAsString();
+            }
+            JsonObject query = respuesta.getAsJsonObject("query");
+            if (query != null && query.has("recentchanges")) {
+                for (JsonElement cambio : query.getAsJsonArray("recentchanges")) {
+                    String titulo = cambio.getAsJsonObject().get("title").getAsString();
+                    ids.add(titulo.substring(titulo.indexOf(':') + 1));
+                }
+            }
+            JsonObject continuacion = respuesta.getAsJsonObject("continue");
+            if (continuacion != null && continuacion.has("rccontinue")) {
+                continuar = continuacion.get("rccontinue").getAsString();
+            }
+        }
+        return continuar;
+    }
+
+    // Método auxiliar que devuelve el momento (ms) hasta el que el filtro está al día; los filtros guardados antes de
+    // registrarlo usan el momento en que se construyeron.
+    private synchronized long sincronizado() {
+        long sincronizado = mapa.getLong(32);
+        return sincronizado != 0 ? sincronizado : creado;
+    }
+
+    // Método auxiliar que registra el momento (ms) hasta el que el filtro está al día; nunca retrocede respecto del
+    // último registrado (un filtro recién construido queda al día desde antes de su creación).
+    private synchronized void marcarSincronizado(long momento) {
+        if (momento > mapa.getLong(32)) {
+            mapa.putLong(32, momento);
+        }
+    }
+
+    // Método auxiliar que crea un filtro vacío, dimensionado para el número de elementos indicado, en un archivo nuevo.
+    static LabelBloomFilter crear(Path ruta, long elementos) throws IOException {
+        long bits = (long) Math.ceil(-elementos * Math.log(FALSOS_POSITIVOS) / (Math.log(2) * Math.log(2)));
+        bits = Math.min(Math.max(bits, 64), MAX_BITS);
+        int funciones = (int) Math.max(1, Math.round((double) bits / elementos * Math.log(2)));
+        Files.deleteIfExists(ruta);
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, CABECERA + palabras(bits) * 8L);
+            mapa.putLong(0, MARCA);
+            mapa.putLong(8, bits);
+            mapa.putLong(16, funciones);
+            mapa.putLong(24, System.currentTimeMillis());
+            mapa.force();
+        }
+        return cargar(ruta);
+    }
+
+    // Método que agrega una etiqueta o alias (por ejemplo, al crear un ítem) con todos sus prefijos.
+    public void agregar(String etiqueta) {
+        String normalizada = normalizar(etiqueta);
+        if (!normalizada.isEmpty()) {
+            agregarNormalizada(normalizada);
+        }
+    }
+
+    // Método que indica si alguna etiqueta o alias de la wiki puede empezar por el texto indicado. Si devuelve false,
+    // wbsearchentities no encontraría ningún ítem y la búsqueda puede omitirse.
+    public synchronized boolean puedeExistir(String etiqueta) {
+        String normalizada = normalizar(etiqueta);
+        consultas++;
+        // La búsqueda también encuentra los ítems por su ID ("q123").
+        if (normalizada.isEmpty() || normalizada.matches("q\\d+") || contiene(normalizada)) {
+            return true;
+        }
+        descartadas++;
+        return false;
+    }
+
+    // Método que devuelve un resumen del uso del filtro.
+    public synchronized String resumen() {
+        return "Filtro de etiquetas: " + consultas + " consultas, " + descartadas + " búsquedas omitidas (" + bits / 8 / 1024 + " KiB, "
+                + funciones + " funciones hash)";
+    }
+
+    // Método que vuelca el filtro a disco.
+    @Override
+    public synchronized void close() {
+        if (canal.isOpen()) {
+            mapa.force();
+            try {
+                canal.close();
+            } catch (IOException e) {
+                System.err.println("No se pudo cerrar el filtro de etiquetas: " + e.getMessage());
+            }
+        }
+    }
+
+    // Método auxiliar que agrega todos los prefijos de una etiqueta ya normalizada.
+    private synchronized void agregarNormalizada(String normalizada) {
+        for (int fin = normalizada.offsetByCodePoints(0, 1); ; fin = normalizada.offsetByCodePoints(fin, 1)) {
+            String prefijo = normalizada.substring(0, fin);
+            if (!prefijo.endsWith(" ")) {
+                marcar(FingerprintIndex.huella(prefijo));
+            }
+            if (fin == normalizada.length()) {
+                return;
+            }
+        }
+    }
+
+    // Método auxiliar que activa los bits de un elemento (doble hash a partir de la huella de 128 bits).
+    private void marcar(long[] huella) {
+        for (int i = 0; i < funciones; i++) {
+            long bit = Math.floorMod(huella[0] + i * huella[1], bits);
+            int posicion = CABECERA + (int) (bit >>> 6) * 8;
+            mapa.putLong(posicion, mapa.getLong(posicion) | (1L << bit));
+        }
+    }
+
+    // Método auxiliar que indica si todos los bits de un elemento están activos.
+    private boolean contiene(String normalizada) {
+        long[] huella = FingerprintIndex.huella(normalizada);
+        for (int i = 0; i < funciones; i++) {
+            long bit = Math.floorMod(huella[0] + i * huella[1], bits);
+            if ((mapa.getLong(CABECERA + (int) (bit >>> 6) * 8) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Método auxiliar que normaliza una etiqueta como lo hace la búsqueda: sin mayúsculas, sin tildes y con los
+    // espacios repetidos reducidos a uno. Una normalización más agresiva sólo agrega falsos positivos.
+    static String normalizar(String etiqueta) {
+        String sinTildes = Normalizer.normalize(etiqueta, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+        return sinTildes.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    // Método auxiliar que devuelve el número de palabras de 64 bits necesarias para los bits indicados.
+    private static long palabras(long bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    // Método auxiliar que construye la URL de wbgetentities para leer las etiquetas y alias de un lote de ítems.
+    private static String urlEtiquetas(List<String> ids) {
+        return WikibaseManager.API_ENDPOINT + "?action=wbgetentities&format=json&props=labels%7Caliases&ids="
+                + URLEncoder.encode(String.join("|", ids), StandardCharsets.UTF_8);
+    }
+
+    // Método auxiliar que lee en streaming una respuesta de wbgetentities y devuelve las etiquetas y alias normalizados.
+    static List<String> leerEtiquetas(InputStream in) throws IOException {
+        List<String> etiquetas = new ArrayList<>();
+        try (JsonReader reader = JsonStreamDecoder.abrir(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("entities") || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    reader.nextName();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String campo = reader.nextName();
+                        if (campo.equals("labels") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                reader.nextName();
+                                agregarValor(JsonStreamDecoder.leerObjeto(reader, "value")[0], etiquetas);
+                            }
+                            reader.endObject();
+                        } else if (campo.equals("aliases") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                reader.nextName();
+                                reader.beginArray();
+                                while (reader.hasNext()) {
+                                    agregarValor(JsonStreamDecoder.leerObjeto(reader, "value")[0], etiquetas);
+                                }
+                                reader.endArray();
+                            }
+                            reader.endObject();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+        }
+        return etiquetas;
+    }
+
+    // Método auxiliar que agrega un valor normalizado a la lista si no está vacío.
+    private static void agregarValor(String valor, List<String> etiquetas) {
+        if (valor != null) {
+            String normalizada = normalizar(valor);
+            if (!normalizada.isEmpty()) {
+                etiquetas.add(normalizada);
+            }
+        }
+    }
+
+    // Método que convierte el filtro en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        return "LabelBloomFilter{" + ruta + ", bits=" + bits + ", funciones=" + funciones + "}";
+    }
+}
@@ -0,0 +1,469 @@
+// Paquete que contiene el espejo local de las entidades que usa el cargador, sincronizado con recentchanges.
+package wikibase;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Clase que guarda entre ejecuciones las declaraciones y revisiones de las entidades que tocó el cargador y las
+// mantiene al día leyendo list=recentchanges desde el último momento sincronizado. Al abrirlo se leen los cambios
+// ocurridos desde la ejecución anterior y sólo se descargan de nuevo (en lotes de wbgetentities) las entidades del
+// espejo que cambiaron; el resto pasa a las cachés de declaraciones y revisiones sin consultar la wiki. Durante la
+// ejecución, un hilo sondea recentchanges cada pocos segundos: las entidades que cambió otro editor se descartan de
+// las cachés y las demás entradas se dan por confirmadas, por lo que no se revalidan una por una. Un cambio es propio
+// sólo si su revisión es una de las que produjeron nuestras escrituras (las registran al responder y se guardan en el
+// archivo las que aún no se vieron); cualquier otra revisión, aunque sea anterior a una propia, es externa. Si no se
+// pueden leer los cambios desde la ejecución anterior, se vacía el índice de huellas. Las entidades con cambios
+// externos se pasan también al filtro de etiquetas, para que no dé por ausente una etiqueta creada por otro proceso.
+public final class LocalMirror {
+
+    // Archivo del espejo por defecto (puede cambiarse con -Dwikibase.espejo=<ruta>).
+    private static final String RUTA_POR_DEFECTO = "espejo.json";
+
+    // Antigüedad máxima, en días, de un espejo que se puede poner al día (-Dwikibase.espejoDias=<n>). Debe ser menor
+    // que el tiempo que la wiki conserva recentchanges ($wgRCMaxAge, 90 días por defecto).
+    private static final long DIAS_POR_DEFECTO = 30;
+
+    // Intervalo, en milisegundos, entre sondeos de recentchanges (-Dwikibase.espejoIntervalo=<ms>). Debe ser menor que
+    // la vigencia de la caché de declaraciones para que sus entradas no lleguen a revalidarse.
+    private static final long INTERVALO_POR_DEFECTO = 15000;
+
+    // Margen con que se vuelve a leer el final del sondeo anterior, por cambios que se registran con retraso.
+    private static final long MARGEN_SEGUNDOS = 60;
+
+    // Número máximo de IDs por solicitud de wbgetentities.
+    private static final int TAMANO_LOTE = 50;
+
+    // Número de lotes que se leen a la vez.
+    private static final int PARALELISMO = 8;
+
+    // Espejo compartido por el proceso; null mientras no se haya abierto.
+    private static volatile LocalMirror compartido;
+
+    private final Path ruta;
+    private final WikibaseAsyncManager asyncManager;
+    private final Map<String, Entidad> entidades = new ConcurrentHashMap<>();  // Entidades leídas del archivo, hasta poblar las cachés.
+    private final Map<String, Long> vistos = new ConcurrentHashMap<>();        // ID de entidad -> última revisión procesada.
+    private final Set<Long> registrosVistos = ConcurrentHashMap.newKeySet();   // rcid de los registros (log) procesados.
+    private final Set<Long> propias = ConcurrentHashMap.newKeySet();           // Revisiones propias aún no vistas en recentchanges.
+    private final Set<String> pendientesFiltro = ConcurrentHashMap.newKeySet(); // Cambios externos aún no pasados al filtro.
+    private volatile Instant desde;                                            // Momento desde el que se leen los cambios.
+    private volatile int tamano;                                               // Entidades cargadas al abrir o escritas al guardar.
+    private ScheduledExecutorService sondeo;
+    private final AtomicLong sondeos = new AtomicLong();
+    private final AtomicLong cambiosLeidos = new AtomicLong();
+    private final AtomicLong cambiosExternos = new AtomicLong();
+    private final AtomicLong descargas = new AtomicLong();
+
+    private LocalMirror(Path ruta, WikibaseAsyncManager asyncManager) {
+        this.ruta = ruta;
+        this.asyncManager = asyncManager;
+    }
+
+    // Método para obtener el espejo compartido, o null si no se abrió.
+    public static LocalMirror compartido() {
+        return compartido;
+    }
+
+    // Método que registra una revisión producida por una escritura propia, para que el sondeo no la tome por externa.
+    static void registrarPropia(long revision) {
+        LocalMirror espejo = compartido;
+        if (espejo != null && revision > 0) {
+            espejo.propias.add(revision);
+        }
+    }
+
+    // Método que abre el espejo compartido: lee el archivo configurado (si existe y no es demasiado antiguo), lo pone
+    // al día con recentchanges, llena con él las cachés y empieza a sondear los cambios. Sin cambios que leer, el
+    // índice de huellas puede tener declaraciones que otro editor quitó, por lo que se vacía.
+    public static synchronized LocalMirror abrir(WikibaseAsyncManager asyncManager) throws IOException {
+        if (compartido != null) {
+            return compartido;
+        }
+        long inicio = System.currentTimeMillis();
+        LocalMirror espejo = new LocalMirror(Paths.get(System.getProperty("wikibase.espejo", RUTA_POR_DEFECTO)), asyncManager);
+        espejo.cargar();
+        Instant limite = Instant.now().minus(Long.getLong("wikibase.espejoDias", DIAS_POR_DEFECTO), ChronoUnit.DAYS);
+        if (espejo.desde != null && espejo.desde.isBefore(limite)) {
+            System.out.println("El espejo " + espejo.ruta + " es anterior a " + limite + "; se descarta");
+            espejo.entidades.clear();
+            espejo.propias.clear();
+            espejo.desde = null;
+        }
+        if (espejo.desde == null) {
+            espejo.desde = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+            FingerprintIndex.compartido().reiniciar();
+        } else {
+            espejo.ponerAlDia();
+        }
+        espejo.poblar();
+        espejo.tamano = espejo.entidades.size();
+        espejo.entidades.clear();
+        long intervalo = Long.getLong("wikibase.espejoIntervalo", INTERVALO_POR_DEFECTO);
+        espejo.sondeo = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "espejo-recentchanges");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        espejo.sondeo.scheduleWithFixedDelay(espejo::sondear, intervalo, intervalo, TimeUnit.MILLISECONDS);
+        compartido = espejo;
+        System.out.println("Espejo " + espejo.ruta + ": " + espejo.tamano + " entidades, al día desde " + espejo.desde
+                + " (" + (System.currentTimeMillis() - inicio) + " ms)");
+        return espejo;
+    }
+
+    // Método auxiliar que, al abrir el espejo, lee los cambios desde la ejecución anterior. Las entidades del espejo
+    // que cambiaron se descargan de nuevo; las que cambió otro editor (o una ejecución que no llegó a guardar el
+    // espejo) se marcan como sucias en el índice de huellas, porque pueden haber perdido declaraciones.
+    private void ponerAlDia() throws IOException {
+        List<String> cambiadas = new ArrayList<>();
+        Set<String> cambios = leerCambios();
+        for (String entityId : cambios) {
+            FingerprintIndex.compartido().invalidar(entityId);
+            if (entidades.containsKey(entityId)) {
+                cambiadas.add(entityId);
+            }
+        }
+        descargar(cambiadas);
+        actualizarFiltro(cambios);
+    }
+
+    // Método auxiliar que agrega al filtro de etiquetas (si está abierto) las etiquetas de las entidades con cambios
+    // externos y lo da por al día hasta el último momento sincronizado. Si falla, los cambios quedan pendientes para
+    // el siguiente sondeo.
+    private void actualizarFiltro(Set<String> cambios) throws IOException {
+        LabelBloomFilter etiquetas = LabelBloomFilter.compartido();
+        if (etiquetas == null) {
+            return;
+        }
+        pendientesFiltro.addAll(cambios);
+        etiquetas.agregarEntidades(asyncManager, pendientesFiltro, desde);
+        pendientesFiltro.clear();
+    }
+
+    // Método auxiliar que descarga de nuevo las declaraciones y la revisión de las entidades indicadas, en lotes
+    // paralelos de wbgetentities. Las entidades que ya no existen se quitan del espejo.
+    private void descargar(List<String> ids) throws IOException {
+        int porVentana = TAMANO_LOTE * PARALELISMO;
+        for (int i = 0; i < ids.size(); i += porVentana) {
+            List<String> ventana = ids.subList(i, Math.min(i + porVentana, ids.size()));
+            List<CompletableFuture<Map<String, Entidad>>> lecturas = new ArrayList<>();
+            for (int j = 0; j < ventana.size(); j += TAMANO_LOTE) {
+                lecturas.add(asyncManager.consultar(urlEntidades(ventana.subList(j, Math.min(j + TAMANO_LOTE, ventana.size()))),
+                        LocalMirror::leerEntidades));
+            }
+            WikibaseAsyncManager.esperar(CompletableFuture.allOf(lecturas.toArray(new CompletableFuture<?>[0])));
+            for (String entityId : ventana) {
+                entidades.remove(entityId);
+            }
+            for (CompletableFuture<Map<String, Entidad>> lectura : lecturas) {
+                Map<String, Entidad> leidas = lectura.join();
+                descargas.addAndGet(leidas.size());
+                entidades.putAll(leidas);
+            }
+        }
+    }
+
+    // Método auxiliar que pasa el contenido del espejo a las cachés de revisiones y declaraciones y al índice de huellas.
+    private void poblar() throws IOException {
+        FingerprintIndex indice = FingerprintIndex.compartido();
+        for (Map.Entry<String, Entidad> entrada : entidades.entrySet()) {
+            String entityId = entrada.getKey();
+            Entidad entidad = entrada.getValue();
+            RevisionTracker.compartido().registrar(entityId, entidad.revision);
+            if (entidad.declaraciones != null) {
+                byte[] json = entidad.declaraciones.getBytes(StandardCharsets.UTF_8);
+                ClaimCache.compartida().cargar(entityId, entidad.revision, new ByteArrayInputStream(json));
+                indice.agregarEntidad(entityId, entidad.revision, new ByteArrayInputStream(json));
+            }
+        }
+    }
+
+    // Método auxiliar que ejecuta el hilo de sondeo: descarta de las cachés las entidades que cambió otro editor y da
+    // por confirmadas las demás entradas en el momento en que se pidió la lista de cambios. Si el sondeo falla, las
+    // entradas no se confirman y la caché vuelve a revalidarlas al vencer.
+    private void sondear() {
+        long momento = System.currentTimeMillis();
+        try {
+            Set<String> cambios = leerCambios();
+            for (String entityId : cambios) {
+                ClaimCache.compartida().olvidar(entityId);
+                RevisionTracker.compartido().olvidar(entityId);
+                FingerprintIndex.compartido().invalidar(entityId);
+            }
+            ClaimCache.compartida().confirmar(momento);
+            actualizarFiltro(cambios);
+            sondeos.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("No se pudo sondear recentchanges: " + e.getMessage());
+        }
+    }
+
+    // Método auxiliar que lee recentchanges desde el último momento sincronizado (ítems y propiedades, siguiendo la
+    // continuación) y devuelve los IDs de las entidades con cambios que el proceso no conoce. Después avanza ese
+    // momento hasta el instante de la consulta, menos un margen para los cambios que se registran con retraso.
+    private Set<String> leerCambios() throws IOException {
+        Set<String> externos = new HashSet<>();
+        String[] ahora = new String[1];
+        String continuar = null;
+        do {
+            String url = WikibaseManager.API_ENDPOINT + "?action=query&format=json&curtimestamp=1&list=recentchanges"
+                    + "&rcnamespace=" + WikibaseManager.NAMESPACE_ITEMS + "%7C" + SchemaSync.NAMESPACE_PROPIEDADES
+                    + "&rcprop=title%7Cids%7Ctimestamp&rctype=edit%7Cnew%7Clog&rclimit=max&rcdir=newer&rcstart=" + desde
+                    + (continuar == null ? "" : "&rccontinue=" + URLEncoder.encode(continuar, StandardCharsets.UTF_8));
+            continuar = WikibaseAsyncManager.esperar(asyncManager.consultar(url, in -> leerPagina(in, externos, ahora)));
+        } while (continuar != null);
+        if (ahora[0] != null) {
+            Instant nuevo = Instant.parse(ahora[0]).minusSeconds(MARGEN_SEGUNDOS);
+            if (nuevo.isAfter(desde)) {
+                desde = nuevo;
+            }
+        }
+        if (registrosVistos.size() > 100000) {
+            registrosVistos.clear();
+        }
+        // Las revisiones propias que no aparecen se olvidan: sólo cuestan descartar esas entidades de las cachés.
+        if (propias.size() > 100000) {
+            propias.clear();
+        }
+        return externos;
+    }
+
+    // Método auxiliar que lee una página de recentchanges, agrega los IDs de las entidades con cambios desconocidos y
+    // devuelve la continuación. Los registros (borrados, fusiones) no tienen revisión y siempre cuentan como cambios.
+    private String leerPagina(InputStream in, Set<String> externos, String[] ahora) throws IOException {
+        String continuar = null;
+        try (JsonReader reader = JsonStreamDecoder.abrir(in)) {
+            JsonObject respuesta = JsonParser.parseReader(reader).getAsJsonObject();
+            if (respuesta.has("error")) {
+                throw new IOException("Error de la API de Wikibase: " + respuesta.getAsJsonObject("error").get("info").getAsString());
+            }
+            if (respuesta.has("curtimestamp")) {
+                ahora[0] = respuesta.get("curtimestamp").getAsString();
+            }
+            JsonObject query = respuesta.getAsJsonObject("query");
+            if (query != null && query.has("recentchanges")) {
+                for (JsonElement elemento : query.getAsJsonArray("recentchanges")) {
+                    JsonObject cambio = elemento.getAsJsonObject();
+                    String titulo = cambio.get("title").getAsString();
+                    String entityId = titulo.substring(titulo.indexOf(':') + 1);
+                    long revision = cambio.has("revid") ? cambio.get("revid").getAsLong() : 0;
+                    cambiosLeidos.incrementAndGet();
+                    if (revision == 0 ? registrosVistos.add(cambio.get("rcid").getAsLong()) : esExterno(entityId, revision)) {
+                        cambiosExternos.incrementAndGet();
+                        externos.add(entityId);
+                    }
+                }
+            }
+            JsonObject continuacion = respuesta.getAsJsonObject("continue");
+            if (continuacion != null && continuacion.has("rccontinue")) {
+                continuar = continuacion.get("rccontinue").getAsString();
+            }
+        }
+        return continuar;
+    }
+
+    // Método auxiliar que indica si una revisión no la produjo una escritura propia y no se había procesado.
+    private boolean esExterno(String entityId, long revision) {
+        if (propias.remove(revision)) {
+            vistos.merge(entityId, revision, Math::max);
+            return false;
+        }
+        Long anterior = vistos.put(entityId, revision);
+        return anterior == null || revision > anterior;
+    }
+
+    // Método que detiene el sondeo y guarda en el archivo el contenido actual de las cachés junto con el momento
+    // hasta el que está sincronizado. Las entidades que sólo tienen revisión se guardan sin declaraciones. Sólo se
+    // guardan las entradas que siguen en las cachés (acotadas), por lo que el archivo no crece entre ejecuciones: las
+    // entidades que las cachés descartaron se vuelven a leer de la wiki si se necesitan.
+    public synchronized void guardar() throws IOException {
+        if (sondeo != null) {
+            sondeo.shutdown();
+            try {
+                sondeo.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Map<String, Entidad> guardadas = new LinkedHashMap<>();
+        for (Map.Entry<String, ClaimCache.Entrada> entrada : ClaimCache.compartida().copia().entrySet()) {
+            guardadas.put(entrada.getKey(), new Entidad(entrada.getValue().revision(),
+                    new String(entrada.getValue().json(), StandardCharsets.UTF_8)));
+        }
+        for (Map.Entry<String, Long> revision : RevisionTracker.compartido().copia().entrySet()) {
+            Entidad entidad = guardadas.get(revision.getKey());
+            if (entidad == null || entidad.revision < revision.getValue()) {
+                guardadas.put(revision.getKey(), new Entidad(revision.getValue(), null));
+            }
+        }
+        Path temporal = ruta.resolveSibling(ruta.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temporal, StandardCharsets.UTF_8);
+             JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("desde").value(desde.toString());
+            writer.name("propias").beginArray();
+            for (Long revision : propias) {
+                writer.value(revision);
+            }
+            writer.endArray();
+            writer.name("entidades").beginObject();
+            for (Map.Entry<String, Entidad> entrada : guardadas.entrySet()) {
+                writer.name(entrada.getKey()).beginObject();
+                writer.name("revision").value(entrada.getValue().revision);
+                if (entrada.getValue().declaraciones != null) {
+                    writer.name("declaraciones").jsonValue(entrada.getValue().declaraciones);
+                }
+                writer.endObject();
+            }
+            writer.endObject();
+            writer.endObject();
+        }
+        Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        tamano = guardadas.size();
+    }
+
+    // Método auxiliar que lee el archivo del espejo, si existe.
+    private void cargar() throws IOException {
+        if (!Files.exists(ruta)) {
+            return;
+        }
+        try (Reader in = Files.newBufferedReader(ruta, StandardCharsets.UTF_8);
+             JsonReader reader = new JsonReader(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "desde":
+                        desde = Instant.parse(reader.nextString());
+                        break;
+                    case "propias":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            propias.add(reader.nextLong());
+                        }
+                        reader.endArray();
+                        break;
+                    case "entidades":
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String entityId = reader.nextName();
+                            long revision = 0;
+                            String declaraciones = null;
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                String campo = reader.nextName();
+                                if (campo.equals("revision")) {
+                                    revision = reader.nextLong();
+                                } else if (campo.equals("declaraciones")) {
+                                    declaraciones = JsonParser.parseReader(reader).toString();
+                                } else {
+                                    reader.skipValue();
+                                }
+                            }
+                            reader.endObject();
+                            entidades.put(entityId, new Entidad(revision, declaraciones));
+                        }
+                        reader.endObject();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (RuntimeException e) {
+            // Un espejo ilegible se descarta: la carga sigue sin él.
+            System.out.println("No se pudo leer el espejo " + ruta + ": " + e.getMessage());
+            entidades.clear();
+            propias.clear();
+            desde = null;
+        }
+    }
+
+    // Método auxiliar que lee en streaming una respuesta de wbgetentities (props=info|claims) y devuelve la revisión y
+    // las declaraciones (con el formato de una respuesta de wbgetclaims) de cada entidad que existe.
+    static Map<String, Entidad> leerEntidades(InputStream in) throws IOException {
+        Map<String, Entidad> leidas = new LinkedHashMap<>();
+        try (JsonReader reader = JsonStreamDecoder.abrir(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("entities") || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String entityId = reader.nextName();
+                    JsonObject entidad = JsonParser.parseReader(reader).getAsJsonObject();
+                    if (entidad.has("missing") || !entidad.has("lastrevid")) {
+                        continue;
+                    }
+                    // Una entidad sin declaraciones las trae como arreglo vacío.
+                    JsonElement claims = entidad.get("claims");
+                    String declaraciones = "{\"claims\":" + (claims != null && claims.isJsonObject() ? claims : "{}") + "}";
+                    leidas.put(entityId, new Entidad(entidad.get("lastrevid").getAsLong(), declaraciones));
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+        }
+        return leidas;
+    }
+
+    // Método auxiliar que construye la URL de wbgetentities con la revisión y las declaraciones de un lote.
+    private static String urlEntidades(List<String> ids) {
+        return WikibaseManager.API_ENDPOINT + "?action=wbgetentities&format=json&props=info%7Cclaims&ids="
+                + URLEncoder.encode(String.join("|", ids), StandardCharsets.UTF_8);
+    }
+
+    // Método que devuelve un resumen del uso del espejo.
+    public String resumen() {
+        return "Espejo local: " + tamano + " entidades, " + sondeos.get() + " sondeos, " + cambiosLeidos.get()
+                + " cambios leídos, " + cambiosExternos.get() + " externos, " + descargas.get() + " entidades descargadas de nuevo";
+    }
+
+    // Clase que representa una entidad del espejo: su revisión y sus declaraciones (null si sólo se conoce la revisión).
+    static final class Entidad {
+        final long revision;
+        final String declaraciones;
+
+        Entidad(long revision, String declaraciones) {
+            this.revision = revision;
+            this.declaraciones = declaraciones;
+        }
+    }
+
+    // Método que convierte el espejo en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        return "LocalMirror{ruta=" + ruta + ", entidades=" + tamano + ", desde=" + desde + "}";
+    }
+}
@@ -0,0 +1,506 @@
+// Paquete que contiene el lector de CSV por bloques en paralelo usado por el cargador.
+package wikibase;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Clase que lee un archivo CSV proyectándolo en memoria y dividiéndolo en bloques que terminan en un fin de línea.
+// Cada bloque se decodifica y se separa en campos en un ForkJoinPool mientras el cargador procesa los anteriores,
+// y las filas se entregan en el orden del archivo con readNext, como CSVReader. Los bloques en curso no superan un
+// presupuesto fijo de bytes leídos por adelantado, de modo que la memoria no depende del tamaño del archivo ni del
+// número de procesadores. Los campos se separan como el analizador por
+// defecto de opencsv. Cada bloque se separa suponiendo que empieza fuera de comillas; si el anterior terminó dentro de
+// un campo entre comillas con saltos de línea, readNext descarta esas filas y vuelve a separar el bloque, en orden,
+// continuando el campo abierto. El juego de caracteres debe codificar el fin de línea, el separador y las comillas
+// como en ASCII (UTF-8, ISO-8859-1, windows-1252), para poder cortar los bloques sin decodificarlos. Los archivos .gz y .zip (como los publica MINEDUC) se descomprimen como flujo, sin extraerlos a
+// disco: el hilo que llama a readNext lee los bloques del flujo y el pool los decodifica igual que los proyectados.
+public final class ParallelCsvReader implements RowSource {
+
+    // Tamaño aproximado de cada bloque, en bytes.
+    private static final int TAMANO_BLOQUE = 8 << 20;
+
+    // Bytes leídos por adelantado, en MB, que pueden estar decodificándose a la vez (puede cambiarse con
+    // -Dwikibase.csvLecturaAnticipada=<MB>). Con bloques de 8 MB, el valor por defecto permite 8 bloques en curso.
+    private static final int LECTURA_ANTICIPADA_POR_DEFECTO = 64;
+
+    // Bytes que se leen a la vez al buscar el fin de línea que cierra un bloque.
+    private static final int TAMANO_BUSQUEDA = 64 << 10;
+
+    private static final char COMILLA = '"';
+
+    // Miembro que se lee de un .zip si no se indica otro: el primer archivo .csv.
+    public static final Pattern MIEMBRO_POR_DEFECTO = Pattern.compile("(?i).*\\.csv");
+
+    // Juego de caracteres que se supone cuando el archivo no es UTF-8: Latin-1 con los caracteres de Windows entre
+    // 0x80 y 0x9F (comillas tipográficas, guiones), que es como se exportan los datos de MINEDUC.
+    private static final Charset LATIN1 = Charset.forName("windows-1252");
+
+    private final FileChannel canal;                                      // Archivo proyectado, o null si es un flujo.
+    private final InputStream flujo;                                      // Flujo descomprimido, o null si se proyecta.
+    private final String origen;
+    private final long tamano;                                            // Tamaño del archivo proyectado.
+    private final Charset charset;
+    private final char separador;
+    private final ForkJoinPool pool;
+    private final int maxEnCurso;                                         // Bloques decodificándose a la vez.
+    private final ArrayDeque<ForkJoinTask<Bloque>> enCurso = new ArrayDeque<>();
+    private long siguienteBloque;                                         // Posición donde empieza el siguiente bloque.
+    private ByteBuffer primerBloque;                                      // Primer bloque del flujo, leído al detectar.
+    private byte[] resto = new byte[0];                                   // Bytes del flujo tras el último fin de línea.
+    private boolean flujoTerminado;
+    private List<String[]> filas = new ArrayList<>();                     // Filas del bloque que se está entregando.
+    private Analizador abierto;                                           // Campo entre comillas abierto al final del bloque.
+    private int posicion;
+    private long filasEntregadas;
+    private long bloques;
+    private long reanalizados;
+
+    private ParallelCsvReader(FileChannel canal, InputStream flujo, String origen, Charset charset, char separador,
+                              int paralelismo) throws IOException {
+        this.canal = canal;
+        this.flujo = flujo;
+        this.origen = origen;
+        this.tamano = canal != null ? canal.size() : 0;
+        this.separador = separador;
+        if (flujo != null) {
+            primerBloque = leerDelFlujo();
+        }
+        if (charset == null) {
+            ByteBuffer muestra = flujo != null
+                    ? primerBloque
+                    : canal.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(tamano, TAMANO_BLOQUE));
+            charset = detectar(muestra);
+        }
+        verificar(charset, separador);
+        this.charset = charset;
+        long presupuesto = (long) Integer.getInteger("wikibase.csvLecturaAnticipada", LECTURA_ANTICIPADA_POR_DEFECTO) << 20;
+        this.maxEnCurso = (int) Math.max(1, Math.min(presupuesto / TAMANO_BLOQUE, 1024));
+        this.pool = new ForkJoinPool(Math.min(paralelismo, maxEnCurso));
+        programar();
+    }
+
+    // Método que abre un CSV con el juego de caracteres y el separador indicados, usando un hilo por procesador.
+    // Si el archivo es un .zip se lee el primer miembro .csv.
+    public static ParallelCsvReader abrir(Path ruta, Charset charset, char separador) throws IOException {
+        return abrir(ruta, charset, separador, MIEMBRO_POR_DEFECTO);
+    }
+
+    // Método que abre un CSV, comprimido o no, usando un hilo por procesador. Un archivo .gz se descomprime como flujo;
+    // de un .zip se lee, también como flujo, el primer miembro cuyo nombre (con su carpeta) cumple el patrón. Los
+    // demás archivos se proyectan en memoria. Si charset es null se detecta con el comienzo del archivo.
+    public static ParallelCsvReader abrir(Path ruta, Charset charset, char separador, Pattern miembro) throws IOException {
+        if (charset != null) {
+            verificar(charset, separador);
+        }
+        int paralelismo = Runtime.getRuntime().availableProcessors();
+        String nombre = ruta.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (nombre.endsWith(".gz") || nombre.endsWith(".zip")) {
+            InputStream entrada = new BufferedInputStream(Files.newInputStream(ruta), 1 << 16);
+            try {
+                String origen = ruta.toString();
+                InputStream flujo;
+                if (nombre.endsWith(".gz")) {
+                    flujo = new GZIPInputStream(entrada, 1 << 16);
+                } else {
+                    ZipInputStream zip = new ZipInputStream(entrada, StandardCharsets.ISO_8859_1);
+                    ZipEntry elegido = buscarMiembro(zip, miembro);
+                    if (elegido == null) {
+                        throw new IOException("El archivo " + ruta + " no tiene un miembro que cumpla " + miembro.pattern());
+                    }
+                    origen += "!" + elegido.getName();
+                    flujo = zip;
+                }
+                return new ParallelCsvReader(null, flujo, origen, charset, separador, paralelismo);
+            } catch (IOException | RuntimeException e) {
+                entrada.close();
+                throw e;
+            }
+        }
+        FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ);
+        try {
+            return new ParallelCsvReader(canal, null, ruta.toString(), charset, separador, paralelismo);
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    // Método auxiliar que avanza el .zip hasta el primer miembro que cumple el patrón. Los nombres se leen como
+    // ISO-8859-1 cuando el archivo no los marca como UTF-8, para que un nombre con tildes creado en Windows no
+    // interrumpa la lectura.
+    private static ZipEntry buscarMiembro(ZipInputStream zip, Pattern miembro) throws IOException {
+        for (ZipEntry entrada = zip.getNextEntry(); entrada != null; entrada = zip.getNextEntry()) {
+            if (!entrada.isDirectory() && miembro.matcher(entrada.getName()).matches()) {
+                return entrada;
+            }
+        }
+        return null;
+    }
+
+    // Método auxiliar que verifica que el juego de caracteres codifique el fin de línea, el separador y las comillas
+    // como en ASCII.
+    private static void verificar(Charset charset, char separador) {
+        byte[] esperados = {'\n', '\r', (byte) separador, (byte) COMILLA};
+        if (separador > 127 || !Arrays.equals(("\n\r" + separador + COMILLA).getBytes(charset), esperados)) {
+            throw new IllegalArgumentException("El juego de caracteres " + charset + " no es compatible con ASCII o el separador no es ASCII");
+        }
+    }
+
+    // Método que elige el juego de caracteres según una muestra del comienzo del archivo: UTF-8 si tiene la marca de
+    // orden de bytes o si la muestra es UTF-8 válido (lo que incluye el ASCII puro), y si no windows-1252. La muestra es
+    // el primer bloque, de modo que un archivo Latin-1 cuyos primeros 8 MB sean ASCII se leería como UTF-8; en ese
+    // caso hay que indicar el juego de caracteres.
+    static Charset detectar(ByteBuffer muestra) {
+        ByteBuffer bytes = muestra.duplicate();
+        int inicio = bytes.position();
+        if (bytes.remaining() >= 3 && (bytes.get(inicio) & 0xFF) == 0xEF && (bytes.get(inicio + 1) & 0xFF) == 0xBB
+                && (bytes.get(inicio + 2) & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharBuffer salida = CharBuffer.allocate(8192);
+        while (true) {
+            // Sin fin de entrada, una secuencia cortada al final de la muestra no cuenta como error.
+            CoderResult resultado = decoder.decode(bytes, salida, false);
+            if (resultado.isError()) {
+                return LATIN1;
+            }
+            if (resultado.isUnderflow()) {
+                return StandardCharsets.UTF_8;
+            }
+            salida.clear();
+        }
+    }
+
+    // Método que devuelve los campos de la siguiente fila, o null si no quedan filas. Si el bloque anterior terminó
+    // dentro de un campo entre comillas, el siguiente se vuelve a separar continuando ese campo; al final del archivo
+    // el campo se cierra, como en CSVReader.
+    @Override
+    public String[] readNext() throws IOException {
+        while (posicion == filas.size()) {
+            ForkJoinTask<Bloque> siguiente = enCurso.poll();
+            if (siguiente == null) {
+                if (abierto == null) {
+                    return null;
+                }
+                filas = new ArrayList<>();
+                filas.add(abierto.cerrar());
+                abierto = null;
+                posicion = 0;
+                break;
+            }
+            Bloque bloque;
+            try {
+                bloque = siguiente.join();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (abierto != null) {
+                bloque = separar(bloque.bytes, false, abierto);
+                reanalizados++;
+            }
+            filas = bloque.filas;
+            abierto = bloque.abierto;
+            posicion = 0;
+            programar();
+        }
+        filasEntregadas++;
+        // Se suelta la fila para que el bloque no la retenga una vez entregada.
+        return filas.set(posicion++, null);
+    }
+
+    // Método auxiliar que lanza bloques hasta tener el máximo en curso. Los límites de cada bloque se buscan aquí,
+    // en orden, leyendo sólo los bytes que siguen al tamaño nominal hasta el primer fin de línea. En un flujo, los
+    // bytes de cada bloque se leen aquí y el pool sólo los decodifica.
+    private void programar() throws IOException {
+        if (flujo != null) {
+            while (enCurso.size() < maxEnCurso && (primerBloque != null || !flujoTerminado)) {
+                ByteBuffer bytes = primerBloque != null ? primerBloque : leerDelFlujo();
+                boolean primero = primerBloque != null;
+                primerBloque = null;
+                if (bytes.hasRemaining()) {
+                    bloques++;
+                    enCurso.add(pool.submit(() -> separar(bytes, primero, new Analizador(separador))));
+                }
+            }
+            return;
+        }
+        while (enCurso.size() < maxEnCurso && siguienteBloque < tamano) {
+            long inicio = siguienteBloque;
+            long fin = finDeLinea(Math.min(tamano, inicio + TAMANO_BLOQUE));
+            boolean primero = inicio == 0;
+            siguienteBloque = fin;
+            bloques++;
+            enCurso.add(pool.submit(() -> {
+                try {
+                    return leerBloque(inicio, fin, primero);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+    }
+
+    // Método auxiliar que lee del flujo el siguiente bloque: al menos el tamaño nominal (salvo al final) y hasta el
+    // último fin de línea leído. Los bytes que siguen quedan para el bloque siguiente.
+    private ByteBuffer leerDelFlujo() throws IOException {
+        byte[] buffer = Arrays.copyOf(resto, Math.max(TAMANO_BLOQUE, resto.length) + TAMANO_BUSQUEDA);
+        int largo = resto.length;
+        int corte;
+        while (true) {
+            if (largo == buffer.length) {
+                if (buffer.length > Integer.MAX_VALUE / 2) {
+                    throw new IOException("Línea de más de 1 GB en " + origen);
+                }
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int leidos = flujo.read(buffer, largo, buffer.length - largo);
+            if (leidos < 0) {
+                flujoTerminado = true;
+                corte = largo;
+                break;
+            }
+            largo += leidos;
+            if (largo >= TAMANO_BLOQUE) {
+                corte = ultimoFinDeLinea(buffer, largo);
+                if (corte > 0) {
+                    break;
+                }
+            }
+        }
+        resto = Arrays.copyOfRange(buffer, corte, largo);
+        siguienteBloque += corte;
+        return ByteBuffer.wrap(buffer, 0, corte);
+    }
+
+    // Método auxiliar que devuelve la posición siguiente al último fin de línea de los bytes indicados, o 0 si no hay.
+    private static int ultimoFinDeLinea(byte[] bytes, int largo) {
+        for (int i = largo - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    // Método auxiliar que devuelve la posición siguiente al primer fin de línea desde la posición indicada (o el fin
+    // del archivo si no hay más).
+    private long finDeLinea(long desde) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(TAMANO_BUSQUEDA);
+        long posicionLectura = desde;
+        while (posicionLectura < tamano) {
+            buffer.clear();
+            int leidos = canal.read(buffer, posicionLectura);
+            if (leidos <= 0) {
+                break;
+            }
+            for (int i = 0; i < leidos; i++) {
+                if (buffer.get(i) == '\n') {
+                    return posicionLectura + i + 1;
+                }
+            }
+            posicionLectura += leidos;
+        }
+        return tamano;
+    }
+
+    // Método auxiliar que proyecta un bloque del archivo y lo separa en filas.
+    private Bloque leerBloque(long inicio, long fin, boolean primero) throws IOException {
+        if (fin - inicio > Integer.MAX_VALUE) {
+            throw new IOException("Línea de más de 2 GB en el CSV a partir del byte " + inicio);
+        }
+        return separar(canal.map(FileChannel.MapMode.READ_ONLY, inicio, fin - inicio), primero, new Analizador(separador));
+    }
+
+    // Clase que representa un bloque separado: sus bytes (para volver a separarlo), sus filas completas y el
+    // analizador con el campo entre comillas que quedó abierto al final (null si terminó fuera de comillas).
+    private static final class Bloque {
+        final ByteBuffer bytes;
+        final List<String[]> filas;
+        final Analizador abierto;
+
+        Bloque(ByteBuffer bytes, List<String[]> filas, Analizador abierto) {
+            this.bytes = bytes;
+            this.filas = filas;
+            this.abierto = abierto;
+        }
+    }
+
+    // Método auxiliar que decodifica un bloque (los bytes no válidos se reemplazan, como hace FileReader) y lo
+    // separa en filas con el analizador indicado, que puede traer un campo abierto del bloque anterior.
+    private Bloque separar(ByteBuffer bytes, boolean primero, Analizador analizador) throws CharacterCodingException {
+        CharBuffer decodificado = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .decode(bytes.duplicate());
+        char[] texto = decodificado.array();
+        int longitud = decodificado.limit();
+        int desde = 0;
+        if (primero && longitud > 0 && texto[0] == '\uFEFF') {
+            desde = 1;
+        }
+        List<String[]> resultado = new ArrayList<>();
+        while (desde < longitud) {
+            int hasta = desde;
+            while (hasta < longitud && texto[hasta] != '\n') {
+                hasta++;
+            }
+            int finLinea = hasta > desde && texto[hasta - 1] == '\r' ? hasta - 1 : hasta;
+            String[] fila = analizador.linea(texto, desde, finLinea);
+            if (fila != null) {
+                resultado.add(fila);
+            }
+            desde = hasta + 1;
+        }
+        return new Bloque(bytes, resultado, analizador.pendiente() ? analizador : null);
+    }
+
+    // Clase que separa las líneas en campos con las mismas reglas que el analizador por defecto de opencsv (CSVParser
+    // con comillas dobles, escape '\\' y espacios previos a las comillas ignorados), para que las filas sean idénticas
+    // a las de CSVReader: "" dentro de un campo es una comilla, una comilla en medio de un campo sin comillas se
+    // conserva, '\\' seguido de comilla, '\\' o separador entrega ese carácter (y si no, se descarta) y un campo entre
+    // comillas que no se cierra continúa en la línea siguiente.
+    static final class Analizador {
+        private static final char ESCAPE = '\\';
+
+        private final char separador;
+        private final List<String> campos = new ArrayList<>();
+        private final StringBuilder campo = new StringBuilder();
+        private boolean entreComillas;
+        private boolean enCampo;
+
+        Analizador(char separador) {
+            this.separador = separador;
+        }
+
+        // Método que procesa una línea y devuelve la fila completa, o null si un campo entre comillas continúa en la
+        // línea siguiente.
+        String[] linea(char[] texto, int desde, int hasta) {
+            for (int i = desde; i < hasta; i++) {
+                char c = texto[i];
+                if (c == ESCAPE) {
+                    enCampo = true;
+                    if (i + 1 < hasta && (texto[i + 1] == COMILLA || texto[i + 1] == ESCAPE || texto[i + 1] == separador)) {
+                        campo.append(texto[++i]);
+                    }
+                } else if (c == COMILLA) {
+                    if ((entreComillas || enCampo) && i + 1 < hasta && texto[i + 1] == COMILLA) {
+                        campo.append(texto[++i]);
+                    } else {
+                        entreComillas = !entreComillas;
+                        // Comilla en medio de un campo (no junto a un separador ni al comienzo de la línea).
+                        if (i - desde > 2 && texto[i - 1] != separador && i + 1 < hasta && texto[i + 1] != separador) {
+                            if (campo.length() > 0 && esBlanco(campo)) {
+                                campo.setLength(0);
+                            } else {
+                                campo.append(c);
+                            }
+                        }
+                    }
+                    enCampo = !enCampo;
+                } else if (c == separador && !entreComillas) {
+                    campos.add(campo.toString());
+                    campo.setLength(0);
+                    enCampo = false;
+                } else {
+                    // Se copia de una vez el tramo de caracteres comunes.
+                    int fin = i + 1;
+                    while (fin < hasta && texto[fin] != ESCAPE && texto[fin] != COMILLA && texto[fin] != separador) {
+                        fin++;
+                    }
+                    campo.append(texto, i, fin - i);
+                    i = fin - 1;
+                    enCampo = true;
+                }
+            }
+            if (entreComillas) {
+                campo.append('\n');
+                return null;
+            }
+            return cerrar();
+        }
+
+        // Método que indica si quedó un campo entre comillas sin cerrar.
+        boolean pendiente() {
+            return entreComillas;
+        }
+
+        // Método que termina la fila en curso y la devuelve.
+        String[] cerrar() {
+            campos.add(campo.toString());
+            String[] fila = campos.toArray(new String[0]);
+            campos.clear();
+            campo.setLength(0);
+            entreComillas = false;
+            enCampo = false;
+            return fila;
+        }
+
+        private static boolean esBlanco(CharSequence texto) {
+            for (int i = 0; i < texto.length(); i++) {
+                if (!Character.isWhitespace(texto.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Método que devuelve un resumen de la lectura.
+    @Override
+    public String resumen() {
+        return "CSV " + origen + " (" + charset + "): " + filasEntregadas + " filas entregadas, " + bloques
+                + " bloques leídos de " + (siguienteBloque >> 20) + " MB" + (flujo != null ? " descomprimidos" : "")
+                + (reanalizados > 0 ? ", " + reanalizados + " bloques vueltos a separar" : "");
+    }
+
+    // Método para obtener el juego de caracteres con que se lee el archivo (el indicado o el detectado).
+    public Charset getCharset() {
+        return charset;
+    }
+
+    // Método que detiene los bloques en curso y cierra el archivo.
+    @Override
+    public void close() throws IOException {
+        pool.shutdownNow();
+        if (flujo != null) {
+            flujo.close();
+        } else {
+            canal.close();
+        }
+    }
+
+    // Método que convierte el lector en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        return "ParallelCsvReader{origen=" + origen + ", charset=" + charset + ", separador='" + separador
+                + "', bloques=" + bloques + "}";
+    }
+}
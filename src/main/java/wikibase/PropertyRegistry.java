@@ -0,0 +1,137 @@
+// Paquete que contiene el registro de propiedades de Wikibase usado durante la carga.
+package wikibase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+// Clase que resuelve una sola vez, al iniciar, los IDs de todas las propiedades nombradas en los diccionarios
+// de mapeo, y verifica su tipo de dato contra la wiki. Una vez construido el registro es de sólo lectura,
+// por lo que puede compartirse entre hilos sin sincronización.
+public final class PropertyRegistry {
+
+    // Número máximo de IDs por solicitud de wbgetentities.
+    private static final int TAMANO_LOTE = 50;
+
+    // Patrón de los nombres que ya son IDs de propiedad (por ejemplo, "P37").
+    private static final Pattern ID_PROPIEDAD = Pattern.compile("P\\d+");
+
+    private final Map<String, String> ids;           // Nombre de la propiedad -> ID en Wikibase.
+    private final Map<String, String> datatypes;     // Nombre de la propiedad -> tipo de dato en la wiki.
+    private final List<String> discrepancias;        // Propiedades cuyo tipo en la wiki no coincide con el esperado.
+
+    private PropertyRegistry(Map<String, String> ids, Map<String, String> datatypes, List<String> discrepancias) {
+        this.ids = Collections.unmodifiableMap(ids);
+        this.datatypes = Collections.unmodifiableMap(datatypes);
+        this.discrepancias = Collections.unmodifiableList(discrepancias);
+    }
+
+    // Método que construye el registro a partir de un mapa nombre -> tipo de dato esperado.
+    // Las búsquedas por etiqueta se lanzan todas en paralelo y los tipos de dato se consultan en lotes.
+    // Lanza IOException si alguna propiedad no existe en la wiki; las diferencias de tipo se informan como advertencias.
+    public static PropertyRegistry resolver(WikibaseAsyncManager asyncManager, Map<String, String> tiposEsperados) throws IOException {
+        return resolver(asyncManager, tiposEsperados, Collections.emptyMap());
+    }
+
+    // Método igual al anterior, pero que toma los IDs ya conocidos (por ejemplo, los del manifiesto de IDs) sin
+    // buscarlos por etiqueta; sólo se busca lo que no esté en "conocidos". Los tipos de dato se verifican igual.
+    public static PropertyRegistry resolver(WikibaseAsyncManager asyncManager, Map<String, String> tiposEsperados,
+                                            Map<String, String> conocidos) throws IOException {
+        // Lanzar en paralelo la búsqueda de cada nombre que no sea ya un ID ni esté entre los conocidos.
+        Map<String, CompletableFuture<String>> busquedas = new LinkedHashMap<>();
+        for (String nombre : tiposEsperados.keySet()) {
+            String conocido = ID_PROPIEDAD.matcher(nombre).matches() ? nombre : conocidos.get(nombre);
+            busquedas.put(nombre, conocido != null
+                    ? CompletableFuture.completedFuture(conocido)
+                    : asyncManager.getEntityByLabel(nombre, "property", "es"));
+        }
+        WikibaseAsyncManager.esperar(CompletableFuture.allOf(busquedas.values().toArray(new CompletableFuture<?>[0])));
+
+        Map<String, String> ids = new LinkedHashMap<>();
+        List<String> faltantes = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<String>> busqueda : busquedas.entrySet()) {
+            String id = busqueda.getValue().join();
+            if (id == null) {
+                faltantes.add(busqueda.getKey());
+            } else {
+                ids.put(busqueda.getKey(), id);
+            }
+        }
+
+        // Consultar los tipos de dato de todas las propiedades encontradas, en lotes paralelos.
+        List<String> listaIds = new ArrayList<>(invertir(ids).keySet());
+        List<CompletableFuture<Map<String, String>>> lotes = new ArrayList<>();
+        for (int i = 0; i < listaIds.size(); i += TAMANO_LOTE) {
+            lotes.add(asyncManager.getPropertyDatatypes(listaIds.subList(i, Math.min(i + TAMANO_LOTE, listaIds.size()))));
+        }
+        WikibaseAsyncManager.esperar(CompletableFuture.allOf(lotes.toArray(new CompletableFuture<?>[0])));
+        Map<String, String> tiposPorId = new LinkedHashMap<>();
+        for (CompletableFuture<Map<String, String>> lote : lotes) {
+            tiposPorId.putAll(lote.join());
+        }
+
+        Map<String, String> datatypes = new LinkedHashMap<>();
+        List<String> discrepancias = new ArrayList<>();
+        for (Map.Entry<String, String> entrada : ids.entrySet()) {
+            String nombre = entrada.getKey();
+            String tipo = tiposPorId.get(entrada.getValue());
+            if (tipo == null) {
+                // El ID no existe en la wiki (por ejemplo, un "P37" escrito a mano que no fue creado).
+                faltantes.add(nombre);
+                continue;
+            }
+            datatypes.put(nombre, tipo);
+            String esperado = tiposEsperados.get(nombre);
+            if (esperado != null && !esperado.equals(tipo)) {
+                discrepancias.add(nombre + " (" + entrada.getValue() + "): se esperaba " + esperado + " y la wiki tiene " + tipo);
+            }
+        }
+        if (!faltantes.isEmpty()) {
+            throw new IOException("Propiedades no encontradas en Wikibase: " + faltantes);
+        }
+        for (String discrepancia : discrepancias) {
+            System.err.println("Advertencia: tipo de dato distinto en la propiedad " + discrepancia);
+        }
+        return new PropertyRegistry(ids, datatypes, discrepancias);
+    }
+
+    // Método para obtener el ID de una propiedad por su nombre (null si no está registrada).
+    public String getId(String nombre) {
+        return ids.get(nombre);
+    }
+
+    // Método para obtener el tipo de dato que la propiedad tiene en la wiki (null si no está registrada).
+    public String getDatatype(String nombre) {
+        return datatypes.get(nombre);
+    }
+
+    // Método para obtener las diferencias de tipo encontradas al construir el registro.
+    public List<String> getDiscrepancias() {
+        return discrepancias;
+    }
+
+    // Método para obtener el número de propiedades registradas.
+    public int size() {
+        return ids.size();
+    }
+
+    // Método auxiliar que invierte un mapa nombre -> ID en ID -> nombre (elimina IDs repetidos).
+    private static Map<String, String> invertir(Map<String, String> ids) {
+        Map<String, String> invertido = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entrada : ids.entrySet()) {
+            invertido.putIfAbsent(entrada.getValue(), entrada.getKey());
+        }
+        return invertido;
+    }
+
+    // Método que convierte el registro en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        return "PropertyRegistry" + ids;
+    }
+}
@@ -0,0 +1,651 @@
+// Paquete que contiene la carga de ítems desde archivos RDF (Turtle o N-Triples).
+package wikibase;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.vocabulary.XSD;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+
+// Clase que carga en Wikibase los sujetos de un archivo Turtle o N-Triples (.ttl, .nt, también comprimidos en .gz).
+// El archivo se lee como flujo con el analizador de rdf4j (Rio) y las tripletas se agrupan por sujeto; cada sujeto se
+// escribe como un ítem con una sola edición wbeditentity (etiquetas, descripciones, alias y declaraciones juntos)
+// según el mapeo de predicados. Sólo se guardan en memoria los sujetos abiertos, a lo sumo -Dwikibase.rdfSujetos
+// (10000 por defecto): en Turtle las tripletas de un sujeto vienen juntas, y en un N-Triples desordenado el sujeto
+// usado hace más tiempo se escribe para dejar lugar (si reaparece, se edita el mismo ítem). Un sujeto se identifica
+// por su IRI si es la de una entidad de Wikibase (.../entity/Q123), por el ítem que se le asignó antes en la carga o
+// por su etiqueta exacta; si no se encuentra se crea. Un objeto IRI se convierte en un valor de ítem con las mismas
+// reglas, sin buscar etiquetas; si apunta a un sujeto que todavía no se escribe, la declaración se agrega en una
+// segunda pasada al terminar el archivo. Los ítems asignados se guardan en un LongLongMap (huella de 64 bits del
+// sujeto -> número del ítem), que nunca descarta una asignación, y las declaraciones pendientes se escriben en un
+// archivo temporal, por lo que la memoria no crece con ellas.
+public final class RdfEntityLoader {
+
+    // Recurso con el mapeo por defecto (etiquetas, descripciones y alias de los vocabularios habituales).
+    static final String RECURSO_MAPEO = "/wikibase/rdf_mapeo.txt";
+
+    private static final int SUJETOS_POR_DEFECTO = 10000;
+    private static final int MAX_DECLARACIONES = 200;       // Declaraciones por edición; con más se escribe antes.
+    private static final String IDIOMA = "es";
+    private static final Pattern ENTIDAD = Pattern.compile(".*/(Q[1-9]\\d*)");
+    private static final Pattern PROPIEDAD = Pattern.compile("P[1-9]\\d*");
+    private static final Set<String> TIPOS = Set.of("string", "quantity", "time", "globe-coordinate", "wikibase-item");
+    private static final String WKT = "http://www.opengis.net/ont/geosparql#wktLiteral";
+    private static final Pattern FECHA = Pattern.compile("(\\d{4})(?:-(\\d{2})(?:-(\\d{2}))?)?(?:T.*|Z|[+-]\\d{2}:\\d{2})?");
+    private static final Pattern PUNTO = Pattern.compile("(?i)\\s*(?:<[^>]*>\\s*)?POINT\\s*\\(\\s*(\\S+)\\s+(\\S+)\\s*\\)\\s*");
+
+    private final SessionPool sesiones;
+    private final Map<String, Destino> mapeo;
+    private final long maxEntidades;
+    private final int maxSujetos;
+    private final LinkedHashMap<Resource, Sujeto> abiertos = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongLongMap asignados = new LongLongMap(1024);   // Huella del sujeto -> número del ítem escrito en esta carga.
+    private Path archivoPendientes;                                // Archivo temporal con las declaraciones sin resolver.
+    private DataOutputStream pendientes;                           // Registros {ítem, propiedad, huella del objeto}.
+    private long referenciasPendientes;
+    private long tripletas;
+    private long sinMapeo;
+    private long creados;
+    private long editados;
+    private long sinCambios;
+    private long sinEtiqueta;
+    private long declaraciones;
+    private long valoresNoValidos;
+    private long referenciasSinResolver;
+    private long referenciasResueltas;
+
+    // Clase que representa el destino en Wikibase de un predicado: etiqueta, descripción, alias o declaración.
+    static final class Destino {
+        final String campo;             // "etiqueta", "descripcion", "alias" o "declaracion".
+        final String propiedad;         // ID de la propiedad de la declaración.
+        final String tipo;              // Tipo del valor, o null para deducirlo del objeto.
+
+        Destino(String campo, String propiedad, String tipo) {
+            this.campo = campo;
+            this.propiedad = propiedad;
+            this.tipo = tipo;
+        }
+    }
+
+    // Clase que acumula lo leído de un sujeto hasta escribirlo.
+    private static final class Sujeto {
+        final Resource recurso;
+        final Map<String, String> etiquetas = new LinkedHashMap<>();        // Idioma -> etiqueta.
+        final Map<String, String> descripciones = new LinkedHashMap<>();    // Idioma -> descripción.
+        final List<String[]> alias = new ArrayList<>();                     // {idioma, alias}.
+        final List<Object[]> valores = new ArrayList<>();                   // {destino, objeto} de las declaraciones.
+
+        Sujeto(Resource recurso) {
+            this.recurso = recurso;
+        }
+
+        boolean vacio() {
+            return etiquetas.isEmpty() && descripciones.isEmpty() && alias.isEmpty() && valores.isEmpty();
+        }
+    }
+
+    private RdfEntityLoader(SessionPool sesiones, Map<String, Destino> mapeo, long maxEntidades, int maxSujetos) {
+        this.sesiones = sesiones;
+        this.mapeo = mapeo;
+        this.maxEntidades = maxEntidades;
+        this.maxSujetos = maxSujetos;
+    }
+
+    // Método que indica si el archivo de entrada es RDF según su extensión.
+    public static boolean esRdf(String archivo) {
+        String nombre = archivo.toLowerCase(Locale.ROOT);
+        if (nombre.endsWith(".gz")) {
+            nombre = nombre.substring(0, nombre.length() - 3);
+        }
+        return nombre.endsWith(".ttl") || nombre.endsWith(".nt");
+    }
+
+    // Método que carga el archivo indicado escribiendo a lo sumo maxEntidades ítems. El mapeo se lee de
+    // -Dwikibase.rdfMapeo=<archivo> o del recurso por defecto; las propiedades pueden indicarse por su etiqueta en el
+    // manifiesto. Devuelve el cargador para consultar su resumen.
+    public static RdfEntityLoader cargar(Path ruta, SessionPool sesiones, IdManifest manifiesto, long maxEntidades) throws IOException {
+        Map<String, Destino> mapeo = cargarMapeo(System.getProperty("wikibase.rdfMapeo"), manifiesto::propiedad);
+        RdfEntityLoader cargador = new RdfEntityLoader(sesiones, mapeo, maxEntidades,
+                Integer.getInteger("wikibase.rdfSujetos", SUJETOS_POR_DEFECTO));
+        long inicio = System.currentTimeMillis();
+        String nombre = ruta.getFileName().toString().toLowerCase(Locale.ROOT);
+        InputStream entrada = Files.newInputStream(ruta);
+        if (nombre.endsWith(".gz")) {
+            entrada = new GZIPInputStream(entrada, 1 << 16);
+            nombre = nombre.substring(0, nombre.length() - 3);
+        }
+        RDFParser analizador = Rio.createParser(nombre.endsWith(".nt") ? RDFFormat.NTRIPLES : RDFFormat.TURTLE);
+        analizador.setRDFHandler(new AbstractRDFHandler() {
+            @Override
+            public void handleStatement(Statement tripleta) {
+                try {
+                    if (!cargador.tripleta(tripleta)) {
+                        throw new Detencion();
+                    }
+                } catch (IOException e) {
+                    throw new RDFHandlerException(e);
+                }
+            }
+        });
+        try (InputStream in = entrada) {
+            analizador.parse(in, ruta.toUri().toString());
+        } catch (Detencion e) {
+            // Se escribió el máximo de ítems: el resto del archivo no se lee.
+        } catch (RDFParseException e) {
+            throw new IOException("RDF no válido en " + ruta + ": " + e.getMessage(), e);
+        } catch (RDFHandlerException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        try {
+            cargador.vaciar();
+            cargador.resolverPendientes();
+        } finally {
+            cargador.descartarPendientes();
+        }
+        System.out.println("Carga RDF de " + ruta + " en " + (System.currentTimeMillis() - inicio) + " ms");
+        return cargador;
+    }
+
+    // Clase que detiene el análisis del archivo cuando ya se escribió el máximo de ítems.
+    private static final class Detencion extends RDFHandlerException {
+        private static final long serialVersionUID = 1L;
+
+        Detencion() {
+            super("Máximo de ítems escritos");
+        }
+    }
+
+    // Método que lee el mapeo de predicados. Cada línea tiene el predicado (IRI entre <> o nombre con un prefijo
+    // declarado con @prefix), el destino (etiqueta, descripcion, alias, un ID de propiedad o la etiqueta de una
+    // propiedad, que se traduce con resolverPropiedad) y, opcionalmente al final, el tipo del valor.
+    static Map<String, Destino> cargarMapeo(String ruta, Function<String, String> resolverPropiedad) throws IOException {
+        Map<String, String> prefijos = new HashMap<>();
+        Map<String, Destino> mapeo = new HashMap<>();
+        try (InputStream in = ruta != null ? new FileInputStream(ruta) : RdfEntityLoader.class.getResourceAsStream(RECURSO_MAPEO)) {
+            if (in == null) {
+                throw new IOException("No se encontró el recurso " + RECURSO_MAPEO);
+            }
+            BufferedReader lector = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            int numero = 0;
+            for (String linea = lector.readLine(); linea != null; linea = lector.readLine()) {
+                numero++;
+                linea = linea.trim();
+                if (linea.isEmpty() || linea.startsWith("#")) {
+                    continue;
+                }
+                String[] partes = linea.split("\\s+");
+                if (partes[0].equalsIgnoreCase("@prefix") && partes.length >= 3) {
+                    prefijos.put(partes[1].substring(0, partes[1].length() - 1), sinCorchetes(partes[2]));
+                    continue;
+                }
+                if (partes.length < 2) {
+                    throw new IllegalArgumentException("Línea " + numero + " del mapeo RDF sin destino: " + linea);
+                }
+                String predicado = expandir(partes[0], prefijos, numero);
+                int fin = partes.length;
+                String tipo = null;
+                if (fin > 2 && TIPOS.contains(partes[fin - 1])) {
+                    tipo = partes[--fin];
+                }
+                String destino = String.join(" ", Arrays.copyOfRange(partes, 1, fin));
+                switch (destino.toLowerCase(Locale.ROOT)) {
+                    case "etiqueta":
+                    case "descripcion":
+                    case "alias":
+                        mapeo.put(predicado, new Destino(destino.toLowerCase(Locale.ROOT), null, null));
+                        break;
+                    default:
+                        String propiedad = PROPIEDAD.matcher(destino).matches() ? destino : resolverPropiedad.apply(destino);
+                        mapeo.put(predicado, new Destino("declaracion", propiedad, tipo));
+                }
+            }
+        }
+        return mapeo;
+    }
+
+    private static String expandir(String nombre, Map<String, String> prefijos, int numero) {
+        if (nombre.startsWith("<")) {
+            return sinCorchetes(nombre);
+        }
+        int dosPuntos = nombre.indexOf(':');
+        String espacio = dosPuntos < 0 ? null : prefijos.get(nombre.substring(0, dosPuntos));
+        if (espacio == null) {
+            throw new IllegalArgumentException("Línea " + numero + " del mapeo RDF: prefijo no declarado en " + nombre);
+        }
+        return espacio + nombre.substring(dosPuntos + 1);
+    }
+
+    private static String sinCorchetes(String iri) {
+        return iri.startsWith("<") && iri.endsWith(">") ? iri.substring(1, iri.length() - 1) : iri;
+    }
+
+    // Método auxiliar que agrega una tripleta a su sujeto. Si hay demasiados sujetos abiertos se escribe el usado hace
+    // más tiempo, y un sujeto con muchas declaraciones se escribe antes de seguir. Devuelve false cuando ya se escribió
+    // el máximo de ítems, para que la lectura termine.
+    private boolean tripleta(Statement tripleta) throws IOException {
+        tripletas++;
+        Destino destino = mapeo.get(tripleta.getPredicate().stringValue());
+        if (destino == null) {
+            sinMapeo++;
+            return true;
+        }
+        Sujeto sujeto = abiertos.get(tripleta.getSubject());
+        if (sujeto == null) {
+            if (abiertos.size() >= maxSujetos) {
+                Iterator<Sujeto> antiguos = abiertos.values().iterator();
+                Sujeto antiguo = antiguos.next();
+                antiguos.remove();
+                escribir(antiguo);
+            }
+            sujeto = new Sujeto(tripleta.getSubject());
+            abiertos.put(sujeto.recurso, sujeto);
+        }
+        agregar(sujeto, destino, tripleta.getObject());
+        if (sujeto.valores.size() >= MAX_DECLARACIONES) {
+            abiertos.remove(sujeto.recurso);
+            escribir(sujeto);
+        }
+        return creados + editados + sinCambios < maxEntidades;
+    }
+
+    private static void agregar(Sujeto sujeto, Destino destino, Value objeto) {
+        if (destino.campo.equals("declaracion")) {
+            sujeto.valores.add(new Object[] {destino, objeto});
+            return;
+        }
+        if (!(objeto instanceof Literal)) {
+            return;
+        }
+        Literal literal = (Literal) objeto;
+        String idioma = literal.getLanguage().orElse(IDIOMA).toLowerCase(Locale.ROOT);
+        String texto = literal.getLabel().trim();
+        if (texto.isEmpty()) {
+            return;
+        }
+        if (destino.campo.equals("descripcion")) {
+            sujeto.descripciones.putIfAbsent(idioma, texto);
+        } else if (destino.campo.equals("alias") || sujeto.etiquetas.putIfAbsent(idioma, texto) != null) {
+            // Las etiquetas adicionales en un mismo idioma se guardan como alias.
+            if (!texto.equals(sujeto.etiquetas.get(idioma))
+                    && sujeto.alias.stream().noneMatch(a -> a[0].equals(idioma) && a[1].equals(texto))) {
+                sujeto.alias.add(new String[] {idioma, texto});
+            }
+        }
+    }
+
+    // Método auxiliar que escribe los sujetos que quedan abiertos al terminar el archivo.
+    private void vaciar() throws IOException {
+        Iterator<Sujeto> pendientes = abiertos.values().iterator();
+        while (pendientes.hasNext() && creados + editados + sinCambios < maxEntidades) {
+            Sujeto sujeto = pendientes.next();
+            pendientes.remove();
+            escribir(sujeto);
+        }
+        abiertos.clear();
+    }
+
+    // Método auxiliar que escribe un sujeto: busca su ítem, convierte sus valores y envía una sola edición con todo
+    // (en un ítem existente sólo las declaraciones y alias que faltan).
+    private void escribir(Sujeto sujeto) throws IOException {
+        if (sujeto.vacio() || creados + editados + sinCambios >= maxEntidades) {
+            return;
+        }
+        WikibaseManager manager = sesiones.siguiente();
+        String clave = clave(sujeto.recurso);
+        String etiqueta = sujeto.etiquetas.containsKey(IDIOMA) ? sujeto.etiquetas.get(IDIOMA)
+                : sujeto.etiquetas.values().stream().findFirst().orElse(null);
+        String itemId = item(sujeto.recurso);
+        if (itemId == null && etiqueta != null) {
+            LabelBloomFilter filtro = LabelBloomFilter.compartido();
+            if (filtro == null || filtro.puedeExistir(etiqueta)) {
+                itemId = manager.getEntityByExactLabel(etiqueta, "item", sujeto.etiquetas.containsKey(IDIOMA) ? IDIOMA
+                        : sujeto.etiquetas.keySet().iterator().next());
+            }
+        }
+        if (itemId == null && etiqueta == null) {
+            sinEtiqueta++;
+            return;
+        }
+
+        // Declaraciones del sujeto, sin repetir el mismo valor de una propiedad y, en un ítem existente, sin las que
+        // ya tiene. Las que apuntan a un sujeto aún no escrito quedan para la segunda pasada.
+        Map<String, Object[]> nuevas = new LinkedHashMap<>();
+        List<String[]> sinResolver = new ArrayList<>();
+        for (Object[] valor : sujeto.valores) {
+            Destino destino = (Destino) valor[0];
+            if (valor[1] instanceof Resource && !("string".equals(destino.tipo) && valor[1] instanceof IRI)
+                    && item((Resource) valor[1]) == null) {
+                sinResolver.add(new String[] {destino.propiedad, clave((Resource) valor[1])});
+                continue;
+            }
+            WikibaseValue convertido = convertir(destino.tipo, (Value) valor[1]);
+            if (convertido == null) {
+                continue;
+            }
+            String firma = destino.propiedad + "|" + convertido.datatype() + "|" + convertido.toJson();
+            if (nuevas.containsKey(firma) || itemId != null && manager.statementExists(itemId, destino.propiedad, convertido)) {
+                continue;
+            }
+            nuevas.put(firma, new Object[] {destino.propiedad, convertido});
+        }
+
+        boolean nuevo = itemId == null;
+        if (!nuevo && nuevas.isEmpty() && sujeto.alias.isEmpty()) {
+            sinCambios++;
+            asignados.put(huellaSujeto(clave), HubEdgeManager.numero(itemId));
+            posponer(itemId, sinResolver);
+            return;
+        }
+        String datos = nuevo
+                ? datosEntidad(sujeto.etiquetas, sujeto.descripciones, sujeto.alias, nuevas.values())
+                : datosEntidad(Map.of(), Map.of(), sujeto.alias, nuevas.values());
+        itemId = manager.editEntity(itemId, datos);
+        declaraciones += nuevas.size();
+        for (String valor : sujeto.etiquetas.values()) {
+            WikibaseManager.registrarEtiqueta(valor);
+        }
+        for (String[] alias : sujeto.alias) {
+            WikibaseManager.registrarEtiqueta(alias[1]);
+        }
+        if (nuevo) {
+            creados++;
+        } else {
+            editados++;
+        }
+        asignados.put(huellaSujeto(clave), HubEdgeManager.numero(itemId));
+        posponer(itemId, sinResolver);
+    }
+
+    // Método auxiliar que agrega al archivo de pendientes las declaraciones del ítem que apuntan a sujetos aún no
+    // escritos ({propiedad, sujeto}), creándolo la primera vez.
+    private void posponer(String itemId, List<String[]> sinResolver) throws IOException {
+        if (sinResolver.isEmpty()) {
+            return;
+        }
+        if (pendientes == null) {
+            archivoPendientes = Files.createTempFile("rdf-pendientes", ".bin");
+            pendientes = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(archivoPendientes), 1 << 16));
+        }
+        long item = HubEdgeManager.numero(itemId);
+        for (String[] referencia : sinResolver) {
+            pendientes.writeLong(item);
+            pendientes.writeLong(Long.parseLong(referencia[0].substring(1)));
+            pendientes.writeLong(huellaSujeto(referencia[1]));
+            referenciasPendientes++;
+        }
+    }
+
+    // Método auxiliar que, al terminar el archivo, agrega a cada ítem escrito las declaraciones que apuntaban a sujetos
+    // que aún no se escribían, con una edición por grupo de registros consecutivos del mismo ítem. Las que siguen sin
+    // ítem (el sujeto no se escribió) se cuentan como referencias sin resolver.
+    private void resolverPendientes() throws IOException {
+        if (pendientes == null) {
+            return;
+        }
+        pendientes.close();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(archivoPendientes), 1 << 16))) {
+            long actual = 0;
+            Map<String, Object[]> nuevas = new LinkedHashMap<>();
+            for (long i = 0; i < referenciasPendientes; i++) {
+                long item = in.readLong();
+                String propiedad = "P" + in.readLong();
+                long objetivo = asignados.get(in.readLong(), 0);
+                if (item != actual) {
+                    escribirPendientes(actual, nuevas);
+                    actual = item;
+                }
+                if (objetivo == 0) {
+                    referenciasSinResolver++;
+                    continue;
+                }
+                WikibaseValue convertido = WikibaseValue.ItemRef.parse("Q" + objetivo);
+                String firma = propiedad + "|" + convertido.toJson();
+                if (!nuevas.containsKey(firma) && !sesiones.siguiente().statementExists("Q" + item, propiedad, convertido)) {
+                    nuevas.put(firma, new Object[] {propiedad, convertido});
+                }
+            }
+            escribirPendientes(actual, nuevas);
+        }
+    }
+
+    // Método auxiliar que agrega al ítem, en una sola edición, las declaraciones resueltas acumuladas y las descarta.
+    private void escribirPendientes(long item, Map<String, Object[]> nuevas) throws IOException {
+        if (nuevas.isEmpty()) {
+            return;
+        }
+        sesiones.siguiente().editEntity("Q" + item, datosEntidad(Map.of(), Map.of(), List.of(), nuevas.values()));
+        declaraciones += nuevas.size();
+        referenciasResueltas += nuevas.size();
+        nuevas.clear();
+    }
+
+    // Método auxiliar que cierra y borra el archivo de pendientes, si se creó.
+    private void descartarPendientes() throws IOException {
+        if (pendientes != null) {
+            pendientes.close();
+            Files.deleteIfExists(archivoPendientes);
+            pendientes = null;
+        }
+    }
+
+    // Método auxiliar que devuelve la huella de 64 bits con que se guarda un sujeto (nunca 0, que el mapa reserva).
+    static long huellaSujeto(String clave) {
+        long huella = FingerprintIndex.huella(clave)[0];
+        return huella != 0 ? huella : 1;
+    }
+
+    // Método auxiliar que devuelve el ítem de un recurso sin consultar la wiki: el de su IRI si es una entidad de
+    // Wikibase o el asignado antes en esta carga. Devuelve null si no se conoce.
+    private String item(Resource recurso) {
+        if (recurso instanceof IRI) {
+            Matcher entidad = ENTIDAD.matcher(recurso.stringValue());
+            if (entidad.matches()) {
+                return entidad.group(1);
+            }
+        }
+        long numero = asignados.get(huellaSujeto(clave(recurso)), 0);
+        return numero != 0 ? "Q" + numero : null;
+    }
+
+    private static String clave(Resource recurso) {
+        return recurso instanceof BNode ? "_:" + ((BNode) recurso).getID() : recurso.stringValue();
+    }
+
+    // Método auxiliar que convierte el objeto de una tripleta en un valor de Wikibase del tipo indicado o, si no se
+    // indicó, del que corresponde a su tipo de dato (números -> cantidad, fechas -> fecha, WKT -> coordenada,
+    // IRI -> ítem, el resto -> texto). Devuelve null si el valor no es válido. Un objeto IRI debe tener ítem conocido.
+    private WikibaseValue convertir(String tipo, Value objeto) {
+        if (objeto instanceof Resource) {
+            if ("string".equals(tipo) && objeto instanceof IRI) {
+                return new WikibaseValue.StringValue(objeto.stringValue());
+            }
+            return WikibaseValue.ItemRef.parse(item((Resource) objeto));
+        }
+        Literal literal = (Literal) objeto;
+        String datatype = literal.getDatatype().stringValue();
+        if (tipo == null) {
+            tipo = tipoDe(datatype);
+        }
+        String texto = literal.getLabel().trim();
+        try {
+            switch (tipo) {
+                case "quantity":
+                    if (datatype.equals(XSD.DOUBLE.stringValue()) || datatype.equals(XSD.FLOAT.stringValue())) {
+                        texto = new BigDecimal(texto).toPlainString();
+                    }
+                    break;
+                case "time":
+                    return fecha(texto);
+                case "globe-coordinate":
+                    Matcher punto = PUNTO.matcher(texto);
+                    if (punto.matches()) {
+                        texto = punto.group(2) + ";" + punto.group(1);     // WKT: longitud latitud.
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return WikibaseValue.parse(tipo, texto);
+        } catch (IllegalArgumentException e) {
+            valoresNoValidos++;
+            return null;
+        }
+    }
+
+    // Método auxiliar que convierte una fecha de XML Schema en un valor de fecha con la precisión que trae: día para
+    // "2023-05-01" o "2023-05-01T10:00:00" (la hora y la zona horaria se descartan), mes para "2023-05" y año para
+    // "2023". Otros textos se leen como en el CSV ("AAAA" o "AAAAMM").
+    static WikibaseValue.Time fecha(String texto) {
+        Matcher partes = FECHA.matcher(texto);
+        if (!partes.matches()) {
+            return WikibaseValue.Time.parse(texto);
+        }
+        int anio = Integer.parseInt(partes.group(1));
+        if (partes.group(2) == null) {
+            return new WikibaseValue.Time(anio, 1, 1, WikibaseValue.Time.PRECISION_YEAR);
+        }
+        int mes = Integer.parseInt(partes.group(2));
+        int dia = partes.group(3) == null ? 1 : Integer.parseInt(partes.group(3));
+        try {
+            LocalDate.of(anio, mes, dia);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Fecha no válida: " + texto, e);
+        }
+        return new WikibaseValue.Time(anio, mes, dia, partes.group(3) == null
+                ? WikibaseValue.Time.PRECISION_MONTH : WikibaseValue.Time.PRECISION_DAY);
+    }
+
+    private static String tipoDe(String datatype) {
+        if (datatype.equals(WKT)) {
+            return "globe-coordinate";
+        }
+        if (!datatype.startsWith(XSD.NAMESPACE)) {
+            return "string";
+        }
+        switch (datatype.substring(XSD.NAMESPACE.length())) {
+            case "integer":
+            case "decimal":
+            case "double":
+            case "float":
+            case "int":
+            case "long":
+            case "short":
+            case "nonNegativeInteger":
+            case "positiveInteger":
+                return "quantity";
+            case "date":
+            case "dateTime":
+            case "gYear":
+            case "gYearMonth":
+                return "time";
+            default:
+                return "string";
+        }
+    }
+
+    // Método auxiliar que construye el JSON de wbeditentity con las etiquetas, descripciones, alias (que se agregan a
+    // los existentes) y declaraciones indicados.
+    static String datosEntidad(Map<String, String> etiquetas, Map<String, String> descripciones, List<String[]> alias,
+                               Iterable<Object[]> declaraciones) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append('{');
+        textos(sb, "labels", etiquetas);
+        textos(sb, "descriptions", descripciones);
+        if (!alias.isEmpty()) {
+            sb.append("\"aliases\":[");
+            for (int i = 0; i < alias.size(); i++) {
+                sb.append(i > 0 ? "," : "").append("{\"language\":");
+                WikibaseValue.writeJsonString(sb, alias.get(i)[0]);
+                sb.append(",\"value\":");
+                WikibaseValue.writeJsonString(sb, alias.get(i)[1]);
+                sb.append(",\"add\":\"\"}");
+            }
+            sb.append("],");
+        }
+        sb.append("\"claims\":[");
+        boolean primera = true;
+        for (Object[] declaracion : declaraciones) {
+            WikibaseValue valor = (WikibaseValue) declaracion[1];
+            sb.append(primera ? "" : ",").append("{\"mainsnak\":{\"snaktype\":\"value\",\"property\":\"").append(declaracion[0])
+                    .append("\",\"datavalue\":{\"value\":");
+            valor.writeJson(sb);
+            sb.append(",\"type\":\"").append(valor.valueType()).append("\"}},\"type\":\"statement\",\"rank\":\"normal\"}");
+            primera = false;
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static void textos(StringBuilder sb, String campo, Map<String, String> textos) {
+        if (textos.isEmpty()) {
+            return;
+        }
+        sb.append('"').append(campo).append("\":{");
+        boolean primero = true;
+        for (Map.Entry<String, String> texto : textos.entrySet()) {
+            sb.append(primero ? "" : ",");
+            WikibaseValue.writeJsonString(sb, texto.getKey());
+            sb.append(":{\"language\":");
+            WikibaseValue.writeJsonString(sb, texto.getKey());
+            sb.append(",\"value\":");
+            WikibaseValue.writeJsonString(sb, texto.getValue());
+            sb.append('}');
+            primero = false;
+        }
+        sb.append("},");
+    }
+
+    // Método que devuelve un resumen de la carga.
+    public String resumen() {
+        return "RDF: " + tripletas + " tripletas (" + sinMapeo + " sin mapeo), " + creados + " ítems creados, " + editados
+                + " editados, " + sinCambios + " sin cambios, " + sinEtiqueta + " sujetos sin etiqueta omitidos, "
+                + declaraciones + " declaraciones escritas, " + valoresNoValidos + " valores no válidos, "
+                + referenciasResueltas + " referencias resueltas en la segunda pasada, " + referenciasSinResolver
+                + " referencias a ítems desconocidos";
+    }
+
+    // Método que convierte el cargador en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        return "RdfEntityLoader{predicados=" + mapeo.size() + ", maxSujetos=" + maxSujetos + ", maxEntidades=" + maxEntidades + "}";
+    }
+}
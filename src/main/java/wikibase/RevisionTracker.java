@@ -0,0 +1,200 @@
+// Paquete que contiene el seguimiento de revisiones usado para la concurrencia optimista en las escrituras.
+package wikibase;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Clase que recuerda la última revisión conocida de cada entidad. Cada escritura sobre una entidad existente se
+// envía con esa revisión como baserevid; si otra escritura la modificó entretanto y los cambios no se pueden
+// combinar, la API responde "editconflict" y el gestor refresca la revisión, vuelve a revisar el estado y reintenta.
+// Así varios hilos (o procesos) pueden escribir en los mismos ítems sin serializar todas las escrituras con un bloqueo.
+public final class RevisionTracker {
+
+    // Número máximo de intentos de una escritura que entra en conflicto.
+    static final int MAX_INTENTOS = 5;
+
+    // Registro compartido por todos los gestores del proceso.
+    private static final RevisionTracker COMPARTIDO = new RevisionTracker();
+
+    // Número máximo de entidades recordadas (puede cambiarse con -Dwikibase.cacheRevisiones=<n>). Olvidar una revisión
+    // sólo cuesta una consulta de props=info en la siguiente escritura sobre la entidad.
+    private static final int ENTIDADES_POR_DEFECTO = 200000;
+
+    private final BoundedCache<String, Long> revisiones =                                  // ID de entidad -> última revisión.
+            new BoundedCache<>("revisiones", Integer.getInteger("wikibase.cacheRevisiones", ENTIDADES_POR_DEFECTO));
+
+    // Método para obtener el registro compartido por todos los gestores.
+    public static RevisionTracker compartido() {
+        return COMPARTIDO;
+    }
+
+    // Método para obtener la última revisión conocida de una entidad (null si no se conoce).
+    public Long get(String entityId) {
+        return revisiones.get(entityId);
+    }
+
+    // Método que registra la revisión de una entidad; nunca retrocede a una revisión anterior.
+    public void registrar(String entityId, long revision) {
+        if (entityId != null && revision > 0) {
+            synchronized (revisiones) {
+                revisiones.merge(entityId, revision, Math::max);
+            }
+        }
+    }
+
+    // Método que olvida la revisión de una entidad, para volver a consultarla en la siguiente escritura.
+    public void olvidar(String entityId) {
+        revisiones.remove(entityId);
+    }
+
+    // Método que devuelve una copia de las revisiones conocidas.
+    public Map<String, Long> copia() {
+        synchronized (revisiones) {
+            return new HashMap<>(revisiones);
+        }
+    }
+
+    // Método que devuelve un resumen del uso del registro.
+    public String resumen() {
+        return "Revisiones conocidas: " + revisiones.resumen();
+    }
+
+    // Método que obtiene el ID de la entidad a partir del ID de una declaración ("Q123$guid" -> "Q123").
+    static String entidadDeDeclaracion(String statementId) {
+        int separador = statementId.indexOf('$');
+        if (separador <= 0) {
+            throw new IllegalArgumentException("ID de declaración no válido: " + statementId);
+        }
+        return statementId.substring(0, separador).toUpperCase(Locale.ROOT);
+    }
+
+    // Método auxiliar que construye la URL para consultar la última revisión de una entidad.
+    static String urlRevision(String entityId) {
+        return WikibaseManager.API_ENDPOINT + "?action=wbgetentities&format=json&props=info&ids=" + entityId;
+    }
+
+    // Método auxiliar que lee la última revisión de una entidad desde la respuesta de wbgetentities.
+    static long leerRevision(InputStream in, String entityId) throws IOException {
+        String[] campos = JsonStreamDecoder.leerCampos(in, "entities." + entityId + ".lastrevid", "error.code", "error.info");
+        if (campos[0] == null) {
+            throw new IOException("No se pudo obtener la revisión de " + entityId + (campos[1] != null ? ": " + campos[1] + ": " + campos[2] : ""));
+        }
+        return Long.parseLong(campos[0]);
+    }
+
+    // Método auxiliar que añade la revisión base a los datos de formulario de una escritura.
+    static String conBase(String postData, long baseRevision) {
+        return postData + "&baserevid=" + baseRevision;
+    }
+
+    // Clase que representa la respuesta de una escritura: el ID creado (si corresponde), el error, la nueva revisión
+    // y, en las escrituras sobre una declaración (wbcreateclaim, wbsetqualifier), la declaración resultante.
+    static final class Resultado {
+        final String id;                          // Valor leído en la ruta pedida (por ejemplo, "claim.id"); null si hubo error.
+        final String codigoError;                 // Código de error de la API (null si no hubo error).
+        final String infoError;                   // Descripción del error de la API.
+        final long revision;                      // Revisión de la entidad tras la escritura (0 si la respuesta no la informa).
+        final List<JsonObject> declaraciones;     // Declaraciones que dejó la escritura (vacía si no se conocen).
+
+        private Resultado(String id, String codigoError, String infoError, long revision, List<JsonObject> declaraciones) {
+            this.id = id;
+            this.codigoError = codigoError;
+            this.infoError = infoError;
+            this.revision = revision;
+            this.declaraciones = declaraciones;
+        }
+
+        // Método que lee la respuesta de una escritura en una sola pasada. rutaId indica dónde está el ID creado
+        // ("claim.id", "entity.id") o, si no se crea nada, la marca de éxito ("success").
+        static Resultado leer(InputStream in, String rutaId) throws IOException {
+            if (!rutaId.equals("success") && !rutaId.equals("claim.id") && !rutaId.equals("entity.id")) {
+                throw new IllegalArgumentException("Ruta de ID no admitida: " + rutaId);
+            }
+            String id = null;
+            String[] error = new String[2];
+            String revisionPagina = null;
+            String revisionEntidad = null;
+            JsonObject declaracion = null;
+            try (JsonReader reader = JsonStreamDecoder.abrir(in)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "success":
+                            String exito = JsonStreamDecoder.leerEscalar(reader);
+                            if (rutaId.equals("success")) {
+                                id = exito;
+                            }
+                            break;
+                        case "error":
+                            error = JsonStreamDecoder.leerObjeto(reader, "code", "info");
+                            break;
+                        case "pageinfo":
+                            revisionPagina = JsonStreamDecoder.leerObjeto(reader, "lastrevid")[0];
+                            break;
+                        case "entity":
+                            String[] entidad = JsonStreamDecoder.leerObjeto(reader, "id", "lastrevid");
+                            if (rutaId.equals("entity.id")) {
+                                id = entidad[0];
+                            }
+                            revisionEntidad = entidad[1];
+                            break;
+                        case "claim":
+                            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                                reader.skipValue();
+                                break;
+                            }
+                            declaracion = JsonParser.parseReader(reader).getAsJsonObject();
+                            if (rutaId.equals("claim.id") && declaracion.has("id")) {
+                                id = declaracion.get("id").getAsString();
+                            }
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            String revision = revisionPagina != null ? revisionPagina : revisionEntidad;
+            return new Resultado(id, error[0], error[1], revision != null ? Long.parseLong(revision) : 0,
+                    declaracion == null ? List.of() : List.of(declaracion));
+        }
+
+        // Método que crea el resultado de un cambio que ya estaba aplicado en la wiki (no se escribió nada).
+        static Resultado yaAplicado(String id) {
+            return new Resultado(id, null, null, 0, List.of());
+        }
+
+        // Método que devuelve el mismo resultado con las declaraciones indicadas, para las escrituras cuya respuesta
+        // no las incluye pero que las envían completas con un GUID fijado en el cliente (wbeditentity por lotes).
+        Resultado conDeclaraciones(List<JsonObject> escritas) {
+            return new Resultado(id, codigoError, infoError, revision, List.copyOf(escritas));
+        }
+
+        // Método que indica si la escritura falló por un conflicto de edición.
+        boolean esConflicto() {
+            return "editconflict".equals(codigoError);
+        }
+
+        // Método que devuelve el error como "código: descripción", o null si no hubo error.
+        String error() {
+            return codigoError == null ? null : codigoError + ": " + infoError;
+        }
+
+        // Método que devuelve el ID creado o lanza IOException con el error de la API.
+        String exigirId() throws IOException {
+            if (id == null) {
+                throw new IOException("Error de la API de Wikibase: " + error());
+            }
+            return id;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+// Paquete que contiene la interfaz de las fuentes de filas que alimentan la carga.
+package wikibase;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Interfaz de las fuentes de filas de main (el CSV de MINEDUC o una consulta JDBC). La primera fila tiene los nombres
+// de las columnas y las siguientes los valores, en la misma forma que entrega el CSV: main une los campos de cada fila
+// con comas y separa las columnas por ';'.
+public interface RowSource extends Closeable {
+
+    // Método que devuelve la siguiente fila, o null si no quedan filas.
+    String[] readNext() throws IOException;
+
+    // Método que devuelve un resumen de la lectura.
+    String resumen();
+}
@@ -0,0 +1,359 @@
+// Paquete que contiene la sincronización del esquema (propiedades e ítems base) de Wikibase.
+package wikibase;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Clase que lleva una instancia de Wikibase al esquema declarado en un archivo JSON (propiedades, ítems base,
+// sus declaraciones, alias y tablas de códigos). Primero lee en bloque lo que ya existe, luego crea sólo lo que falta, en lotes paralelos.
+// Puede ejecutarse varias veces sobre la misma wiki sin crear duplicados.
+public class SchemaSync {
+
+    // Recurso con el esquema por defecto, incluido en el jar.
+    static final String RECURSO_ESQUEMA = "/wikibase/esquema.json";
+
+    // Espacio de nombres de las propiedades en una instalación estándar de Wikibase.
+    static final int NAMESPACE_PROPIEDADES = 122;
+
+    // Número máximo de IDs por solicitud de wbgetentities.
+    private static final int TAMANO_LOTE = 50;
+
+    // Número de escrituras que se envían en paralelo.
+    private static final int PARALELISMO = 8;
+
+    // Clase que representa el esquema declarado.
+    static class Esquema {
+        List<PropiedadDeclarada> propiedades = new ArrayList<>();
+        List<ItemDeclarado> items = new ArrayList<>();
+        Map<String, Map<String, String>> tablas = new LinkedHashMap<>(); // Tabla -> código del CSV -> etiqueta del ítem.
+    }
+
+    // Clase que representa una propiedad declarada en el esquema.
+    static class PropiedadDeclarada {
+        String etiqueta;
+        String descripcion;
+        String tipo;
+    }
+
+    // Clase que representa un ítem declarado en el esquema.
+    static class ItemDeclarado {
+        String etiqueta;
+        String descripcion;
+        List<String> alias = new ArrayList<>();
+        List<DeclaracionDeclarada> declaraciones = new ArrayList<>();
+    }
+
+    // Clase que representa una declaración "propiedad -> ítem" entre entidades del esquema (referenciadas por etiqueta).
+    static class DeclaracionDeclarada {
+        String propiedad;
+        String item;
+    }
+
+    private final WikibaseAsyncManager asyncManager;
+    private final Esquema esquema;
+
+    // Contadores del resultado de la sincronización.
+    private int propiedadesCreadas;
+    private int itemsCreados;
+    private int declaracionesCreadas;
+    private int aliasCreados;
+
+    public SchemaSync(WikibaseAsyncManager asyncManager, Esquema esquema) {
+        this.asyncManager = asyncManager;
+        this.esquema = esquema;
+    }
+
+    // Método que lee el esquema desde un archivo JSON, o desde el recurso incluido si la ruta es null.
+    public static Esquema cargarEsquema(String ruta) throws IOException {
+        try (InputStream in = ruta != null ? new FileInputStream(ruta) : SchemaSync.class.getResourceAsStream(RECURSO_ESQUEMA)) {
+            if (in == null) {
+                throw new IOException("No se encontró el recurso " + RECURSO_ESQUEMA);
+            }
+            Esquema esquema = new Gson().fromJson(new InputStreamReader(in, StandardCharsets.UTF_8), Esquema.class);
+            if (esquema.tablas == null) {
+                esquema.tablas = new LinkedHashMap<>();
+            }
+            for (ItemDeclarado item : esquema.items) {
+                // Gson deja en null las listas que no aparecen en el JSON.
+                if (item.alias == null) {
+                    item.alias = new ArrayList<>();
+                }
+                if (item.declaraciones == null) {
+                    item.declaraciones = new ArrayList<>();
+                }
+            }
+            return esquema;
+        }
+    }
+
+    // Método que sincroniza el esquema y devuelve el manifiesto con los IDs de todas las entidades declaradas
+    // y las tablas de códigos traducidas a IDs.
+    public IdManifest sincronizar() throws IOException {
+        // 1. Propiedades: listar en bloque las existentes y crear en paralelo las que falten.
+        Map<String, String> propiedades = propiedadesExistentes();
+        List<PropiedadDeclarada> propiedadesFaltantes = new ArrayList<>();
+        for (PropiedadDeclarada propiedad : esquema.propiedades) {
+            if (!propiedades.containsKey(propiedad.etiqueta)) {
+                propiedadesFaltantes.add(propiedad);
+            }
+        }
+        propiedades.putAll(enLotes(propiedadesFaltantes, p -> p.etiqueta,
+                p -> asyncManager.createProperty(p.etiqueta, p.descripcion, p.tipo)));
+        propiedadesCreadas = propiedadesFaltantes.size();
+
+        // 2. Ítems: buscar en paralelo cada etiqueta exacta, recorriendo todas las páginas de coincidencias por prefijo,
+        // y crear los que falten.
+        Map<String, String> items = enLotes(esquema.items, i -> i.etiqueta,
+                i -> asyncManager.getEntityByExactLabel(i.etiqueta, "item", "es"));
+        Set<String> existentes = new HashSet<>();
+        List<ItemDeclarado> itemsFaltantes = new ArrayList<>();
+        for (ItemDeclarado item : esquema.items) {
+            if (items.get(item.etiqueta) != null) {
+                existentes.add(item.etiqueta);
+            } else {
+                itemsFaltantes.add(item);
+            }
+        }
+        items.putAll(enLotes(itemsFaltantes, i -> i.etiqueta, i -> asyncManager.createItem(i.etiqueta, i.descripcion)));
+        itemsCreados = itemsFaltantes.size();
+
+        // 3. Declaraciones y alias: leer en bloque los de los ítems que ya existían y añadir sólo los que falten.
+        Map<String, EstadoItem> estados = estadoItems(existentes, items);
+        List<Supplier<CompletableFuture<?>>> escrituras = new ArrayList<>();
+        for (ItemDeclarado item : esquema.items) {
+            String itemId = items.get(item.etiqueta);
+            EstadoItem estado = estados.getOrDefault(item.etiqueta, EstadoItem.VACIO);
+            for (DeclaracionDeclarada declaracion : item.declaraciones) {
+                String propertyId = exigir(propiedades, declaracion.propiedad, "propiedad");
+                String valorId = exigir(items, declaracion.item, "ítem");
+                if (!estado.tieneDeclaracion(propertyId, valorId)) {
+                    declaracionesCreadas++;
+                    escrituras.add(() -> asyncManager.addStatementToItem(itemId, propertyId, valorId, "wikibase-item"));
+                }
+            }
+            for (String alias : item.alias) {
+                if (!estado.alias.contains(alias)) {
+                    aliasCreados++;
+                    escrituras.add(() -> asyncManager.addAlias(itemId, alias, "es"));
+                }
+            }
+        }
+        for (int i = 0; i < escrituras.size(); i += PARALELISMO) {
+            List<CompletableFuture<?>> lote = new ArrayList<>();
+            for (Supplier<CompletableFuture<?>> escritura : escrituras.subList(i, Math.min(i + PARALELISMO, escrituras.size()))) {
+                lote.add(escritura.get());
+            }
+            WikibaseAsyncManager.esperar(CompletableFuture.allOf(lote.toArray(new CompletableFuture<?>[0])));
+        }
+
+        // Sólo las propiedades declaradas en el esquema forman parte del manifiesto.
+        propiedades.keySet().retainAll(etiquetasPropiedades());
+        return IdManifest.desdeEsquema(propiedades, items, esquema.tablas);
+    }
+
+    // Método que devuelve un resumen de lo creado en la última sincronización.
+    public String resumen() {
+        return "Propiedades creadas: " + propiedadesCreadas + ", ítems creados: " + itemsCreados
+                + ", declaraciones creadas: " + declaracionesCreadas + ", alias creados: " + aliasCreados;
+    }
+
+    // Método que lista todas las propiedades de la wiki (allpages) y devuelve su etiqueta en español -> ID.
+    // Advierte si una propiedad del esquema ya existe con otro tipo de dato.
+    private Map<String, String> propiedadesExistentes() throws IOException {
+        List<String> ids = asyncManager.listarPaginas(NAMESPACE_PROPIEDADES);
+
+        List<CompletableFuture<JsonObject>> lotes = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += TAMANO_LOTE) {
+            lotes.add(asyncManager.consultar(urlEntidades(ids.subList(i, Math.min(i + TAMANO_LOTE, ids.size())), "labels|datatype"), SchemaSync::leerEntidades));
+        }
+        WikibaseAsyncManager.esperar(CompletableFuture.allOf(lotes.toArray(new CompletableFuture<?>[0])));
+
+        Map<String, String> tiposDeclarados = new HashMap<>();
+        for (PropiedadDeclarada propiedad : esquema.propiedades) {
+            tiposDeclarados.put(propiedad.etiqueta, propiedad.tipo);
+        }
+        Map<String, String> propiedades = new HashMap<>();
+        for (CompletableFuture<JsonObject> lote : lotes) {
+            for (Map.Entry<String, JsonElement> entidad : lote.join().entrySet()) {
+                JsonObject datos = entidad.getValue().getAsJsonObject();
+                String etiqueta = etiquetaEs(datos);
+                if (etiqueta == null) {
+                    continue;
+                }
+                propiedades.putIfAbsent(etiqueta, entidad.getKey());
+                String tipo = datos.has("datatype") ? datos.get("datatype").getAsString() : null;
+                String declarado = tiposDeclarados.get(etiqueta);
+                if (declarado != null && !declarado.equals(tipo)) {
+                    System.err.println("Advertencia: la propiedad " + etiqueta + " (" + entidad.getKey() + ") tiene tipo " + tipo + " y el esquema declara " + declarado);
+                }
+            }
+        }
+        return propiedades;
+    }
+
+    // Método que lee en bloque las declaraciones y alias de los ítems que ya existían.
+    private Map<String, EstadoItem> estadoItems(Set<String> etiquetas, Map<String, String> items) throws IOException {
+        Map<String, String> etiquetaPorId = new HashMap<>();
+        for (String etiqueta : etiquetas) {
+            etiquetaPorId.put(items.get(etiqueta), etiqueta);
+        }
+        List<String> ids = new ArrayList<>(etiquetaPorId.keySet());
+        List<CompletableFuture<JsonObject>> lotes = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += TAMANO_LOTE) {
+            lotes.add(asyncManager.consultar(urlEntidades(ids.subList(i, Math.min(i + TAMANO_LOTE, ids.size())), "aliases|claims"), SchemaSync::leerEntidades));
+        }
+        WikibaseAsyncManager.esperar(CompletableFuture.allOf(lotes.toArray(new CompletableFuture<?>[0])));
+
+        Map<String, EstadoItem> estados = new HashMap<>();
+        for (CompletableFuture<JsonObject> lote : lotes) {
+            for (Map.Entry<String, JsonElement> entidad : lote.join().entrySet()) {
+                String etiqueta = etiquetaPorId.get(entidad.getKey());
+                if (etiqueta != null) {
+                    estados.put(etiqueta, EstadoItem.desde(entidad.getValue().getAsJsonObject()));
+                }
+            }
+        }
+        return estados;
+    }
+
+    // Método auxiliar que ejecuta una operación asíncrona por elemento, en lotes de PARALELISMO solicitudes simultáneas,
+    // y devuelve el resultado de cada una por su clave.
+    private <E> Map<String, String> enLotes(List<E> elementos, Function<E, String> clave, Function<E, CompletableFuture<String>> operacion) throws IOException {
+        Map<String, String> resultado = new LinkedHashMap<>();
+        for (int i = 0; i < elementos.size(); i += PARALELISMO) {
+            List<E> lote = elementos.subList(i, Math.min(i + PARALELISMO, elementos.size()));
+            List<CompletableFuture<String>> futuros = new ArrayList<>();
+            for (E elemento : lote) {
+                futuros.add(operacion.apply(elemento));
+            }
+            WikibaseAsyncManager.esperar(CompletableFuture.allOf(futuros.toArray(new CompletableFuture<?>[0])));
+            for (int j = 0; j < lote.size(); j++) {
+                resultado.put(clave.apply(lote.get(j)), futuros.get(j).join());
+            }
+        }
+        return resultado;
+    }
+
+    // Método auxiliar que construye la URL de wbgetentities para un lote de IDs.
+    private static String urlEntidades(List<String> ids, String props) {
+        return WikibaseManager.API_ENDPOINT + "?action=wbgetentities&format=json&languages=es&props=" + URLEncoder.encode(props, StandardCharsets.UTF_8)
+                + "&ids=" + URLEncoder.encode(String.join("|", ids), StandardCharsets.UTF_8);
+    }
+
+    // Método auxiliar que lee el objeto "entities" de una respuesta de wbgetentities (el esquema es pequeño).
+    private static JsonObject leerEntidades(InputStream in) throws IOException {
+        try (JsonReader reader = JsonStreamDecoder.abrir(in)) {
+            JsonObject entidades = JsonParser.parseReader(reader).getAsJsonObject().getAsJsonObject("entities");
+            return entidades != null ? entidades : new JsonObject();
+        }
+    }
+
+    // Método auxiliar que devuelve la etiqueta en español de una entidad, o null si no tiene.
+    private static String etiquetaEs(JsonObject entidad) {
+        JsonObject labels = entidad.getAsJsonObject("labels");
+        if (labels == null || !labels.has("es")) {
+            return null;
+        }
+        return labels.getAsJsonObject("es").get("value").getAsString();
+    }
+
+    // Método auxiliar que resuelve la etiqueta de una entidad referenciada en una declaración del esquema.
+    private static String exigir(Map<String, String> ids, String etiqueta, String tipo) {
+        String id = ids.get(etiqueta);
+        if (id == null) {
+            throw new IllegalArgumentException("El esquema referencia un " + tipo + " no declarado: " + etiqueta);
+        }
+        return id;
+    }
+
+    // Método auxiliar con las etiquetas de las propiedades declaradas en el esquema.
+    private Set<String> etiquetasPropiedades() {
+        Set<String> etiquetas = new HashSet<>();
+        for (PropiedadDeclarada propiedad : esquema.propiedades) {
+            etiquetas.add(propiedad.etiqueta);
+        }
+        return etiquetas;
+    }
+
+    // Clase que guarda las declaraciones "propiedad -> ítem" y los alias en español que ya tiene un ítem.
+    private static final class EstadoItem {
+
+        static final EstadoItem VACIO = new EstadoItem(Collections.emptySet(), Collections.emptySet());
+
+        final Set<String> declaraciones; // Pares "P15=Q3".
+        final Set<String> alias;
+
+        private EstadoItem(Set<String> declaraciones, Set<String> alias) {
+            this.declaraciones = declaraciones;
+            this.alias = alias;
+        }
+
+        // Método que construye el estado desde una entidad de wbgetentities (props=aliases|claims).
+        static EstadoItem desde(JsonObject entidad) {
+            Set<String> declaraciones = new HashSet<>();
+            JsonObject claims = entidad.getAsJsonObject("claims");
+            if (claims != null) {
+                for (Map.Entry<String, JsonElement> propiedad : claims.entrySet()) {
+                    for (JsonElement claim : propiedad.getValue().getAsJsonArray()) {
+                        JsonObject mainsnak = claim.getAsJsonObject().getAsJsonObject("mainsnak");
+                        JsonObject datavalue = mainsnak.getAsJsonObject("datavalue");
+                        if (datavalue != null && datavalue.get("value").isJsonObject() && datavalue.getAsJsonObject("value").has("id")) {
+                            declaraciones.add(propiedad.getKey() + "=" + datavalue.getAsJsonObject("value").get("id").getAsString());
+                        }
+                    }
+                }
+            }
+            Set<String> alias = new HashSet<>();
+            JsonObject aliases = entidad.getAsJsonObject("aliases");
+            if (aliases != null && aliases.has("es")) {
+                JsonArray lista = aliases.getAsJsonArray("es");
+                for (JsonElement a : lista) {
+                    alias.add(a.getAsJsonObject().get("value").getAsString());
+                }
+            }
+            return new EstadoItem(declaraciones, alias);
+        }
+
+        boolean tieneDeclaracion(String propertyId, String valorId) {
+            return declaraciones.contains(propertyId + "=" + valorId);
+        }
+    }
+
+    // Método principal: sincroniza el esquema en la wiki. Argumentos: <usuario> <contraseña> [esquema.json]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Uso: SchemaSync <usuario> <contraseña> [esquema.json]");
+            System.exit(1);
+        }
+        SessionPool sesiones = SessionPool.abrir(args[0], args[1]);
+
+        long inicio = System.currentTimeMillis();
+        SchemaSync sync = new SchemaSync(new WikibaseAsyncManager(sesiones), cargarEsquema(args.length > 2 ? args[2] : null));
+        IdManifest manifiesto = sync.sincronizar();
+        manifiesto.guardar(IdManifest.rutaPorDefecto());
+        System.out.println(sync.resumen());
+        System.out.println("Esquema sincronizado en " + (System.currentTimeMillis() - inicio) + " ms; manifiesto escrito en " + IdManifest.rutaPorDefecto());
+    }
+}
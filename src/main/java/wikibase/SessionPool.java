@@ -0,0 +1,215 @@
+// Paquete que contiene el conjunto de sesiones (cuentas de bot) usadas para escribir en Wikibase.
+package wikibase;
+
+import com.google.gson.Gson;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.cookie.BasicClientCookie;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Clase que mantiene una o más sesiones iniciadas en la wiki (una por cuenta) y reparte las solicitudes entre ellas
+// por turnos, de modo que el límite de ediciones por usuario de MediaWiki se aplica a cada cuenta por separado.
+// Las cookies y el token CSRF de cada sesión se guardan en disco; en la siguiente ejecución se restauran y sólo se
+// vuelve a iniciar sesión si la wiki ya no las reconoce.
+public final class SessionPool {
+
+    // Directorio por defecto de las sesiones guardadas (puede cambiarse con -Dwikibase.sesiones=<directorio>).
+    private static final String DIRECTORIO_POR_DEFECTO = ".sesiones";
+
+    private final List<WikibaseManager> sesiones;             // Sesiones iniciadas, una por cuenta.
+    private final Path directorio;                            // Directorio de las sesiones guardadas (null si no se guardan).
+    private final AtomicInteger turno = new AtomicInteger();  // Contador para repartir las solicitudes por turnos.
+
+    private SessionPool(List<WikibaseManager> sesiones, Path directorio) {
+        if (sesiones.isEmpty()) {
+            throw new IllegalArgumentException("Se necesita al menos una sesión");
+        }
+        this.sesiones = Collections.unmodifiableList(new ArrayList<>(sesiones));
+        this.directorio = directorio;
+    }
+
+    // Método que crea un conjunto con una única sesión ya iniciada (sin persistencia).
+    public static SessionPool de(WikibaseManager manager) {
+        return new SessionPool(Collections.singletonList(manager), null);
+    }
+
+    // Método que abre las sesiones de la cuenta indicada más las cuentas adicionales del archivo configurado en
+    // -Dwikibase.cuentas (si existe), usando el directorio de sesiones configurado.
+    public static SessionPool abrir(String usuario, String clave) throws IOException {
+        Map<String, String> cuentas = new LinkedHashMap<>();
+        cuentas.put(usuario, clave);
+        String archivoCuentas = System.getProperty("wikibase.cuentas");
+        if (archivoCuentas != null) {
+            for (Map.Entry<String, String> cuenta : cargarCuentas(Paths.get(archivoCuentas)).entrySet()) {
+                cuentas.putIfAbsent(cuenta.getKey(), cuenta.getValue());
+            }
+        }
+        return abrir(cuentas, Paths.get(System.getProperty("wikibase.sesiones", DIRECTORIO_POR_DEFECTO)));
+    }
+
+    // Método que abre una sesión por cuenta (usuario -> clave). Cada sesión se restaura desde el directorio si la
+    // wiki aún la reconoce; si no, se inicia sesión, se obtiene el token CSRF y se guarda para la próxima ejecución.
+    public static SessionPool abrir(Map<String, String> cuentas, Path directorio) throws IOException {
+        List<WikibaseManager> sesiones = new ArrayList<>();
+        for (Map.Entry<String, String> cuenta : cuentas.entrySet()) {
+            WikibaseManager manager = new WikibaseManager(cuenta.getKey(), cuenta.getValue());
+            Path archivo = archivoSesion(directorio, cuenta.getKey());
+            if (restaurar(manager, archivo)) {
+                System.out.println("Sesión restaurada para " + cuenta.getKey());
+            } else {
+                manager.login();
+                manager.fetchCsrfToken();
+                guardar(manager, archivo);
+            }
+            sesiones.add(manager);
+        }
+        return new SessionPool(sesiones, directorio);
+    }
+
+    // Método que lee las cuentas adicionales desde un archivo .properties con líneas "usuario=clave"
+    // (por ejemplo, contraseñas de bot "Usuario@bot=clave").
+    public static Map<String, String> cargarCuentas(Path archivo) throws IOException {
+        Properties propiedades = new Properties();
+        try (InputStream in = Files.newInputStream(archivo)) {
+            propiedades.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+        Map<String, String> cuentas = new LinkedHashMap<>();
+        for (String usuario : new TreeSet<>(propiedades.stringPropertyNames())) {
+            cuentas.put(usuario, propiedades.getProperty(usuario));
+        }
+        return cuentas;
+    }
+
+    // Método que entrega la siguiente sesión por turnos; es seguro usarlo desde varios hilos.
+    public WikibaseManager siguiente() {
+        return sesiones.get(Math.floorMod(turno.getAndIncrement(), sesiones.size()));
+    }
+
+    // Método que entrega la primera sesión (la de la cuenta indicada en la línea de comandos).
+    public WikibaseManager principal() {
+        return sesiones.get(0);
+    }
+
+    // Método para obtener el número de sesiones del conjunto.
+    public int size() {
+        return sesiones.size();
+    }
+
+    // Método que guarda de nuevo todas las sesiones (las cookies pueden haberse renovado durante la ejecución).
+    public void guardar() throws IOException {
+        if (directorio == null) {
+            return;
+        }
+        for (WikibaseManager manager : sesiones) {
+            guardar(manager, archivoSesion(directorio, manager.getUsername()));
+        }
+    }
+
+    // Método auxiliar que restaura las cookies y el token CSRF guardados y verifica que la sesión siga activa.
+    // Devuelve false (y deja el gestor sin sesión) si no hay archivo o la wiki ya no reconoce la sesión.
+    private static boolean restaurar(WikibaseManager manager, Path archivo) throws IOException {
+        if (!Files.exists(archivo)) {
+            return false;
+        }
+        SesionGuardada sesion;
+        try (Reader in = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            sesion = new Gson().fromJson(in, SesionGuardada.class);
+        }
+        if (sesion == null || sesion.csrfToken == null || sesion.cookies == null) {
+            return false;
+        }
+        for (CookieGuardada guardada : sesion.cookies) {
+            BasicClientCookie cookie = new BasicClientCookie(guardada.nombre, guardada.valor);
+            cookie.setDomain(guardada.dominio);
+            cookie.setPath(guardada.ruta);
+            cookie.setSecure(guardada.segura);
+            if (guardada.expira != null) {
+                cookie.setExpiryDate(new Date(guardada.expira));
+            }
+            manager.getCookieStore().addCookie(cookie);
+        }
+        manager.setCsrfToken(sesion.csrfToken);
+        if (manager.sesionActiva()) {
+            return true;
+        }
+        manager.getCookieStore().clear();
+        manager.setCsrfToken(null);
+        return false;
+    }
+
+    // Método auxiliar que guarda las cookies y el token CSRF de una sesión en un archivo legible sólo por su dueño.
+    private static void guardar(WikibaseManager manager, Path archivo) throws IOException {
+        SesionGuardada sesion = new SesionGuardada();
+        sesion.usuario = manager.getUsername();
+        sesion.csrfToken = manager.getCsrfToken();
+        for (Cookie cookie : manager.getCookieStore().getCookies()) {
+            CookieGuardada guardada = new CookieGuardada();
+            guardada.nombre = cookie.getName();
+            guardada.valor = cookie.getValue();
+            guardada.dominio = cookie.getDomain();
+            guardada.ruta = cookie.getPath();
+            guardada.segura = cookie.isSecure();
+            guardada.expira = cookie.getExpiryDate() != null ? cookie.getExpiryDate().getTime() : null;
+            sesion.cookies.add(guardada);
+        }
+        Files.createDirectories(archivo.getParent());
+        try (Writer out = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8)) {
+            new Gson().toJson(sesion, out);
+        }
+        try {
+            Files.setPosixFilePermissions(archivo, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            // El sistema de archivos no admite permisos POSIX (por ejemplo, en Windows).
+        }
+    }
+
+    // Método auxiliar que construye la ruta del archivo de sesión de una cuenta.
+    private static Path archivoSesion(Path directorio, String usuario) {
+        return directorio.resolve(usuario.replaceAll("[^A-Za-z0-9._-]", "_") + ".json");
+    }
+
+    // Clase que representa una sesión guardada en disco.
+    private static final class SesionGuardada {
+        String usuario;
+        String csrfToken;
+        List<CookieGuardada> cookies = new ArrayList<>();
+    }
+
+    // Clase que representa una cookie guardada en disco.
+    private static final class CookieGuardada {
+        String nombre;
+        String valor;
+        String dominio;
+        String ruta;
+        boolean segura;
+        Long expira;   // Fecha de expiración en milisegundos; null para cookies de sesión.
+    }
+
+    // Método que convierte el conjunto en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        List<String> usuarios = new ArrayList<>();
+        for (WikibaseManager manager : sesiones) {
+            usuarios.add(manager.getUsername());
+        }
+        return "SessionPool" + usuarios;
+    }
+}
@@ -0,0 +1,101 @@
+// Paquete que contiene la representación ligera de un snak leído desde la API de Wikibase.
+package wikibase;
+
+import java.util.Locale;
+
+// Clase mutable y reutilizable que guarda los campos de un snak (valor principal o calificador) leídos en streaming.
+// Se reutiliza entre declaraciones para no crear un objeto por cada snak de una respuesta grande.
+final class SnakValue {
+
+    String property;     // ID de la propiedad del snak (por ejemplo, "P6").
+    String datatype;     // Tipo de dato de la propiedad (wikibase-item, string, quantity, time, globe-coordinate).
+    String valueType;    // Tipo del datavalue (wikibase-entityid, string, quantity, time, globecoordinate).
+    String text;         // Valor cuando el datavalue es una cadena.
+    String entityId;     // ID de la entidad referenciada (por ejemplo, "Q123").
+    long numericId;      // ID numérico de la entidad referenciada.
+    String amount;       // Cantidad, con signo (por ejemplo, "+12").
+    String unit;         // Unidad de la cantidad.
+    String time;         // Fecha en formato "+AAAA-MM-DDT00:00:00Z".
+    int precision;       // Precisión de la fecha (9 año, 10 mes, 11 día).
+    double latitude;     // Latitud de una coordenada.
+    double longitude;    // Longitud de una coordenada.
+    boolean hasValue;    // Indica si el snak tenía datavalue (los snaks "novalue" o "somevalue" no lo tienen).
+
+    // Método que limpia todos los campos para reutilizar la instancia.
+    void reset() {
+        property = null;
+        datatype = null;
+        valueType = null;
+        text = null;
+        entityId = null;
+        numericId = 0;
+        amount = null;
+        unit = null;
+        time = null;
+        precision = 0;
+        latitude = 0;
+        longitude = 0;
+        hasValue = false;
+    }
+
+    // Método que devuelve la forma canónica del snak: propiedad y valor normalizado, de modo que valores iguales escritos
+    // de otra forma coincidan (las cantidades sin el signo "+" ni ceros finales, los ítems por su ID, las fechas
+    // truncadas a su precisión y las coordenadas redondeadas a la precisión con que se escriben).
+    String canonico() {
+        StringBuilder sb = new StringBuilder(48).append(property).append('=');
+        if (!hasValue) {
+            return sb.append("(sin valor)").toString();
+        }
+        if (entityId != null || numericId > 0) {
+            sb.append(entityId != null ? entityId : "Q" + numericId);
+        } else if (amount != null) {
+            sb.append(cantidadCanonica(amount)).append(' ').append(unit);
+        } else if (time != null) {
+            sb.append(fechaCanonica(time, precision));
+        } else if (text != null) {
+            sb.append('"').append(text).append('"');
+        } else {
+            sb.append(String.format(Locale.ROOT, "%.4f,%.4f", latitude, longitude));
+        }
+        return sb.toString();
+    }
+
+    // Método auxiliar que normaliza una cantidad ("+12.50" -> "12.5", "+3.0" -> "3").
+    static String cantidadCanonica(String amount) {
+        String valor = amount.startsWith("+") ? amount.substring(1) : amount;
+        if (valor.indexOf('.') >= 0) {
+            int fin = valor.length();
+            while (valor.charAt(fin - 1) == '0') {
+                fin--;
+            }
+            if (valor.charAt(fin - 1) == '.') {
+                fin--;
+            }
+            valor = valor.substring(0, fin);
+        }
+        return valor;
+    }
+
+    // Método auxiliar que trunca una fecha ("+2020-05-01T00:00:00Z") a su precisión: año (9), mes (10) o día (11).
+    static String fechaCanonica(String time, int precision) {
+        int finAnio = time.indexOf('-', 1);
+        if (finAnio < 0) {
+            return time;
+        }
+        int fin = precision >= 11 ? finAnio + 6 : precision == 10 ? finAnio + 3 : finAnio;
+        return time.substring(0, Math.min(fin, time.length())) + "/" + Math.min(precision, 11);
+    }
+
+    // Método que convierte el snak en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        return "SnakValue{" +
+                "property='" + property + '\'' +
+                ", datatype='" + datatype + '\'' +
+                ", text='" + text + '\'' +
+                ", entityId='" + entityId + '\'' +
+                ", amount='" + amount + '\'' +
+                ", time='" + time + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,220 @@
+// Paquete que contiene la precarga de los ítems existentes antes de procesar el CSV.
+package wikibase;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+// Clase que, al iniciar una carga, descubre todos los ítems que ya son instancia (P15) de las clases indicadas
+// (regiones, comunas, tipos de establecimiento, personas) y llena con ellos los diccionarios etiqueta -> ID del
+// cargador y la caché de declaraciones. Sin precarga, cada etiqueta se busca con wbsearchentities la primera vez que
+// aparece en el CSV y sus declaraciones se descargan al primer statementExists; con ella, las filas de ítems ya
+// existentes no consultan la wiki. Los ítems se obtienen con backlinks de cada clase y se leen en lotes paralelos de
+// wbgetentities (etiquetas, alias, declaraciones y revisión en una sola solicitud por lote). Cada respuesta se lee en
+// streaming: las declaraciones pasan directamente a la caché y las etiquetas se entregan lote a lote a los
+// diccionarios acotados del cargador, sin acumularlas.
+public final class WarmStart {
+
+    // Número máximo de IDs por solicitud de wbgetentities.
+    private static final int TAMANO_LOTE = 50;
+
+    // Número de lotes que se leen a la vez.
+    private static final int PARALELISMO = 8;
+
+    // Idioma de las etiquetas y alias que se cargan (el mismo con que busca el cargador).
+    private static final String IDIOMA = "es";
+
+    private final WikibaseAsyncManager asyncManager;
+    private final String instanciaDePropiedadId;                     // Propiedad "instancia de" (P15).
+    private final AtomicLong itemsLeidos = new AtomicLong();
+    private final AtomicLong itemsPrecargados = new AtomicLong();
+    private final AtomicLong etiquetasPrecargadas = new AtomicLong();
+
+    public WarmStart(WikibaseAsyncManager asyncManager, String instanciaDePropiedadId) {
+        this.asyncManager = asyncManager;
+        this.instanciaDePropiedadId = instanciaDePropiedadId;
+    }
+
+    // Método que precarga los ítems que son instancia de alguna de las clases indicadas. Guarda sus declaraciones y
+    // revisiones en las cachés compartidas y entrega al destino sus etiquetas y alias en español con su ID a medida
+    // que se leen los lotes, en el orden de los backlinks (una etiqueta puede llegar más de una vez si la comparten
+    // varios ítems; dentro de un lote se entrega sólo la primera).
+    public void precargar(Collection<String> claseIds, BiConsumer<String, String> destino) throws IOException {
+        long inicio = System.currentTimeMillis();
+        Set<String> ids = new LinkedHashSet<>();
+        for (String claseId : claseIds) {
+            ids.addAll(asyncManager.listarEnlaces(claseId, WikibaseManager.NAMESPACE_ITEMS));
+        }
+        List<String> candidatos = new ArrayList<>(ids);
+        long entregadas = 0;
+        int porVentana = TAMANO_LOTE * PARALELISMO;
+        for (int i = 0; i < candidatos.size(); i += porVentana) {
+            List<String> ventana = candidatos.subList(i, Math.min(i + porVentana, candidatos.size()));
+            List<CompletableFuture<Map<String, String>>> lecturas = new ArrayList<>();
+            for (int j = 0; j < ventana.size(); j += TAMANO_LOTE) {
+                lecturas.add(asyncManager.consultar(urlEntidades(ventana.subList(j, Math.min(j + TAMANO_LOTE, ventana.size()))),
+                        in -> leerLote(in, claseIds)));
+            }
+            WikibaseAsyncManager.esperar(CompletableFuture.allOf(lecturas.toArray(new CompletableFuture<?>[0])));
+            for (CompletableFuture<Map<String, String>> lectura : lecturas) {
+                for (Map.Entry<String, String> etiqueta : lectura.join().entrySet()) {
+                    destino.accept(etiqueta.getKey(), etiqueta.getValue());
+                    entregadas++;
+                }
+            }
+        }
+        etiquetasPrecargadas.addAndGet(entregadas);
+        System.out.println("Precarga de " + claseIds + ": " + entregadas + " etiquetas de " + candidatos.size()
+                + " ítems enlazados en " + (System.currentTimeMillis() - inicio) + " ms");
+    }
+
+    // Método auxiliar que lee en streaming una respuesta de wbgetentities, una entidad a la vez. Las entidades que
+    // son instancia de alguna de las clases se guardan en las cachés y se devuelven sus etiquetas -> ID.
+    private Map<String, String> leerLote(InputStream in, Collection<String> claseIds) throws IOException {
+        Map<String, String> etiquetas = new LinkedHashMap<>();
+        try (JsonReader reader = JsonStreamDecoder.abrir(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("entities") || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String itemId = reader.nextName();
+                    itemsLeidos.incrementAndGet();
+                    leerEntidad(reader, itemId, claseIds, etiquetas);
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+        }
+        return etiquetas;
+    }
+
+    // Método auxiliar que lee en streaming una entidad de la respuesta. Sus declaraciones se leen directamente en una
+    // entrada de la caché de declaraciones; si la entidad es instancia de alguna de las clases, la entrada se guarda
+    // con su revisión, alimenta el índice de huellas y su etiqueta y alias se agregan al mapa.
+    private void leerEntidad(JsonReader reader, String itemId, Collection<String> claseIds, Map<String, String> etiquetas) throws IOException {
+        long revision = 0;
+        boolean falta = false;
+        ClaimCache.Entrada declaraciones = null;
+        List<String> textos = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "missing":
+                    falta = true;
+                    reader.skipValue();
+                    break;
+                case "lastrevid":
+                    revision = reader.nextLong();
+                    break;
+                case "labels":
+                case "aliases":
+                    leerTextos(reader, textos);
+                    break;
+                case "claims":
+                    // Una entidad sin declaraciones las trae como arreglo vacío.
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        declaraciones = ClaimCache.leer(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (falta || declaraciones == null || !esInstancia(declaraciones, claseIds)) {
+            return;
+        }
+        itemsPrecargados.incrementAndGet();
+        if (revision > 0) {
+            RevisionTracker.compartido().registrar(itemId, revision);
+            ClaimCache.compartida().guardar(itemId, revision, declaraciones);
+            FingerprintIndex.compartido().agregarEntidad(itemId, revision, new ByteArrayInputStream(declaraciones.json()));
+        }
+        for (String texto : textos) {
+            etiquetas.putIfAbsent(texto, itemId);
+        }
+    }
+
+    // Método auxiliar que agrega a la lista los textos en español del objeto "labels" o "aliases" en el que está el
+    // lector (una etiqueta por idioma, un arreglo de alias por idioma). Sin textos, el valor es un arreglo vacío.
+    private static void leerTextos(JsonReader reader, List<String> textos) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals(IDIOMA)) {
+                reader.skipValue();
+            } else if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    agregarTexto(JsonStreamDecoder.leerObjeto(reader, "value")[0], textos);
+                }
+                reader.endArray();
+            } else {
+                agregarTexto(JsonStreamDecoder.leerObjeto(reader, "value")[0], textos);
+            }
+        }
+        reader.endObject();
+    }
+
+    // Método auxiliar que agrega un texto a la lista si existe.
+    private static void agregarTexto(String texto, List<String> textos) {
+        if (texto != null) {
+            textos.add(texto);
+        }
+    }
+
+    // Método auxiliar que indica si la entidad tiene una declaración "instancia de" con alguna de las clases (un
+    // backlink también puede venir de otra propiedad). Algunas respuestas sólo traen el ID numérico.
+    private boolean esInstancia(ClaimCache.Entrada declaraciones, Collection<String> claseIds) throws IOException {
+        boolean[] instancia = new boolean[1];
+        JsonStreamDecoder.buscarDeclaracion(new ByteArrayInputStream(declaraciones.json(instanciaDePropiedadId)), instanciaDePropiedadId, claim -> {
+            SnakValue snak = claim.mainsnak;
+            String id = snak.numericId > 0 ? "Q" + snak.numericId : snak.entityId;
+            instancia[0] = id != null && claseIds.contains(id);
+            return instancia[0];
+        });
+        return instancia[0];
+    }
+
+    // Método auxiliar que construye la URL de wbgetentities con la revisión, etiquetas, alias y declaraciones de un lote.
+    private static String urlEntidades(List<String> ids) {
+        return WikibaseManager.API_ENDPOINT + "?action=wbgetentities&format=json&props=info%7Clabels%7Caliases%7Cclaims&languages=" + IDIOMA
+                + "&ids=" + URLEncoder.encode(String.join("|", ids), StandardCharsets.UTF_8);
+    }
+
+    // Método que devuelve un resumen de la precarga.
+    public String resumen() {
+        return "Precarga: " + itemsLeidos.get() + " ítems leídos, " + itemsPrecargados.get() + " precargados, "
+                + etiquetasPrecargadas.get() + " etiquetas";
+    }
+
+    // Método que convierte la precarga en una representación en forma de cadena.
+    @Override
+    public String toString() {
+        return "WarmStart{instanciaDe=" + instanciaDePropiedadId + ", precargados=" + itemsPrecargados.get() + "}";
+    }
+}
@@ -0,0 +1,370 @@
+// Paquete que contiene la versión asíncrona del gestor de Wikibase.
+package wikibase;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+// Clase que ofrece las operaciones de WikibaseManager en forma asíncrona, devolviendo CompletableFuture.
+// Todas las instancias comparten un único cliente HTTP no bloqueante que negocia HTTP/2 cuando el servidor lo soporta.
+// Cada solicitud pide la respuesta comprimida con gzip y el cuerpo se decodifica en streaming con JsonStreamDecoder.
+// Las solicitudes se reparten por turnos entre las sesiones de un SessionPool; cada escritura usa la cookie y el
+// token CSRF de la misma sesión. Las escrituras sobre entidades existentes se envían con su última revisión conocida
+// (baserevid) y se reintentan ante conflictos de edición, igual que en WikibaseManager.
+public class WikibaseAsyncManager {
+
+    // Cliente HTTP compartido por todas las instancias (reutiliza conexiones entre solicitudes).
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+
+    // Sesiones de las que se obtienen la cookie de sesión y el token CSRF de cada solicitud.
+    private final SessionPool sesiones;
+
+    // Constructor: recibe un gestor que ya inició sesión y obtuvo su token CSRF.
+    public WikibaseAsyncManager(WikibaseManager manager) {
+        this(SessionPool.de(manager));
+    }
+
+    // Constructor: recibe un conjunto de sesiones ya iniciadas, entre las que se reparten las solicitudes.
+    public WikibaseAsyncManager(SessionPool sesiones) {
+        this.sesiones = sesiones;
+    }
+
+    // Método para obtener de forma asíncrona el ID de una entidad por su etiqueta (null si no existe).
+    public CompletableFuture<String> getEntityByLabel(String label, String type, String language) {
+        return get(WikibaseManager.urlBusqueda(label, type, language), WikibaseManager::leerPrimerResultado);
+    }
+
+    // Método para obtener de forma asíncrona el ID de la entidad cuya etiqueta es exactamente la indicada (null si no existe).
+    // Recorre las páginas de la búsqueda por prefijo hasta encontrarla o agotar los resultados.
+    public CompletableFuture<String> getEntityByExactLabel(String label, String type, String language) {
+        return buscarExacta(label, type, language, 0);
+    }
+
+    // Método auxiliar que pide la página de la búsqueda exacta que comienza en la posición indicada y, si la etiqueta no
+    // está en ella, la siguiente.
+    private CompletableFuture<String> buscarExacta(String label, String type, String language, int desde) {
+        return get(WikibaseManager.urlBusquedaExacta(label, type, language, desde), in -> WikibaseManager.leerPaginaExacta(in, label))
+                .thenCompose(pagina -> pagina.id != null || pagina.continuar <= desde
+                        ? CompletableFuture.completedFuture(pagina.id)
+                        : buscarExacta(label, type, language, pagina.continuar));
+    }
+
+    // Método para verificar de forma asíncrona si una entidad existe por su etiqueta.
+    public CompletableFuture<Boolean> entityExistsByLabel(String label, String type, String language) {
+        return getEntityByLabel(label, type, language).thenApply(id -> id != null);
+    }
+
+    // Método para verificar de forma asíncrona si existe una declaración específica en un ítem.
+    public CompletableFuture<Boolean> statementExists(String itemId, String propertyId, String value) {
+        return get(WikibaseManager.urlDeclaraciones(itemId, propertyId), in -> WikibaseManager.contieneDeclaracion(in, propertyId, value));
+    }
+
+    // Método para verificar de forma asíncrona si existe una declaración con un valor ya tipado.
+    public CompletableFuture<Boolean> statementExists(String itemId, String propertyId, WikibaseValue value) {
+        return get(WikibaseManager.urlDeclaraciones(itemId, propertyId), in -> WikibaseManager.contieneDeclaracion(in, propertyId, value));
+    }
+
+    // Método para obtener de forma asíncrona el tipo de dato de varias propiedades (máximo 50 IDs por llamada).
+    // Las propiedades que no existen no aparecen en el mapa resultante.
+    public CompletableFuture<Map<String, String>> getPropertyDatatypes(List<String> propertyIds) {
+        return get(WikibaseManager.urlTiposDeDato(propertyIds), in -> WikibaseManager.leerTiposDeDato(in, propertyIds));
+    }
+
+    // Método para crear un nuevo ítem de forma asíncrona; devuelve el ID asignado.
+    public CompletableFuture<String> createItem(String label, String description) {
+        WikibaseManager sesion = sesiones.siguiente();
+        return post(sesion, "wbeditentity", WikibaseManager.datosNuevoItem(label, description, sesion.getCsrfToken()), in -> RevisionTracker.Resultado.leer(in, "entity.id"))
+                .thenApply(WikibaseAsyncManager::registrarCreacion)
+                .thenApply(itemId -> {
+                    WikibaseManager.registrarEtiqueta(label);
+                    return itemId;
+                });
+    }
+
+    // Método para crear una nueva propiedad de forma asíncrona; devuelve el ID asignado.
+    public CompletableFuture<String> createProperty(String label, String description, String datatype) {
+        WikibaseManager sesion = sesiones.siguiente();
+        return post(sesion, "wbeditentity", WikibaseManager.datosNuevaPropiedad(label, description, datatype, sesion.getCsrfToken()), in -> RevisionTracker.Resultado.leer(in, "entity.id"))
+                .thenApply(WikibaseAsyncManager::registrarCreacion);
+    }
+
+    // Método para añadir una declaración a un ítem de forma asíncrona; devuelve el ID de la declaración.
+    public CompletableFuture<String> addStatementToItem(String itemId, String propertyId, String value, String valueType) {
+        return addStatementToItem(itemId, propertyId, WikibaseValue.parse(valueType, value));
+    }
+
+    // Método para añadir una declaración con un valor ya tipado de forma asíncrona.
+    public CompletableFuture<String> addStatementToItem(String itemId, String propertyId, WikibaseValue value) {
+        // Ante un conflicto, si otra escritura ya creó la misma declaración se usa esa en lugar de duplicarla.
+        WikibaseManager sesion = sesiones.siguiente();
+        return editar(sesion, "wbcreateclaim", itemId, WikibaseManager.datosDeclaracion(itemId, propertyId, value, sesion.getCsrfToken()), "claim.id",
+                () -> get(WikibaseManager.urlDeclaraciones(itemId, propertyId), in -> JsonStreamDecoder.buscarDeclaracion(in, propertyId,
+                        claim -> claim.mainsnak.hasValue && value.matches(claim.mainsnak))), 1)
+                .thenApply(WikibaseAsyncManager::exigirId);
+    }
+
+    // Método para añadir un calificador a una declaración existente de forma asíncrona.
+    public CompletableFuture<Void> addQualifierToStatement(String statementId, String qualifierPropertyId, String qualifierValue, String qualifierType) {
+        // Ante un conflicto se vuelve a leer la declaración y no se reenvía si el calificador ya está.
+        WikibaseValue value = WikibaseManager.valorCalificador(qualifierValue, qualifierType);
+        WikibaseManager sesion = sesiones.siguiente();
+        return editar(sesion, "wbsetqualifier", RevisionTracker.entidadDeDeclaracion(statementId),
+                WikibaseManager.datosCalificador(statementId, qualifierPropertyId, value, sesion.getCsrfToken()), "success",
+                () -> get(WikibaseManager.urlDeclaracion(statementId), in -> WikibaseManager.contieneCalificador(in, qualifierPropertyId, value) ? statementId : null), 1)
+                .thenApply(WikibaseAsyncManager::exigirSinError);
+    }
+
+    // Método para añadir un alias a un ítem de forma asíncrona, sin reemplazar los alias existentes.
+    public CompletableFuture<Void> addAlias(String itemId, String alias, String language) {
+        WikibaseManager sesion = sesiones.siguiente();
+        return editar(sesion, "wbsetaliases", itemId, WikibaseManager.datosAlias(itemId, alias, language, sesion.getCsrfToken()), "success", null, 1)
+                .thenApply(WikibaseAsyncManager::exigirSinError)
+                .thenRun(() -> WikibaseManager.registrarEtiqueta(alias));
+    }
+
+    // Método para eliminar de forma asíncrona varias declaraciones de una misma entidad con una sola edición (wbremoveclaims).
+    // Ante un conflicto, si ninguna de las declaraciones sigue en la entidad no se reintenta.
+    public CompletableFuture<Void> removeClaims(String entityId, List<String> claimIds) {
+        WikibaseManager sesion = sesiones.siguiente();
+        return editar(sesion, "wbremoveclaims", entityId, WikibaseManager.datosEliminarDeclaraciones(claimIds, sesion.getCsrfToken()), "success",
+                () -> get(WikibaseManager.urlDeclaraciones(entityId), in -> JsonStreamDecoder.buscarDeclaracion(in, null,
+                        claim -> claimIds.contains(claim.id)) != null ? null : entityId), 1)
+                .thenApply(WikibaseAsyncManager::exigirSinError);
+    }
+
+    // Método para ejecutar una consulta GET arbitraria a la API y decodificar su respuesta.
+    <T> CompletableFuture<T> consultar(String url, JsonStreamDecoder.Decodificador<T> decodificador) {
+        return get(url, decodificador);
+    }
+
+    // Método que lista los títulos (sin el prefijo del espacio de nombres, es decir, los IDs) de todas las páginas de un
+    // espacio de nombres con allpages, siguiendo la continuación página a página.
+    public List<String> listarPaginas(int namespace) throws IOException {
+        return listar("list=allpages&aplimit=max&apnamespace=" + namespace, "allpages", "apcontinue");
+    }
+
+    // Método que lista los IDs de las páginas de un espacio de nombres que enlazan a una entidad (backlinks). Wikibase
+    // registra como enlace cada entidad usada en una declaración, por lo que así se obtienen los ítems que la usan
+    // como valor (por ejemplo, todas las instancias de una clase).
+    public List<String> listarEnlaces(String entityId, int namespace) throws IOException {
+        String titulo = (namespace == WikibaseManager.NAMESPACE_ITEMS ? "Item:" : "") + entityId;
+        return listar("list=backlinks&bllimit=max&blnamespace=" + namespace + "&bltitle=" + URLEncoder.encode(titulo, StandardCharsets.UTF_8),
+                "backlinks", "blcontinue");
+    }
+
+    // Método auxiliar que recorre todas las páginas de una lista de action=query siguiendo su continuación.
+    private List<String> listar(String consulta, String lista, String parametroContinuacion) throws IOException {
+        List<String> ids = new ArrayList<>();
+        String continuar = null;
+        do {
+            String url = WikibaseManager.API_ENDPOINT + "?action=query&format=json&" + consulta
+                    + (continuar == null ? "" : "&" + parametroContinuacion + "=" + URLEncoder.encode(continuar, StandardCharsets.UTF_8));
+            continuar = esperar(get(url, in -> leerPaginas(in, lista, parametroContinuacion, ids)));
+        } while (continuar != null);
+        return ids;
+    }
+
+    // Método auxiliar que lee una página de una lista de action=query, agrega los IDs (sin el prefijo "Item:" o
+    // "Property:") y devuelve la continuación.
+    static String leerPaginas(InputStream in, String lista, String parametroContinuacion, List<String> ids) throws IOException {
+        String continuar = null;
+        try (JsonReader reader = JsonStreamDecoder.abrir(in)) {
+            JsonObject respuesta = JsonParser.parseReader(reader).getAsJsonObject();
+            JsonObject query = respuesta.getAsJsonObject("query");
+            if (query != null && query.has(lista)) {
+                for (JsonElement pagina : query.getAsJsonArray(lista)) {
+                    String titulo = pagina.getAsJsonObject().get("title").getAsString();
+                    ids.add(titulo.substring(titulo.indexOf(':') + 1));
+                }
+            }
+            JsonObject continuacion = respuesta.getAsJsonObject("continue");
+            if (continuacion != null && continuacion.has(parametroContinuacion)) {
+                continuar = continuacion.get(parametroContinuacion).getAsString();
+            }
+        }
+        return continuar;
+    }
+
+    // Método auxiliar que espera el resultado de un futuro y convierte los errores de E/S en IOException.
+    public static <T> T esperar(CompletableFuture<T> futuro) throws IOException {
+        try {
+            return futuro.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Método auxiliar que envía una escritura sobre una entidad existente con su última revisión conocida (baserevid).
+    // Si la API responde "editconflict", se olvida la revisión, se verifica con "aplicado" si el cambio ya está en el
+    // nuevo estado y, si no, se reintenta sobre la revisión actual (hasta RevisionTracker.MAX_INTENTOS).
+    private CompletableFuture<RevisionTracker.Resultado> editar(WikibaseManager sesion, String action, String entityId, String postData, String rutaId,
+                                                                Supplier<CompletableFuture<String>> aplicado, int intento) {
+        RevisionTracker revisiones = RevisionTracker.compartido();
+        return revisionBase(entityId)
+                .thenCompose(base -> post(sesion, action, RevisionTracker.conBase(postData, base), in -> RevisionTracker.Resultado.leer(in, rutaId))
+                        .thenApply(resultado -> {
+                            ClaimCache.compartida().aplicar(entityId, base, action, resultado);
+                            try {
+                                FingerprintIndex.compartido().aplicar(entityId, base, action, resultado);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            return resultado;
+                        }))
+                .thenCompose(resultado -> {
+                    if (!resultado.esConflicto()) {
+                        revisiones.registrar(entityId, resultado.revision);
+                        LocalMirror.registrarPropia(resultado.revision);
+                        return CompletableFuture.completedFuture(resultado);
+                    }
+                    // Tras un conflicto la revisión conocida quedó obsoleta, también en el último intento.
+                    revisiones.olvidar(entityId);
+                    if (intento >= RevisionTracker.MAX_INTENTOS) {
+                        return CompletableFuture.completedFuture(resultado);
+                    }
+                    CompletableFuture<String> verificacion = aplicado != null ? aplicado.get() : CompletableFuture.completedFuture(null);
+                    return verificacion.thenCompose(existente -> existente != null
+                            ? CompletableFuture.completedFuture(RevisionTracker.Resultado.yaAplicado(existente))
+                            : editar(sesion, action, entityId, postData, rutaId, aplicado, intento + 1));
+                });
+    }
+
+    // Método auxiliar que devuelve la última revisión conocida de una entidad, consultándola si no se conoce.
+    private CompletableFuture<Long> revisionBase(String entityId) {
+        Long conocida = RevisionTracker.compartido().get(entityId);
+        if (conocida != null) {
+            return CompletableFuture.completedFuture(conocida);
+        }
+        return get(RevisionTracker.urlRevision(entityId), in -> RevisionTracker.leerRevision(in, entityId))
+                .thenApply(revision -> {
+                    RevisionTracker.compartido().registrar(entityId, revision);
+                    return revision;
+                });
+    }
+
+    // Método auxiliar que registra la primera revisión de una entidad recién creada y devuelve su ID.
+    private static String registrarCreacion(RevisionTracker.Resultado resultado) {
+        String entityId = exigirId(resultado);
+        RevisionTracker.compartido().registrar(entityId, resultado.revision);
+        LocalMirror.registrarPropia(resultado.revision);
+        ClaimCache.compartida().registrarNueva(entityId, resultado.revision);
+        try {
+            FingerprintIndex.compartido().marcarCompleto(entityId, resultado.revision);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return entityId;
+    }
+
+    // Método auxiliar que devuelve el ID creado por una escritura o lanza el error de la API.
+    private static String exigirId(RevisionTracker.Resultado resultado) {
+        try {
+            return resultado.exigirId();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Método auxiliar que lanza el error de la API si la escritura no se aplicó.
+    private static Void exigirSinError(RevisionTracker.Resultado resultado) {
+        if (resultado.codigoError != null) {
+            throw new UncheckedIOException(new IOException("Error de la API de Wikibase: " + resultado.error()));
+        }
+        return null;
+    }
+
+    // Método auxiliar que ejecuta una solicitud GET y decodifica la respuesta.
+    private <T> CompletableFuture<T> get(String url, JsonStreamDecoder.Decodificador<T> decodificador) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).GET();
+        return enviar(sesiones.siguiente(), builder, null, decodificador);
+    }
+
+    // Método auxiliar que ejecuta una solicitud POST con datos de formulario sobre una acción de la API, con la sesión
+    // cuyo token CSRF se usó para construir los datos.
+    private <T> CompletableFuture<T> post(WikibaseManager sesion, String action, String postData, JsonStreamDecoder.Decodificador<T> decodificador) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(WikibaseManager.API_ENDPOINT + "?action=" + action + "&format=json"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(postData));
+        return enviar(sesion, builder, postData, decodificador);
+    }
+
+    // Método auxiliar que añade la cookie de sesión, pide compresión gzip y envía la solicitud sin bloquear el hilo.
+    // El cuerpo se entrega como flujo a medida que llega y se decodifica en streaming, descomprimiéndolo si
+    // corresponde, sin guardar la respuesta completa en memoria. Cada solicitud emite un evento de JFR
+    // (FlightEvents.LlamadaApi) con los bytes del formulario y del cuerpo recibido, también si falla (sin respuesta,
+    // el estado queda en 0).
+    private <T> CompletableFuture<T> enviar(WikibaseManager sesion, HttpRequest.Builder builder, String postData,
+                                            JsonStreamDecoder.Decodificador<T> decodificador) {
+        builder.header("Accept-Encoding", "gzip");
+        String cookie = sesion.getSessionCookie();
+        if (cookie != null) {
+            builder.header("Cookie", cookie);
+        }
+        HttpRequest solicitud = builder.build();
+        FlightEvents.LlamadaApi evento = new FlightEvents.LlamadaApi();
+        evento.begin();
+        return HTTP_CLIENT.sendAsync(solicitud, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApply(response -> {
+                    FlightEvents.Contador contador = new FlightEvents.Contador(response.body());
+                    try (InputStream cuerpo = contador;
+                         InputStream in = abrirCuerpo(response, cuerpo)) {
+                        if (response.statusCode() != 200) {
+                            throw new IOException("HTTP " + response.statusCode() + " en " + response.uri());
+                        }
+                        return decodificador.decodificar(in);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        if (evento.isEnabled()) {
+                            evento.estado = response.statusCode();
+                            evento.bytesRecibidos = contador.leidos();
+                        }
+                    }
+                })
+                .whenComplete((resultado, error) -> {
+                    evento.end();
+                    if (evento.isEnabled()) {
+                        evento.asincrona = true;
+                        evento.bytesEnviados = postData == null ? 0 : postData.getBytes(StandardCharsets.UTF_8).length;
+                        evento.registrar(solicitud.uri().toString(), postData);
+                    }
+                });
+    }
+
+    // Método auxiliar que abre el cuerpo de la respuesta, descomprimiéndolo si el servidor lo envió con gzip.
+    private static InputStream abrirCuerpo(HttpResponse<InputStream> response, InputStream in) throws IOException {
+        boolean gzip = response.headers().firstValue("Content-Encoding")
+                .map(valor -> valor.equalsIgnoreCase("gzip"))
+                .orElse(false);
+        return gzip ? new GZIPInputStream(in) : in;
+    }
+}
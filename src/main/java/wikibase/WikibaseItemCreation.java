@@ -15,6 +15,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 public class WikibaseItemCreation {
+
+    // Cliente HTTP compartido entre solicitudes, en lugar de crear uno nuevo por cada llamada.
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
 	
 public static void main(String[] args) throws Exception{
 		
@@ -151,14 +154,13 @@ public static void main(String[] args) throws Exception{
 
     private static HttpResponse<String> performPostRequest(String apiUrl, Map<Object, Object> data) {
         try {
-            HttpClient client = HttpClient.newHttpClient();
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(URI.create(apiUrl))
                     .header("Content-Type", "application/x-www-form-urlencoded")
                     .POST(buildFormDataFromMap(data))
                     .build();
 
-            return client.send(request, HttpResponse.BodyHandlers.ofString());
+            return HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
         } catch (Exception e) {
             e.printStackTrace();
             return null;
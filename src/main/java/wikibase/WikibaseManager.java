@@ -1,47 +1,72 @@
 package wikibase;
 
 // Importación de las bibliotecas necesarias para manejar CSV, solicitudes HTTP, análisis de JSON y codificación.
-import com.opencsv.CSVReader;
-import com.opencsv.exceptions.CsvException;
 
 import org.apache.http.client.methods.*;
+import org.apache.http.cookie.Cookie;
 import org.apache.http.impl.client.*;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.util.EntityUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.FileReader;
+import java.io.InputStreamReader;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.LinkedHashMap;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
 
 // Clase principal que gestiona la interacción con la API de Wikibase.
 public class WikibaseManager {
     
     // Declaración de constantes y variables para el endpoint de la API y las credenciales de usuario.
-    private static final String API_ENDPOINT = "https://chileopendata.imfd.cl/w/api.php";
+    static final String API_ENDPOINT = "https://chileopendata.imfd.cl/w/api.php";
+    // Número máximo de valores de un parámetro múltiple de la API (por ejemplo, IDs de wbremoveclaims) para usuarios sin permisos de bot.
+    static final int MAX_DECLARACIONES_POR_ELIMINACION = 50;
+    // Espacio de nombres de los ítems en Wikibase.
+    static final int NAMESPACE_ITEMS = 120;
+    // Número máximo de etiquetas por diccionario de ítems en main (regiones, comunas, establecimientos, docentes).
+    static final int MAX_ETIQUETAS_POR_DEFECTO = 100000;
+    // Tipos de dato con que se interpreta un valor en texto al compararlo con los snaks.
+    private static final List<String> TIPOS_COMPARABLES = List.of("wikibase-item", "quantity", "time", "globe-coordinate", "string");
     private final String username;  // Nombre de usuario
     private final String password;  // Contraseña del usuario
+    private final BasicCookieStore cookieStore;  // Cookies de la sesión (todas las que envía el servidor, no sólo la primera).
     private final CloseableHttpClient httpClient;  // Cliente HTTP para realizar las solicitudes.
     private String loginToken;  // Token utilizado para la autenticación de inicio de sesión.
-    private String csrfToken;  // Token utilizado para prevenir ataques CSRF.
-    private String sessionCookie; // Almacena la cookie de sesión después de un inicio de sesión exitoso.
+    private volatile String csrfToken;  // Token utilizado para prevenir ataques CSRF.
 
     // Constructor: inicializa el nombre de usuario, la contraseña y el cliente HTTP.
     public WikibaseManager(String username, String password) {
         this.username = username;
         this.password = password;
-        this.httpClient = HttpClients.createDefault(); // Crea un cliente HTTP predeterminado para las solicitudes.
+        // Crea un cliente HTTP con su propio almacén de cookies, que guarda y reenvía todas las cookies de la sesión.
+        // Este cliente envía "Accept-Encoding: gzip,deflate" en cada solicitud y descomprime la respuesta de forma
+        // transparente al leer su contenido.
+        this.cookieStore = new BasicCookieStore();
+        this.httpClient = HttpClients.custom().setDefaultCookieStore(cookieStore).build();
     }
 
     // Método para obtener el token de inicio de sesión necesario para la autenticación.
@@ -50,32 +75,39 @@ public class WikibaseManager {
         HttpGet get = new HttpGet(API_ENDPOINT + "?action=query&meta=tokens&type=login&format=json");
         get.setHeader("Content-Type", "application/x-www-form-urlencoded");
 
-        // Ejecuta la solicitud HTTP y analiza la respuesta para extraer el token de inicio de sesión.
-        try (CloseableHttpResponse response = httpClient.execute(get)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            JsonObject json = JsonParser.parseString(responseBody).getAsJsonObject();
-            this.loginToken = json.get("query").getAsJsonObject().get("tokens").getAsJsonObject().get("logintoken").getAsString();
-            System.out.println("Token de Inicio de Sesión: " + this.loginToken);
-        }
+        // Ejecuta la solicitud HTTP y extrae sólo el token de inicio de sesión de la respuesta.
+        this.loginToken = ejecutar(get, in -> JsonStreamDecoder.leerCampos(in, "query.tokens.logintoken")[0]);
+        System.out.println("Token de Inicio de Sesión: " + this.loginToken);
     }
 
     // Método para realizar la acción de inicio de sesión utilizando el token de inicio de sesión obtenido.
+    // Las cookies que devuelve el servidor quedan en el almacén de cookies del cliente.
+    // Lanza IOException si la API no confirma el inicio de sesión.
     public void login() throws IOException {
         fetchLoginToken();
-        
+
+        // Parámetros de action=login (lgname, lgpassword, lgtoken), codificados para admitir contraseñas de bot.
+        StringBuilder form = FormEncoder.nuevo();
+        FormEncoder.agregar(form, "lgname", username);
+        FormEncoder.agregar(form, "lgpassword", password);
+        FormEncoder.agregar(form, "lgtoken", loginToken);
+
         HttpPost post = new HttpPost(API_ENDPOINT + "?action=login&format=json");
-        StringEntity entity = new StringEntity("username=" + username + "&password=" + password + "&logintoken=" + loginToken);
-        post.setEntity(entity);
+        post.setEntity(new StringEntity(form.toString(), StandardCharsets.UTF_8));
         post.setHeader("Content-Type", "application/x-www-form-urlencoded");
 
-        try (CloseableHttpResponse response = httpClient.execute(post)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            System.out.println("Login response: " + responseBody);
-
-            // Extract session cookie
-            sessionCookie = response.getFirstHeader("Set-Cookie").getValue();
-            System.out.println("Session Cookie: " + sessionCookie);
+        String[] resultado = ejecutar(post, in -> JsonStreamDecoder.leerCampos(in, "login.result", "login.reason"));
+        if (!"Success".equals(resultado[0])) {
+            throw new IOException("No se pudo iniciar sesión como " + username + ": " + (resultado[1] != null ? resultado[1] : resultado[0]));
         }
+        System.out.println("Sesión iniciada como " + username);
+    }
+
+    // Método que verifica si la sesión actual sigue autenticada en la wiki (por ejemplo, tras restaurar cookies guardadas).
+    public boolean sesionActiva() throws IOException {
+        HttpGet get = new HttpGet(API_ENDPOINT + "?action=query&meta=userinfo&format=json");
+        String id = ejecutar(get, in -> JsonStreamDecoder.leerCampos(in, "query.userinfo.id")[0]);
+        return id != null && !id.equals("0");
     }
 
     // Método para obtener el token CSRF (Cross-Site Request Forgery) necesario para realizar acciones autenticadas en la API.
@@ -84,27 +116,54 @@ public class WikibaseManager {
         // Crear una solicitud HTTP GET para obtener el token CSRF desde la API.
         HttpGet get = new HttpGet(API_ENDPOINT + "?action=query&meta=tokens&type=csrf&format=json");
         
-        // Establecer el encabezado de tipo de contenido para la solicitud.
+        // Establecer el encabezado de tipo de contenido para la solicitud. La cookie de sesión la añade el cliente.
         get.setHeader("Content-Type", "application/x-www-form-urlencoded");
-        
-        // Incluir la cookie de sesión en los encabezados para mantener la autenticación.
-        get.setHeader("Cookie", sessionCookie);
 
-        // Ejecutar la solicitud HTTP y procesar la respuesta para extraer el token CSRF.
-        try (CloseableHttpResponse response = httpClient.execute(get)) {
-            
-            // Convertir la respuesta a una cadena de texto.
-            String responseBody = EntityUtils.toString(response.getEntity());
+        // Ejecutar la solicitud HTTP y extraer sólo el token CSRF de la respuesta.
+        this.csrfToken = ejecutar(get, in -> JsonStreamDecoder.leerCampos(in, "query.tokens.csrftoken")[0]);
             
-            // Analizar la cadena JSON de la respuesta.
-            JsonObject json = JsonParser.parseString(responseBody).getAsJsonObject();
-            
-            // Extraer el token CSRF del objeto JSON.
-            this.csrfToken = json.get("query").getAsJsonObject().get("tokens").getAsJsonObject().get("csrftoken").getAsString();
-            
-            // Imprimir el token CSRF para verificar que se obtuvo correctamente.
-            System.out.println("CSRF Token: " + this.csrfToken);
+        // Imprimir el token CSRF para verificar que se obtuvo correctamente.
+        System.out.println("CSRF Token: " + this.csrfToken);
+    }
+
+    // Método para obtener el token CSRF vigente (usado por WikibaseAsyncManager).
+    String getCsrfToken() {
+        return csrfToken;
+    }
+
+    // Método para reemplazar el token CSRF (usado por SessionPool al restaurar una sesión guardada).
+    void setCsrfToken(String csrfToken) {
+        this.csrfToken = csrfToken;
+    }
+
+    // Método para obtener el encabezado Cookie con todas las cookies vigentes de la sesión (usado por WikibaseAsyncManager).
+    String getSessionCookie() {
+        List<Cookie> cookies = cookieStore.getCookies();
+        if (cookies.isEmpty()) {
+            return null;
         }
+        Date ahora = new Date();
+        StringBuilder encabezado = new StringBuilder();
+        for (Cookie cookie : cookies) {
+            if (cookie.isExpired(ahora)) {
+                continue;
+            }
+            if (encabezado.length() > 0) {
+                encabezado.append("; ");
+            }
+            encabezado.append(cookie.getName()).append('=').append(cookie.getValue());
+        }
+        return encabezado.length() > 0 ? encabezado.toString() : null;
+    }
+
+    // Método para obtener el almacén de cookies de la sesión (usado por SessionPool para guardarla y restaurarla).
+    BasicCookieStore getCookieStore() {
+        return cookieStore;
+    }
+
+    // Método para obtener el nombre de usuario de la sesión.
+    public String getUsername() {
+        return username;
     }
 
     // Método para crear una nueva propiedad en Wikibase
@@ -114,24 +173,18 @@ public class WikibaseManager {
     // - datatype: El tipo de dato de la propiedad (ejemplo: string, number, etc.).
     // Lanza IOException en caso de fallos de conexión.
     public String createProperty(String label, String description, String datatype) throws IOException {
-        // Formatear el JSON con la etiqueta, descripción y tipo de dato para enviar a la API.
-        String data = String.format("{\"labels\":{\"es\":{\"language\":\"es\",\"value\":\"%s\"}},\"descriptions\":{\"es\":{\"language\":\"es\",\"value\":\"%s\"}},\"datatype\":\"%s\"}",
-                label, description, datatype);
-        // Crear la entidad String para enviar en la solicitud POST, con el token CSRF codificado y los datos.
-        StringEntity entity = new StringEntity(String.format("new=property&token=%s&data=%s", URLEncoder.encode(csrfToken, StandardCharsets.UTF_8.toString()), URLEncoder.encode(data, StandardCharsets.UTF_8.toString())));
+        // Crear la entidad String para enviar en la solicitud POST, con el token CSRF codificado y el JSON de la propiedad.
+        StringEntity entity = new StringEntity(datosNuevaPropiedad(label, description, datatype, csrfToken));
 
         // Preparar la solicitud HTTP POST para la API, estableciendo el endpoint adecuado para crear una nueva propiedad.
         HttpPost post = new HttpPost(API_ENDPOINT + "?action=wbeditentity&format=json");
         post.setEntity(entity);
         post.setHeader("Content-Type", "application/x-www-form-urlencoded");
 
-        // Ejecutar la solicitud HTTP y procesar la respuesta.
-        try (CloseableHttpResponse response = httpClient.execute(post)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            System.out.println("Create Property response: " + responseBody);
-            JsonObject json = JsonParser.parseString(responseBody).getAsJsonObject();
-            return json.get("entity").getAsJsonObject().get("id").getAsString();
-        }
+        // Ejecutar la solicitud HTTP, leer el ID de la nueva propiedad y registrar su primera revisión.
+        String propertyId = registrarCreacion(ejecutar(post, in -> RevisionTracker.Resultado.leer(in, "entity.id")));
+        System.out.println("Create Property response: " + propertyId);
+        return propertyId;
     }
 
     // Método para crear un nuevo ítem en Wikibase
@@ -140,24 +193,48 @@ public class WikibaseManager {
     // - description: La descripción del ítem (en español).
     // Lanza IOException en caso de fallos de conexión.
     public String createItem(String label, String description) throws IOException {
-        // Formatear el JSON con la etiqueta y descripción para enviar a la API.
-        String data = String.format("{\"labels\":{\"es\":{\"language\":\"es\",\"value\":\"%s\"}},\"descriptions\":{\"es\":{\"language\":\"es\",\"value\":\"%s\"}}}",
-                label, description);
-        // Crear la entidad String para enviar en la solicitud POST, con el token CSRF codificado y los datos.
-        StringEntity entity = new StringEntity(String.format("new=item&token=%s&data=%s", URLEncoder.encode(csrfToken, StandardCharsets.UTF_8.toString()), URLEncoder.encode(data, StandardCharsets.UTF_8.toString())));
+        // Crear la entidad String para enviar en la solicitud POST, con el token CSRF codificado y el JSON del ítem.
+        StringEntity entity = new StringEntity(datosNuevoItem(label, description, csrfToken));
 
         // Preparar la solicitud HTTP POST para la API, estableciendo el endpoint adecuado para crear un nuevo ítem.
         HttpPost post = new HttpPost(API_ENDPOINT + "?action=wbeditentity&format=json");
         post.setEntity(entity);
         post.setHeader("Content-Type", "application/x-www-form-urlencoded");
 
-        // Ejecutar la solicitud HTTP y procesar la respuesta.
-        try (CloseableHttpResponse response = httpClient.execute(post)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            System.out.println("Create Item response: " + responseBody);
-            JsonObject json = JsonParser.parseString(responseBody).getAsJsonObject();
-            return json.get("entity").getAsJsonObject().get("id").getAsString();
+        // Ejecutar la solicitud HTTP, leer el ID del nuevo ítem y registrar su primera revisión.
+        String itemId = registrarCreacion(ejecutar(post, in -> RevisionTracker.Resultado.leer(in, "entity.id")));
+        registrarEtiqueta(label);
+        System.out.println("Create Item response: " + itemId);
+        return itemId;
+    }
+
+    // Método para crear un ítem (si itemId es null) o editar uno existente con una sola escritura wbeditentity, que
+    // lleva a la vez sus etiquetas, descripciones, alias y declaraciones (el JSON de "data"). La edición se envía sobre
+    // la última revisión conocida del ítem y se reintenta ante un conflicto. Devuelve el ID del ítem.
+    public String editEntity(String itemId, String data) throws IOException {
+        StringBuilder form = FormEncoder.nuevo();
+        if (itemId != null) {
+            FormEncoder.agregar(form, "id", itemId);
+        } else {
+            FormEncoder.agregar(form, "new", "item");
+        }
+        FormEncoder.agregar(form, "data", data);
+        FormEncoder.agregar(form, "token", csrfToken);
+        if (itemId != null) {
+            editar("wbeditentity", itemId, form.toString(), "success", null).exigirId();
+            return itemId;
         }
+
+        // El ítem nuevo nace con declaraciones, así que sólo se registra su revisión (no se guarda vacío en las cachés).
+        HttpPost post = new HttpPost(API_ENDPOINT + "?action=wbeditentity&format=json");
+        post.setEntity(new StringEntity(form.toString(), StandardCharsets.UTF_8));
+        post.setHeader("Content-Type", "application/x-www-form-urlencoded");
+        RevisionTracker.Resultado resultado = ejecutar(post, in -> RevisionTracker.Resultado.leer(in, "entity.id"));
+        String nuevo = resultado.exigirId();
+        RevisionTracker.compartido().registrar(nuevo, resultado.revision);
+        LocalMirror.registrarPropia(resultado.revision);
+        System.out.println("Create Item response: " + nuevo);
+        return nuevo;
     }
 
     // Método para añadir una declaración a un ítem en Wikibase
@@ -167,244 +244,287 @@ public class WikibaseManager {
     // - value: El valor que se asignará a la propiedad en la declaración.
     // - valueType: El tipo de valor (ejemplo: string, quantity, time, globe-coordinate, wikibase-item).
     public String addStatementToItem(String itemId, String propertyId, String value, String valueType) throws IOException {
-        // Crear el valor principal de la declaración basado en el tipo de valor.
-        String mainValue = "";
-
-        switch (valueType) {
-            case "string":
-                mainValue = String.format("\"%s\"", value);
-                break;
-            case "quantity":
-                mainValue = String.format("{\"amount\":\"+%s\",\"unit\":\"1\"}", value);
-                break;
-            case "time":
-                String year = value.substring(0, 4);
-                String month = value.substring(4, 6);
-                mainValue = String.format("{\"time\":\"+%s-%s-01T00:00:00Z\",\"timezone\":0,\"before\":0,\"after\":0,\"precision\":10,\"calendarmodel\":\"http://www.wikidata.org/entity/Q1985727\"}", year, month);
-                break;
-            case "globe-coordinate":
-                String[] coordinates = value.replace(',', '.').split(";");
-                mainValue = String.format("{\"latitude\":%s,\"longitude\":%s,\"precision\":0.0001,\"globe\":\"http://www.wikidata.org/entity/Q2\"}", coordinates[0], coordinates[1]);
-                break;
-            case "wikibase-item":
-                mainValue = String.format("{\"entity-type\":\"item\",\"numeric-id\":%s}", value.replace("Q", ""));
-                break;
-        }
+        return addStatementToItem(itemId, propertyId, WikibaseValue.parse(valueType, value));
+    }
 
+    // Método para añadir una declaración con un valor ya tipado (cantidad, fecha, coordenada, ítem o texto).
+    public String addStatementToItem(String itemId, String propertyId, WikibaseValue value) throws IOException {
         // Crear los parámetros codificados como application/x-www-form-urlencoded
-        String encodedToken = URLEncoder.encode(csrfToken, StandardCharsets.UTF_8.toString());
-        String encodedValue = URLEncoder.encode(mainValue, StandardCharsets.UTF_8.toString());
-        String postData = String.format("entity=%s&property=%s&snaktype=value&value=%s&token=%s",
-                URLEncoder.encode(itemId, StandardCharsets.UTF_8.toString()), 
-                URLEncoder.encode(propertyId, StandardCharsets.UTF_8.toString()), 
-                encodedValue, encodedToken);
-
-        // Crear la entidad StringEntity con los datos codificados
-        StringEntity entity = new StringEntity(postData, StandardCharsets.UTF_8);
-
-        // Configurar y ejecutar la solicitud POST
-        HttpPost post = new HttpPost(API_ENDPOINT + "?action=wbcreateclaim&format=json");
-        post.setEntity(entity);
-        post.setHeader("Content-Type", "application/x-www-form-urlencoded");
+        String postData = datosDeclaracion(itemId, propertyId, value, csrfToken);
+
+        // Enviar la declaración sobre la última revisión conocida del ítem. Si hay un conflicto y otra escritura ya
+        // creó la misma declaración, se usa esa en lugar de duplicarla.
+        String statementId = editar("wbcreateclaim", itemId, postData, "claim.id",
+                () -> getStatementId(itemId, propertyId, value)).exigirId();
+        System.out.println("Add Statement response: " + statementId);
+        return statementId;
+    }
 
-        // Ejecutar la solicitud y procesar la respuesta
-        try (CloseableHttpResponse response = httpClient.execute(post)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            System.out.println("Add Statement response: " + responseBody);
-            JsonObject json = JsonParser.parseString(responseBody).getAsJsonObject();
-            JsonObject claim = json.getAsJsonObject("claim");
-            return claim.get("id").getAsString();
-        } catch(Exception e) {
-            throw e;
+    // Método para asegurar una declaración completa (valor y calificadores) con una sola escritura wbsetclaim.
+    // Si el ítem no tiene una declaración con el valor, se crea con un GUID generado en el cliente, por lo que no hace
+    // falta leer su ID después; si ya la tiene, se envía la misma declaración con los calificadores que le faltan.
+    // La búsqueda previa se responde desde la caché de declaraciones cuando el ítem se escribió en esta ejecución.
+    // Devuelve el ID de la declaración.
+    public String setStatement(String itemId, String propertyId, WikibaseValue value, Map<String, WikibaseValue> qualifiers) throws IOException {
+        Set<String> faltantes = new LinkedHashSet<>();
+        String existente = leerDeclaraciones(itemId, propertyId, in -> JsonStreamDecoder.buscarDeclaracion(in, propertyId, claim -> {
+            SnakValue snak = claim.mainsnak;
+            if (!snak.hasValue || !mismoTipo(value, snak) || !value.matches(snak)) {
+                return false;
+            }
+            faltantes.addAll(calificadoresFaltantes(claim, qualifiers));
+            return true;
+        }));
+
+        String declaracion;
+        String statementId;
+        if (existente == null) {
+            statementId = nuevoGuid(itemId);
+            declaracion = declaracionCompleta(statementId, propertyId, value, qualifiers);
+        } else if (!faltantes.isEmpty()) {
+            statementId = existente;
+            JsonObject claim = leerDeclaraciones(itemId, propertyId, in -> declaracionPorId(in, existente));
+            declaracion = agregarCalificadores(claim, qualifiers, faltantes).toString();
+        } else {
+            return existente;
         }
+
+        StringBuilder form = FormEncoder.nuevo();
+        FormEncoder.agregar(form, "claim", declaracion);
+        FormEncoder.agregar(form, "token", csrfToken);
+
+        // Enviar la declaración sobre la última revisión conocida del ítem. Como el GUID lo fija el cliente, tras un
+        // conflicto basta comprobar si la declaración (con sus calificadores) ya está en la wiki.
+        String resultado = editar("wbsetclaim", itemId, form.toString(), "claim.id", () -> {
+            for (Map.Entry<String, WikibaseValue> calificador : qualifiers.entrySet()) {
+                if (!tieneCalificador(statementId, calificador.getKey(), calificador.getValue())) {
+                    return null;
+                }
+            }
+            return qualifiers.isEmpty() && !existeDeclaracion(statementId) ? null : statementId;
+        }).exigirId();
+        System.out.println("Set Statement response: " + resultado);
+        return resultado;
+    }
+
+    // Método auxiliar que genera el GUID de una declaración nueva con el formato de Wikibase ("Q123$uuid").
+    static String nuevoGuid(String itemId) {
+        return itemId + "$" + UUID.randomUUID().toString().toUpperCase(Locale.ROOT);
+    }
+
+    // Método auxiliar que construye el JSON de una declaración completa para wbsetclaim.
+    static String declaracionCompleta(String statementId, String propertyId, WikibaseValue value, Map<String, WikibaseValue> qualifiers) {
+        StringBuilder sb = new StringBuilder(256 + qualifiers.size() * 160);
+        sb.append("{\"id\":");
+        WikibaseValue.writeJsonString(sb, statementId);
+        sb.append(",\"type\":\"statement\",\"rank\":\"normal\",\"mainsnak\":");
+        escribirSnak(sb, propertyId, value);
+        if (!qualifiers.isEmpty()) {
+            sb.append(",\"qualifiers\":{");
+            boolean primero = true;
+            for (Map.Entry<String, WikibaseValue> calificador : qualifiers.entrySet()) {
+                if (!primero) {
+                    sb.append(',');
+                }
+                primero = false;
+                sb.append('"').append(calificador.getKey()).append("\":[");
+                escribirSnak(sb, calificador.getKey(), calificador.getValue());
+                sb.append(']');
+            }
+            sb.append("},\"qualifiers-order\":[");
+            primero = true;
+            for (String calificador : qualifiers.keySet()) {
+                if (!primero) {
+                    sb.append(',');
+                }
+                primero = false;
+                sb.append('"').append(calificador).append('"');
+            }
+            sb.append(']');
+        }
+        return sb.append('}').toString();
+    }
+
+    // Método auxiliar que escribe un snak con valor ({"snaktype":"value","property":...,"datavalue":...}).
+    private static void escribirSnak(StringBuilder sb, String propertyId, WikibaseValue value) {
+        sb.append("{\"snaktype\":\"value\",\"property\":\"").append(propertyId).append("\",\"datavalue\":{\"value\":");
+        value.writeJson(sb);
+        sb.append(",\"type\":\"").append(value.valueType()).append("\"}}");
+    }
+
+    // Método auxiliar que devuelve las propiedades de los calificadores que la declaración aún no tiene con el valor pedido.
+    static Set<String> calificadoresFaltantes(ClaimRecord claim, Map<String, WikibaseValue> qualifiers) {
+        Set<String> faltantes = new LinkedHashSet<>();
+        for (Map.Entry<String, WikibaseValue> calificador : qualifiers.entrySet()) {
+            WikibaseValue valor = calificador.getValue();
+            boolean presente = false;
+            for (int i = 0; i < claim.qualifierCount() && !presente; i++) {
+                SnakValue snak = claim.qualifier(i);
+                presente = calificador.getKey().equals(snak.property) && snak.hasValue
+                        && mismoTipo(valor, snak) && valor.matches(snak);
+            }
+            if (!presente) {
+                faltantes.add(calificador.getKey());
+            }
+        }
+        return faltantes;
+    }
+
+    // Método auxiliar que compara el tipo de dato del valor con el del snak; los snaks de las respuestas de escritura
+    // guardados en la caché pueden no traer el tipo de dato y entonces se compara sólo el valor.
+    private static boolean mismoTipo(WikibaseValue value, SnakValue snak) {
+        return snak.datatype == null || value.datatype().equals(snak.datatype);
+    }
+
+    // Método auxiliar que lee de una respuesta de wbgetclaims la declaración con el ID indicado, como árbol JSON.
+    static JsonObject declaracionPorId(InputStream in, String statementId) throws IOException {
+        JsonObject claims = JsonParser.parseReader(new InputStreamReader(in, StandardCharsets.UTF_8)).getAsJsonObject().getAsJsonObject("claims");
+        if (claims != null) {
+            for (Map.Entry<String, JsonElement> propiedad : claims.entrySet()) {
+                for (JsonElement claim : propiedad.getValue().getAsJsonArray()) {
+                    if (statementId.equals(claim.getAsJsonObject().get("id").getAsString())) {
+                        return claim.getAsJsonObject();
+                    }
+                }
+            }
+        }
+        throw new IOException("No se encontró la declaración " + statementId);
+    }
+
+    // Método auxiliar que agrega a una declaración existente los calificadores indicados (sin tocar los que ya tiene).
+    static JsonObject agregarCalificadores(JsonObject claim, Map<String, WikibaseValue> qualifiers, Set<String> faltantes) {
+        JsonObject calificadores = claim.has("qualifiers") && claim.get("qualifiers").isJsonObject() ? claim.getAsJsonObject("qualifiers") : new JsonObject();
+        JsonArray orden = claim.has("qualifiers-order") && claim.get("qualifiers-order").isJsonArray() ? claim.getAsJsonArray("qualifiers-order") : new JsonArray();
+        for (String propiedad : faltantes) {
+            StringBuilder snak = new StringBuilder(160);
+            escribirSnak(snak, propiedad, qualifiers.get(propiedad));
+            if (!calificadores.has(propiedad)) {
+                calificadores.add(propiedad, new JsonArray());
+                orden.add(propiedad);
+            }
+            calificadores.getAsJsonArray(propiedad).add(JsonParser.parseString(snak.toString()));
+        }
+        claim.add("qualifiers", calificadores);
+        claim.add("qualifiers-order", orden);
+        return claim;
     }
 
-    
     // Método para verificar si una entidad (ítem o propiedad) existe en Wikibase usando su ID.
     public boolean entityExists(String entityId) throws IOException {
-        // Construir la URL para solicitar información sobre la entidad.
-        String url = API_ENDPOINT + "?action=wbgetentities&format=json&ids=" + entityId;
+        // Construir la URL para solicitar información sobre la entidad (sólo la información básica, sin declaraciones).
+        String url = API_ENDPOINT + "?action=wbgetentities&format=json&props=info&ids=" + entityId;
         HttpGet get = new HttpGet(url);
 
-        // Ejecutar la solicitud HTTP y procesar la respuesta.
-        try (CloseableHttpResponse response = httpClient.execute(get)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            JsonObject json = JsonParser.parseString(responseBody).getAsJsonObject();
-            if (json.has("entities") && json.getAsJsonObject("entities").has(entityId)) {
-                // La entidad (ítem o propiedad) existe.
-                return true;
-            } else {
-                // La entidad no existe.
-                return false;
-            }
-        }
+        // Ejecutar la solicitud HTTP: la entidad existe si la respuesta la incluye y no la marca como "missing".
+        String[] campos = ejecutar(get, in -> JsonStreamDecoder.leerCampos(in, "entities." + entityId + ".id", "entities." + entityId + ".missing"));
+        return campos[0] != null && campos[1] == null;
     }
 
     // Método para verificar si una entidad existe en Wikibase usando su etiqueta, tipo y lenguaje.
     public boolean entityExistsByLabel(String label, String type, String language) throws IOException {
         // Construir la URL para buscar la entidad por etiqueta.
-        String url = API_ENDPOINT + "?action=wbsearchentities&format=json&search=" + URLEncoder.encode(label, "UTF-8") + "&type=" + type + "&language=" + language;
-        HttpGet get = new HttpGet(url);
+        HttpGet get = new HttpGet(urlBusqueda(label, type, language));
 
-        // Ejecutar la solicitud HTTP y procesar la respuesta.
-        try (CloseableHttpResponse response = httpClient.execute(get)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            JsonObject json = JsonParser.parseString(responseBody).getAsJsonObject();
-            if (json.has("search") && json.getAsJsonArray("search").size() > 0) {
-                // La entidad (ítem o propiedad) existe.
-                return true;
-            } else {
-                // La entidad no existe.
-                return false;
-            }
-        }
+        // Ejecutar la solicitud HTTP y procesar la respuesta: la entidad existe si la búsqueda tiene resultados.
+        return ejecutar(get, WikibaseManager::leerPrimerResultado) != null;
     }
 
     // Método para verificar si una entidad existe en Wikibase por su etiqueta y alias.
     public boolean entityExistsByAlias(String label, String alias, String type, String language) throws IOException {
         // Construir la URL para buscar la entidad por etiqueta.
-        String url = API_ENDPOINT + "?action=wbsearchentities&format=json&search=" + URLEncoder.encode(label, "UTF-8") + "&type=" + type + "&language=" + language;
-        HttpGet get = new HttpGet(url);
+        HttpGet get = new HttpGet(urlBusqueda(label, type, language));
 
         // Ejecutar la solicitud HTTP y procesar la respuesta.
-        try (CloseableHttpResponse response = httpClient.execute(get)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            JsonObject json = JsonParser.parseString(responseBody).getAsJsonObject();
-            if (json.has("search") && json.getAsJsonArray("search").size() > 0) {
-                for (JsonElement element : json.getAsJsonArray("search")) {
-                    JsonObject entity = element.getAsJsonObject();
-                    String entityLabel = entity.getAsJsonObject("label").get("value").getAsString();
-
-                    // Verificar si la etiqueta coincide.
-                    if (entityLabel.equalsIgnoreCase(label)) {
-                        // Verificar si el alias coincide.
-                        if (entity.has("aliases")) {
-                            JsonObject aliasesObject = entity.getAsJsonObject("aliases");
-                            if (aliasesObject.has(language)) {
-                                JsonArray aliases = aliasesObject.getAsJsonArray(language);
-                                for (JsonElement aliasElement : aliases) {
-                                    JsonObject aliasObject = aliasElement.getAsJsonObject();
-                                    String aliasValue = aliasObject.get("value").getAsString();
-                                    if (aliasValue.equalsIgnoreCase(alias)) {
-                                        return true; // La entidad existe.
-                                    }
+        JsonObject json = ejecutar(get, in -> JsonParser.parseReader(new InputStreamReader(in, StandardCharsets.UTF_8)).getAsJsonObject());
+        if (json.has("search") && json.getAsJsonArray("search").size() > 0) {
+            for (JsonElement element : json.getAsJsonArray("search")) {
+                JsonObject entity = element.getAsJsonObject();
+                String entityLabel = entity.getAsJsonObject("label").get("value").getAsString();
+
+                // Verificar si la etiqueta coincide.
+                if (entityLabel.equalsIgnoreCase(label)) {
+                    // Verificar si el alias coincide.
+                    if (entity.has("aliases")) {
+                        JsonObject aliasesObject = entity.getAsJsonObject("aliases");
+                        if (aliasesObject.has(language)) {
+                            JsonArray aliases = aliasesObject.getAsJsonArray(language);
+                            for (JsonElement aliasElement : aliases) {
+                                JsonObject aliasObject = aliasElement.getAsJsonObject();
+                                String aliasValue = aliasObject.get("value").getAsString();
+                                if (aliasValue.equalsIgnoreCase(alias)) {
+                                    return true; // La entidad existe.
                                 }
                             }
                         }
                     }
                 }
             }
-            // La entidad no existe.
-            return false;
         }
+        // La entidad no existe.
+        return false;
     }
 
     // Método para obtener el ID de una entidad en Wikibase usando su etiqueta, tipo y lenguaje.
     public String getEntityByLabel(String label, String type, String language) throws IOException {
         // Construir la URL para buscar la entidad por etiqueta.
-        String url = API_ENDPOINT + "?action=wbsearchentities&format=json&search=" + URLEncoder.encode(label, "UTF-8") + "&type=" + type + "&language=" + language;
-        HttpGet get = new HttpGet(url);
+        HttpGet get = new HttpGet(urlBusqueda(label, type, language));
 
-        // Ejecutar la solicitud HTTP y procesar la respuesta.
-        try (CloseableHttpResponse response = httpClient.execute(get)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            JsonObject json = JsonParser.parseString(responseBody).getAsJsonObject();
-            if (json.has("search") && json.getAsJsonArray("search").size() > 0) {
-                JsonObject firstResult = json.getAsJsonArray("search").get(0).getAsJsonObject();
-                // Devolver el ID de la entidad si existe.
-                return firstResult.get("id").getAsString();
-            } else {
-                // La entidad no existe.
-                return null;
+        // Ejecutar la solicitud HTTP y devolver el ID del primer resultado, o null si la entidad no existe.
+        return ejecutar(get, WikibaseManager::leerPrimerResultado);
+    }
+
+    // Método para obtener el ID de la entidad cuya etiqueta es exactamente la indicada (null si no existe). Recorre las
+    // páginas de la búsqueda por prefijo hasta encontrarla o agotar los resultados.
+    public String getEntityByExactLabel(String label, String type, String language) throws IOException {
+        int desde = 0;
+        while (true) {
+            HttpGet get = new HttpGet(urlBusquedaExacta(label, type, language, desde));
+            PaginaBusqueda pagina = ejecutar(get, in -> leerPaginaExacta(in, label));
+            if (pagina.id != null || pagina.continuar <= desde) {
+                return pagina.id;
             }
+            desde = pagina.continuar;
         }
     }
 
     // Método para verificar si existe una declaración específica en un ítem de Wikibase.
     public boolean statementExists(String itemId, String propertyId, String value) throws IOException {
-        // Construir la URL para obtener las declaraciones del ítem.
-        String url = API_ENDPOINT + "?action=wbgetclaims&format=json&entity=" + itemId + "&property=" + propertyId;
-        HttpGet get = new HttpGet(url);
+        // Responder desde el índice de huellas si lo sabe.
+        Boolean respuesta = consultarIndice(itemId, propertyId, value, null, null);
+        if (respuesta != null) {
+            return respuesta;
+        }
+        // Recorrer en streaming las declaraciones de la propiedad (desde la caché si la entidad no ha cambiado).
+        return leerDeclaraciones(itemId, propertyId, in -> contieneDeclaracion(in, propertyId, value));
+    }
 
-        // Ejecutar la solicitud HTTP y procesar la respuesta.
-        try (CloseableHttpResponse response = httpClient.execute(get)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            JsonObject json = JsonParser.parseString(responseBody).getAsJsonObject();
-            if (json.has("claims") && json.getAsJsonObject("claims").has(propertyId)) {
-                JsonArray claims = json.getAsJsonObject("claims").getAsJsonArray(propertyId);
-                for (JsonElement claimElement : claims) {
-                    JsonObject claim = claimElement.getAsJsonObject();
-                    JsonObject mainsnak = claim.getAsJsonObject("mainsnak");
-                    if (mainsnak.has("datavalue")) {
-                        JsonObject dataValue = mainsnak.getAsJsonObject("datavalue");
-                        String dataType = mainsnak.get("datatype").getAsString();
-
-                        // Comprobar si el valor coincide según el tipo de dato.
-                        if (dataType.equals("wikibase-item") && dataValue.getAsJsonObject("value").has("numeric-id")) {
-                            String claimValue = "Q" + dataValue.getAsJsonObject("value").get("numeric-id").getAsString();
-                            if (claimValue.equals(value)) {
-                                return true; // La declaración existe.
-                            }
-                        } else if (dataType.equals("string") && dataValue.has("value")) {
-                            String claimValue = dataValue.get("value").getAsString();
-                            if (claimValue.equals(value)) {
-                                return true; // La declaración existe.
-                            }
-                        } else if (dataType.equals("quantity") && dataValue.has("value")) {
-                            String claimValue = dataValue.get("value").getAsJsonObject().get("amount").getAsString();
-                            if (claimValue.equals("+" + value)) {
-                                return true; // La declaración existe.
-                            }
-                        } else if (dataType.equals("time") && dataValue.has("value")) {
-                            String year = value.substring(0, 4);
-                            String month = value.substring(4, 6);
-                            String claimValue = dataValue.get("value").getAsJsonObject().get("time").getAsString();
-                            if (claimValue.contains("+" + year + "-" + month)) {
-                                return true; // La declaración existe.
-                            }
-                        } else if (dataType.equals("globe-coordinate") && dataValue.has("value")) {
-                            return true; // Asume que las coordenadas coinciden.
-                        }
-                    }
-                }
-            }
-            return false; // La declaración no existe.
+    // Método para verificar si existe una declaración con un valor ya tipado en un ítem de Wikibase.
+    public boolean statementExists(String itemId, String propertyId, WikibaseValue value) throws IOException {
+        Boolean respuesta = FingerprintIndex.compartido().consultar(itemId, propertyId, value);
+        if (respuesta != null) {
+            return respuesta;
         }
+        return leerDeclaraciones(itemId, propertyId, in -> contieneDeclaracion(in, propertyId, value));
     }
 
     // Método para añadir un calificador a una declaración existente en Wikibase.
     public void addQualifierToStatement(String statementId, String qualifierPropertyId, String qualifierValue, String qualifierType) throws IOException {
-        // Construir el valor del calificador basado en el tipo de propiedad.
-        String qualifierValueFormatted;
-        if ("time".equals(qualifierType)) {
-            qualifierValueFormatted = String.format("{\"time\":\"+%s-01-01T00:00:00Z\",\"timezone\":0,\"before\":0,\"after\":0,\"precision\":9,\"calendarmodel\":\"http://www.wikidata.org/entity/Q1985727\"}", qualifierValue);
-        } else if ("quantity".equals(qualifierType)) {
-            qualifierValueFormatted = String.format("{\"amount\":\"+%s\",\"unit\":\"1\"}", qualifierValue);
-        } else if ("wikibase-item".equals(qualifierType)) {
-            qualifierValueFormatted = String.format("{\"entity-type\":\"item\",\"numeric-id\":%s}", qualifierValue).replace("Q", "");
-        } else {
-            throw new IllegalArgumentException("Unsupported qualifier type: " + qualifierType);
-        }
-
-        // Crear los parámetros codificados como application/x-www-form-urlencoded.
-        String encodedToken = URLEncoder.encode(csrfToken, StandardCharsets.UTF_8.toString());
-        String encodedQualifierValue = URLEncoder.encode(qualifierValueFormatted, StandardCharsets.UTF_8.toString());
-
-        String postData = String.format("claim=%s&property=%s&snaktype=value&value=%s&token=%s",
-                URLEncoder.encode(statementId, StandardCharsets.UTF_8.toString()),
-                URLEncoder.encode(qualifierPropertyId, StandardCharsets.UTF_8.toString()),
-                encodedQualifierValue, encodedToken);
+        // Crear los parámetros codificados como application/x-www-form-urlencoded, con el valor formateado según el tipo.
+        WikibaseValue value = valorCalificador(qualifierValue, qualifierType);
+        enviarCalificador(statementId, qualifierPropertyId, value, datosCalificador(statementId, qualifierPropertyId, value, csrfToken));
+    }
 
-        // Configurar y ejecutar la solicitud POST para añadir el calificador.
-        HttpPost post = new HttpPost(API_ENDPOINT + "?action=wbsetqualifier&format=json");
-        post.setEntity(new StringEntity(postData, StandardCharsets.UTF_8));
-        post.setHeader("Content-Type", "application/x-www-form-urlencoded");
+    // Método para añadir un calificador con un valor ya tipado a una declaración existente.
+    public void addQualifierToStatement(String statementId, String qualifierPropertyId, WikibaseValue qualifierValue) throws IOException {
+        enviarCalificador(statementId, qualifierPropertyId, qualifierValue, datosCalificador(statementId, qualifierPropertyId, qualifierValue, csrfToken));
+    }
 
-        // Ejecutar la solicitud y procesar la respuesta.
-        try (CloseableHttpResponse response = httpClient.execute(post)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            System.out.println("Add Qualifier response: " + responseBody);
-        }
+    // Método auxiliar que envía el formulario de wbsetqualifier.
+    // Ante un conflicto de edición se vuelve a leer la declaración y no se reenvía si el calificador ya está.
+    private void enviarCalificador(String statementId, String qualifierPropertyId, WikibaseValue value, String postData) throws IOException {
+        String error = editar("wbsetqualifier", RevisionTracker.entidadDeDeclaracion(statementId), postData, "success",
+                () -> tieneCalificador(statementId, qualifierPropertyId, value) ? statementId : null).error();
+        System.out.println("Add Qualifier response: " + (error == null ? "ok" : error));
     }
 
     // Método para obtener las declaraciones de un ítem en Wikibase.
@@ -413,166 +533,521 @@ public class WikibaseManager {
         String url = API_ENDPOINT + "?action=wbgetclaims&entity=" + URLEncoder.encode(itemId, StandardCharsets.UTF_8.toString()) + "&format=json";
         HttpGet get = new HttpGet(url);
 
-        // Ejecutar la solicitud HTTP y devolver el JSON de las declaraciones.
-        try (CloseableHttpResponse response = httpClient.execute(get)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            return JsonParser.parseString(responseBody).getAsJsonObject().getAsJsonObject("claims");
-        }
+        // Ejecutar la solicitud HTTP y devolver el JSON de las declaraciones, leído directamente desde el flujo.
+        return ejecutar(get, in -> JsonParser.parseReader(new InputStreamReader(in, StandardCharsets.UTF_8)).getAsJsonObject().getAsJsonObject("claims"));
     }
 
     // Método para eliminar declaraciones específicas de un ítem en Wikibase.
     public void removeRegionClaims(String itemId, String claimId) throws IOException {
-        // Crear los parámetros codificados como application/x-www-form-urlencoded.
-        String encodedToken = URLEncoder.encode(csrfToken, StandardCharsets.UTF_8.toString());
-        String encodedItemId = URLEncoder.encode(itemId, StandardCharsets.UTF_8.toString());
-
-        // Crear el objeto JSON para eliminar el claim.
-        String data = String.format("{\"claims\":[{\"id\":\"%s\",\"remove\":\"true\"}]}", claimId);
-
-        String postData = String.format("id=%s&data=%s&token=%s", 
-            encodedItemId, URLEncoder.encode(data, StandardCharsets.UTF_8.toString()), encodedToken);
-
-        // Configurar y ejecutar la solicitud POST para eliminar el claim.
-        HttpPost post = new HttpPost(API_ENDPOINT + "?action=wbeditentity&format=json");
-        post.setEntity(new StringEntity(postData, StandardCharsets.UTF_8));
-        post.setHeader("Content-Type", "application/x-www-form-urlencoded");
+        removeClaims(itemId, List.of(claimId));
+    }
 
-        // Ejecutar la solicitud y procesar la respuesta.
-        try (CloseableHttpResponse response = httpClient.execute(post)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            System.out.println("Response: " + responseBody);
-        }
+    // Método para eliminar varias declaraciones de un mismo ítem con una sola edición (wbremoveclaims).
+    // Se admiten como máximo MAX_DECLARACIONES_POR_ELIMINACION IDs por llamada.
+    public void removeClaims(String itemId, List<String> claimIds) throws IOException {
+        // Enviar la eliminación sobre la última revisión conocida; ante un conflicto, si ninguna de las declaraciones
+        // existe ya no hay nada que reintentar.
+        String error = editar("wbremoveclaims", itemId, datosEliminarDeclaraciones(claimIds, csrfToken), "success", () -> {
+            for (String claimId : claimIds) {
+                if (existeDeclaracion(claimId)) {
+                    return null;
+                }
+            }
+            return itemId;
+        }).error();
+        System.out.println("Remove Claims response (" + claimIds.size() + "): " + (error == null ? "ok" : error));
     }
 
     
     // Método para obtener el ID de una declaración en un ítem de Wikibase según el valor y tipo de dato.
     public String getStatementId(String itemId, String propertyId, String value, String valueType) throws IOException {
-        // Construir la URL para obtener las declaraciones del ítem.
-        String url = API_ENDPOINT + "?action=wbgetclaims&entity=" + URLEncoder.encode(itemId, StandardCharsets.UTF_8.toString()) + "&format=json";
-        HttpGet get = new HttpGet(url);
-        
-        // Ejecutar la solicitud HTTP y procesar la respuesta.
-        try (CloseableHttpResponse response = httpClient.execute(get)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
-            JsonObject json = JsonParser.parseString(responseBody).getAsJsonObject();
-            JsonObject claims = json.getAsJsonObject("claims");
-
-            // Verificar si existen declaraciones para la propiedad dada.
-            if (claims.has(propertyId)) {
-                JsonArray propertyClaims = claims.getAsJsonArray(propertyId);
-                for (JsonElement claimElement : propertyClaims) {
-                    JsonObject claim = claimElement.getAsJsonObject();
-                    JsonObject mainsnak = claim.getAsJsonObject("mainsnak");
-
-                    if (mainsnak.has("datavalue")) {
-                        JsonObject dataValue = mainsnak.getAsJsonObject("datavalue");
-                        String dataType = mainsnak.get("datatype").getAsString();
-                        
-                        // Comprobaciones según el tipo de valor.
-                        if (valueType.equals("wikibase-item") && dataType.equals("wikibase-item") && dataValue.getAsJsonObject("value").has("numeric-id")) {
-                            String claimValue = "Q" + dataValue.getAsJsonObject("value").get("numeric-id").getAsString();
-                            if (claimValue.equals(value)) {
-                                return claim.get("id").getAsString(); // Retornar el ID de la declaración.
-                            }
-                        } else if (valueType.equals("string") && dataType.equals("string") && dataValue.get("value").getAsString().equals(value)) {
-                            return claim.get("id").getAsString(); // Retornar el ID de la declaración.
-                        } else if (valueType.equals("quantity") && dataType.equals("quantity") && dataValue.get("value").getAsJsonObject().get("amount").getAsString().equals("+" + value)) {
-                            return claim.get("id").getAsString(); // Retornar el ID de la declaración.
-                        } else if (valueType.equals("time") && dataType.equals("time") && dataValue.get("time").getAsString().equals("+" + value + "-01-01T00:00:00Z")) {
-                            return claim.get("id").getAsString(); // Retornar el ID de la declaración.
-                        }
-                    }
-                }
-            }
-        }
-        return null; // No se encontró ninguna declaración coincidente.
+        WikibaseValue typed = WikibaseValue.tryParse(valueType, value);
+        return typed == null ? null : getStatementId(itemId, propertyId, typed);
+    }
+
+    // Método para obtener el ID de la primera declaración de la propiedad cuyo valor coincide con el valor tipado.
+    public String getStatementId(String itemId, String propertyId, WikibaseValue value) throws IOException {
+        // Recorrer las declaraciones de la propiedad indicada y devolver el ID de la primera coincidente (null si no hay).
+        return leerDeclaraciones(itemId, propertyId, in -> JsonStreamDecoder.buscarDeclaracion(in, propertyId, claim -> {
+            SnakValue snak = claim.mainsnak;
+            return snak.hasValue && value.datatype().equals(snak.datatype) && value.matches(snak);
+        }));
     }
 
     // Método para verificar si existe una declaración con un calificador específico en un ítem de Wikibase.
     public boolean doesStatementWithQualifierExist(String itemId, String propertyId, String value, String qualifierPropertyId, String qualifierValue) throws IOException {
-        // Obtener las declaraciones del ítem.
-        JsonObject claims = getClaims(itemId);
-        if (claims.has(propertyId)) {
-            JsonArray propertyClaims = claims.getAsJsonArray(propertyId);
-            for (JsonElement claimElement : propertyClaims) {
-                JsonObject claim = claimElement.getAsJsonObject();
-                // Verificar el valor del mainsnak.
-                if (claim.get("mainsnak").getAsJsonObject().get("datavalue").getAsJsonObject().get("value").isJsonObject()) {
-                    JsonObject datavalue = claim.get("mainsnak").getAsJsonObject().get("datavalue").getAsJsonObject();
-                    String datatype = datavalue.get("type").getAsString();
-                    if ("quantity".equals(datatype)) {
-                        if (!datavalue.get("value").getAsJsonObject().get("amount").getAsString().equals("+" + value)) {
-                            continue;
-                        }
-                    } else if ("wikibase-entityid".equals(datatype)) {
-                        if (!datavalue.get("value").getAsJsonObject().get("id").getAsString().equals(value)) {
-                            continue;
-                        }
-                    } else {
-                        if (!datavalue.get("value").getAsString().equals(value)) {
-                            continue;
-                        }
-                    }
-                } else {
-                    if (!claim.get("mainsnak").getAsJsonObject().get("datavalue").getAsJsonObject().get("value").getAsString().equals(value)) {
-                        continue;
-                    }
-                } 
-                // Verificar la existencia de calificadores.
-                if (!claim.has("qualifiers")) {
-                    return false;
+        // Responder desde el índice de huellas si lo sabe; si no, recorrer en streaming sólo las declaraciones de la propiedad.
+        Boolean respuesta = consultarIndice(itemId, propertyId, value, qualifierPropertyId, qualifierValue);
+        if (respuesta != null) {
+            return respuesta;
+        }
+        WikibaseValue.Comparador valor = new WikibaseValue.Comparador(value);
+        WikibaseValue.Comparador calificador = new WikibaseValue.Comparador(qualifierValue);
+        return leerDeclaraciones(itemId, propertyId, in -> JsonStreamDecoder.buscarDeclaracion(in, propertyId, claim -> {
+            // Verificar el valor del mainsnak.
+            if (!valor.coincide(claim.mainsnak)) {
+                return false;
+            }
+
+            // Verificar la existencia del calificador (las fechas "AAAA" se comparan con precisión de año).
+            for (int i = 0; i < claim.qualifierCount(); i++) {
+                SnakValue qualifier = claim.qualifier(i);
+                if (qualifierPropertyId.equals(qualifier.property) && calificador.coincide(qualifier)) {
+                    return true;
                 }
-                                
-                JsonObject qualifiers = claim.getAsJsonObject("qualifiers");
-                if (qualifiers.has(qualifierPropertyId)) {
-                    JsonArray qualifierArray = qualifiers.getAsJsonArray(qualifierPropertyId);
-                                        
-                    for (JsonElement element : qualifierArray) {
-                        JsonObject jsonObject = element.getAsJsonObject();
-                        String property = jsonObject.get("property").getAsString();
-                        
-                        if (qualifierPropertyId.equals(property)) {
-                            JsonObject qualifierDatavalue = jsonObject.getAsJsonObject("datavalue").getAsJsonObject("value");
-                            
-                            // Verificación específica para entidades de tipo "wikibase-item".
-                            if ("wikibase-entityid".equals(jsonObject.getAsJsonObject("datavalue").get("type").getAsString())) {
-                                if (qualifierDatavalue.get("id").getAsString().equals(qualifierValue)) {
-                                    return true;
-                                }
-                            } else if (qualifierDatavalue.has("time")) {
-                                if (qualifierDatavalue.get("time").getAsString().contains("+" + qualifierValue)) {
-                                    return true;
-                                }
-                            }
-                        }
-                    }
+            }
+            return false;
+        }) != null);
+    }
+
+    // Método auxiliar que consulta el índice de huellas con un valor (y opcionalmente un calificador) en texto.
+    // Como WikibaseValue.Comparador interpreta el texto según el tipo de dato del snak, se prueban todos los tipos:
+    // basta una huella presente para responder true, y se responde false sólo si el índice descarta todas las
+    // interpretaciones válidas. Devuelve null si hay que consultar la wiki.
+    private static Boolean consultarIndice(String itemId, String propertyId, String value, String qualifierPropertyId, String qualifierValue) throws IOException {
+        FingerprintIndex indice = FingerprintIndex.compartido();
+        boolean desconocido = false;
+        for (String tipo : TIPOS_COMPARABLES) {
+            WikibaseValue valor = WikibaseValue.tryParse(tipo, value);
+            if (valor == null) {
+                continue;
+            }
+            if (qualifierPropertyId == null) {
+                Boolean respuesta = indice.consultar(itemId, propertyId, valor);
+                if (respuesta == null) {
+                    desconocido = true;
+                } else if (respuesta) {
+                    return true;
+                }
+                continue;
+            }
+            for (String tipoCalificador : TIPOS_COMPARABLES) {
+                WikibaseValue calificador = WikibaseValue.tryParse(tipoCalificador, qualifierValue);
+                if (calificador == null) {
+                    continue;
+                }
+                Boolean respuesta = indice.consultar(itemId, propertyId, valor, qualifierPropertyId, calificador);
+                if (respuesta == null) {
+                    desconocido = true;
+                } else if (respuesta) {
+                    return true;
                 }
             }
         }
-        return false; // La declaración y el calificador no existen.
+        return desconocido ? null : Boolean.FALSE;
     }
 
     // Método para añadir un alias a un ítem en Wikibase.
     public void addAlias(String itemId, String alias, String language) throws IOException {
         // Crear los parámetros codificados como application/x-www-form-urlencoded.
-        String encodedToken = URLEncoder.encode(csrfToken, StandardCharsets.UTF_8.toString());
-        String encodedAliasValue = URLEncoder.encode(alias, StandardCharsets.UTF_8.toString());
+        StringBuilder form = FormEncoder.nuevo();
+        FormEncoder.agregar(form, "id", itemId);
+        FormEncoder.agregar(form, "language", language);
+        FormEncoder.agregar(form, "set", alias);
+        FormEncoder.agregar(form, "token", csrfToken);
+
+        // Enviar los alias sobre la última revisión conocida del ítem (se reintenta ante un conflicto).
+        editar("wbsetaliases", itemId, form.toString(), "success", null);
+        registrarEtiqueta(alias);
+    }
+
+    // Interfaz funcional para verificar, tras un conflicto de edición, si el cambio pendiente ya está en la wiki.
+    // Devuelve el resultado del cambio (por ejemplo, el ID de la declaración) o null si aún hay que aplicarlo.
+    interface Verificacion {
+        String verificar() throws IOException;
+    }
 
-        String postData = String.format("id=%s&set=%s&token=%s",
-                URLEncoder.encode(itemId, StandardCharsets.UTF_8.toString()),
-                encodedAliasValue, encodedToken);
+    // Interfaz de un paso del cierre de main (escribir lo pendiente o guardar un archivo de estado).
+    interface Tarea {
+        void ejecutar() throws IOException;
+    }
 
-        // Configurar y ejecutar la solicitud POST.
-        HttpPost post = new HttpPost(API_ENDPOINT + "?action=wbsetaliases&format=json&language=" + language);
-        post.setEntity(new StringEntity(postData, StandardCharsets.UTF_8));
+    // Método auxiliar que ejecuta un paso del cierre de main e informa si falla, sin impedir los pasos siguientes.
+    private static void terminar(String descripcion, Tarea tarea) {
+        try {
+            tarea.ejecutar();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("No se pudo " + descripcion + ": " + e);
+        }
+    }
+
+    // Método auxiliar que envía una escritura sobre una entidad existente con su última revisión conocida (baserevid).
+    // Si la API responde "editconflict", se olvida la revisión, se verifica si el cambio ya está aplicado en el nuevo
+    // estado y, si no, se reintenta sobre la revisión actual. Devuelve el resultado del último intento.
+    private RevisionTracker.Resultado editar(String action, String entityId, String postData, String rutaId, Verificacion aplicado) throws IOException {
+        for (int intento = 1; ; intento++) {
+            RevisionTracker.Resultado resultado = intentar(action, entityId, postData, rutaId);
+            if (!resultado.esConflicto() || intento >= RevisionTracker.MAX_INTENTOS) {
+                return resultado;
+            }
+            System.out.println("Conflicto de edición en " + entityId + "; reintento " + intento);
+            String existente = aplicado != null ? aplicado.verificar() : null;
+            if (existente != null) {
+                return RevisionTracker.Resultado.yaAplicado(existente);
+            }
+        }
+    }
+
+    // Método auxiliar que envía una sola vez una escritura con la última revisión conocida de la entidad. Si tuvo éxito
+    // registra la nueva revisión; si hubo un conflicto, olvida la revisión para que el siguiente intento la consulte.
+    RevisionTracker.Resultado intentar(String action, String entityId, String postData, String rutaId) throws IOException {
+        return intentar(action, entityId, postData, rutaId, List.of());
+    }
+
+    // Método auxiliar que envía una sola vez una escritura que agrega las declaraciones indicadas (completas y con un
+    // GUID fijado en el cliente) y las pasa a la caché de declaraciones y al índice de huellas aunque la respuesta no
+    // las incluya.
+    RevisionTracker.Resultado intentar(String action, String entityId, String postData, String rutaId, List<JsonObject> escritas) throws IOException {
+        long base = revisionBase(entityId);
+        HttpPost post = new HttpPost(API_ENDPOINT + "?action=" + action + "&format=json");
+        post.setEntity(new StringEntity(RevisionTracker.conBase(postData, base), StandardCharsets.UTF_8));
         post.setHeader("Content-Type", "application/x-www-form-urlencoded");
 
-        // Ejecutar la solicitud y procesar la respuesta.
-        try (CloseableHttpResponse response = httpClient.execute(post)) {
-            String responseBody = EntityUtils.toString(response.getEntity());
+        RevisionTracker.Resultado resultado = ejecutar(post, in -> RevisionTracker.Resultado.leer(in, rutaId));
+        if (!escritas.isEmpty() && resultado.codigoError == null && resultado.declaraciones.isEmpty()) {
+            resultado = resultado.conDeclaraciones(escritas);
+        }
+        ClaimCache.compartida().aplicar(entityId, base, action, resultado);
+        FingerprintIndex.compartido().aplicar(entityId, base, action, resultado);
+        if (resultado.esConflicto()) {
+            RevisionTracker.compartido().olvidar(entityId);
+        } else {
+            RevisionTracker.compartido().registrar(entityId, resultado.revision);
+            LocalMirror.registrarPropia(resultado.revision);
+        }
+        return resultado;
+    }
+
+    // Método auxiliar que devuelve la última revisión conocida de una entidad, consultándola si no se conoce.
+    private long revisionBase(String entityId) throws IOException {
+        Long conocida = RevisionTracker.compartido().get(entityId);
+        if (conocida != null) {
+            return conocida;
+        }
+        long revision = ejecutar(new HttpGet(RevisionTracker.urlRevision(entityId)), in -> RevisionTracker.leerRevision(in, entityId));
+        RevisionTracker.compartido().registrar(entityId, revision);
+        return revision;
+    }
+
+    // Método auxiliar que registra la primera revisión de una entidad recién creada y devuelve su ID.
+    // La entidad nace sin declaraciones, así que se guarda vacía en la caché de declaraciones y al día en el índice
+    // de huellas.
+    private static String registrarCreacion(RevisionTracker.Resultado resultado) throws IOException {
+        String entityId = resultado.exigirId();
+        RevisionTracker.compartido().registrar(entityId, resultado.revision);
+        LocalMirror.registrarPropia(resultado.revision);
+        ClaimCache.compartida().registrarNueva(entityId, resultado.revision);
+        FingerprintIndex.compartido().marcarCompleto(entityId, resultado.revision);
+        return entityId;
+    }
+
+    // Método auxiliar que agrega la etiqueta o alias de un ítem propio al filtro de etiquetas, si está abierto.
+    static void registrarEtiqueta(String etiqueta) {
+        LabelBloomFilter etiquetas = LabelBloomFilter.compartido();
+        if (etiquetas != null) {
+            etiquetas.agregar(etiqueta);
+        }
+    }
+
+    // Método auxiliar que recorre las declaraciones de una propiedad de una entidad usando la caché de declaraciones.
+    // Si la entrada no está vigente se consulta sólo la revisión de la entidad; las declaraciones se descargan de
+    // nuevo (todas las de la entidad, en una solicitud) únicamente si la revisión cambió o la entidad no estaba; la
+    // entrada revalidada o descargada deja al día en esa revisión el índice de huellas.
+    private <T> T leerDeclaraciones(String entityId, String propertyId, JsonStreamDecoder.Decodificador<T> decodificador) throws IOException {
+        ClaimCache cache = ClaimCache.compartida();
+        ClaimCache.Entrada entrada = cache.vigente(entityId);
+        if (entrada == null) {
+            long revision = ejecutar(new HttpGet(RevisionTracker.urlRevision(entityId)), in -> RevisionTracker.leerRevision(in, entityId));
+            RevisionTracker.compartido().registrar(entityId, revision);
+            entrada = cache.revalidar(entityId, revision);
+            if (entrada == null) {
+                entrada = ejecutar(new HttpGet(urlDeclaraciones(entityId)), in -> cache.cargar(entityId, revision, in));
+            }
+            FingerprintIndex.compartido().agregarEntidad(entityId, revision, new ByteArrayInputStream(entrada.json()));
+        }
+        return decodificador.decodificar(new ByteArrayInputStream(entrada.json(propertyId)));
+    }
+
+    // Método que ejecuta una consulta GET arbitraria a la API y decodifica su respuesta en streaming.
+    <T> T consultar(String url, JsonStreamDecoder.Decodificador<T> decodificador) throws IOException {
+        return ejecutar(new HttpGet(url), decodificador);
+    }
+
+    // Método auxiliar que verifica si una declaración (por su ID) aún existe.
+    private boolean existeDeclaracion(String statementId) throws IOException {
+        return ejecutar(new HttpGet(urlDeclaracion(statementId)), in -> JsonStreamDecoder.buscarDeclaracion(in, null, claim -> true) != null);
+    }
+
+    // Método auxiliar que verifica si una declaración (por su ID) ya tiene un calificador con el valor indicado.
+    private boolean tieneCalificador(String statementId, String qualifierPropertyId, WikibaseValue value) throws IOException {
+        return ejecutar(new HttpGet(urlDeclaracion(statementId)), in -> contieneCalificador(in, qualifierPropertyId, value));
+    }
+
+    // Método auxiliar que ejecuta una solicitud HTTP y decodifica en streaming el cuerpo de la respuesta,
+    // sin copiarlo antes a una cadena. Cada llamada emite un evento de JFR (FlightEvents.LlamadaApi); los bytes
+    // recibidos sólo se cuentan si hay una grabación activa.
+    private <T> T ejecutar(HttpUriRequest request, JsonStreamDecoder.Decodificador<T> decodificador) throws IOException {
+        FlightEvents.LlamadaApi evento = new FlightEvents.LlamadaApi();
+        evento.begin();
+        try (CloseableHttpResponse response = httpClient.execute(request);
+             InputStream in = response.getEntity().getContent()) {
+            evento.estado = response.getStatusLine().getStatusCode();
+            if (!evento.isEnabled()) {
+                return decodificador.decodificar(in);
+            }
+            FlightEvents.Contador contador = new FlightEvents.Contador(in);
+            try {
+                return decodificador.decodificar(contador);
+            } finally {
+                evento.bytesRecibidos = contador.leidos();
+            }
+        } finally {
+            evento.end();
+            if (evento.shouldCommit()) {
+                registrarLlamada(evento, request);
+            }
         }
     }
 
+    // Método auxiliar que completa el evento de una llamada con el cuerpo del formulario enviado y lo registra.
+    private static void registrarLlamada(FlightEvents.LlamadaApi evento, HttpUriRequest request) throws IOException {
+        String formulario = null;
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entidad = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entidad != null && entidad.isRepeatable()) {
+                formulario = EntityUtils.toString(entidad, StandardCharsets.UTF_8);
+                evento.bytesEnviados = entidad.getContentLength();
+            }
+        }
+        evento.registrar(request.getURI().toString(), formulario);
+    }
+
+    // Método auxiliar que construye la URL de búsqueda de entidades por etiqueta.
+    static String urlBusqueda(String label, String type, String language) {
+        return API_ENDPOINT + "?action=wbsearchentities&format=json&search=" + URLEncoder.encode(label, StandardCharsets.UTF_8) + "&type=" + type + "&language=" + language;
+    }
+
+    // Método auxiliar que construye la URL para obtener las declaraciones de una propiedad de un ítem.
+    static String urlDeclaraciones(String itemId, String propertyId) {
+        return API_ENDPOINT + "?action=wbgetclaims&format=json&entity=" + itemId + "&property=" + propertyId;
+    }
+
+    // Método auxiliar que construye la URL para obtener todas las declaraciones de una entidad.
+    static String urlDeclaraciones(String entityId) {
+        return API_ENDPOINT + "?action=wbgetclaims&format=json&entity=" + entityId;
+    }
+
+    // Método auxiliar que construye la URL para obtener una sola declaración por su ID.
+    static String urlDeclaracion(String statementId) {
+        return API_ENDPOINT + "?action=wbgetclaims&format=json&claim=" + URLEncoder.encode(statementId, StandardCharsets.UTF_8);
+    }
+
+    // Método auxiliar que construye la URL para obtener el tipo de dato de varias propiedades (máximo 50 por solicitud).
+    static String urlTiposDeDato(List<String> propertyIds) {
+        return API_ENDPOINT + "?action=wbgetentities&format=json&props=datatype&ids=" + URLEncoder.encode(String.join("|", propertyIds), StandardCharsets.UTF_8);
+    }
+
+    // Método auxiliar que construye la URL de búsqueda por etiqueta con hasta 50 resultados, para buscar coincidencias exactas.
+    // Con desde > 0 pide la página de resultados que comienza en esa posición (search-continue de la anterior).
+    static String urlBusquedaExacta(String label, String type, String language, int desde) {
+        return urlBusqueda(label, type, language) + "&strictlanguage=1&limit=50" + (desde > 0 ? "&continue=" + desde : "");
+    }
+
+    // Método auxiliar que construye los datos del formulario para añadir un alias sin reemplazar los existentes (wbsetaliases).
+    static String datosAlias(String itemId, String alias, String language, String token) {
+        StringBuilder form = FormEncoder.nuevo();
+        FormEncoder.agregar(form, "id", itemId);
+        FormEncoder.agregar(form, "language", language);
+        FormEncoder.agregar(form, "add", alias);
+        FormEncoder.agregar(form, "token", token);
+        return form.toString();
+    }
+
+    // Método auxiliar que construye los datos del formulario de wbremoveclaims (IDs separados por "|").
+    static String datosEliminarDeclaraciones(List<String> claimIds, String token) {
+        if (claimIds.isEmpty() || claimIds.size() > MAX_DECLARACIONES_POR_ELIMINACION) {
+            throw new IllegalArgumentException("Se deben eliminar entre 1 y " + MAX_DECLARACIONES_POR_ELIMINACION + " declaraciones por llamada: " + claimIds.size());
+        }
+        StringBuilder form = FormEncoder.nuevo();
+        FormEncoder.agregar(form, "claim", String.join("|", claimIds));
+        FormEncoder.agregar(form, "token", token);
+        return form.toString();
+    }
+
+    // Método auxiliar que construye los datos del formulario para crear una propiedad.
+    static String datosNuevaPropiedad(String label, String description, String datatype, String token) {
+        StringBuilder data = datosEtiqueta(label, description).append(",\"datatype\":");
+        WikibaseValue.writeJsonString(data, datatype);
+        return datosNuevaEntidad("property", data.append('}'), token);
+    }
+
+    // Método auxiliar que construye los datos del formulario para crear un ítem.
+    static String datosNuevoItem(String label, String description, String token) {
+        return datosNuevaEntidad("item", datosEtiqueta(label, description).append('}'), token);
+    }
+
+    // Método auxiliar que comienza el JSON de una entidad nueva con su etiqueta y descripción en español, escapadas
+    // (un nombre con comillas o barras invertidas no debe romper el JSON); sin descripción queda vacía. El objeto
+    // queda abierto.
+    private static StringBuilder datosEtiqueta(String label, String description) {
+        StringBuilder data = new StringBuilder(128).append("{\"labels\":{\"es\":{\"language\":\"es\",\"value\":");
+        WikibaseValue.writeJsonString(data, label);
+        data.append("}},\"descriptions\":{\"es\":{\"language\":\"es\",\"value\":");
+        WikibaseValue.writeJsonString(data, description == null ? "" : description);
+        return data.append("}}");
+    }
+
+    private static String datosNuevaEntidad(String tipo, CharSequence data, String token) {
+        StringBuilder form = FormEncoder.nuevo();
+        FormEncoder.agregar(form, "new", tipo);
+        FormEncoder.agregar(form, "token", token);
+        FormEncoder.agregar(form, "data", data);
+        return form.toString();
+    }
+
+    // Método auxiliar que construye los datos del formulario para crear una declaración (wbcreateclaim).
+    static String datosDeclaracion(String itemId, String propertyId, String value, String valueType, String token) {
+        return datosDeclaracion(itemId, propertyId, WikibaseValue.parse(valueType, value), token);
+    }
+
+    // Método auxiliar que construye el formulario de wbcreateclaim con el valor tipado escrito en el buffer reutilizable.
+    static String datosDeclaracion(String itemId, String propertyId, WikibaseValue value, String token) {
+        StringBuilder form = FormEncoder.nuevo();
+        FormEncoder.agregar(form, "entity", itemId);
+        FormEncoder.agregar(form, "property", propertyId);
+        FormEncoder.agregar(form, "snaktype", "value");
+        FormEncoder.agregar(form, "value", value.toJson());
+        FormEncoder.agregar(form, "token", token);
+        return form.toString();
+    }
+
+    // Método auxiliar que construye los datos del formulario para añadir un calificador (wbsetqualifier).
+    static String datosCalificador(String statementId, String qualifierPropertyId, String qualifierValue, String qualifierType, String token) {
+        return datosCalificador(statementId, qualifierPropertyId, valorCalificador(qualifierValue, qualifierType), token);
+    }
+
+    // Método auxiliar que convierte el valor de un calificador según su tipo; las fechas indican un año ("AAAA").
+    static WikibaseValue valorCalificador(String qualifierValue, String qualifierType) {
+        return "time".equals(qualifierType)
+                ? WikibaseValue.Time.ofYear(qualifierValue)
+                : WikibaseValue.parse(qualifierType, qualifierValue);
+    }
+
+    // Método auxiliar que construye el formulario de wbsetqualifier con el valor tipado escrito en el buffer reutilizable.
+    static String datosCalificador(String statementId, String qualifierPropertyId, WikibaseValue value, String token) {
+        StringBuilder form = FormEncoder.nuevo();
+        FormEncoder.agregar(form, "claim", statementId);
+        FormEncoder.agregar(form, "property", qualifierPropertyId);
+        FormEncoder.agregar(form, "snaktype", "value");
+        FormEncoder.agregar(form, "value", value.toJson());
+        FormEncoder.agregar(form, "token", token);
+        return form.toString();
+    }
+
+    // Método auxiliar que devuelve el ID del primer resultado de wbsearchentities, o null si no hay resultados.
+    static String leerPrimerResultado(InputStream in) throws IOException {
+        return JsonStreamDecoder.leerCampos(in, "search.0.id")[0];
+    }
+
+    // Clase que representa una página de una búsqueda exacta: el ID del primer resultado cuya etiqueta es exactamente la
+    // buscada (null si no está en la página) y la posición desde la que continúan los resultados (0 si no hay más).
+    static final class PaginaBusqueda {
+        final String id;
+        final int continuar;
+
+        PaginaBusqueda(String id, int continuar) {
+            this.id = id;
+            this.continuar = continuar;
+        }
+    }
+
+    // Método auxiliar que lee una página de wbsearchentities y busca el resultado cuya etiqueta es exactamente la
+    // indicada (la búsqueda es por prefijo, por lo que "COLEGIO" también encuentra "COLEGIO SAN JOSÉ", y puede haber
+    // más de una página de coincidencias antes de la exacta).
+    static PaginaBusqueda leerPaginaExacta(InputStream in, String label) throws IOException {
+        String encontrado = null;
+        int continuar = 0;
+        try (JsonReader reader = JsonStreamDecoder.abrir(in)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String campo = reader.nextName();
+                if (campo.equals("search-continue") && reader.peek() == JsonToken.NUMBER) {
+                    continuar = reader.nextInt();
+                    continue;
+                }
+                if (!campo.equals("search") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    String id = null;
+                    String etiqueta = null;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String nombre = reader.nextName();
+                        if (nombre.equals("id")) {
+                            id = reader.nextString();
+                        } else if (nombre.equals("label")) {
+                            etiqueta = reader.nextString();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    if (encontrado == null && label.equals(etiqueta)) {
+                        encontrado = id;
+                    }
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        }
+        return new PaginaBusqueda(encontrado, continuar);
+    }
+
+    // Método auxiliar que lee el tipo de dato de cada propiedad de una respuesta de wbgetentities (props=datatype).
+    // Las propiedades que no existen quedan fuera del mapa.
+    static Map<String, String> leerTiposDeDato(InputStream in, List<String> propertyIds) throws IOException {
+        String[] rutas = new String[propertyIds.size()];
+        for (int i = 0; i < rutas.length; i++) {
+            rutas[i] = "entities." + propertyIds.get(i) + ".datatype";
+        }
+        String[] tipos = JsonStreamDecoder.leerCampos(in, rutas);
+        Map<String, String> resultado = new HashMap<>();
+        for (int i = 0; i < tipos.length; i++) {
+            if (tipos[i] != null) {
+                resultado.put(propertyIds.get(i), tipos[i]);
+            }
+        }
+        return resultado;
+    }
+
+    // Método auxiliar que verifica si la respuesta de wbgetclaims contiene una declaración con el valor indicado.
+    // El texto se interpreta según el tipo de dato de cada declaración.
+    static boolean contieneDeclaracion(InputStream in, String propertyId, String value) throws IOException {
+        WikibaseValue.Comparador comparador = new WikibaseValue.Comparador(value);
+        return JsonStreamDecoder.buscarDeclaracion(in, propertyId, claim -> comparador.coincide(claim.mainsnak)) != null;
+    }
+
+    // Método auxiliar que verifica si la respuesta de wbgetclaims contiene una declaración con el valor tipado indicado.
+    static boolean contieneDeclaracion(InputStream in, String propertyId, WikibaseValue value) throws IOException {
+        return JsonStreamDecoder.buscarDeclaracion(in, propertyId, claim -> claim.mainsnak.hasValue && value.matches(claim.mainsnak)) != null;
+    }
+
+    // Método auxiliar que verifica si la respuesta de wbgetclaims contiene una declaración con el calificador indicado.
+    static boolean contieneCalificador(InputStream in, String qualifierPropertyId, WikibaseValue value) throws IOException {
+        return JsonStreamDecoder.buscarDeclaracion(in, null, claim -> {
+            for (int i = 0; i < claim.qualifierCount(); i++) {
+                SnakValue qualifier = claim.qualifier(i);
+                if (qualifierPropertyId.equals(qualifier.property) && qualifier.hasValue && value.matches(qualifier)) {
+                    return true;
+                }
+            }
+            return false;
+        }) != null;
+    }
+
     // Método estático para obtener posiciones en orden según listas de variables.
     public static List<Integer> getPositionsInOrder(List<VariablePosition> variablePositions, List<String> orderedVariables) {
         List<Integer> positions = new ArrayList<>();
@@ -590,14 +1065,41 @@ public class WikibaseManager {
         return positions;
     }
 
-    // Método auxiliar para comprobar si el conjunto contiene un elemento, ignorando mayúsculas y minúsculas.
-    private static boolean containsIgnoreCase(Set<String> set, String value) {
-        for (String item : set) {
-            if (value.contains(item.toUpperCase())) {
-                return true;
-            }
+    // Método auxiliar que lanza la búsqueda asíncrona de una etiqueta si no está vacía ni en el diccionario local.
+    // Devuelve un futuro ya completado con null cuando no es necesario consultar Wikibase, incluido el caso en que el
+    // filtro de etiquetas asegura que ningún ítem la tiene. El resultado de la consulta al diccionario se registra como
+    // evento de JFR con el nombre indicado.
+    private static CompletableFuture<String> buscarSiFalta(WikibaseAsyncManager asyncManager, String nombre, Map<String, String> diccionario, String label) {
+        if (label.trim().equals("")) {
+            return CompletableFuture.completedFuture(null);
+        }
+        boolean conocida = diccionario.containsKey(label);
+        FlightEvents.cache(nombre, label, conocida);
+        if (conocida) {
+            return CompletableFuture.completedFuture(null);
+        }
+        LabelBloomFilter etiquetas = LabelBloomFilter.compartido();
+        if (etiquetas != null && !etiquetas.puedeExistir(label)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return asyncManager.getEntityByLabel(label, "item", "es");
+    }
+
+    // Método auxiliar que recuerda el ítem de un docente: por su MRUN si es numérico, o por su etiqueta si no.
+    private static void recordarDocente(Map<String, String> docentes, LongLongMap docentesPorMrun, String docenteLabel, long mrun, String docenteId) {
+        if (mrun != 0) {
+            docentesPorMrun.put(mrun, numeroDeItem(docenteId));
+        } else {
+            docentes.put(docenteLabel, docenteId);
         }
-        return false;
+    }
+
+    // Método auxiliar que devuelve el número de un ID de ítem ("Q123" -> 123).
+    static long numeroDeItem(String itemId) {
+        if (itemId.length() < 2 || itemId.charAt(0) != 'Q') {
+            throw new IllegalArgumentException("ID de ítem no válido: " + itemId);
+        }
+        return Long.parseLong(itemId.substring(1));
     }
 
     // Método principal para la ejecución del programa.
@@ -614,14 +1116,14 @@ public class WikibaseManager {
         int max_read = 0;
     	
     	if (args.length < 3) {
-            System.err.println("Uso: WikibaseManager <usuario> <clave> <archivo> (opcional: <numero de lineas a leer>)");
+            System.err.println("Uso: WikibaseManager <usuario> <clave> <archivo .csv, .csv.gz, .zip, .ttl o .nt, o URL JDBC> (opcional: <numero de lineas a leer>)");
             System.exit(1);
             
         } else {
         	System.out.println("Corriendo con argumentos");
         	username = args[0];  // Usuario
             password = args[1];  //Contraseña
-            csvFile = args[2];  // Ruta al archivo CSV
+            csvFile = args[2];  // Ruta al archivo CSV (puede venir comprimido en .gz o .zip) o URL JDBC
             // Si se indica cuantas lineas se deben leer de una, se guarda, en caso contrario, se leen un maximo de 20
             if (args.length >= 4) {
             	max_read = Math.max(Integer.parseInt(args[3]), 1);
@@ -631,10 +1133,44 @@ public class WikibaseManager {
             }
         }
         
-        // Se inicializa el manager y se logea y consigue el CSRF Token
-        manager = new WikibaseManager(username, password);
-        manager.login();
-        manager.fetchCsrfToken();
+        // Se abren las sesiones: la cuenta indicada más las de -Dwikibase.cuentas. Las sesiones guardadas en la
+        // ejecución anterior se reutilizan sin volver a iniciar sesión si la wiki aún las reconoce.
+        SessionPool sesiones = SessionPool.abrir(username, password);
+        manager = sesiones.principal();
+
+        // Gestor asíncrono que reparte las solicitudes entre las sesiones, usado para las búsquedas concurrentes de cada fila.
+        WikibaseAsyncManager asyncManager = new WikibaseAsyncManager(sesiones);
+
+        // Enlaces inversos de las regiones y comunas, que se cargan una vez y se escriben por lotes.
+        HubEdgeManager hubs = new HubEdgeManager(sesiones);
+        // Filtro con las etiquetas y alias de todos los ítems: las etiquetas que descarta se crean sin buscarlas.
+        LabelBloomFilter etiquetas = LabelBloomFilter.abrir(asyncManager);
+        // Espejo local de las entidades tocadas en ejecuciones anteriores, puesto al día con recentchanges: llena las
+        // cachés al iniciar y las mantiene confirmadas mientras dura la carga.
+        LocalMirror espejo = LocalMirror.abrir(asyncManager);
+
+        // Manifiesto de IDs generado por wikibase_inicializador: IDs de propiedades e ítems por etiqueta y tablas de
+        // códigos del CSV. Se lee de -Dwikibase.manifiesto o de ids.properties en el directorio de trabajo.
+        IdManifest manifiesto = IdManifest.cargar(IdManifest.rutaPorDefecto());
+
+        // Carga desde RDF: si el archivo es Turtle o N-Triples (.ttl o .nt, también en .gz), cada sujeto se escribe
+        // como un ítem con una sola edición según el mapeo de predicados (-Dwikibase.rdfMapeo), en lugar de seguir el
+        // camino del CSV. El número de líneas a leer limita el número de ítems escritos.
+        if (RdfEntityLoader.esRdf(csvFile)) {
+            try {
+                RdfEntityLoader rdf = RdfEntityLoader.cargar(Paths.get(csvFile), sesiones, manifiesto, max_read);
+                System.out.println("Fin");
+                System.out.println(rdf.resumen());
+                System.out.println(etiquetas.resumen());
+                System.out.println(ClaimCache.compartida().resumen());
+                System.out.println(RevisionTracker.compartido().resumen());
+            } finally {
+                terminar("guardar el espejo local", espejo::guardar);
+                System.out.println(espejo.resumen());
+                terminar("guardar las sesiones", sesiones::guardar);
+            }
+            return;
+        }
         
         // Diccionario de propiedades. Llave: nombre de la columna, Valor: nombre o código de la propiedad en Wikibase.
         LinkedHashMap<String, String> diccionarioPropiedades = new LinkedHashMap<>();
@@ -645,14 +1181,14 @@ public class WikibaseManager {
         diccionarioPropiedades.put("DOC_FEC_NAC", "fecha de nacimiento");
         diccionarioPropiedades.put("DOC_GENERO", "género del Docente");
         diccionarioPropiedades.put("NOM_SUBSECTOR", "asignatura");
-        diccionarioPropiedades.put("ESTADO_ESTAB", "P37");
+        diccionarioPropiedades.put("ESTADO_ESTAB", "estado del establecimiento");
         diccionarioPropiedades.put("COD_ENSE", "nivel de enseñanza");
         diccionarioPropiedades.put("PROM_ASIS", "promedio de asistencia");
         diccionarioPropiedades.put("CUR_SIM_TOT", "total de cursos simples");
         diccionarioPropiedades.put("CUR_COMB_TOT", "total de cursos combinados");
-        diccionarioPropiedades.put("COD_DEPE", "P36");
-        diccionarioPropiedades.put("RURAL_RBD", "P38");
-        diccionarioPropiedades.put("ORI_RELIGIOSA", "P40");
+        diccionarioPropiedades.put("COD_DEPE", "tipo de establecimiento");
+        diccionarioPropiedades.put("RURAL_RBD", "ruralidad");
+        diccionarioPropiedades.put("ORI_RELIGIOSA", "orientacion religiosa");
         
         diccionarioPropiedades.put("MAT_HOM_TOT", "personas matrículadas");
         diccionarioPropiedades.put("MAT_MUJ_TOT", "personas matrículadas");
@@ -700,53 +1236,57 @@ public class WikibaseManager {
         diccionarioPropiedadesSinCualificador.put("ubicacion", "globe-coordinate");
         diccionarioPropiedadesSinCualificador.put("fecha de nacimiento", "time");
         diccionarioPropiedadesSinCualificador.put("género del Docente", "string");
-        diccionarioPropiedadesSinCualificador.put("P37", "wikibase-item");
-        diccionarioPropiedadesSinCualificador.put("P38", "wikibase-item");
-        diccionarioPropiedadesSinCualificador.put("P36", "wikibase-item");
-        diccionarioPropiedadesSinCualificador.put("P40", "wikibase-item");
+        diccionarioPropiedadesSinCualificador.put("estado del establecimiento", "wikibase-item");
+        diccionarioPropiedadesSinCualificador.put("ruralidad", "wikibase-item");
+        diccionarioPropiedadesSinCualificador.put("tipo de establecimiento", "wikibase-item");
+        diccionarioPropiedadesSinCualificador.put("orientacion religiosa", "wikibase-item");
 
         
-        // Niveles de educación mapeados en un diccionario
-        Map<String, String> educationalLevels = new LinkedHashMap<>();
-
-        educationalLevels.put("110", "Q17346"); // ENSEÑANZA BÁSICA
-        educationalLevels.put("160", "Q17347"); // EDUCACIÓN BÁSICA COMÚN ADULTOS (DECRETO 77/1982)
-        educationalLevels.put("161", "Q17348"); // EDUCACIÓN BÁSICA ESPECIAL ADULTOS
-        educationalLevels.put("163", "Q17349"); // ESCUELAS CÁRCELES
-        educationalLevels.put("165", "Q17350"); // EDUCACIÓN DE ADULTOS SIN OFICIOS (DECRETO 584/2007)
-        educationalLevels.put("167", "Q17351"); // EDUCACIÓN DE ADULTOS CON OFICIOS (DECRETO 584/2007 Y 999/2009)
-        educationalLevels.put("310", "Q17352"); // ENSEÑANZA MEDIA H-C NIÑOS Y JÓVENES
-        educationalLevels.put("360", "Q17353"); // EDUCACIÓN MEDIA H-C ADULTOS (DECRETO N°190/1975)
-        educationalLevels.put("361", "Q17354"); // EDUCACIÓN MEDIA H-C ADULTOS (DECRETO N°12/1987)
-        educationalLevels.put("363", "Q17355"); // EDUCACIÓN MEDIA H-C ADULTOS (DECRETO N°239/2004)
-        educationalLevels.put("410", "Q17356"); // ENSEÑANZA MEDIA T-P COMERCIAL NIÑOS
-        educationalLevels.put("460", "Q17357"); // EDUCACIÓN MEDIA T-P COMERCIAL ADULTOS (DECRETO N° 152/1989)
-        educationalLevels.put("461", "Q17357"); // EDUCACIÓN MEDIA T-P COMERCIAL ADULTOS (DECRETO N° 1000/2009)
-        educationalLevels.put("463", "Q17358"); // EDUCACIÓN MEDIA T-P COMERCIAL ADULTOS (DECRETO N° 1000/2009)
-        educationalLevels.put("510", "Q17359"); // ENSEÑANZA MEDIA T-P INDUSTRIAL NIÑOS
-        educationalLevels.put("560", "Q17360"); // EDUCACIÓN MEDIA T-P INDUSTRIAL ADULTOS (DECRETO N° 152/1989)
-        educationalLevels.put("561", "Q17360"); // EDUCACIÓN MEDIA T-P INDUSTRIAL ADULTOS (DECRETO N° 152/1989)
-        educationalLevels.put("563", "Q17361"); // EDUCACIÓN MEDIA T-P INDUSTRIAL ADULTOS (DECRETO N° 1000/2009)
-        educationalLevels.put("610", "Q17362"); // ENSEÑANZA MEDIA T-P TÉCNICA NIÑOS
-        educationalLevels.put("660", "Q17363"); // EDUCACIÓN MEDIA T-P TÉCNICA ADULTOS (DECRETO N° 152/1989)
-        educationalLevels.put("661", "Q17363"); // EDUCACIÓN MEDIA T-P TÉCNICA ADULTOS (DECRETO N° 1000/2009)
-        educationalLevels.put("663", "Q17364"); // EDUCACIÓN MEDIA T-P TÉCNICA ADULTOS (DECRETO N° 1000/2009)
-        educationalLevels.put("710", "Q17365"); // ENSEÑANZA MEDIA T-P AGRÍCOLA NIÑOS
-        educationalLevels.put("760", "Q17366"); // EDUCACIÓN MEDIA T-P AGRÍCOLA ADULTOS (DECRETO N° 152/1989)
-        educationalLevels.put("761", "Q17366"); // EDUCACIÓN MEDIA T-P AGRÍCOLA ADULTOS (DECRETO N° 1000/2009)
-        educationalLevels.put("763", "Q17367"); // EDUCACIÓN MEDIA T-P AGRÍCOLA ADULTOS (DECRETO N° 1000/2009)
-        educationalLevels.put("810", "Q17368"); // ENSEÑANZA MEDIA T-P MARÍTIMA NIÑOS
-        educationalLevels.put("860", "Q17369"); // EDUCACIÓN MEDIA T-P MARÍTIMA ADULTOS (DECRETO N° 152/1989)
-        educationalLevels.put("861", "Q17369"); // EDUCACIÓN MEDIA T-P MARÍTIMA ADULTOS (DECRETO N° 1000/2009)
-        educationalLevels.put("863", "Q17370"); // EDUCACIÓN MEDIA T-P MARÍTIMA ADULTOS (DECRETO N° 1000/2009)
-        educationalLevels.put("910", "Q17371"); // ENSEÑANZA MEDIA ARTÍSTICA NIÑOS Y JÓVENES
-        educationalLevels.put("963", "Q17372"); // EDUCACIÓN MEDIA ARTÍSTICA ADULTOS
+        // Niveles de educación (COD_ENSE -> ítem), desde el manifiesto.
+        CodeTable nivelesEnsenanza = manifiesto.tabla("COD_ENSE");
+
+        // Tablas de códigos de las columnas cuyo valor es un ítem (código del CSV -> ítem), desde el manifiesto.
+        Map<String, CodeTable> tablasCodigos = new HashMap<>();
+        for (String columna : Arrays.asList("COD_DEPE", "RURAL_RBD", "ORI_RELIGIOSA", "ESTADO_ESTAB")) {
+            tablasCodigos.put(columna, manifiesto.tabla(columna));
+        }
+
+        // IDs de las propiedades e ítems fijos usados por el cargador, desde el manifiesto.
+        String instanciaDePropiedadId = manifiesto.propiedad("instancia de");
+        String generoPropiedadId = manifiesto.propiedad("identificador género");
+        String nivelEducacionPropiedadId = manifiesto.propiedad("identificador de nivel de educacion");
+        String regionPropiedadId = manifiesto.propiedad("región");
+        String comunaPropiedadId = manifiesto.propiedad("comuna");
+        String establecimientoPropiedadId = manifiesto.propiedad("establecimientos en la zona");
+        String trabajoEstablecimientoPropertyId = manifiesto.propiedad("establecimiento de Trabajo");
+        String trabajoRegionPropertyId = manifiesto.propiedad("región de trabajo");
+        String trabajoComunaPropertyId = manifiesto.propiedad("comuna de trabajo");
+        String comunaClaseId = manifiesto.item("COMUNA");
+        String regionClaseId = manifiesto.item("REGION");
+        String personaClaseId = manifiesto.item("PERSONA");
+        String hombreId = manifiesto.item("HOMBRE");
+        String mujerId = manifiesto.item("MUJER");
+        String noBinarioId = manifiesto.item("NO BINARIO");
+        String sinInformacionId = manifiesto.item("SIN INFORMACION");
         
     	// Variable para guardar el cualificador del año
     	String cualificador = "0001";
     	
-        // Se extrae la propiedad del año desde Wikibase, obteniendo el ID de la propiedad "año" en español.
-        String yearPropertyId = manager.getEntityByLabel("año", "property", "es");
+        // Registro de propiedades: se toman los IDs del manifiesto (las que falten se buscan una sola vez, en paralelo)
+        // para todas las propiedades de los diccionarios, más la propiedad "año" usada como calificador, y se verifica
+        // su tipo de dato contra la wiki.
+        Map<String, String> tiposPropiedades = new LinkedHashMap<>();
+        for (String propiedad : diccionarioPropiedades.values()) {
+            String tipo = diccionarioPropiedadesConCualificador.containsKey(propiedad)
+                    ? diccionarioPropiedadesConCualificador.get(propiedad)
+                    : diccionarioPropiedadesSinCualificador.get(propiedad);
+            tiposPropiedades.put(propiedad, tipo);
+        }
+        tiposPropiedades.put("año", "time");
+        PropertyRegistry registroPropiedades = PropertyRegistry.resolver(asyncManager, tiposPropiedades, manifiesto.getPropiedades());
+
+        // Se extrae la propiedad del año desde el registro.
+        String yearPropertyId = registroPropiedades.getId("año");
 
         // Columnas que representan el objeto "establecimiento"
         // Conjunto de identificadores para reconocer un establecimiento (por nombre, región, comuna, etc.).
@@ -798,9 +1338,6 @@ public class WikibaseManager {
             "NOM_SUBSECTOR"  // Asignatura del docente
         ));
 
-        // Diccionario para almacenar los IDs de propiedades asignados a las variables.
-        LinkedHashMap<String, String> diccionarioPropiedadesId = new LinkedHashMap<>();
-
         // Conjuntos para clasificar diferentes tipos de variables según género y otras categorías.
         Set<String> hombresSet = new HashSet<>();
         Set<String> mujeresSet = new HashSet<>();
@@ -843,36 +1380,18 @@ public class WikibaseManager {
 
         
         
-        // Instituciones
-        Set<String> colegioSet = new HashSet<>();
-        colegioSet.add("col.");
-        colegioSet.add("colegio");
-
-        Set<String> escuelaSet = new HashSet<>();
-        escuelaSet.add("escuela");
-        escuelaSet.add("school");
-        escuelaSet.add("esc.");
-        escuelaSet.add("skola");
-        escuelaSet.add("es.");
-
-        Set<String> liceoSet = new HashSet<>();
-        liceoSet.add("liceo");
-        liceoSet.add("l.");
-        liceoSet.add("lic.");
-
-        Set<String> universidadSet = new HashSet<>();
-        universidadSet.add("universidad");
-        universidadSet.add("college");
-
-        Set<String> institutoSet = new HashSet<>();
-        institutoSet.add("instituto");
-        institutoSet.add("ins.");
-
-        Set<String> centroSet = new HashSet<>();
-        centroSet.add("centro");
-
-        Set<String> complejoSet = new HashSet<>();
-        complejoSet.add("complejo");
+        // Clasificador de tipos de establecimiento (P15) según las palabras clave de su nombre.
+        // Las reglas se leen del archivo indicado en -Dwikibase.tiposEstablecimiento o del recurso incluido en el jar;
+        // los ítems de las reglas dados por etiqueta se traducen con el manifiesto.
+        InstitutionClassifier clasificadorEstablecimientos = InstitutionClassifier.cargar(System.getProperty("wikibase.tiposEstablecimiento"), manifiesto::item);
+
+        // Identidades numéricas ya resueltas en ésta o en ejecuciones anteriores: MRUN -> QID del docente y
+        // RBD -> QID del establecimiento (-Dwikibase.mrun=<ruta>, -Dwikibase.rbd=<ruta>). Una identidad conocida
+        // no se busca en la wiki, y los docentes con MRUN no ocupan el diccionario de etiquetas.
+        Path rutaMrun = Paths.get(System.getProperty("wikibase.mrun", "mrun.ids"));
+        Path rutaRbd = Paths.get(System.getProperty("wikibase.rbd", "rbd.ids"));
+        LongLongMap docentesPorMrun = LongLongMap.cargar(rutaMrun);
+        LongLongMap establecimientosPorRbd = LongLongMap.cargar(rutaRbd);
 
         try {
 
@@ -889,9 +1408,22 @@ public class WikibaseManager {
             List<VariablePosition> matchingPropDocente = new ArrayList<>(); // Propiedades de "docente"
 
             int posicionCodEnse = -1; // Posición de la columna "COD_ENSE" en el CSV, inicializada en -1.
-
-            // Intento de lectura del archivo CSV.
-            try (CSVReader reader = new CSVReader(new FileReader(csvFile))) {
+            int posicionRbd = -1;     // Posición de la columna "RBD" (código numérico del establecimiento), -1 si no está.
+
+            // Intento de lectura del archivo CSV. El archivo se proyecta en memoria y se decodifica por bloques en
+            // paralelo; las filas llegan en orden, separadas por comas como con CSVReader (las columnas separadas por
+            // ";" se reconstruyen más abajo). Los .gz y .zip de MINEDUC se descomprimen como flujo, sin extraerlos; de
+            // un .zip se lee el primer miembro que cumple -Dwikibase.csvMiembro=<expresión regular> (por defecto, el
+            // primer .csv). El juego de caracteres se indica con -Dwikibase.csvCharset=<nombre>; sin él se detecta
+            // (UTF-8, o Latin-1 si el archivo no es UTF-8 válido). Si en lugar del archivo se indica una URL JDBC
+            // (jdbc:hive2://...), las filas vienen de la consulta -Dwikibase.jdbcConsulta, en la misma forma que las
+            // del CSV, y siguen el mismo camino.
+            String nombreCharsetCsv = System.getProperty("wikibase.csvCharset");
+            Charset charsetCsv = nombreCharsetCsv == null ? null : Charset.forName(nombreCharsetCsv);
+            Pattern miembroCsv = Pattern.compile(System.getProperty("wikibase.csvMiembro", ParallelCsvReader.MIEMBRO_POR_DEFECTO.pattern()));
+            try (RowSource reader = csvFile.startsWith("jdbc:")
+                    ? JdbcRowSource.abrir(csvFile)
+                    : ParallelCsvReader.abrir(Paths.get(csvFile), charsetCsv, ',', miembroCsv)) {
                 // Leer la primera línea que contiene los nombres de las columnas.
                 String[] columnNamesLine = reader.readNext();
                 
@@ -940,6 +1472,11 @@ public class WikibaseManager {
                             matchingPropDocente.add(new VariablePosition(columnName, i));
                         }
                         
+                        // Registrar la posición de "RBD", que identifica al establecimiento sin depender de su nombre.
+                        if (columnName.equals("RBD")) {
+                            posicionRbd = i;
+                        }
+
                         // Verificar si la columna corresponde a "AGNO" para asignar el cualificador.
                         if ((columnName.compareTo("AGNO")) == 0) {
                             cualificador = String.valueOf(i);
@@ -1006,27 +1543,62 @@ public class WikibaseManager {
                     List<String> variablesOrdenadas = Arrays.asList("MRUN");
                     posicionesDocente = getPositionsInOrder(matchDocente, variablesOrdenadas);
                 }
-                
-                // Mapas para almacenar información relacionada con cada tipo de objeto.
-                LinkedHashMap<String, String> establecimientos = new LinkedHashMap<>();
-                LinkedHashMap<String, String> regiones = new LinkedHashMap<>();
-                LinkedHashMap<String, String> comunas = new LinkedHashMap<>();
-                LinkedHashMap<String, String> docentes = new LinkedHashMap<>();
+                
+                // Mapas para almacenar información relacionada con cada tipo de objeto (etiqueta -> ID). Son cachés
+                // acotadas (-Dwikibase.cacheEtiquetas=<n>): los docentes, uno por MRUN, no las hacen crecer sin límite
+                // y las regiones y comunas, que se repiten en muchas filas, no se desalojan. Una etiqueta desalojada
+                // sólo vuelve a buscarse en la wiki.
+                int maxEtiquetas = Integer.getInteger("wikibase.cacheEtiquetas", MAX_ETIQUETAS_POR_DEFECTO);
+                BoundedCache<String, String> establecimientos = new BoundedCache<>(maxEtiquetas);
+                BoundedCache<String, String> regiones = new BoundedCache<>(maxEtiquetas);
+                BoundedCache<String, String> comunas = new BoundedCache<>(maxEtiquetas);
+                BoundedCache<String, String> docentes = new BoundedCache<>(maxEtiquetas);
+
+                // Precargar los ítems que ya existen en la wiki para las columnas presentes, de modo que sus filas no
+                // busquen la etiqueta ni descarguen las declaraciones (se desactiva con -Dwikibase.precarga=false).
+                WarmStart precarga = new WarmStart(asyncManager, instanciaDePropiedadId);
+                if (Boolean.parseBoolean(System.getProperty("wikibase.precarga", "true"))) {
+                    if (hayRegion) {
+                        precarga.precargar(List.of(regionClaseId), regiones::putIfAbsent);
+                    }
+                    if (hayComuna) {
+                        precarga.precargar(List.of(comunaClaseId), comunas::putIfAbsent);
+                    }
+                    if (hayEstablecimiento) {
+                        precarga.precargar(clasificadorEstablecimientos.getTipos(), establecimientos::putIfAbsent);
+                    }
+                    if (hayDocente) {
+                        precarga.precargar(List.of(personaClaseId), (etiqueta, itemId) -> {
+                            long mrun = etiqueta.startsWith("MRUN: ") ? LongLongMap.numero(etiqueta.substring(6)) : 0;
+                            if (mrun != 0) {
+                                docentesPorMrun.put(mrun, numeroDeItem(itemId));
+                            } else {
+                                docentes.putIfAbsent(etiqueta, itemId);
+                            }
+                        });
+                    }
+                    System.out.println(precarga.resumen());
+                }
 
 
 				
                 for (int i = 0; i < max_read; i++) {
                 	
-                	
-                	
+                	// Cada fila emite un evento de JFR con la duración de sus fases: lectura, resolución y escritura.
+                	FlightEvents.Fila eventoFila = new FlightEvents.Fila();
+                	eventoFila.begin();
+                	long inicioFase = System.nanoTime();
+
+                	// Las escrituras de cada fila se hacen con la siguiente sesión del conjunto (reparto por turnos entre cuentas).
+                	manager = sesiones.siguiente();
                 	
                 	// Leer la siguiente línea del archivo CSV.
                     String[] nextInLine = reader.readNext();
 
-                    // Si no hay más líneas para leer, mostrar mensaje y finalizar el programa.
+                    // Si no hay más líneas para leer, mostrar mensaje y terminar la lectura.
                     if (nextInLine == null) {
                         System.out.println("No hay más líneas para leer");
-                        System.exit(1);
+                        break;
                     }
 
                     // Inicializar una cadena para concatenar todos los valores de la línea leída.
@@ -1050,12 +1622,19 @@ public class WikibaseManager {
                     if (posicionCodEnse != -1) {
                         
                         // Si el valor en la posición de "COD_ENSE" no está en los niveles educativos, saltar la línea.
-                        if (!educationalLevels.containsKey(nextInLineValues[posicionCodEnse])) {
+                        if (nivelesEnsenanza.get(nextInLineValues[posicionCodEnse]) == null) {
                             System.out.println("Línea saltada");
+                            eventoFila.linea = i;
+                            eventoFila.saltada = true;
+                            eventoFila.lectura = System.nanoTime() - inicioFase;
+                            eventoFila.commit();
                             continue;
                         }
                     }
 
+                    eventoFila.lectura = System.nanoTime() - inicioFase;
+                    inicioFase = System.nanoTime();
+
                     // Inicializar variables para almacenar identificadores de diferentes objetos.
                     String establecimientoId = "";
                     String regionId = "";
@@ -1069,12 +1648,11 @@ public class WikibaseManager {
                     System.out.println("Líneas leídas: " + i);
 
                     
-                    if (hayEstablecimiento){
-                    	
-                    	// Inicializar las variables para la etiqueta y el nombre del establecimiento.
-                        String establecimientoLabel = "";
-                        String establecimientoNombre = "";
+                    // Inicializar las variables para la etiqueta y el nombre del establecimiento.
+                    String establecimientoLabel = "";
+                    String establecimientoNombre = "";
 
+                    if (hayEstablecimiento){
                         // Recorrer las posiciones de establecimiento para construir la etiqueta completa.
                         for (int j = 0; j < posicionesEstablecimiento.size(); j++) {
                             // Limpiar cada valor, eliminando caracteres no imprimibles y comillas, y concatenarlo.
@@ -1091,82 +1669,85 @@ public class WikibaseManager {
                                 establecimientoLabel = establecimientoLabel + " ";
                             }
                         }
+                    }
+
+                    // Construir las etiquetas de región, comuna y docente de la fila.
+                    String regionLabel = "";
+                    if (hayRegion) {
+                        for (int j = 0; j < posicionesRegion.size(); j++) {
+                            regionLabel = regionLabel + nextInLineValues[posicionesRegion.get(j)];
+                            if (j != posicionesRegion.size() - 1) {
+                                regionLabel = regionLabel + " ";
+                            }
+                        }
+                    }
+
+                    String comunaLabel = "";
+                    if (hayComuna) {
+                        for (int j = 0; j < posicionesComuna.size(); j++) {
+                            comunaLabel = comunaLabel + nextInLineValues[posicionesComuna.get(j)];
+                            if (j != posicionesComuna.size() - 1) {
+                                comunaLabel = comunaLabel + " ";
+                            }
+                        }
+                    }
+
+                    String docenteLabel = "";
+                    long mrun = 0;
+                    if (hayDocente) {
+                        for (int j = 0; j < posicionesDocente.size(); j++) {
+                            docenteLabel = docenteLabel + nextInLineValues[posicionesDocente.get(j)];
+                            if (j != posicionesDocente.size() - 1) {
+                                docenteLabel = docenteLabel + " ";
+                            }
+                        }
+                        mrun = LongLongMap.numero(docenteLabel);
+                        if (!docenteLabel.trim().equals("")) {
+                            docenteLabel = "MRUN: " + docenteLabel;
+                        }
+                    }
+
+                    // Lanzar en paralelo las búsquedas de las etiquetas que aún no están en los diccionarios locales.
+                    // Las identidades numéricas conocidas (RBD, MRUN) no se buscan.
+                    long rbd = hayEstablecimiento && posicionRbd != -1 ? LongLongMap.numero(nextInLineValues[posicionRbd]) : 0;
+                    long establecimientoConocido = establecimientosPorRbd.get(rbd, 0);
+                    long docenteConocido = docentesPorMrun.get(mrun, 0);
+                    CompletableFuture<String> busquedaEstablecimiento = establecimientoConocido != 0 ? CompletableFuture.completedFuture(null)
+                            : buscarSiFalta(asyncManager, "establecimientos", establecimientos, establecimientoLabel);
+                    CompletableFuture<String> busquedaRegion = buscarSiFalta(asyncManager, "regiones", regiones, regionLabel);
+                    CompletableFuture<String> busquedaComuna = buscarSiFalta(asyncManager, "comunas", comunas, comunaLabel);
+                    CompletableFuture<String> busquedaDocente = docenteConocido != 0 ? CompletableFuture.completedFuture(null)
+                            : buscarSiFalta(asyncManager, "docentes", docentes, docenteLabel);
+                    WikibaseAsyncManager.esperar(CompletableFuture.allOf(busquedaEstablecimiento, busquedaRegion, busquedaComuna, busquedaDocente));
+                    eventoFila.resolucion = System.nanoTime() - inicioFase;
+                    inicioFase = System.nanoTime();
 
-                        // Inicializar una bandera para determinar si se ha identificado el tipo de establecimiento.
-                        boolean establecimientoTipo = false;
+                    if (hayEstablecimiento){
+
+                        // Verificar si el establecimiento ya se conoce por su RBD o existe en el diccionario.
+                        if (establecimientoConocido != 0) {
 
-                        // Verificar si el establecimiento ya existe en el diccionario.
-                        if (establecimientos.containsKey(establecimientoLabel)) {
+                            establecimientoId = "Q" + establecimientoConocido;
+
+                        } else if (establecimientos.containsKey(establecimientoLabel)) {
                             
                             // Si existe, obtener el ID del establecimiento.
                             establecimientoId = establecimientos.get(establecimientoLabel);
 
                         } else {
-                            // Verificar si el establecimiento existe en Wikibase.
-                            if (manager.entityExistsByLabel(establecimientoLabel, "item", "es")) {
+                            // Verificar si la búsqueda encontró el establecimiento en Wikibase.
+                            String establecimientoEncontrado = busquedaEstablecimiento.join();
+                            if (establecimientoEncontrado != null) {
                                 // Obtener el ID del establecimiento de Wikibase.
-                                establecimientoId = manager.getEntityByLabel(establecimientoLabel, "item", "es");
+                                establecimientoId = establecimientoEncontrado;
                                 // Guardar el ID en el diccionario para futuras referencias.
                                 establecimientos.put(establecimientoLabel, establecimientoId);
                                 
-                                // Verificar si el establecimiento coincide con ciertos tipos y agregar la declaración correspondiente.
-                                if (containsIgnoreCase(colegioSet, establecimientoLabel)) {
-                                    // Verificar si ya existe la declaración de tipo "colegio".
-                                    if (!manager.statementExists(establecimientoId, "P15", "Q17305")) {
-                                        // Agregar la declaración para definir el tipo como "colegio".
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q17305", "wikibase-item");
-                                    }
-                                    // Marcar que se ha identificado el tipo de establecimiento.
-                                    establecimientoTipo = true;
-                                }
-
-                                // Repetir el proceso para otros tipos de establecimiento.
-                                if (containsIgnoreCase(escuelaSet, establecimientoLabel)) {
-                                    if (!manager.statementExists(establecimientoId, "P15", "Q17306")) {
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q17306", "wikibase-item");
-                                    }
-                                    establecimientoTipo = true;
-                                }
-
-                                if (containsIgnoreCase(liceoSet, establecimientoLabel)) {
-                                    if (!manager.statementExists(establecimientoId, "P15", "Q17307")) {
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q17307", "wikibase-item");
-                                    }
-                                    establecimientoTipo = true;
-                                }
-
-                                if (containsIgnoreCase(universidadSet, establecimientoLabel)) {
-                                    if (!manager.statementExists(establecimientoId, "P15", "Q17308")) {
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q17308", "wikibase-item");
-                                    }
-                                    establecimientoTipo = true;
-                                }
-
-                                if (containsIgnoreCase(institutoSet, establecimientoLabel)) {
-                                    if (!manager.statementExists(establecimientoId, "P15", "Q17309")) {
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q17309", "wikibase-item");
-                                    }
-                                    establecimientoTipo = true;
-                                }
-
-                                if (containsIgnoreCase(centroSet, establecimientoLabel)) {
-                                    if (!manager.statementExists(establecimientoId, "P15", "Q17310")) {
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q17310", "wikibase-item");
-                                    }
-                                    establecimientoTipo = true;
-                                }
-
-                                if (containsIgnoreCase(complejoSet, establecimientoLabel)) {
-                                    if (!manager.statementExists(establecimientoId, "P15", "Q17311")) {
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q17311", "wikibase-item");
-                                    }
-                                    establecimientoTipo = true;
-                                }
-
-                                // Si no se ha identificado un tipo específico, asignar un tipo genérico.
-                                if (!establecimientoTipo) {
-                                    if (!manager.statementExists(establecimientoId, "P15", "Q3")) {
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q3", "wikibase-item");
+                                // Agregar las declaraciones de tipo (colegio, escuela, liceo, ...) que aún no existan.
+                                // Si el nombre no coincide con ningún tipo, el clasificador entrega el tipo genérico.
+                                for (String tipo : clasificadorEstablecimientos.clasificar(establecimientoLabel)) {
+                                    if (!manager.statementExists(establecimientoId, instanciaDePropiedadId, tipo)) {
+                                        manager.addStatementToItem(establecimientoId, instanciaDePropiedadId, tipo, "wikibase-item");
                                     }
                                 }
 
@@ -1181,49 +1762,16 @@ public class WikibaseManager {
                                     // Guardar el ID en el diccionario para futuras referencias.
                                     establecimientos.put(establecimientoLabel, establecimientoId);
                                     
-                                    // Verificar y agregar el tipo de establecimiento similar a los pasos anteriores.
-                                    if (containsIgnoreCase(colegioSet, establecimientoLabel)) {
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q17305", "wikibase-item");
-                                        establecimientoTipo = true;
-                                    }
-
-                                    if (containsIgnoreCase(escuelaSet, establecimientoLabel)) {
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q17306", "wikibase-item");
-                                        establecimientoTipo = true;
-                                    }
-
-                                    if (containsIgnoreCase(liceoSet, establecimientoLabel)) {
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q17307", "wikibase-item");
-                                        establecimientoTipo = true;
-                                    }
-
-                                    if (containsIgnoreCase(universidadSet, establecimientoLabel)) {
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q17308", "wikibase-item");
-                                        establecimientoTipo = true;
-                                    }
-
-                                    if (containsIgnoreCase(institutoSet, establecimientoLabel)) {
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q17309", "wikibase-item");
-                                        establecimientoTipo = true;
-                                    }
-
-                                    if (containsIgnoreCase(centroSet, establecimientoLabel)) {
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q17310", "wikibase-item");
-                                        establecimientoTipo = true;
-                                    }
-
-                                    if (containsIgnoreCase(complejoSet, establecimientoLabel)) {
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q17311", "wikibase-item");
-                                        establecimientoTipo = true;
-                                    }
-
-                                    // Si no se identificó ningún tipo específico, asignar un tipo genérico.
-                                    if (!establecimientoTipo) {
-                                        manager.addStatementToItem(establecimientoId, "P15", "Q3", "wikibase-item");
+                                    // Agregar los tipos de establecimiento según su nombre, igual que en el caso anterior.
+                                    for (String tipo : clasificadorEstablecimientos.clasificar(establecimientoLabel)) {
+                                        manager.addStatementToItem(establecimientoId, instanciaDePropiedadId, tipo, "wikibase-item");
                                     }
                                 }
                             }
                         }
+                        if (rbd != 0 && establecimientoConocido == 0 && !establecimientoId.equals("")) {
+                            establecimientosPorRbd.put(rbd, numeroDeItem(establecimientoId));
+                        }
 
                     	
                     	// Inicializar variables para almacenar los valores de latitud y longitud.
@@ -1241,206 +1789,50 @@ public class WikibaseManager {
                             // Obtener el nombre de la propiedad a partir del diccionario.
                             String propiedad = diccionarioPropiedades.get(propiedadCodigo);
                             
-                            String propiedadId = "";
-                            
-                            // Verificar si la propiedad ya tiene un ID en el diccionario.
-                            if (diccionarioPropiedadesId.containsKey(propiedad)) {
-                                propiedadId = diccionarioPropiedadesId.get(propiedad);
-                            } else {
-                                // Si no está en el diccionario, buscar el ID de la propiedad en Wikibase y agregarlo al diccionario.
-                                propiedadId = manager.getEntityByLabel(propiedad, "property", "es");
-                                diccionarioPropiedadesId.put(docenteId, propiedadId);
-                            }
+                            // Obtener el ID de la propiedad desde el registro resuelto al inicio.
+                            String propiedadId = registroPropiedades.getId(propiedad);
                     		
                             // Verificar si la propiedad tiene cualificadores en el diccionario.
                     		if (diccionarioPropiedadesConCualificador.containsKey(propiedad)) {
                 				
                 				// Obtener el tipo de la propiedad (por ejemplo, cantidad, tiempo, etc.).
                                 String propiedadType = diccionarioPropiedadesConCualificador.get(propiedad);
-                                String statementId = "";
-                                
-                                // Manejo especial para la propiedad "COD_ENSE".
+
+                                // Valor principal de la declaración; los niveles de enseñanza se traducen al ítem de su código.
+                                WikibaseValue valor;
                                 if (propiedadCodigo.equals("COD_ENSE")) {
-                                    if (educationalLevels.containsKey(educationalLevels.get(nextInLineValues[propiedadPosicion]))) {
-                                        // Verificar si la declaración ya existe y obtener su ID.
-                                        if (manager.statementExists(establecimientoId, propiedadId, educationalLevels.get(nextInLineValues[propiedadPosicion]))) {
-                                            statementId = manager.getStatementId(establecimientoId, propiedadId, educationalLevels.get(nextInLineValues[propiedadPosicion]), propiedadType);
-                                        } else {
-                                            // Agregar una nueva declaración si no existe.
-                                            statementId = manager.addStatementToItem(establecimientoId, propiedadId, educationalLevels.get(nextInLineValues[propiedadPosicion]), propiedadType);
-                                        }
-                                    } else {
+                                    String nivel = nivelesEnsenanza.get(nextInLineValues[propiedadPosicion]);
+                                    if (nivel == null) {
                                         // Saltar si el valor no se encuentra en los niveles educativos.
                                         continue;
                                     }
+                                    valor = WikibaseValue.parse(propiedadType, nivel);
                                 } else if (propiedadType.equals("quantity")) {
-                					
-                					// Manejo para propiedades de tipo "cantidad".
-                                    if (manager.statementExists(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion].replace(",", "."))) {
-                                        statementId = manager.getStatementId(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion].replace(",", "."), propiedadType);
-                                    } else {
-                                        statementId = manager.addStatementToItem(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion].replace(",", "."), propiedadType);
-                                    }
-                					
-                						
-                				} else if (manager.statementExists(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion])) {
-                                    statementId = manager.getStatementId(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion].replace(",", "."), propiedadType);
+                                    valor = WikibaseValue.parse(propiedadType, nextInLineValues[propiedadPosicion].replace(",", "."));
                                 } else {
-                                    statementId = manager.addStatementToItem(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion], propiedadType);
+                                    valor = WikibaseValue.parse(propiedadType, nextInLineValues[propiedadPosicion]);
                                 }
-                				
-                				//System.out.println("ID: " + statementId);
-                				//System.out.println("Propiedad tipo: " + propiedadType);
-                				//System.out.println("Propiedad: " + propiedadId);
-                				//System.out.println("valor: " + nextInLineValues[propiedadPosicion]);
-                				
-                				
-                				
-                				if (todasVariablesSet.contains(propiedadCodigo)) {
-                					                					                					
-                					if (hombresSet.contains(propiedadCodigo)) {
-	
-                						if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion], yearPropertyId,  nextInLineValues[Integer.parseInt(cualificador)])) {
-                							                							
-                        					manager.addQualifierToStatement(statementId, yearPropertyId, nextInLineValues[Integer.parseInt(cualificador)], "time");
-                        					
-                        				}
-                						
-                						if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion], "P28", "Q2403")) {
-                							
-                        					manager.addQualifierToStatement(statementId, "P28", "Q2403", "wikibase-item");
-                        					
-                        				}
-                						
-                						if (posicionCodEnse != -1) {
-
-                    						if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion], "P29", educationalLevels.get(nextInLineValues[posicionCodEnse]))) {
-                    							
-                            					manager.addQualifierToStatement(statementId, "P29", educationalLevels.get(nextInLineValues[posicionCodEnse]), "wikibase-item");
-                            					
-                            				}
-                							
-                						}
-                						
-                						
-                					} else if (mujeresSet.contains(propiedadCodigo)) {
-                						
-                						if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion], yearPropertyId,  nextInLineValues[Integer.parseInt(cualificador)])) {
-	                    					                							
-                							manager.addQualifierToStatement(statementId, yearPropertyId, nextInLineValues[Integer.parseInt(cualificador)], "time");
-                        					
-                        				}
-                						
-                						if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion], "P28", "Q2404")) {
-                							
-                        					manager.addQualifierToStatement(statementId, "P28", "Q2404", "wikibase-item");
-                        					
-                        				}
-                						
-                						if (posicionCodEnse != -1) {
-                							
-            
-                    						
-                    						if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion], "P29", educationalLevels.get(nextInLineValues[posicionCodEnse]))) {
-                    							
-                            					manager.addQualifierToStatement(statementId, "P29", educationalLevels.get(nextInLineValues[posicionCodEnse]), "wikibase-item");
-                            					
-                            				}
-                							
-                						}
-                						
-                					} else if (siSet.contains(propiedadCodigo)) {
-                						
-                						if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion], yearPropertyId,  nextInLineValues[Integer.parseInt(cualificador)])) {
-	                    					
-                        					manager.addQualifierToStatement(statementId, yearPropertyId, nextInLineValues[Integer.parseInt(cualificador)], "time");
-                        					
-                        				}
-                						
-                						if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion], "P28", "Q2406")) {
-                							
-                        					manager.addQualifierToStatement(statementId, "P28", "Q2406", "wikibase-item");
-                        					
-                        				}
-                						
-                						if (posicionCodEnse != -1) {
-                							
-                							
-                    						
-                    						if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion], "P29", educationalLevels.get(nextInLineValues[posicionCodEnse]))) {
-                    							
-                            					manager.addQualifierToStatement(statementId, "P29", educationalLevels.get(nextInLineValues[posicionCodEnse]), "wikibase-item");
-                            					
-                            				}
-                							
-                						}
-                						
-                					} else {
-                						
-                						if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion], yearPropertyId,  nextInLineValues[Integer.parseInt(cualificador)])) {
-	                    					
-                        					manager.addQualifierToStatement(statementId, yearPropertyId, nextInLineValues[Integer.parseInt(cualificador)], "time");
-                        					
-                        				}
-                						
-                						if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion], "P28", "Q2405")) {
-                							
-                        					manager.addQualifierToStatement(statementId, "P28", "Q2405", "wikibase-item");
-                        					
-                        				}
-                						
-                						if (posicionCodEnse != -1) {
-                							
-                    						
-                    						if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion], "P29", educationalLevels.get(nextInLineValues[posicionCodEnse]))) {
-                    							
-                            					manager.addQualifierToStatement(statementId, "P29", educationalLevels.get(nextInLineValues[posicionCodEnse]), "wikibase-item");
-                            					
-                            				}
-                							
-                						}
-                						
-                					}   				
-                					
-                				} else if (propiedadCodigo.equals("COD_ENSE")) {
-                					
-                					if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, educationalLevels.get(nextInLineValues[propiedadPosicion]), yearPropertyId,  nextInLineValues[Integer.parseInt(cualificador)])) {
-                						
-                						manager.addQualifierToStatement(statementId, yearPropertyId, nextInLineValues[Integer.parseInt(cualificador)], "time");
-                						
-                					}
-                					
-                					
-                					
-                				} else if (propiedadType.equals("quantity")) {
-                					
-                					if (propiedadCodigo.equals("PROM_ASIS")) {
-                						
-                						if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion].replace(",", "."), "P29", educationalLevels.get(nextInLineValues[posicionCodEnse]))) {
-                							
-                        					manager.addQualifierToStatement(statementId, "P29", educationalLevels.get(nextInLineValues[posicionCodEnse].replace(",", ".")), "wikibase-item");
-                        					
-                        				}
-                						
-                						
-                					} 
 
-                				
-                					if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion].replace(",","."), yearPropertyId,  nextInLineValues[Integer.parseInt(cualificador)])) {
-
-                						
-                    					manager.addQualifierToStatement(statementId, yearPropertyId, nextInLineValues[Integer.parseInt(cualificador)], "time");
-                    					
-                    				}
-                					
-                				} else if (!manager.doesStatementWithQualifierExist(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion], yearPropertyId,  nextInLineValues[Integer.parseInt(cualificador)])) {
+                                // Calificadores: siempre el año; el género y el nivel de enseñanza en las variables por género,
+                                // y el nivel de enseñanza en el promedio de asistencia.
+                                Map<String, WikibaseValue> calificadores = new LinkedHashMap<>();
+                                calificadores.put(yearPropertyId, valorCalificador(nextInLineValues[Integer.parseInt(cualificador)], "time"));
+                                String nivelCalificador = posicionCodEnse != -1 ? nivelesEnsenanza.get(nextInLineValues[posicionCodEnse]) : null;
+                                if (todasVariablesSet.contains(propiedadCodigo)) {
+                                    String genero = hombresSet.contains(propiedadCodigo) ? hombreId
+                                            : mujeresSet.contains(propiedadCodigo) ? mujerId
+                                            : siSet.contains(propiedadCodigo) ? sinInformacionId
+                                            : noBinarioId;
+                                    calificadores.put(generoPropiedadId, WikibaseValue.parse("wikibase-item", genero));
+                                    if (nivelCalificador != null) {
+                                        calificadores.put(nivelEducacionPropiedadId, WikibaseValue.parse("wikibase-item", nivelCalificador));
+                                    }
+                                } else if (propiedadCodigo.equals("PROM_ASIS") && nivelCalificador != null) {
+                                    calificadores.put(nivelEducacionPropiedadId, WikibaseValue.parse("wikibase-item", nivelCalificador));
+                                }
 
-                				
-                					manager.addQualifierToStatement(statementId, yearPropertyId, nextInLineValues[Integer.parseInt(cualificador)], "time");
-                					
-                				}
-                				
-                				
+                                // Crear la declaración completa, o completar la existente, con una sola escritura.
+                                manager.setStatement(establecimientoId, propiedadId, valor, calificadores);
 
                 				
                 			} else if (diccionarioPropiedadesSinCualificador.containsKey(propiedad)) {
@@ -1450,113 +1842,16 @@ public class WikibaseManager {
                 				
                 				String statementId = "";
                 				
-                				if (propiedadCodigo.equals("COD_DEPE")) {                					
-                					switch (nextInLineValues[propiedadPosicion]) {
-                					
-	                					case "1":
-	                						if (!manager.statementExists(establecimientoId, propiedadId, "Q18723")) {
-	                							statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q18723", propiedadType);
-	                						}
-	                						break;
-	                					case "2":
-											if (!manager.statementExists(establecimientoId, propiedadId, "Q18724")) {
-	                							statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q18724", propiedadType);
-	                						}
-											break;
-	                					case "3":
-	                						if (!manager.statementExists(establecimientoId, propiedadId, "Q18725")) {
-	                							statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q18725", propiedadType);
-	                						}
-	                						break;
-	                					case "4":
-											if (!manager.statementExists(establecimientoId, propiedadId, "Q18726")) {
-	                							statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q18726", propiedadType);
-	                						}
-											break;
-	                					case "5":
-	                						if (!manager.statementExists(establecimientoId, propiedadId, "Q18727")) {
-	                							statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q18727", propiedadType);
-	                						}
-	                						break;
-	                					case "6":
-											if (!manager.statementExists(establecimientoId, propiedadId, "Q18728")) {
-	                							statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q18728", propiedadType);
-	                						}
-											break;
-                					
-                					}
+                				if (tablasCodigos.containsKey(propiedadCodigo)) {
                 					
-                				} else if (propiedadCodigo.equals("RURAL_RBD")) {
-                					switch (nextInLineValues[propiedadPosicion]) {
-                					
-                					case "0":
-                						if (!manager.statementExists(establecimientoId, propiedadId, "Q18714")) {
-                							statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q18714", propiedadType);
-                						}
-                						break;
-                					case "1":
-										if (!manager.statementExists(establecimientoId, propiedadId, "Q18715")) {
-                							statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q18715", propiedadType);
-                						}
-										break;
-									
+                					// Columnas con código (COD_DEPE, RURAL_RBD, ORI_RELIGIOSA, ESTADO_ESTAB): el ítem sale de su tabla.
+                					// Los códigos que no están en la tabla se omiten.
+                					String itemId = tablasCodigos.get(propiedadCodigo).get(nextInLineValues[propiedadPosicion]);
+                					if (itemId != null && !manager.statementExists(establecimientoId, propiedadId, itemId)) {
+                						statementId = manager.addStatementToItem(establecimientoId, propiedadId, itemId, propiedadType);
                 					}
-            					
-            					} else if (propiedadCodigo.equals("ORI_RELIGIOSA")) {
-                					switch (nextInLineValues[propiedadPosicion]) {
-                					
-	                					case "1":
-	                				        if (!manager.statementExists(establecimientoId, propiedadId, "Q18716")) {
-	                				            statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q18716", propiedadType);
-	                				        }
-	                				        break;
-	
-	                				    case "2":
-	                				        if (!manager.statementExists(establecimientoId, propiedadId, "Q18717")) {
-	                				        	
-	                				            statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q18717", propiedadType);
-	                				        }
-	                				        break;
-	
-	                				    case "3":
-	                				        if (!manager.statementExists(establecimientoId, propiedadId, "Q18718")) {
-	                				            statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q18718", propiedadType);
-	                				        }
-	                				        break;
-	
-	                				    case "4":
-	                				        if (!manager.statementExists(establecimientoId, propiedadId, "Q18719")) {
-	                				            statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q18719", propiedadType);
-	                				        }
-	                				        break;
-	
-	                				    case "5":
-	                				        if (!manager.statementExists(establecimientoId, propiedadId, "Q18720")) {
-	                				            statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q18720", propiedadType);
-	                				        }
-	                				        break;
-	
-	                				    case "6":
-	                				        if (!manager.statementExists(establecimientoId, propiedadId, "Q18721")) {
-	                				            statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q18721", propiedadType);
-	                				        }
-	                				        break;
-	
-	                				    case "7":
-	                				        if (!manager.statementExists(establecimientoId, propiedadId, "Q18722")) {
-	                				            statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q18722", propiedadType);
-	                				        }
-	                				        break;
-	
-	                				    case "9":
-	                				        if (!manager.statementExists(establecimientoId, propiedadId, "Q2406")) {
-	                				            statementId = manager.addStatementToItem(establecimientoId, propiedadId, "Q2406", propiedadType);
-	                				        }
-	                				        break;
-	            					
-	                				} 
                 					
-                				} else if (!propiedadCodigo.equals("LATITUD") && !propiedadCodigo.equals("LONGITUD") && !propiedadCodigo.equals("ESTADO_ESTAB")) {
+                				} else if (!propiedadCodigo.equals("LATITUD") && !propiedadCodigo.equals("LONGITUD")) {
                 					
                 					if (!manager.statementExists(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion])) {
                 						
@@ -1585,36 +1880,12 @@ public class WikibaseManager {
                 						value = nextInLineValues[propiedadPosicion].trim();
                 						Longitud= value;
                 						break;
-                						
-                					case "ESTADO_ESTAB":
-                						                						
-                						switch (nextInLineValues[propiedadPosicion]) {
-                    					
-		                					case "1":
-		                						value = "Q18729";
-		                						break;
-		                					case "2":
-		                						value = "Q18730";
-												break;
-		                					case "3":
-		                						value = "Q18731";
-												break;
-		                					case "4":
-		                						value = "Q18732";
-												break;
-	                					
-	                					}
-                						if (!manager.statementExists(establecimientoId, propiedadId, value)) {
-                    						statementId = manager.addStatementToItem(establecimientoId, propiedadId, value, propiedadType);
-		
-                        				}
-                						break;
                 				
                 				}
                 				                    				
                 				if ((propiedadCodigo.toUpperCase().equals("LATITUD") || propiedadCodigo.toUpperCase().equals("LONGITUD")) && (Latitud != null && !Latitud.isEmpty() && Longitud != null && !Longitud.isEmpty())) {
                 					
-                					if (!manager.statementExists(establecimientoId, propiedadId, nextInLineValues[propiedadPosicion])) {
+                					if (!manager.statementExists(establecimientoId, propiedadId, Latitud + ";" + Longitud)) {
                 						manager.addStatementToItem(establecimientoId, propiedadId, Latitud + ";" + Longitud, propiedadType);
 	
                     				}
@@ -1628,17 +1899,6 @@ public class WikibaseManager {
                     }
                     
 					if (hayRegion){
-                    	
-                    	String regionLabel = "";
-                    	for (int j = 0; j < posicionesRegion.size(); j++) { 		
-                    		regionLabel = regionLabel + nextInLineValues[posicionesRegion.get(j)];
-                    		
-                    		if (j != posicionesRegion.size() - 1) {
-                    			regionLabel = regionLabel + " ";
-                    		}
-
-                    	}
-                    	
                     	                    	
                     	if (regiones.containsKey(regionLabel)) {
                     		
@@ -1646,8 +1906,9 @@ public class WikibaseManager {
                     		
                     	} else {
                     		
-                    		if (manager.entityExistsByLabel(regionLabel, "item", "es")) {
-                    			regionId = manager.getEntityByLabel(regionLabel, "item", "es");
+                    		String regionEncontrada = busquedaRegion.join();
+                    		if (regionEncontrada != null) {
+                    			regionId = regionEncontrada;
                     			regiones.put(regionLabel, regionId);
                     			
                     		} else {
@@ -1655,7 +1916,7 @@ public class WikibaseManager {
                     				
                         			regionId = manager.createItem(regionLabel, "");
                         			regiones.put(regionLabel, regionId);
-                        			manager.addStatementToItem(regionId, "P15", "Q2", "wikibase-item");
+                        			manager.addStatementToItem(regionId, instanciaDePropiedadId, regionClaseId, "wikibase-item");
                     				
                     			} 
                     		}
@@ -1667,16 +1928,6 @@ public class WikibaseManager {
                     }
 					
 					if (hayComuna){
-                    	
-                    	String comunaLabel = "";
-                    	for (int j = 0; j < posicionesComuna.size(); j++) { 		
-                    		comunaLabel = comunaLabel + nextInLineValues[posicionesComuna.get(j)];
-                    		
-                    		if (j != posicionesComuna.size() - 1) {
-                    			comunaLabel = comunaLabel + " ";
-                    		}
-
-                    	}
                  
                     	if (comunas.containsKey(comunaLabel)) {
                     		
@@ -1685,8 +1936,9 @@ public class WikibaseManager {
                     	} else {
                     		
                     		
-                    		if (manager.entityExistsByLabel(comunaLabel, "item", "es")) {
-                    			comunaId = manager.getEntityByLabel(comunaLabel, "item", "es");
+                    		String comunaEncontrada = busquedaComuna.join();
+                    		if (comunaEncontrada != null) {
+                    			comunaId = comunaEncontrada;
                     			comunas.put(comunaLabel, comunaId);
                     			
                     			
@@ -1695,7 +1947,7 @@ public class WikibaseManager {
                     			
                         			comunaId = manager.createItem(comunaLabel, "");
                         			comunas.put(comunaLabel, comunaId);
-                        			manager.addStatementToItem(comunaId, "P15", "Q1", "wikibase-item");
+                        			manager.addStatementToItem(comunaId, instanciaDePropiedadId, comunaClaseId, "wikibase-item");
                     			} 
                     		}
                     		
@@ -1708,35 +1960,28 @@ public class WikibaseManager {
 
 					if (hayDocente){
 						
-						String docenteLabel = "";
-						for (int j = 0; j < posicionesDocente.size(); j++) { 		
-							docenteLabel = docenteLabel + nextInLineValues[posicionesDocente.get(j)];
-							if (j != posicionesDocente.size() - 1) {
-								docenteLabel = docenteLabel + " ";
-							}
-					
-						}
-						
 						if (!docenteLabel.trim().equals("")) {
-							
-							docenteLabel = "MRUN: " + docenteLabel;
-							
-							if (docentes.containsKey(docenteLabel)) {
+							if (docenteConocido != 0) {
+
+								docenteId = "Q" + docenteConocido;
+
+							} else if (docentes.containsKey(docenteLabel)) {
 								
 								docenteId = docentes.get(docenteLabel);
 								
 							} else {
 								
-								if (manager.entityExistsByLabel(docenteLabel, "item", "es")) {
-									docenteId = manager.getEntityByLabel(docenteLabel, "item", "es");
-									docentes.put(docenteLabel, docenteId);
+								String docenteEncontrado = busquedaDocente.join();
+								if (docenteEncontrado != null) {
+									docenteId = docenteEncontrado;
+									recordarDocente(docentes, docentesPorMrun, docenteLabel, mrun, docenteId);
 									
 								} else {
 									if (!docenteLabel.replace(" ", "").equals("")) {
 										
 										docenteId = manager.createItem(docenteLabel, "");
-										docentes.put(docenteLabel, docenteId);
-										manager.addStatementToItem(docenteId, "P15", "Q4", "wikibase-item");
+										recordarDocente(docentes, docentesPorMrun, docenteLabel, mrun, docenteId);
+										manager.addStatementToItem(docenteId, instanciaDePropiedadId, personaClaseId, "wikibase-item");
 										
 									} 
 								}
@@ -1751,39 +1996,15 @@ public class WikibaseManager {
 	                    		int propiedadPosicion = vp.getPosition();
 	                    		String propiedad = diccionarioPropiedades.get(propiedadCodigo);
 	                    		
-	                    		String propiedadId = "";
-	                    		
-	                    		if (diccionarioPropiedadesId.containsKey(propiedad)) {
-	                    			
-	                    			propiedadId = diccionarioPropiedadesId.get(propiedad);
-	
-	                    			
-	                    		} else {
-	                    			
-	                    			propiedadId = manager.getEntityByLabel(propiedad, "property", "es");
-	                    			
-	                    			diccionarioPropiedadesId.put(docenteId, propiedadId);
-	                    			
-	                    		};
+	                    		String propiedadId = registroPropiedades.getId(propiedad);
 	                    		
 	                    		if (diccionarioPropiedadesConCualificador.containsKey(propiedad)) {
 	                				
 	                				String propiedadType = diccionarioPropiedadesConCualificador.get(propiedad);
 	                					
-	                				String statementId = "";
-	                				
-	                				
-	                				if (manager.statementExists(docenteId, propiedadId, nextInLineValues[propiedadPosicion])) {
-	                					statementId = manager.getStatementId(docenteId, propiedadId, nextInLineValues[propiedadPosicion], propiedadType);
-	                				} else {
-	                					statementId = manager.addStatementToItem(docenteId, propiedadId, nextInLineValues[propiedadPosicion], propiedadType);
-	                				}
-	             
-	                				if (!manager.doesStatementWithQualifierExist(docenteId, propiedadId, nextInLineValues[propiedadPosicion], yearPropertyId, nextInLineValues[Integer.parseInt(cualificador)])) {
-	                					                    					
-	                					manager.addQualifierToStatement(statementId, yearPropertyId, nextInLineValues[Integer.parseInt(cualificador)], "time");
-	                					
-	                				}
+	                				// Crear la declaración con el año como calificador, o completar la existente, con una sola escritura.
+	                				manager.setStatement(docenteId, propiedadId, WikibaseValue.parse(propiedadType, nextInLineValues[propiedadPosicion]),
+	                						Map.of(yearPropertyId, valorCalificador(nextInLineValues[Integer.parseInt(cualificador)], "time")));
 	
 	                				
 	                			} else if (diccionarioPropiedadesSinCualificador.containsKey(propiedad)) {
@@ -1832,170 +2053,117 @@ public class WikibaseManager {
 					
 					
 					if (!establecimientoId.equals("")) {
+					
+					
+						if (!regionId.equals("")){
+						
 						
 						
-						if (!regionId.equals("")){
-							
-							
-							String regionPropiedadId = "P1";
-							
 							if (!manager.statementExists(establecimientoId, regionPropiedadId, regionId)) {
 								manager.addStatementToItem(establecimientoId, regionPropiedadId, regionId, "wikibase-item");
             				} 
-							
-							
-						}
 						
+						
+						}
+					
 						if (!comunaId.equals("")){
-							
-							
-							String comunaPropiedadId = "P2";
-							
+						
+						
+						
 							if (!manager.statementExists(establecimientoId, comunaPropiedadId, comunaId)) {
 								manager.addStatementToItem(establecimientoId, comunaPropiedadId, comunaId, "wikibase-item");
             				} 
-							
-							
+						
+						
 						}
 
-					
+				
 					}
 					
 					if (!regionId.equals("")) {
+						// Los enlaces de la región (establecimientos y comunas en la zona) se consultan en memoria y se escriben por lotes.
+						{
 						
 						
-						if (!establecimientoId.equals("")){
+							if (!establecimientoId.equals("")){
 							
 							
-							String establecimientoPropiedadId = "P6";
 							
-							if (!manager.statementExists(regionId, establecimientoPropiedadId, establecimientoId)) {
-								manager.addStatementToItem(regionId, establecimientoPropiedadId, establecimientoId, "wikibase-item");
-            				} 
+								hubs.agregar(regionId, establecimientoPropiedadId, establecimientoId);
 							
 							
-						}
+							}
 						
-						if (!comunaId.equals("")){
+							if (!comunaId.equals("")){
 							
 							
-							String comunaPropiedadId = "P2";
 							
-							if (!manager.statementExists(regionId, comunaPropiedadId, comunaId)) {
-								manager.addStatementToItem(regionId, comunaPropiedadId, comunaId, "wikibase-item");
-            				} 
+								hubs.agregar(regionId, comunaPropiedadId, comunaId);
 							
 							
-						}
+							}
 
 					
+						}
 					}
 					
 					
 					if (!comunaId.equals("")) {
+						// Los enlaces de la comuna (establecimientos y región) se consultan en memoria y se escriben por lotes.
+						{
 						
 						
-						if (!establecimientoId.equals("")){
+							if (!establecimientoId.equals("")){
 							
 							
-							String establecimientoPropiedadId = "P6";
 							
-							if (!manager.statementExists(comunaId, establecimientoPropiedadId, establecimientoId)) {
-								manager.addStatementToItem(comunaId, establecimientoPropiedadId, establecimientoId, "wikibase-item");
-            				} 
+								hubs.agregar(comunaId, establecimientoPropiedadId, establecimientoId);
 							
 							
-						}
+							}
 						
-						if (!regionId.equals("")){
+							if (!regionId.equals("")){
 							
 							
-							String regionPropiedadId = "P1";
 							
-							if (!manager.statementExists(comunaId, regionPropiedadId, regionId)) {
-								manager.addStatementToItem(comunaId, regionPropiedadId, regionId, "wikibase-item");
-            				} 
+								hubs.agregar(comunaId, regionPropiedadId, regionId);
 							
 							
-						}
+							}
 
 					
+						}
 					}
 					
 					
 					if (!docenteId.equals("")) {
-						
+					
 						if (!regionId.equals("")){
-							
-							String statementId = "";
-							
-							String trabajoRegionPropertyId = "P9";
-							
-							if (manager.statementExists(docenteId, trabajoRegionPropertyId, regionId)) {
-								statementId = manager.getStatementId(docenteId, trabajoRegionPropertyId, regionId, "wikibase-item");
-            				} else {
-            					statementId = manager.addStatementToItem(docenteId, trabajoRegionPropertyId, regionId, "wikibase-item");	
-            				}
-							            				
-
-            				if (!manager.doesStatementWithQualifierExist(docenteId, trabajoRegionPropertyId, regionId, yearPropertyId, nextInLineValues[Integer.parseInt(cualificador)])) {
-            					
-            					
-            					manager.addQualifierToStatement(statementId, yearPropertyId, nextInLineValues[Integer.parseInt(cualificador)], "time");
-            					
-            				}
-							
-							
-						}
 						
-						if (!comunaId.equals("")){
-							
-							String statementId = "";
-							
-							String trabajoComunaPropertyId = "P10";
-							
-							if (manager.statementExists(docenteId, trabajoComunaPropertyId, comunaId)) {
-								statementId = manager.getStatementId(docenteId, trabajoComunaPropertyId, comunaId, "wikibase-item");
-            				} else {
-            					statementId = manager.addStatementToItem(docenteId, trabajoComunaPropertyId, comunaId, "wikibase-item");	
-            				}
-							            				
-
-            				if (!manager.doesStatementWithQualifierExist(docenteId, trabajoComunaPropertyId, comunaId, yearPropertyId, nextInLineValues[Integer.parseInt(cualificador)])) {
-            					
-            					
-            					manager.addQualifierToStatement(statementId, yearPropertyId, nextInLineValues[Integer.parseInt(cualificador)], "time");
-            					
-            				}
-							
-							
+							manager.setStatement(docenteId, trabajoRegionPropertyId, WikibaseValue.parse("wikibase-item", regionId),
+									Map.of(yearPropertyId, valorCalificador(nextInLineValues[Integer.parseInt(cualificador)], "time")));
+						
+						
 						}
+					
+						if (!comunaId.equals("")){
+						
+							manager.setStatement(docenteId, trabajoComunaPropertyId, WikibaseValue.parse("wikibase-item", comunaId),
+									Map.of(yearPropertyId, valorCalificador(nextInLineValues[Integer.parseInt(cualificador)], "time")));
+						
 						
-						if (!establecimientoId.equals("")){
-							
-							String statementId = "";
-							
-							String trabajoEstablecimientoPropertyId = "P8";
-							
-							if (manager.statementExists(docenteId, trabajoEstablecimientoPropertyId, establecimientoId)) {
-								statementId = manager.getStatementId(docenteId, trabajoEstablecimientoPropertyId, establecimientoId, "wikibase-item");
-            				} else {
-            					statementId = manager.addStatementToItem(docenteId, trabajoEstablecimientoPropertyId, establecimientoId, "wikibase-item");	
-            				}
-							            				
-
-            				if (!manager.doesStatementWithQualifierExist(docenteId, trabajoEstablecimientoPropertyId, establecimientoId, yearPropertyId, nextInLineValues[Integer.parseInt(cualificador)])) {
-            					
-            					
-            					manager.addQualifierToStatement(statementId, yearPropertyId, nextInLineValues[Integer.parseInt(cualificador)], "time");
-            					
-            				}
-							
-							
 						}
+					
+						if (!establecimientoId.equals("")){
 						
+							manager.setStatement(docenteId, trabajoEstablecimientoPropertyId, WikibaseValue.parse("wikibase-item", establecimientoId),
+									Map.of(yearPropertyId, valorCalificador(nextInLineValues[Integer.parseInt(cualificador)], "time")));
 						
 						
+						}
+					
+					
+					
 					}
 					
 					long endTime = System.currentTimeMillis();
@@ -2003,14 +2171,38 @@ public class WikibaseManager {
 
 		            // Registra el tiempo de ejecución y el número de líneas leídas
 		            ExecutionLogger.log(duration, i);
+		            eventoFila.linea = i;
+		            eventoFila.escritura = System.nanoTime() - inicioFase;
+		            eventoFila.commit();
 
                 }
+                System.out.println(reader.resumen());
+                System.out.println("Diccionario de establecimientos: " + establecimientos.resumen());
+                System.out.println("Diccionario de regiones: " + regiones.resumen());
+                System.out.println("Diccionario de comunas: " + comunas.resumen());
+                System.out.println("Diccionario de docentes: " + docentes.resumen());
+                System.out.println("Docentes por MRUN: " + docentesPorMrun.resumen());
+                System.out.println("Establecimientos por RBD: " + establecimientosPorRbd.resumen());
             }
             System.out.println("Fin");
+            System.out.println(etiquetas.resumen());
+            System.out.println(ClaimCache.compartida().resumen());
+            System.out.println(RevisionTracker.compartido().resumen());
+            System.out.println(FingerprintIndex.compartido().resumen());
             
-            
-        } catch (IOException | CsvException e) {
+        } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            // Escribir los enlaces de regiones y comunas que quedaron en el lote y guardar el estado para la próxima
+            // ejecución, también si la carga terminó con un error. Cada paso se intenta aunque falle el anterior.
+            terminar("escribir los enlaces pendientes", hubs::vaciar);
+            System.out.println(hubs.resumen());
+            terminar("guardar " + rutaMrun, () -> docentesPorMrun.guardar(rutaMrun));
+            terminar("guardar " + rutaRbd, () -> establecimientosPorRbd.guardar(rutaRbd));
+            terminar("guardar el espejo local", espejo::guardar);
+            System.out.println(espejo.resumen());
+            // Guardar las sesiones (con las cookies renovadas) para reutilizarlas en la próxima ejecución.
+            terminar("guardar las sesiones", sesiones::guardar);
         }
         
         //System.out.println(manager.getEntityByLabel("TPCA", "item", "es"));
@@ -0,0 +1,492 @@
+// Paquete que contiene el modelo tipado de los valores que se escriben y comparan en Wikibase.
+package wikibase;
+
+// Clase base de los valores tipados de Wikibase (cantidad, fecha, coordenada, ítem y texto).
+// Cada valor sabe escribir su JSON en un StringBuilder reutilizable y compararse con un snak leído de la API,
+// sin formatear cadenas intermedias ni depender de prefijos como "+".
+public abstract class WikibaseValue {
+
+    // Modelo de calendario usado en todas las fechas.
+    private static final String CALENDARIO = "http://www.wikidata.org/entity/Q1985727";
+
+    // Globo usado en todas las coordenadas (la Tierra).
+    private static final String GLOBO = "http://www.wikidata.org/entity/Q2";
+
+    // Buffer reutilizable por hilo donde se serializan los valores.
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    // Método que devuelve el tipo de dato de Wikibase correspondiente al valor (por ejemplo, "quantity").
+    public abstract String datatype();
+
+    // Método que devuelve el tipo del datavalue en la API (por ejemplo, "wikibase-entityid" para un ítem).
+    public String valueType() {
+        switch (datatype()) {
+            case "wikibase-item":
+                return "wikibase-entityid";
+            case "globe-coordinate":
+                return "globecoordinate";
+            default:
+                return datatype();
+        }
+    }
+
+    // Método que escribe el JSON del valor (el contenido de "datavalue.value") en el buffer indicado.
+    public abstract void writeJson(StringBuilder out);
+
+    // Método que compara el valor con el datavalue de un snak leído en streaming.
+    abstract boolean matches(SnakValue snak);
+
+    // Método que escribe el JSON del valor en el buffer reutilizable del hilo y devuelve ese buffer.
+    public final StringBuilder toJson() {
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        writeJson(out);
+        return out;
+    }
+
+    // Método que crea un valor tipado a partir del tipo de dato y del texto leído del CSV.
+    // Lanza IllegalArgumentException si el tipo no está soportado o el texto no es válido para el tipo.
+    public static WikibaseValue parse(String valueType, String raw) {
+        switch (valueType) {
+            case "string":
+                return new StringValue(raw);
+            case "quantity":
+                return Quantity.parse(raw);
+            case "time":
+                return Time.parse(raw);
+            case "globe-coordinate":
+                return GlobeCoordinate.parse(raw);
+            case "wikibase-item":
+                return ItemRef.parse(raw);
+            default:
+                throw new IllegalArgumentException("Tipo de valor no soportado: " + valueType);
+        }
+    }
+
+    // Método que crea un valor tipado o devuelve null si el texto no es válido para el tipo (usado en comparaciones).
+    static WikibaseValue tryParse(String valueType, String raw) {
+        try {
+            return parse(valueType, raw);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Clase que compara un valor en texto con snaks de cualquier tipo: el texto se interpreta una sola vez
+    // según el tipo de dato del snak y se reutiliza mientras los snaks sigan siendo del mismo tipo.
+    static final class Comparador {
+
+        private final String raw;        // Valor tal como viene del CSV o del llamador.
+        private String datatype;         // Tipo de dato con el que se interpretó por última vez.
+        private WikibaseValue valor;     // Valor interpretado (null si el texto no es válido para el tipo).
+
+        Comparador(String raw) {
+            this.raw = raw;
+        }
+
+        // Método que indica si el snak tiene un valor igual al texto, según el tipo de dato del snak.
+        boolean coincide(SnakValue snak) {
+            if (!snak.hasValue || snak.datatype == null) {
+                return false;
+            }
+            if (!snak.datatype.equals(datatype)) {
+                datatype = snak.datatype;
+                valor = tryParse(datatype, raw);
+            }
+            return valor != null && valor.matches(snak);
+        }
+    }
+
+    // Método auxiliar que escribe una cadena JSON escapada entre comillas.
+    static void writeJsonString(StringBuilder out, CharSequence value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append("\\u00");
+                        out.append(Character.forDigit(c >> 4, 16));
+                        out.append(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    // Método auxiliar que escribe un entero con ceros a la izquierda hasta completar el ancho indicado.
+    private static void appendPadded(StringBuilder out, int value, int width) {
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = digits; i < width; i++) {
+            out.append('0');
+        }
+        out.append(value);
+    }
+
+    // Clase que representa una cantidad sin unidad (por ejemplo, número de matriculados).
+    public static final class Quantity extends WikibaseValue {
+
+        private final String amount; // Cantidad normalizada: sin signo "+" y con punto decimal.
+
+        private Quantity(String amount) {
+            this.amount = amount;
+        }
+
+        // Método que crea una cantidad desde el texto del CSV, aceptando coma o punto decimal y signo opcional.
+        public static Quantity parse(String raw) {
+            String texto = raw.trim();
+            if (texto.startsWith("+")) {
+                texto = texto.substring(1);
+            }
+            texto = texto.replace(',', '.');
+            if (!esNumero(texto)) {
+                throw new IllegalArgumentException("Cantidad no válida: " + raw);
+            }
+            return new Quantity(texto);
+        }
+
+        // Método que devuelve la cantidad normalizada.
+        public String getAmount() {
+            return amount;
+        }
+
+        @Override
+        public String datatype() {
+            return "quantity";
+        }
+
+        @Override
+        public void writeJson(StringBuilder out) {
+            out.append("{\"amount\":\"");
+            if (amount.charAt(0) != '-') {
+                out.append('+');
+            }
+            out.append(amount).append("\",\"unit\":\"1\"}");
+        }
+
+        @Override
+        boolean matches(SnakValue snak) {
+            return snak.amount != null && mismoNumero(amount, snak.amount);
+        }
+
+        @Override
+        public String toString() {
+            return amount;
+        }
+
+        // Método auxiliar que valida un número decimal simple ("-12", "3.5").
+        private static boolean esNumero(String texto) {
+            int inicio = texto.startsWith("-") ? 1 : 0;
+            boolean digitos = false;
+            boolean punto = false;
+            for (int i = inicio; i < texto.length(); i++) {
+                char c = texto.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    digitos = true;
+                } else if (c == '.' && !punto) {
+                    punto = true;
+                } else {
+                    return false;
+                }
+            }
+            return digitos;
+        }
+
+        // Método auxiliar que compara dos números decimales en texto, ignorando el signo "+" y los ceros decimales sobrantes.
+        static boolean mismoNumero(String a, String b) {
+            int ia = a.startsWith("+") ? 1 : 0;
+            int ib = b.startsWith("+") ? 1 : 0;
+            int fa = finSignificativo(a);
+            int fb = finSignificativo(b);
+            return fa - ia == fb - ib && a.regionMatches(ia, b, ib, fa - ia);
+        }
+
+        // Método auxiliar que devuelve el fin del número sin ceros decimales sobrantes ni punto final ("12.50" -> "12.5").
+        private static int finSignificativo(String s) {
+            if (s.indexOf('.') < 0) {
+                return s.length();
+            }
+            int fin = s.length();
+            while (fin > 0 && s.charAt(fin - 1) == '0') {
+                fin--;
+            }
+            if (fin > 0 && s.charAt(fin - 1) == '.') {
+                fin--;
+            }
+            return fin;
+        }
+    }
+
+    // Clase que representa una fecha con precisión de año (9), mes (10) o día (11).
+    public static final class Time extends WikibaseValue {
+
+        public static final int PRECISION_YEAR = 9;
+        public static final int PRECISION_MONTH = 10;
+        public static final int PRECISION_DAY = 11;
+
+        private final int year;
+        private final int month;
+        private final int day;
+        private final int precision;
+
+        public Time(int year, int month, int day, int precision) {
+            if (precision < PRECISION_YEAR || precision > PRECISION_DAY) {
+                throw new IllegalArgumentException("Precisión de fecha no soportada: " + precision);
+            }
+            this.year = year;
+            this.month = month;
+            this.day = day;
+            this.precision = precision;
+        }
+
+        // Método que crea una fecha desde el texto del CSV: "AAAA" (año) o "AAAAMM..." (año y mes).
+        public static Time parse(String raw) {
+            String texto = raw.trim();
+            if (texto.length() < 4 || !soloDigitos(texto, 0, Math.min(texto.length(), 6))) {
+                throw new IllegalArgumentException("Fecha no válida: " + raw);
+            }
+            int year = Integer.parseInt(texto, 0, 4, 10);
+            if (texto.length() < 6) {
+                return new Time(year, 1, 1, PRECISION_YEAR);
+            }
+            int month = Integer.parseInt(texto, 4, 6, 10);
+            if (month < 1 || month > 12) {
+                throw new IllegalArgumentException("Mes no válido: " + raw);
+            }
+            return new Time(year, month, 1, PRECISION_MONTH);
+        }
+
+        // Método que crea una fecha con precisión de año (usada en el calificador "año").
+        public static Time ofYear(String raw) {
+            String texto = raw.trim();
+            if (texto.length() != 4 || !soloDigitos(texto, 0, 4)) {
+                throw new IllegalArgumentException("Año no válido: " + raw);
+            }
+            return new Time(Integer.parseInt(texto), 1, 1, PRECISION_YEAR);
+        }
+
+        public int getYear() {
+            return year;
+        }
+
+        public int getPrecision() {
+            return precision;
+        }
+
+        @Override
+        public String datatype() {
+            return "time";
+        }
+
+        @Override
+        public void writeJson(StringBuilder out) {
+            out.append("{\"time\":\"+");
+            appendPadded(out, year, 4);
+            out.append('-');
+            appendPadded(out, precision >= PRECISION_MONTH ? month : 1, 2);
+            out.append('-');
+            appendPadded(out, precision >= PRECISION_DAY ? day : 1, 2);
+            out.append("T00:00:00Z\",\"timezone\":0,\"before\":0,\"after\":0,\"precision\":").append(precision)
+                    .append(",\"calendarmodel\":\"").append(CALENDARIO).append("\"}");
+        }
+
+        @Override
+        boolean matches(SnakValue snak) {
+            // Formato esperado: "+AAAA-MM-DDT00:00:00Z"; se comparan sólo los componentes cubiertos por la precisión.
+            String t = snak.time;
+            if (t == null || t.length() < 11 || t.charAt(0) != '+') {
+                return false;
+            }
+            if (leerEntero(t, 1, 5) != year) {
+                return false;
+            }
+            if (precision >= PRECISION_MONTH && leerEntero(t, 6, 8) != month) {
+                return false;
+            }
+            return precision < PRECISION_DAY || leerEntero(t, 9, 11) == day;
+        }
+
+        @Override
+        public String toString() {
+            return year + "-" + month + "-" + day + "/" + precision;
+        }
+
+        // Método auxiliar que lee un entero de un rango de caracteres (devuelve -1 si no son dígitos).
+        private static int leerEntero(String s, int desde, int hasta) {
+            int valor = 0;
+            for (int i = desde; i < hasta; i++) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                valor = valor * 10 + (c - '0');
+            }
+            return valor;
+        }
+
+        // Método auxiliar que verifica que un rango de caracteres contenga sólo dígitos.
+        private static boolean soloDigitos(String s, int desde, int hasta) {
+            for (int i = desde; i < hasta; i++) {
+                if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Clase que representa una coordenada geográfica sobre la Tierra.
+    public static final class GlobeCoordinate extends WikibaseValue {
+
+        private static final double PRECISION = 0.0001;
+
+        private final double latitude;
+        private final double longitude;
+
+        public GlobeCoordinate(double latitude, double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        // Método que crea una coordenada desde el texto "latitud;longitud", aceptando coma decimal.
+        public static GlobeCoordinate parse(String raw) {
+            int separador = raw.indexOf(';');
+            if (separador < 0) {
+                throw new IllegalArgumentException("Coordenada no válida: " + raw);
+            }
+            try {
+                double lat = Double.parseDouble(raw.substring(0, separador).trim().replace(',', '.'));
+                double lon = Double.parseDouble(raw.substring(separador + 1).trim().replace(',', '.'));
+                return new GlobeCoordinate(lat, lon);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Coordenada no válida: " + raw, e);
+            }
+        }
+
+        @Override
+        public String datatype() {
+            return "globe-coordinate";
+        }
+
+        @Override
+        public void writeJson(StringBuilder out) {
+            out.append("{\"latitude\":").append(latitude)
+                    .append(",\"longitude\":").append(longitude)
+                    .append(",\"precision\":0.0001")
+                    .append(",\"globe\":\"").append(GLOBO).append("\"}");
+        }
+
+        @Override
+        boolean matches(SnakValue snak) {
+            // Se consideran iguales las coordenadas que coinciden dentro de la precisión usada al escribirlas.
+            return "globecoordinate".equals(snak.valueType)
+                    && Math.abs(snak.latitude - latitude) <= PRECISION / 2
+                    && Math.abs(snak.longitude - longitude) <= PRECISION / 2;
+        }
+
+        @Override
+        public String toString() {
+            return latitude + ";" + longitude;
+        }
+    }
+
+    // Clase que representa una referencia a un ítem de Wikibase (por ejemplo, "Q17305").
+    public static final class ItemRef extends WikibaseValue {
+
+        private final long numericId;
+
+        public ItemRef(long numericId) {
+            this.numericId = numericId;
+        }
+
+        // Método que crea la referencia desde un ID "Q123" (o sólo el número).
+        public static ItemRef parse(String raw) {
+            String texto = raw.trim();
+            int inicio = texto.startsWith("Q") ? 1 : 0;
+            try {
+                return new ItemRef(Long.parseLong(texto, inicio, texto.length(), 10));
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("ID de ítem no válido: " + raw, e);
+            }
+        }
+
+        public long getNumericId() {
+            return numericId;
+        }
+
+        @Override
+        public String datatype() {
+            return "wikibase-item";
+        }
+
+        @Override
+        public void writeJson(StringBuilder out) {
+            out.append("{\"entity-type\":\"item\",\"numeric-id\":").append(numericId).append('}');
+        }
+
+        @Override
+        boolean matches(SnakValue snak) {
+            if (snak.numericId != 0) {
+                return snak.numericId == numericId;
+            }
+            // Algunas respuestas sólo traen el "id" en texto.
+            String id = snak.entityId;
+            return id != null && id.length() > 1 && id.charAt(0) == 'Q' && Time.leerEntero(id, 1, id.length()) == numericId;
+        }
+
+        @Override
+        public String toString() {
+            return "Q" + numericId;
+        }
+    }
+
+    // Clase que representa un valor de texto.
+    public static final class StringValue extends WikibaseValue {
+
+        private final String value;
+
+        public StringValue(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String datatype() {
+            return "string";
+        }
+
+        @Override
+        public void writeJson(StringBuilder out) {
+            writeJsonString(out, value);
+        }
+
+        @Override
+        boolean matches(SnakValue snak) {
+            return value.equals(snak.text);
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+}
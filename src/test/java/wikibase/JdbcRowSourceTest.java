@@ -0,0 +1,134 @@
+// Paquete que contiene las pruebas de la fuente de filas JDBC, sobre una base Derby en memoria.
+package wikibase;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+// Clase que prueba JdbcRowSource con una tabla de establecimientos en una base Derby embebida: el encabezado, la
+// división en tramos por rango de la columna de partición, el orden de las filas dentro de cada tramo y el error de
+// un tramo que falla a mitad de la lectura.
+public class JdbcRowSourceTest {
+
+    private static final int FILAS = 1000;
+    private static final String CONSULTA = "SELECT RBD, NOMBRE FROM ESTABLECIMIENTOS ORDER BY RBD";
+
+    private static int bases;
+    private String url;
+
+    @BeforeClass
+    public static void configurarDerby() {
+        System.setProperty("derby.stream.error.file", "target/derby.log");
+    }
+
+    // Método que crea una base nueva con los RBD de 1 a FILAS, insertados en desorden. El RBD 500 no tiene nombre y
+    // los demás llevan un ';' que la fuente debe cambiar por ','.
+    @Before
+    public void crearBase() throws SQLException {
+        url = "jdbc:derby:memory:jdbcRowSource" + (++bases);
+        try (Connection conexion = DriverManager.getConnection(url + ";create=true");
+             Statement sentencia = conexion.createStatement()) {
+            sentencia.executeUpdate("CREATE TABLE ESTABLECIMIENTOS (RBD INT NOT NULL PRIMARY KEY, NOMBRE VARCHAR(40))");
+            List<Integer> rbds = new ArrayList<>();
+            for (int rbd = 1; rbd <= FILAS; rbd++) {
+                rbds.add(rbd);
+            }
+            Collections.shuffle(rbds, new Random(7));
+            try (PreparedStatement insertar = conexion.prepareStatement("INSERT INTO ESTABLECIMIENTOS VALUES (?, ?)")) {
+                for (int rbd : rbds) {
+                    insertar.setInt(1, rbd);
+                    insertar.setString(2, rbd == 500 ? null : "Escuela " + rbd + ";sede");
+                    insertar.addBatch();
+                }
+                insertar.executeBatch();
+            }
+        }
+    }
+
+    @After
+    public void borrarBase() {
+        try {
+            DriverManager.getConnection(url + ";drop=true").close();
+        } catch (SQLException e) {
+            // Derby informa el borrado de la base con una excepción.
+        }
+    }
+
+    // Sin columna de partición la consulta se lee en un solo flujo y las filas llegan en el orden de la consulta.
+    @Test(timeout = 60000)
+    public void leeSinParticionEnOrden() throws IOException {
+        try (JdbcRowSource fuente = JdbcRowSource.abrir(url, null, null, CONSULTA, 7, null, 4)) {
+            assertArrayEquals(new String[] {"RBD;NOMBRE"}, fuente.readNext());
+            for (int rbd = 1; rbd <= FILAS; rbd++) {
+                assertArrayEquals(new String[] {fila(rbd)}, fuente.readNext());
+            }
+            assertNull(fuente.readNext());
+        }
+    }
+
+    // Con partición por RBD, cada fila se entrega una vez y las de cada tramo ([1, 251), [251, 501), [501, 751) y
+    // [751, 1000]) llegan en el orden de la consulta, aunque los tramos se intercalen.
+    @Test(timeout = 60000)
+    public void divideEnTramosPorRango() throws IOException {
+        int particiones = 4;
+        int ancho = (FILAS - 1) / particiones + 1;
+        int[] ultimoPorTramo = new int[particiones];
+        boolean[] vistos = new boolean[FILAS + 1];
+        try (JdbcRowSource fuente = JdbcRowSource.abrir(url, null, null, CONSULTA, 7, "RBD", particiones)) {
+            assertArrayEquals(new String[] {"RBD;NOMBRE"}, fuente.readNext());
+            String[] fila;
+            int leidas = 0;
+            while ((fila = fuente.readNext()) != null) {
+                int rbd = Integer.parseInt(fila[0].substring(0, fila[0].indexOf(';')));
+                assertEquals(fila(rbd), fila[0]);
+                assertTrue("RBD repetido: " + rbd, !vistos[rbd]);
+                vistos[rbd] = true;
+                int tramo = (rbd - 1) / ancho;
+                assertTrue("RBD fuera de orden en su tramo: " + rbd, rbd > ultimoPorTramo[tramo]);
+                ultimoPorTramo[tramo] = rbd;
+                leidas++;
+            }
+            assertEquals(FILAS, leidas);
+            assertTrue(fuente.resumen(), fuente.resumen().contains(" de " + particiones + " tramos"));
+        }
+    }
+
+    // Un tramo que falla después de entregar filas termina la lectura con una IOException en vez de dejar a readNext
+    // esperando su marca de fin.
+    @Test(timeout = 60000)
+    public void informaElErrorDeUnTramo() throws IOException {
+        String consulta = "SELECT RBD, 1000 / (RBD - 900) AS COCIENTE FROM ESTABLECIMIENTOS ORDER BY RBD";
+        try (JdbcRowSource fuente = JdbcRowSource.abrir(url, null, null, consulta, 7, "RBD", 4)) {
+            assertArrayEquals(new String[] {"RBD;COCIENTE"}, fuente.readNext());
+            while (fuente.readNext() != null) {
+                // Se leen las filas de los tramos sanos hasta llegar al error.
+            }
+            fail("El tramo con el RBD 900 debía fallar");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getCause() instanceof SQLException);
+        }
+    }
+
+    // Método auxiliar que devuelve la fila esperada para un RBD, con el ';' del nombre cambiado por ','.
+    private static String fila(int rbd) {
+        return rbd + ";" + (rbd == 500 ? "" : "Escuela " + rbd + ",sede");
+    }
+}